@@ -0,0 +1,100 @@
+package com.protocol7.nettyquic.benchmarks;
+
+import com.protocol7.nettyquic.tls.CipherSuite;
+import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.utils.Rnd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Per packet cost of payload and header protection */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AEADBenchmark {
+
+  @Param({"64", "1200"})
+  private int payloadLength;
+
+  @Param({"TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384", "TLS_CHACHA20_POLY1305_SHA256"})
+  private CipherSuite cipherSuite;
+
+  private final ByteBuffer aad = ByteBuffer.allocate(20);
+  private final byte[] sample = new byte[16];
+  private final byte[] header = new byte[5];
+
+  private AEAD client;
+  private AEAD server;
+  private ByteBuf buffer;
+  private byte[] cipherText;
+  private long packetNumber = 0;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    final int keyLength = cipherSuite.getKeyLength();
+    final byte[] clientKey = Rnd.rndBytes(keyLength);
+    final byte[] serverKey = Rnd.rndBytes(keyLength);
+    final byte[] clientIV = Rnd.rndBytes(12);
+    final byte[] serverIV = Rnd.rndBytes(12);
+    final byte[] clientPnKey = Rnd.rndBytes(keyLength);
+    final byte[] serverPnKey = Rnd.rndBytes(keyLength);
+
+    client =
+        new AEAD(cipherSuite, clientKey, serverKey, clientIV, serverIV, clientPnKey, serverPnKey);
+    server =
+        new AEAD(cipherSuite, serverKey, clientKey, serverIV, clientIV, serverPnKey, clientPnKey);
+
+    buffer = Unpooled.directBuffer(payloadLength + AEAD.OVERHEAD);
+
+    cipherText = client.seal(new byte[payloadLength], 0, aad.array());
+  }
+
+  @TearDown
+  public void tearDown() {
+    buffer.release();
+  }
+
+  @Benchmark
+  public int seal() throws GeneralSecurityException {
+    // a nonce must never be reused for sealing
+    return client.seal(buffer, 0, payloadLength, ++packetNumber, aad);
+  }
+
+  @Benchmark
+  public int open() throws GeneralSecurityException {
+    buffer.setBytes(0, cipherText);
+    return server.open(buffer, 0, cipherText.length, 0, aad);
+  }
+
+  /** A connection both receives and sends, alternating between the two keys */
+  @Benchmark
+  public int openAndSeal() throws GeneralSecurityException {
+    buffer.setBytes(0, cipherText);
+    final int length = server.open(buffer, 0, cipherText.length, 0, aad);
+    return server.seal(buffer, 0, length, ++packetNumber, aad);
+  }
+
+  @Benchmark
+  public byte[] encryptHeader() throws GeneralSecurityException {
+    // samples are taken from the cipher text, so differ between packets
+    sample[15]++;
+    return client.encryptHeader(sample, header, true);
+  }
+}
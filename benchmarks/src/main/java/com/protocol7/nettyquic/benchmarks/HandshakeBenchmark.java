@@ -0,0 +1,88 @@
+package com.protocol7.nettyquic.benchmarks;
+
+import com.protocol7.nettyquic.QuicConfig;
+import com.protocol7.nettyquic.tls.ClientTlsSession;
+import com.protocol7.nettyquic.tls.ServerTlsSession;
+import com.protocol7.nettyquic.tls.ServerTlsSession.ServerHelloAndHandshake;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Server cost of handling a ClientHello, with and without resuming a session, and signing with an
+ * RSA or an ECDSA P-256 key
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandshakeBenchmark {
+
+  @Param({"false", "true"})
+  private boolean resumed;
+
+  @Param({"RSA", "EC"})
+  private String keyType;
+
+  private List<byte[]> certificates;
+  private PrivateKey privateKey;
+  // shared by the servers, so that each opens the tickets sealed by the others
+  private final QuicConfig serverConfig = QuicConfig.defaults();
+  private byte[] clientHello;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException, IOException {
+    String name = keyType.equals("EC") ? "/server-ec" : "/server";
+    try (InputStream crt = getClass().getResourceAsStream(name + ".crt");
+        InputStream der = getClass().getResourceAsStream(name + ".der")) {
+      certificates =
+          List.of(CertificateFactory.getInstance("X.509").generateCertificate(crt).getEncoded());
+      privateKey =
+          KeyFactory.getInstance(keyType)
+              .generatePrivate(new PKCS8EncodedKeySpec(der.readAllBytes()));
+    }
+
+    // the ticket received is kept in the ticket cache of the config
+    QuicConfig clientConfig = QuicConfig.defaults();
+    if (resumed) {
+      // full handshake to get a ticket
+      ClientTlsSession client = new ClientTlsSession(clientConfig, "server");
+      ServerTlsSession server = newServer();
+      ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+      client.handleServerHello(shah.getServerHello());
+      server.handleClientFinished(client.handleHandshake(shah.getServerHandshake()).get().getFin());
+      client.handleNewSessionTicket(server.newSessionTicket().get());
+    }
+
+    // the server keeps no state per ticket, so the same hello can be handled repeatedly
+    clientHello = new ClientTlsSession(clientConfig, "server").startHandshake();
+  }
+
+  private ServerTlsSession newServer() {
+    return new ServerTlsSession(certificates, privateKey, serverConfig);
+  }
+
+  @Benchmark
+  public ServerHelloAndHandshake handleClientHello() {
+    return newServer().handleClientHello(clientHello);
+  }
+}
@@ -0,0 +1,239 @@
+package com.protocol7.nettyquic;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Preconditions;
+import com.protocol7.nettyquic.connection.CongestionController;
+import com.protocol7.nettyquic.connection.NewRenoCongestionController;
+import com.protocol7.nettyquic.server.RetryTokens;
+import com.protocol7.nettyquic.streams.ReceiveWindow;
+import com.protocol7.nettyquic.tls.CipherSuite;
+import com.protocol7.nettyquic.tls.Group;
+import com.protocol7.nettyquic.tls.KeyExchangePool;
+import com.protocol7.nettyquic.tls.SessionTicketCache;
+import com.protocol7.nettyquic.tls.SessionTickets;
+import com.protocol7.nettyquic.tls.aead.AEADs;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Settings for clients and servers, passed on to every connection they set up. Settings only used
+ * by one side are ignored by the other. Immutable, build with {@link #newBuilder()}.
+ */
+public class QuicConfig {
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * Default settings, with session tickets and Retry tokens enabled and a new client ticket cache
+   */
+  public static QuicConfig defaults() {
+    return newBuilder().build();
+  }
+
+  private final CongestionController.Factory congestionControllerFactory;
+  private final long maxReceiveWindow;
+  private final List<CipherSuite> cipherSuites;
+  private final long keyUpdateInterval;
+  private final KeyExchangePool keyExchangePool;
+  private final Optional<SessionTickets> sessionTickets;
+  private final Optional<Executor> handshakeExecutor;
+  private final SessionTicketCache ticketCache;
+  private final Optional<RetryTokens> retryTokens;
+
+  private QuicConfig(final Builder builder) {
+    this.congestionControllerFactory = builder.congestionControllerFactory;
+    this.maxReceiveWindow = builder.maxReceiveWindow;
+    this.cipherSuites = builder.cipherSuites;
+    this.keyUpdateInterval = builder.keyUpdateInterval;
+    this.keyExchangePool = builder.keyExchangePool;
+    this.sessionTickets =
+        builder.issueTickets
+            ? Optional.of(builder.sessionTickets.orElseGet(SessionTickets::new))
+            : Optional.empty();
+    this.handshakeExecutor = builder.handshakeExecutor;
+    this.ticketCache = builder.ticketCache.orElseGet(SessionTicketCache::new);
+    this.retryTokens =
+        builder.validateAddresses
+            ? Optional.of(builder.retryTokens.orElseGet(RetryTokens::new))
+            : Optional.empty();
+  }
+
+  public CongestionController.Factory getCongestionControllerFactory() {
+    return congestionControllerFactory;
+  }
+
+  /** Ceiling in bytes for auto-tuned flow control receive windows */
+  public long getMaxReceiveWindow() {
+    return maxReceiveWindow;
+  }
+
+  /** Cipher suites to offer or accept, in order of preference */
+  public List<CipherSuite> getCipherSuites() {
+    return cipherSuites;
+  }
+
+  /** Number of 1-RTT packets sent with the same keys before initiating a key update */
+  public long getKeyUpdateInterval() {
+    return keyUpdateInterval;
+  }
+
+  /** X25519 key pairs generated ahead of handshakes, one is taken for each handshake */
+  public KeyExchangePool getKeyExchangePool() {
+    return keyExchangePool;
+  }
+
+  /**
+   * Server only, seals and opens the tickets used for resumption. If empty, no tickets are issued
+   * and every handshake is a full one.
+   */
+  public Optional<SessionTickets> getSessionTickets() {
+    return sessionTickets;
+  }
+
+  /**
+   * Server only, runs the crypto for handling ClientHellos. If empty, ClientHellos are handled on
+   * the thread delivering the packet.
+   */
+  public Optional<Executor> getHandshakeExecutor() {
+    return handshakeExecutor;
+  }
+
+  /** Client only, tickets to resume sessions with, tickets received are added to it */
+  public SessionTicketCache getTicketCache() {
+    return ticketCache;
+  }
+
+  /**
+   * Server only, seals the tokens of the Retry packets sent to validate client addresses. If empty,
+   * connections are set up for any Initial packet, without a Retry.
+   */
+  public Optional<RetryTokens> getRetryTokens() {
+    return retryTokens;
+  }
+
+  public static class Builder {
+
+    private CongestionController.Factory congestionControllerFactory =
+        NewRenoCongestionController.FACTORY;
+    private long maxReceiveWindow = ReceiveWindow.DEFAULT_MAX_WINDOW;
+    private List<CipherSuite> cipherSuites = CipherSuite.SUPPORTED;
+    private long keyUpdateInterval = AEADs.DEFAULT_KEY_UPDATE_INTERVAL;
+    private KeyExchangePool keyExchangePool = KeyExchangePool.X25519;
+    // created on build if not set, so that configs do not share keys or tickets by accident
+    private Optional<SessionTickets> sessionTickets = Optional.empty();
+    private boolean issueTickets = true;
+    private Optional<Executor> handshakeExecutor = Optional.empty();
+    private Optional<SessionTicketCache> ticketCache = Optional.empty();
+    // created on build if not set, like the session tickets
+    private Optional<RetryTokens> retryTokens = Optional.empty();
+    private boolean validateAddresses = true;
+
+    private Builder() {}
+
+    public Builder withCongestionController(
+        final CongestionController.Factory congestionControllerFactory) {
+      this.congestionControllerFactory = requireNonNull(congestionControllerFactory);
+      return this;
+    }
+
+    /** @param maxReceiveWindow ceiling in bytes for auto-tuned flow control receive windows */
+    public Builder withMaxReceiveWindow(final long maxReceiveWindow) {
+      Preconditions.checkArgument(maxReceiveWindow > 0);
+      this.maxReceiveWindow = maxReceiveWindow;
+      return this;
+    }
+
+    /** @param cipherSuites cipher suites to offer or accept, in order of preference */
+    public Builder withCipherSuites(final List<CipherSuite> cipherSuites) {
+      Preconditions.checkArgument(!cipherSuites.isEmpty());
+      this.cipherSuites = cipherSuites;
+      return this;
+    }
+
+    /**
+     * @param keyUpdateInterval number of 1-RTT packets sent with the same keys before initiating a
+     *     key update
+     */
+    public Builder withKeyUpdateInterval(final long keyUpdateInterval) {
+      Preconditions.checkArgument(keyUpdateInterval > 0);
+      this.keyUpdateInterval = keyUpdateInterval;
+      return this;
+    }
+
+    /**
+     * @param keyExchangePool X25519 key pairs generated ahead of handshakes. Share between clients
+     *     and servers, a pair is taken for each handshake.
+     */
+    public Builder withKeyExchangePool(final KeyExchangePool keyExchangePool) {
+      Preconditions.checkArgument(keyExchangePool.getGroup() == Group.X25519);
+      this.keyExchangePool = keyExchangePool;
+      return this;
+    }
+
+    /**
+     * @param sessionTickets seals and opens the tickets used for resumption, can be shared between
+     *     servers to let clients resume on any of them
+     */
+    public Builder withSessionTickets(final SessionTickets sessionTickets) {
+      this.sessionTickets = Optional.of(sessionTickets);
+      this.issueTickets = true;
+      return this;
+    }
+
+    /** No tickets are issued by servers, every handshake is a full one */
+    public Builder withoutSessionTickets() {
+      this.sessionTickets = Optional.empty();
+      this.issueTickets = false;
+      return this;
+    }
+
+    /**
+     * @param handshakeExecutor runs the crypto for handling ClientHellos, so that a burst of new
+     *     connections does not delay packets on established ones. Should be bounded, a ClientHello
+     *     rejected by the executor is dropped and handled once the client retransmits it. Not shut
+     *     down with the server.
+     */
+    public Builder withHandshakeExecutor(final Executor handshakeExecutor) {
+      this.handshakeExecutor = Optional.of(handshakeExecutor);
+      return this;
+    }
+
+    /**
+     * @param ticketCache tickets used to resume sessions, tickets received are added to it. Share
+     *     between clients to resume sessions on later connections.
+     */
+    public Builder withTicketCache(final SessionTicketCache ticketCache) {
+      this.ticketCache = Optional.of(ticketCache);
+      return this;
+    }
+
+    /**
+     * @param retryTokens seals the tokens of the Retry packets sent to validate client addresses,
+     *     can be shared between servers to let clients echo a token to any of them
+     */
+    public Builder withRetryTokens(final RetryTokens retryTokens) {
+      this.retryTokens = Optional.of(retryTokens);
+      this.validateAddresses = true;
+      return this;
+    }
+
+    /**
+     * No Retry packets are sent by servers, connections are set up for any Initial packet. Saves
+     * new connections a round trip, but a single Initial from a spoofed address then makes the
+     * server set up a connection and send its handshake flight to that address.
+     */
+    public Builder withoutRetryTokens() {
+      this.retryTokens = Optional.empty();
+      this.validateAddresses = false;
+      return this;
+    }
+
+    public QuicConfig build() {
+      return new QuicConfig(this);
+    }
+  }
+}
@@ -3,20 +3,26 @@ package com.protocol7.nettyquic.client;
 import static com.protocol7.nettyquic.client.ClientState.Closed;
 import static com.protocol7.nettyquic.client.ClientState.Closing;
 
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.connection.PacketSender;
+import com.protocol7.nettyquic.connection.RttEstimator;
 import com.protocol7.nettyquic.protocol.*;
 import com.protocol7.nettyquic.protocol.frames.Frame;
 import com.protocol7.nettyquic.protocol.packets.FullPacket;
 import com.protocol7.nettyquic.protocol.packets.Packet;
 import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import com.protocol7.nettyquic.protocol.packets.ZeroRttPacket;
 import com.protocol7.nettyquic.streams.Stream;
 import com.protocol7.nettyquic.streams.StreamListener;
 import com.protocol7.nettyquic.streams.Streams;
 import com.protocol7.nettyquic.tls.EncryptionLevel;
 import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import com.protocol7.nettyquic.tls.aead.AEADs;
 import com.protocol7.nettyquic.tls.aead.InitialAEAD;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import io.netty.util.concurrent.Future;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
@@ -43,24 +49,45 @@ public class ClientConnection implements Connection {
 
   private final Streams streams;
 
-  private AEADs aeads;
+  private final long keyUpdateInterval;
+  private volatile AEADs aeads;
+  // kept over retries, while the 0-RTT keys are replaced
+  private volatile boolean earlyData;
 
   public ClientConnection(
       final ConnectionId initialRemoteConnectionId,
       final StreamListener streamListener,
       final PacketSender packetSender) {
+    this(initialRemoteConnectionId, streamListener, packetSender, QuicConfig.defaults(), "");
+  }
+
+  /** @param serverName the server tickets are stored for in the ticket cache of the config */
+  public ClientConnection(
+      final ConnectionId initialRemoteConnectionId,
+      final StreamListener streamListener,
+      final PacketSender packetSender,
+      final QuicConfig config,
+      final String serverName) {
+    this.keyUpdateInterval = config.getKeyUpdateInterval();
     this.remoteConnectionId = initialRemoteConnectionId;
     this.packetSender = packetSender;
     this.streamListener = streamListener;
-    this.stateMachine = new ClientStateMachine(this);
-    this.streams = new Streams(this);
-    this.packetBuffer = new PacketBuffer(this, this::sendPacketUnbuffered, this.streams);
+    this.stateMachine = new ClientStateMachine(this, config, serverName);
+    this.streams = new Streams(this, config.getMaxReceiveWindow());
+    this.packetBuffer =
+        new PacketBuffer(
+            this,
+            this::sendPacketUnbuffered,
+            this.streams,
+            config.getCongestionControllerFactory());
 
     initAEAD();
   }
 
   private void initAEAD() {
-    this.aeads = new AEADs(InitialAEAD.create(remoteConnectionId, true));
+    this.aeads =
+        new AEADs(
+            InitialAEAD.create(remoteConnectionId, true), keyUpdateInterval, Ticker.systemTicker());
   }
 
   public Future<Void> handshake() {
@@ -76,7 +103,19 @@ public class ClientConnection implements Connection {
     return p;
   }
 
+  /** Frames sent before the handshake completes are sent as early data, if the server allows it */
   public FullPacket sendPacket(final Frame... frames) {
+    if (canSendEarlyData()) {
+      return (FullPacket)
+          sendPacket(
+              ZeroRttPacket.create(
+                  getRemoteConnectionId(),
+                  getLocalConnectionId(),
+                  nextSendPacketNumber(),
+                  getVersion(),
+                  frames));
+    }
+
     return (FullPacket)
         sendPacket(
             new ShortPacket(
@@ -114,11 +153,23 @@ public class ClientConnection implements Connection {
   }
 
   private void sendPacketUnbuffered(final Packet packet) {
-    packetSender
-        .send(packet, getAEAD(EncryptionLevel.forPacket(packet)))
-        .awaitUninterruptibly(); // TODO fix
+    final EncryptionLevel level = EncryptionLevel.forPacket(packet);
+    if (level == EncryptionLevel.ZeroRtt && !aeads.available(level)) {
+      // written while the keys are replaced after a retry, sent once the new keys are set
+      log.debug("Holding early data until new 0-RTT keys are set {}", packet);
+      return;
+    }
 
-    log.debug("Client sent {}", packet);
+    packetSender
+        .send(packet, aeads.getForSending(level))
+        .addListener(
+            future -> {
+              if (future.isSuccess()) {
+                log.debug("Client sent {}", packet);
+              } else {
+                log.warn("Client failed to send {}", packet, future.cause());
+              }
+            });
   }
 
   public void onPacket(final Packet packet) {
@@ -145,6 +196,38 @@ public class ClientConnection implements Connection {
     return aeads.get(level);
   }
 
+  /** Provides AEADs for parsing packets, including 1-RTT keys for both key phases */
+  @Override
+  public AEADProvider getAEADProvider() {
+    return aeads;
+  }
+
+  public void setZeroRttAead(final AEAD zeroRttAead) {
+    aeads.setZeroRttAead(zeroRttAead);
+    earlyData = true;
+  }
+
+  /** @return true if streams can be written to before the handshake completes */
+  public boolean canSendEarlyData() {
+    return earlyData && !aeads.available(EncryptionLevel.OneRtt);
+  }
+
+  /**
+   * @return true if the server accepted the early data sent. Rejected early data has been sent
+   *     again after the handshake.
+   */
+  public boolean isEarlyDataAccepted() {
+    return stateMachine.isEarlyDataAccepted();
+  }
+
+  public void resendEarlyData() {
+    packetBuffer.resendEarlyData();
+  }
+
+  public void onHandshakeComplete(final boolean earlyDataAccepted) {
+    packetBuffer.onHandshakeComplete(earlyDataAccepted);
+  }
+
   public void setHandshakeAead(final AEAD handshakeAead) {
     aeads.setHandshakeAead(handshakeAead);
   }
@@ -161,6 +244,10 @@ public class ClientConnection implements Connection {
     return packetBuffer.getLargestAcked();
   }
 
+  public RttEstimator getRttEstimator() {
+    return packetBuffer.getRttEstimator();
+  }
+
   public PacketNumber nextSendPacketNumber() {
     return sendPacketNumber.updateAndGet(packetNumber -> packetNumber.next());
   }
@@ -177,13 +264,25 @@ public class ClientConnection implements Connection {
     return streams.getOrCreate(streamId, streamListener);
   }
 
+  public Streams getStreams() {
+    return streams;
+  }
+
+  public void setPeerTransportParameters(final TransportParameters transportParameters) {
+    streams.setPeerTransportParameters(transportParameters);
+    packetBuffer.setPeerTransportParameters(transportParameters);
+  }
+
   public Future<Void> close() {
     stateMachine.closeImmediate();
+    packetBuffer.close();
 
     return packetSender.destroy();
   }
 
   public Future<Void> closeByPeer() {
+    packetBuffer.close();
+
     return packetSender.destroy();
   }
 
@@ -7,10 +7,14 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 public class ClientHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
+  private final Logger log = LoggerFactory.getLogger(ClientHandler.class);
+
   private ClientConnection connection;
 
   public void setConnection(final ClientConnection connection) {
@@ -24,7 +28,15 @@ public class ClientHandler extends SimpleChannelInboundHandler<DatagramPacket> {
       final HalfParsedPacket<?> halfParsed =
           Packet.parse(msg.content(), connection.getLastDestConnectionIdLength());
 
-      final Packet packet = halfParsed.complete(connection::getAEAD);
+      final Packet packet;
+      try {
+        packet = halfParsed.complete(connection.getAEADProvider());
+      } catch (IllegalStateException e) {
+        // no keys for the packet yet, e.g. 1-RTT packets acking early data arriving before the
+        // handshake is complete. Dropped as if lost
+        log.debug("Dropping packet that can not be opened yet", e);
+        return;
+      }
 
       MDC.put("actor", "client");
       if (packet instanceof FullPacket) {
@@ -1,6 +1,7 @@
 package com.protocol7.nettyquic.client;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.protocol.TransportError;
 import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.protocol.frames.*;
@@ -25,10 +26,17 @@ public class ClientStateMachine {
   private final ClientConnection connection;
   private final DefaultPromise<Void> handshakeFuture =
       new DefaultPromise(GlobalEventExecutor.INSTANCE); // TODO use what event executor?
-  private final ClientTlsSession tlsEngine = new ClientTlsSession();
+  private final ClientTlsSession tlsEngine;
 
   public ClientStateMachine(final ClientConnection connection) {
+    this(connection, QuicConfig.defaults(), "");
+  }
+
+  /** @param serverName the server tickets are stored for in the ticket cache of the config */
+  public ClientStateMachine(
+      final ClientConnection connection, final QuicConfig config, final String serverName) {
     this.connection = connection;
+    this.tlsEngine = new ClientTlsSession(config, serverName);
   }
 
   public Future<Void> handshake() {
@@ -52,6 +60,7 @@ public class ClientStateMachine {
     int len = 1200;
 
     final CryptoFrame clientHello = new CryptoFrame(0, tlsEngine.startHandshake());
+    tlsEngine.getEarlyDataAead().ifPresent(connection::setZeroRttAead);
     len -= clientHello.calculateLength();
     frames.add(clientHello);
     frames.add(new PaddingFrame(len));
@@ -95,13 +104,13 @@ public class ClientStateMachine {
           tlsEngine.reset();
 
           sendInitialPacket();
+
+          // the server dropped any early data sent before the retry, send it under the new keys
+          connection.resendEarlyData();
         } else if (packet instanceof VersionNegotiationPacket) {
           // we only support a single version, so nothing more to do
           log.debug("Incompatible versions, closing connection");
-          state = ClientState.Closing;
-          connection.closeByPeer().awaitUninterruptibly(); // TODO fix, make async
-          log.debug("Connection closed");
-          state = ClientState.Closed;
+          closeByPeer();
         } else {
           log.warn("Got packet in an unexpected state: {} - {}", state, packet);
         }
@@ -116,7 +125,12 @@ public class ClientStateMachine {
           || state == ClientState.Closing
           || state == ClientState.Closed) { // TODO don't allow when closed
         for (Frame frame : ((FullPacket) packet).getPayload().getFrames()) {
-          handleFrame(frame);
+          if (packet instanceof ShortPacket && frame instanceof CryptoFrame) {
+            // post-handshake messages, expected to fit in a single frame
+            tlsEngine.handleNewSessionTicket(((CryptoFrame) frame).getCryptoData());
+          } else {
+            handleFrame(frame);
+          }
         }
       } else {
         log.warn("Got packet in an unexpected state {} {}", state, packet);
@@ -134,6 +148,7 @@ public class ClientStateMachine {
 
         if (result.isPresent()) {
           connection.setOneRttAead(result.get().getOneRttAead());
+          connection.setPeerTransportParameters(result.get().getTransportParameters());
 
           connection.sendPacket(
               HandshakePacket.create(
@@ -144,6 +159,7 @@ public class ClientStateMachine {
                   new CryptoFrame(0, result.get().getFin())));
 
           state = ClientState.Ready;
+          connection.onHandshakeComplete(result.get().isEarlyDataAccepted());
           handshakeFuture.setSuccess(null);
         }
       }
@@ -160,6 +176,15 @@ public class ClientStateMachine {
       final ResetStreamFrame rsf = (ResetStreamFrame) frame;
       final Stream stream = connection.getOrCreateStream(rsf.getStreamId());
       stream.onReset(rsf.getApplicationErrorCode(), rsf.getOffset());
+    } else if (frame instanceof MaxDataFrame) {
+      final MaxDataFrame mdf = (MaxDataFrame) frame;
+      connection.getStreams().onMaxData(mdf.getMaxData());
+    } else if (frame instanceof MaxStreamDataFrame) {
+      final MaxStreamDataFrame msdf = (MaxStreamDataFrame) frame;
+      connection.getStreams().onMaxStreamData(msdf.getStreamId(), msdf.getMaxStreamData());
+    } else if (frame instanceof DataBlockedFrame || frame instanceof StreamDataBlockedFrame) {
+      // window updates are sent as data is consumed, nothing more to do
+      log.debug("Peer blocked by flow control: {}", frame);
     } else if (frame instanceof PingFrame) {
       // do nothing, will be acked
     } else if (frame instanceof ConnectionCloseFrame) {
@@ -169,8 +194,15 @@ public class ClientStateMachine {
 
   private void handlePeerClose() {
     log.debug("Peer closing connection");
+    closeByPeer();
+  }
+
+  private void closeByPeer() {
     state = ClientState.Closing;
-    connection.closeByPeer().awaitUninterruptibly(); // TODO fix, make async
+    connection.closeByPeer().addListener(future -> onClosed());
+  }
+
+  private synchronized void onClosed() {
     log.debug("Connection closed");
     state = ClientState.Closed;
   }
@@ -185,6 +217,10 @@ public class ClientStateMachine {
     state = ClientState.Closed;
   }
 
+  public boolean isEarlyDataAccepted() {
+    return tlsEngine.isEarlyDataAccepted();
+  }
+
   @VisibleForTesting
   protected ClientState getState() {
     return state;
@@ -1,5 +1,6 @@
 package com.protocol7.nettyquic.client;
 
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.connection.NettyPacketSender;
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.streams.Stream;
@@ -11,11 +12,38 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.util.concurrent.Future;
 import java.net.InetSocketAddress;
+import java.util.function.Consumer;
 
 public class QuicClient {
 
   public static Future<QuicClient> connect(
       final InetSocketAddress serverAddress, final StreamListener streamListener) {
+    return connect(serverAddress, streamListener, QuicConfig.defaults());
+  }
+
+  /**
+   * @param config settings for the connection. Share the ticket cache between clients to resume
+   *     sessions on later connections.
+   */
+  public static Future<QuicClient> connect(
+      final InetSocketAddress serverAddress,
+      final StreamListener streamListener,
+      final QuicConfig config) {
+    return connect(serverAddress, streamListener, config, client -> {});
+  }
+
+  /**
+   * @param earlyData called before the handshake completes if the session is resumed with a ticket
+   *     allowing early data. Data written to streams opened in it is sent as 0-RTT early data,
+   *     which could be replayed by an attacker, so must be safe to process more than once. Use
+   *     {@link #isEarlyDataAccepted()} once connected to see if the server accepted it, rejected
+   *     early data is sent again after the handshake.
+   */
+  public static Future<QuicClient> connect(
+      final InetSocketAddress serverAddress,
+      final StreamListener streamListener,
+      final QuicConfig config,
+      final Consumer<QuicClient> earlyData) {
     final NioEventLoopGroup group = new NioEventLoopGroup();
     final ClientHandler handler = new ClientHandler();
     final Bootstrap b = new Bootstrap();
@@ -31,17 +59,23 @@ public class QuicClient {
                   new ClientConnection(
                       ConnectionId.random(),
                       streamListener,
-                      new NettyPacketSender(channel, serverAddress));
+                      new NettyPacketSender(channel, serverAddress),
+                      config,
+                      serverAddress.getHostString() + ":" + serverAddress.getPort());
               handler.setConnection(connection); // TODO fix cyclic creation
               return connection;
             });
 
-    final Future<ClientConnection> f =
-        Futures.thenAsync(
-            conn,
-            clientConnection ->
-                Futures.thenSync(clientConnection.handshake(), aVoid -> clientConnection));
-    return Futures.thenSync(f, v -> new QuicClient(group, v));
+    final Future<QuicClient> client = Futures.thenSync(conn, v -> new QuicClient(group, v));
+    return Futures.thenAsync(
+        client,
+        quicClient -> {
+          final Future<Void> handshake = quicClient.connection.handshake();
+          if (quicClient.connection.canSendEarlyData()) {
+            earlyData.accept(quicClient);
+          }
+          return Futures.thenSync(handshake, aVoid -> quicClient);
+        });
   }
 
   private final NioEventLoopGroup group;
@@ -56,6 +90,11 @@ public class QuicClient {
     return connection.openStream();
   }
 
+  /** @return true if the server accepted the early data sent while connecting */
+  public boolean isEarlyDataAccepted() {
+    return connection.isEarlyDataAccepted();
+  }
+
   public Future<?> close() {
     return Futures.thenAsync(
         connection.close(), aVoid -> (Future<Void>) group.shutdownGracefully());
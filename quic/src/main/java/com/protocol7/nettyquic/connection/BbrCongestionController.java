@@ -0,0 +1,325 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.INITIAL_WINDOW;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.protocol7.nettyquic.protocol.SentPacket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * BBR congestion control, based on draft-cardwell-iccrg-bbr-congestion-control. Instead of reacting
+ * to loss, the bottleneck bandwidth and round trip propagation time are estimated from delivery
+ * rate samples and the window is sized from their product. This keeps throughput up on paths with
+ * random, non-congestion loss.
+ */
+public class BbrCongestionController implements CongestionController {
+
+  public static final Factory FACTORY = BbrCongestionController::new;
+
+  public enum Mode {
+    STARTUP,
+    DRAIN,
+    PROBE_BW,
+    PROBE_RTT
+  }
+
+  /** Smallest gain that doubles the sending rate each round trip during startup */
+  public static final double HIGH_GAIN = 2 / Math.log(2);
+
+  private static final double[] PACING_GAIN_CYCLE = {1.25, 0.75, 1, 1, 1, 1, 1, 1};
+  private static final double CWND_GAIN = 2;
+  private static final int BTL_BW_FILTER_LENGTH = 10; // round trips
+  private static final long RT_PROP_FILTER_LENGTH = SECONDS.toNanos(10);
+  private static final long PROBE_RTT_DURATION = MILLISECONDS.toNanos(200);
+  private static final long MIN_PIPE_CWND = 4 * MAX_DATAGRAM_SIZE;
+  private static final double FULL_BW_GROWTH = 1.25;
+  private static final int FULL_BW_ROUNDS = 3;
+  // timer granularity, RTT samples can be smaller on fast links
+  private static final long GRANULARITY = MILLISECONDS.toNanos(1);
+
+  private final Logger log = LoggerFactory.getLogger(BbrCongestionController.class);
+
+  private final RttEstimator rttEstimator;
+
+  private Mode mode = Mode.STARTUP;
+  private double pacingGain = HIGH_GAIN;
+  private double cwndGain = HIGH_GAIN;
+  private long congestionWindow = INITIAL_WINDOW;
+  private long priorCongestionWindow = 0;
+  private long bytesInFlight = 0;
+  private long bytesAcked = 0;
+
+  // windowed max of the delivery rate, pairs of round count and bandwidth in bytes per second
+  private final Deque<long[]> btlBwFilter = new ArrayDeque<>();
+  private long rtProp = Long.MAX_VALUE;
+  private long rtPropStamp = 0;
+  private boolean rtPropExpired = false;
+
+  private long roundCount = 0;
+  private long nextRoundDelivered = 0;
+  private boolean roundStart = false;
+
+  private boolean filledPipe = false;
+  private long fullBw = 0;
+  private int fullBwCount = 0;
+
+  private int cycleIndex = 0;
+  private long cycleStamp = 0;
+
+  private long probeRttDoneStamp = 0;
+  private boolean probeRttRoundDone = false;
+
+  public BbrCongestionController(final RttEstimator rttEstimator) {
+    this.rttEstimator = requireNonNull(rttEstimator);
+  }
+
+  @Override
+  public boolean canSend() {
+    return bytesInFlight < congestionWindow;
+  }
+
+  @Override
+  public void onPacketSent(final SentPacket packet) {
+    bytesInFlight += packet.getSize();
+  }
+
+  @Override
+  public void onPacketAcked(final SentPacket packet, final long now) {
+    bytesInFlight -= packet.getSize();
+    bytesAcked += packet.getSize();
+  }
+
+  @Override
+  public void onPacketsLost(final List<SentPacket> packets, final long now) {
+    // loss is not used as a congestion signal, the model is updated from delivery rate samples
+    for (final SentPacket packet : packets) {
+      bytesInFlight -= packet.getSize();
+    }
+  }
+
+  @Override
+  public void onPacketsDiscarded(final List<SentPacket> packets) {
+    for (final SentPacket packet : packets) {
+      bytesInFlight -= packet.getSize();
+    }
+  }
+
+  @Override
+  public void onPersistentCongestion() {
+    // the window grows back towards the model as acks arrive
+    priorCongestionWindow = Math.max(priorCongestionWindow, congestionWindow);
+    congestionWindow = MIN_PIPE_CWND;
+    log.debug("Persistent congestion, window now {}", congestionWindow);
+  }
+
+  @Override
+  public void onDeliveryRateSample(final DeliveryRateSample sample, final long now) {
+    updateRound(sample);
+    updateBtlBw(sample);
+    checkCyclePhase(now);
+    checkFullPipe(sample);
+    checkDrain(now);
+    updateRtProp(sample, now);
+    checkProbeRtt(sample, now);
+    setCongestionWindow(sample);
+    bytesAcked = 0;
+  }
+
+  private void updateRound(final DeliveryRateSample sample) {
+    if (sample.getPriorDelivered() >= nextRoundDelivered) {
+      nextRoundDelivered = sample.getDelivered();
+      roundCount++;
+      roundStart = true;
+    } else {
+      roundStart = false;
+    }
+  }
+
+  private void updateBtlBw(final DeliveryRateSample sample) {
+    final long rate = sample.getDeliveryRate();
+    // app limited samples underestimate the bandwidth, only use them if they increase it
+    if (rate < getBtlBw() && sample.isAppLimited()) {
+      return;
+    }
+
+    while (!btlBwFilter.isEmpty() && btlBwFilter.peekLast()[1] <= rate) {
+      btlBwFilter.pollLast();
+    }
+    btlBwFilter.addLast(new long[] {roundCount, rate});
+    while (btlBwFilter.peekFirst()[0] <= roundCount - BTL_BW_FILTER_LENGTH) {
+      btlBwFilter.pollFirst();
+    }
+  }
+
+  private void checkCyclePhase(final long now) {
+    if (mode == Mode.PROBE_BW && isNextCyclePhase(now)) {
+      cycleIndex = (cycleIndex + 1) % PACING_GAIN_CYCLE.length;
+      cycleStamp = now;
+      pacingGain = PACING_GAIN_CYCLE[cycleIndex];
+    }
+  }
+
+  private boolean isNextCyclePhase(final long now) {
+    final boolean isFullLength = now - cycleStamp > rtProp;
+    if (pacingGain > 1) {
+      // probe until the extra data is in flight
+      return isFullLength && bytesInFlight >= inflight(pacingGain);
+    } else if (pacingGain < 1) {
+      // drain until the queue created by probing is gone
+      return isFullLength || bytesInFlight <= inflight(1);
+    } else {
+      return isFullLength;
+    }
+  }
+
+  private void checkFullPipe(final DeliveryRateSample sample) {
+    if (filledPipe || !roundStart || sample.isAppLimited()) {
+      return;
+    }
+    final long btlBw = getBtlBw();
+    if (btlBw >= fullBw * FULL_BW_GROWTH) {
+      fullBw = btlBw;
+      fullBwCount = 0;
+      return;
+    }
+    fullBwCount++;
+    if (fullBwCount >= FULL_BW_ROUNDS) {
+      filledPipe = true;
+      log.debug("Pipe filled at {} bytes/s", btlBw);
+    }
+  }
+
+  private void checkDrain(final long now) {
+    if (mode == Mode.STARTUP && filledPipe) {
+      mode = Mode.DRAIN;
+      pacingGain = 1 / HIGH_GAIN;
+      // also limit the window, so the queue built during startup drains even when not paced
+      cwndGain = 1;
+    }
+    if (mode == Mode.DRAIN && bytesInFlight <= inflight(1)) {
+      enterProbeBw(now);
+    }
+  }
+
+  private void enterProbeBw(final long now) {
+    mode = Mode.PROBE_BW;
+    cwndGain = CWND_GAIN;
+    // start at a random phase, but never in the draining one
+    cycleIndex =
+        PACING_GAIN_CYCLE.length
+            - 1
+            - ThreadLocalRandom.current().nextInt(PACING_GAIN_CYCLE.length - 1);
+    cycleIndex = (cycleIndex + 1) % PACING_GAIN_CYCLE.length;
+    cycleStamp = now;
+    pacingGain = PACING_GAIN_CYCLE[cycleIndex];
+  }
+
+  private void updateRtProp(final DeliveryRateSample sample, final long now) {
+    rtPropExpired = now > rtPropStamp + RT_PROP_FILTER_LENGTH;
+    if (sample.getRtt() >= 0 && (sample.getRtt() <= rtProp || rtPropExpired)) {
+      rtProp = sample.getRtt();
+      rtPropStamp = now;
+    }
+  }
+
+  private void checkProbeRtt(final DeliveryRateSample sample, final long now) {
+    if (mode != Mode.PROBE_RTT && rtPropExpired) {
+      mode = Mode.PROBE_RTT;
+      pacingGain = 1;
+      cwndGain = 1;
+      priorCongestionWindow = Math.max(priorCongestionWindow, congestionWindow);
+      probeRttDoneStamp = 0;
+    }
+
+    if (mode == Mode.PROBE_RTT) {
+      if (probeRttDoneStamp == 0 && bytesInFlight <= MIN_PIPE_CWND) {
+        probeRttDoneStamp = now + PROBE_RTT_DURATION;
+        probeRttRoundDone = false;
+        nextRoundDelivered = sample.getDelivered();
+      } else if (probeRttDoneStamp != 0) {
+        if (roundStart) {
+          probeRttRoundDone = true;
+        }
+        if (probeRttRoundDone && now > probeRttDoneStamp) {
+          rtPropStamp = now;
+          congestionWindow = Math.max(congestionWindow, priorCongestionWindow);
+          priorCongestionWindow = 0;
+          if (filledPipe) {
+            enterProbeBw(now);
+          } else {
+            mode = Mode.STARTUP;
+            pacingGain = HIGH_GAIN;
+            cwndGain = HIGH_GAIN;
+          }
+        }
+      }
+    }
+  }
+
+  private void setCongestionWindow(final DeliveryRateSample sample) {
+    final long target = inflight(cwndGain);
+    if (filledPipe) {
+      congestionWindow = Math.min(congestionWindow + bytesAcked, target);
+    } else if (congestionWindow < target || sample.getDelivered() < INITIAL_WINDOW) {
+      congestionWindow += bytesAcked;
+    }
+    congestionWindow = Math.max(congestionWindow, MIN_PIPE_CWND);
+
+    if (mode == Mode.PROBE_RTT) {
+      congestionWindow = Math.min(congestionWindow, MIN_PIPE_CWND);
+    }
+  }
+
+  /** Bytes in flight needed to reach the gain times the estimated bandwidth-delay product */
+  private long inflight(final double gain) {
+    if (rtProp == Long.MAX_VALUE || btlBwFilter.isEmpty()) {
+      return INITIAL_WINDOW;
+    }
+    final double bdp = (double) getBtlBw() * rtProp / SECONDS.toNanos(1);
+    return Math.max((long) (gain * bdp), MIN_PIPE_CWND);
+  }
+
+  @Override
+  public long getCongestionWindow() {
+    return congestionWindow;
+  }
+
+  @Override
+  public long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** Estimated bottleneck bandwidth in bytes per second, 0 before the first sample */
+  public long getBtlBw() {
+    final long[] max = btlBwFilter.peekFirst();
+    return max != null ? max[1] : 0;
+  }
+
+  /** Estimated round trip propagation time in nanoseconds */
+  public long getRtProp() {
+    return rtProp;
+  }
+
+  /** Rate the model wants packets sent at, in bytes per second */
+  @Override
+  public long getPacingRate() {
+    final long btlBw = getBtlBw();
+    if (btlBw == 0) {
+      final long rtt = Math.max(rttEstimator.getSmoothedRtt(), GRANULARITY);
+      return (long) (pacingGain * INITIAL_WINDOW * SECONDS.toNanos(1) / rtt);
+    }
+    return (long) (pacingGain * btlBw);
+  }
+}
@@ -0,0 +1,46 @@
+package com.protocol7.nettyquic.connection;
+
+import com.protocol7.nettyquic.protocol.SentPacket;
+import java.util.List;
+
+/**
+ * Limits the number of bytes in flight for a connection. Only ack-eliciting packets are reported to
+ * the controller, calls are made while holding the packet buffer lock.
+ */
+public interface CongestionController {
+
+  interface Factory {
+    CongestionController create(RttEstimator rttEstimator);
+  }
+
+  /** Whether another packet can be sent without exceeding the congestion window */
+  boolean canSend();
+
+  void onPacketSent(SentPacket packet);
+
+  void onPacketAcked(SentPacket packet, long now);
+
+  /** Called once for all packets declared lost by the same ack or timeout */
+  void onPacketsLost(List<SentPacket> packets, long now);
+
+  /** Packets no longer tracked, without being acked or lost, for example on a probe timeout */
+  void onPacketsDiscarded(List<SentPacket> packets);
+
+  /** All packets sent during a period longer than the persistent congestion duration were lost */
+  void onPersistentCongestion();
+
+  /** Called after the acked packets for each ack that produced a valid delivery rate sample */
+  default void onDeliveryRateSample(DeliveryRateSample sample, long now) {}
+
+  long getCongestionWindow();
+
+  long getBytesInFlight();
+
+  /**
+   * Rate to pace packets at in bytes per second, 0 to pace based on the congestion window and the
+   * smoothed RTT
+   */
+  default long getPacingRate() {
+    return 0;
+  }
+}
@@ -8,6 +8,7 @@ import com.protocol7.nettyquic.protocol.packets.FullPacket;
 import com.protocol7.nettyquic.protocol.packets.Packet;
 import com.protocol7.nettyquic.tls.EncryptionLevel;
 import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import java.util.Optional;
 
 public interface Connection {
@@ -26,9 +27,13 @@ public interface Connection {
 
   PacketNumber lastAckedPacketNumber();
 
+  RttEstimator getRttEstimator();
+
   void onPacket(Packet packet);
 
   AEAD getAEAD(EncryptionLevel level);
 
+  AEADProvider getAEADProvider();
+
   Optional<byte[]> getToken();
 }
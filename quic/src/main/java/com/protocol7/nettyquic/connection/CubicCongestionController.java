@@ -0,0 +1,179 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.INITIAL_WINDOW;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MINIMUM_WINDOW;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.nettyquic.protocol.SentPacket;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CUBIC congestion control as described in RFC 8312. After a loss, the window grows as a cubic
+ * function of the time since the loss, quickly returning to the window where the loss happened and
+ * then probing beyond it. This makes growth independent of the RTT, suitable for paths with a high
+ * bandwidth-delay product. Includes fast convergence and the TCP-friendly region, where the window
+ * never grows slower than for a Reno flow.
+ */
+public class CubicCongestionController implements CongestionController {
+
+  public static final Factory FACTORY = CubicCongestionController::new;
+
+  /** Scaling constant for the cubic function, in segments per second cubed */
+  public static final double C = 0.4;
+
+  /** Multiplicative decrease factor */
+  public static final double BETA = 0.7;
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  private final Logger log = LoggerFactory.getLogger(CubicCongestionController.class);
+
+  private final RttEstimator rttEstimator;
+
+  // window values are in bytes, fractional to not lose the small per ack increments
+  private double congestionWindow = INITIAL_WINDOW;
+  private long bytesInFlight = 0;
+  private double slowStartThreshold = Long.MAX_VALUE;
+  private long recoveryStartTime = Long.MIN_VALUE;
+
+  // the window before the last reduction
+  private double windowMax = 0;
+  // the window before the previous reduction, used for fast convergence
+  private double windowLastMax = 0;
+  // window a Reno flow would have, for the TCP-friendly region
+  private double windowEstimate = 0;
+  // the window the cubic function plateaus at
+  private double originPoint = 0;
+  // time in seconds for the cubic function to reach the origin point
+  private double k = 0;
+  private long epochStart = Long.MIN_VALUE;
+
+  public CubicCongestionController(final RttEstimator rttEstimator) {
+    this.rttEstimator = requireNonNull(rttEstimator);
+  }
+
+  @Override
+  public boolean canSend() {
+    return bytesInFlight < congestionWindow;
+  }
+
+  @Override
+  public void onPacketSent(final SentPacket packet) {
+    bytesInFlight += packet.getSize();
+  }
+
+  @Override
+  public void onPacketAcked(final SentPacket packet, final long now) {
+    bytesInFlight -= packet.getSize();
+
+    if (inRecovery(packet.getTimeSent())) {
+      // don't grow the window for packets sent before the loss was detected
+      return;
+    }
+
+    if (congestionWindow < slowStartThreshold) {
+      congestionWindow += packet.getSize();
+    } else {
+      congestionAvoidance(packet.getSize(), now);
+    }
+  }
+
+  private void congestionAvoidance(final int ackedBytes, final long now) {
+    if (epochStart == Long.MIN_VALUE) {
+      epochStart = now;
+      if (congestionWindow < windowMax) {
+        k = Math.cbrt((windowMax - congestionWindow) / MAX_DATAGRAM_SIZE / C);
+        originPoint = windowMax;
+      } else {
+        k = 0;
+        originPoint = congestionWindow;
+      }
+      windowEstimate = congestionWindow;
+    }
+
+    final double rtt = rttEstimator.getSmoothedRtt() / NANOS_PER_SECOND;
+    final double t = (now - epochStart) / NANOS_PER_SECOND;
+    final double target = originPoint + C * Math.pow(t + rtt - k, 3) * MAX_DATAGRAM_SIZE;
+
+    if (target > congestionWindow) {
+      congestionWindow += (target - congestionWindow) * ackedBytes / congestionWindow;
+    } else {
+      // close to the plateau, grow very slowly
+      congestionWindow += 0.01 * MAX_DATAGRAM_SIZE * ackedBytes / congestionWindow;
+    }
+
+    // TCP-friendly region, grow at least as fast as Reno with the same decrease factor would
+    windowEstimate += 3 * (1 - BETA) / (1 + BETA) * MAX_DATAGRAM_SIZE * ackedBytes / windowEstimate;
+    if (windowEstimate > congestionWindow) {
+      congestionWindow = windowEstimate;
+    }
+  }
+
+  @Override
+  public void onPacketsLost(final List<SentPacket> packets, final long now) {
+    long largestLostTime = Long.MIN_VALUE;
+    for (final SentPacket packet : packets) {
+      bytesInFlight -= packet.getSize();
+      largestLostTime = Math.max(largestLostTime, packet.getTimeSent());
+    }
+
+    // only react once per round trip
+    if (!packets.isEmpty() && !inRecovery(largestLostTime)) {
+      recoveryStartTime = now;
+      epochStart = Long.MIN_VALUE;
+
+      // fast convergence, release bandwidth to new flows if the window keeps shrinking
+      if (congestionWindow < windowLastMax) {
+        windowLastMax = congestionWindow;
+        windowMax = congestionWindow * (1 + BETA) / 2;
+      } else {
+        windowLastMax = congestionWindow;
+        windowMax = congestionWindow;
+      }
+
+      congestionWindow = Math.max(congestionWindow * BETA, MINIMUM_WINDOW);
+      slowStartThreshold = congestionWindow;
+      log.debug("Congestion event, window now {}", (long) congestionWindow);
+    }
+  }
+
+  @Override
+  public void onPacketsDiscarded(final List<SentPacket> packets) {
+    for (final SentPacket packet : packets) {
+      bytesInFlight -= packet.getSize();
+    }
+  }
+
+  @Override
+  public void onPersistentCongestion() {
+    congestionWindow = MINIMUM_WINDOW;
+    epochStart = Long.MIN_VALUE;
+    log.debug("Persistent congestion, window now {}", (long) congestionWindow);
+  }
+
+  private boolean inRecovery(final long sentTime) {
+    return sentTime <= recoveryStartTime;
+  }
+
+  @Override
+  public long getCongestionWindow() {
+    return (long) congestionWindow;
+  }
+
+  @Override
+  public long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  public long getSlowStartThreshold() {
+    return (long) Math.min(slowStartThreshold, Long.MAX_VALUE);
+  }
+
+  /** The window before the last congestion event */
+  public long getWindowMax() {
+    return (long) windowMax;
+  }
+}
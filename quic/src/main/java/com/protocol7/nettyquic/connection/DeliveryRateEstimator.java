@@ -0,0 +1,111 @@
+package com.protocol7.nettyquic.connection;
+
+import com.protocol7.nettyquic.protocol.PacketNumber;
+import com.protocol7.nettyquic.protocol.SentPacket;
+import com.protocol7.nettyquic.protocol.packets.FullPacket;
+import java.util.Optional;
+
+/**
+ * Delivery rate estimation as described in draft-cheng-iccrg-delivery-rate-estimation. Each sent
+ * packet is stamped with the delivery state of the connection, when acked the amount of data
+ * delivered since then gives a rate sample. Not thread safe, callers are expected to synchronize.
+ */
+public class DeliveryRateEstimator {
+
+  private long delivered = 0;
+  private long deliveredTime = 0;
+  private long firstSentTime = 0;
+  // delivered mark after which samples are no longer app limited, 0 when not app limited
+  private long appLimitedUntil = 0;
+
+  // state of the sample being built from the packets acked since the last sample
+  private boolean hasSample = false;
+  private long priorDelivered;
+  private long sampleTimeSent;
+  private long sendElapsed;
+  private long ackElapsed;
+  private long rtt;
+  private boolean sampleAppLimited;
+
+  public SentPacket onPacketSent(
+      final FullPacket packet,
+      final PacketNumber originalPacketNumber,
+      final long now,
+      final int size,
+      final long bytesInFlight) {
+    if (bytesInFlight == 0) {
+      // start of a new flight, don't include the idle period in the sample
+      firstSentTime = now;
+      deliveredTime = now;
+    }
+
+    return new SentPacket(
+        packet,
+        originalPacketNumber,
+        now,
+        size,
+        delivered,
+        deliveredTime,
+        firstSentTime,
+        appLimitedUntil > 0);
+  }
+
+  /** The sender has no more data to send, the congestion window is not filled */
+  public void onAppLimited(final long bytesInFlight) {
+    appLimitedUntil = Math.max(delivered + bytesInFlight, 1);
+  }
+
+  public void onPacketAcked(final SentPacket packet, final long now) {
+    delivered += packet.getSize();
+    deliveredTime = now;
+
+    // use the most recently sent packet for the sample
+    if (!hasSample
+        || packet.getDelivered() > priorDelivered
+        || (packet.getDelivered() == priorDelivered && packet.getTimeSent() >= sampleTimeSent)) {
+      hasSample = true;
+      priorDelivered = packet.getDelivered();
+      sampleTimeSent = packet.getTimeSent();
+      sendElapsed = packet.getTimeSent() - packet.getFirstSentTime();
+      ackElapsed = deliveredTime - packet.getDeliveredTime();
+      rtt = now - packet.getTimeSent();
+      sampleAppLimited = packet.isAppLimited();
+      firstSentTime = packet.getTimeSent();
+    }
+  }
+
+  /**
+   * Generates a sample from the packets acked since the last call
+   *
+   * @param minRtt samples over intervals shorter than this are ignored, as the acks were likely
+   *     compressed
+   */
+  public Optional<DeliveryRateSample> generateSample(final long minRtt) {
+    if (appLimitedUntil > 0 && delivered > appLimitedUntil) {
+      appLimitedUntil = 0;
+    }
+
+    if (!hasSample) {
+      return Optional.empty();
+    }
+    hasSample = false;
+
+    // the send rate limits the delivery rate, use the longer of the two intervals
+    final long interval = Math.max(sendElapsed, ackElapsed);
+    if (interval <= 0 || interval < minRtt) {
+      return Optional.empty();
+    }
+
+    return Optional.of(
+        new DeliveryRateSample(priorDelivered, delivered, interval, rtt, sampleAppLimited));
+  }
+
+  /** Total bytes acked on the connection */
+  public long getDelivered() {
+    return delivered;
+  }
+
+  public boolean isAppLimited() {
+    return appLimitedUntil > 0;
+  }
+}
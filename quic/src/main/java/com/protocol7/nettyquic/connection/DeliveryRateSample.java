@@ -0,0 +1,72 @@
+package com.protocol7.nettyquic.connection;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/** Delivery rate measured over the interval between sending a packet and it being acked. */
+public class DeliveryRateSample {
+
+  private final long priorDelivered;
+  private final long delivered;
+  private final long interval;
+  private final long rtt;
+  private final boolean appLimited;
+
+  public DeliveryRateSample(
+      final long priorDelivered,
+      final long delivered,
+      final long interval,
+      final long rtt,
+      final boolean appLimited) {
+    this.priorDelivered = priorDelivered;
+    this.delivered = delivered;
+    this.interval = interval;
+    this.rtt = rtt;
+    this.appLimited = appLimited;
+  }
+
+  /** Total bytes delivered on the connection when the sampled packet was sent */
+  public long getPriorDelivered() {
+    return priorDelivered;
+  }
+
+  /** Total bytes delivered on the connection when the sampled packet was acked */
+  public long getDelivered() {
+    return delivered;
+  }
+
+  /** Length of the sampled interval, in nanoseconds */
+  public long getInterval() {
+    return interval;
+  }
+
+  /** Round trip time of the sampled packet, in nanoseconds */
+  public long getRtt() {
+    return rtt;
+  }
+
+  /**
+   * Whether the sender did not fill the pipe during the interval, the rate is then a lower bound
+   */
+  public boolean isAppLimited() {
+    return appLimited;
+  }
+
+  /** @return delivery rate in bytes per second */
+  public long getDeliveryRate() {
+    return (delivered - priorDelivered) * SECONDS.toNanos(1) / interval;
+  }
+
+  @Override
+  public String toString() {
+    return "DeliveryRateSample{"
+        + "deliveryRate="
+        + getDeliveryRate()
+        + ", interval="
+        + interval
+        + ", rtt="
+        + rtt
+        + ", appLimited="
+        + appLimited
+        + '}';
+  }
+}
@@ -1,19 +1,30 @@
 package com.protocol7.nettyquic.connection;
 
 import com.protocol7.nettyquic.protocol.packets.Packet;
+import com.protocol7.nettyquic.protocol.packets.UnprotectedPacket;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.util.concurrent.Future;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+/**
+ * Sends packets without blocking the caller. Packets are written to the channel on its event loop,
+ * and all packets written during an event loop tick are flushed together.
+ */
 public class NettyPacketSender implements PacketSender {
 
   private final Channel channel;
   private final InetSocketAddress peerAddress;
 
+  // only accessed on the event loop
+  private boolean flushScheduled = false;
+
   public NettyPacketSender(final Channel channel, final InetSocketAddress peerAddress) {
     this.channel = channel;
     this.peerAddress = peerAddress;
@@ -21,14 +32,70 @@ public class NettyPacketSender implements PacketSender {
 
   @Override
   public Future<Void> send(final Packet packet, final AEAD aead) {
-    final ByteBuf bb = Unpooled.buffer();
-    packet.write(bb, aead);
+    return send(packet.calculateLength(), bb -> packet.write(bb, aead));
+  }
+
+  @Override
+  public Future<Void> send(final UnprotectedPacket packet) {
+    return send(packet.calculateLength(), packet::write);
+  }
+
+  private Future<Void> send(final int length, final Consumer<ByteBuf> writer) {
+    // pooled direct buffer, released by the channel once written
+    final ByteBuf bb = channel.alloc().directBuffer(length);
+    try {
+      writer.accept(bb);
+    } catch (RuntimeException e) {
+      bb.release();
+      throw e;
+    }
+
+    final DatagramPacket datagram = new DatagramPacket(bb, peerAddress);
+    final ChannelPromise promise = channel.newPromise();
+    execute(
+        () -> {
+          channel.write(datagram, promise);
+          scheduleFlush();
+        });
+    return promise;
+  }
 
-    return channel.writeAndFlush(new DatagramPacket(bb, peerAddress));
+  // must be called on the event loop
+  private void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      channel.eventLoop().execute(this::flush);
+    }
+  }
+
+  private void flush() {
+    flushScheduled = false;
+    channel.flush();
   }
 
   @Override
   public Future<Void> destroy() {
-    return channel.close();
+    final ChannelPromise promise = channel.newPromise();
+    execute(
+        () -> {
+          // don't drop packets waiting for the scheduled flush, like a connection close
+          channel.flush();
+          channel.close(promise);
+        });
+    return promise;
+  }
+
+  @Override
+  public Executor getExecutor() {
+    return channel.eventLoop();
+  }
+
+  private void execute(final Runnable task) {
+    final EventLoop eventLoop = channel.eventLoop();
+    if (eventLoop.inEventLoop()) {
+      task.run();
+    } else {
+      eventLoop.execute(task);
+    }
   }
 }
@@ -0,0 +1,98 @@
+package com.protocol7.nettyquic.connection;
+
+import com.protocol7.nettyquic.protocol.SentPacket;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** NewReno congestion control, with slow start and a halved window on loss. */
+public class NewRenoCongestionController implements CongestionController {
+
+  public static final Factory FACTORY = rttEstimator -> new NewRenoCongestionController();
+
+  public static final long MAX_DATAGRAM_SIZE = 1200;
+  public static final long INITIAL_WINDOW =
+      Math.min(10 * MAX_DATAGRAM_SIZE, Math.max(2 * MAX_DATAGRAM_SIZE, 14720));
+  public static final long MINIMUM_WINDOW = 2 * MAX_DATAGRAM_SIZE;
+
+  private final Logger log = LoggerFactory.getLogger(NewRenoCongestionController.class);
+
+  private long congestionWindow = INITIAL_WINDOW;
+  private long bytesInFlight = 0;
+  private long slowStartThreshold = Long.MAX_VALUE;
+  private long recoveryStartTime = Long.MIN_VALUE;
+
+  @Override
+  public boolean canSend() {
+    return bytesInFlight < congestionWindow;
+  }
+
+  @Override
+  public void onPacketSent(final SentPacket packet) {
+    bytesInFlight += packet.getSize();
+  }
+
+  @Override
+  public void onPacketAcked(final SentPacket packet, final long now) {
+    bytesInFlight -= packet.getSize();
+
+    if (inRecovery(packet.getTimeSent())) {
+      // don't grow the window for packets sent before the loss was detected
+      return;
+    }
+
+    if (congestionWindow < slowStartThreshold) {
+      congestionWindow += packet.getSize();
+    } else {
+      congestionWindow += MAX_DATAGRAM_SIZE * packet.getSize() / congestionWindow;
+    }
+  }
+
+  @Override
+  public void onPacketsLost(final List<SentPacket> packets, final long now) {
+    long largestLostTime = Long.MIN_VALUE;
+    for (final SentPacket packet : packets) {
+      bytesInFlight -= packet.getSize();
+      largestLostTime = Math.max(largestLostTime, packet.getTimeSent());
+    }
+
+    // only react once per round trip
+    if (!packets.isEmpty() && !inRecovery(largestLostTime)) {
+      recoveryStartTime = now;
+      congestionWindow = Math.max(congestionWindow / 2, MINIMUM_WINDOW);
+      slowStartThreshold = congestionWindow;
+      log.debug("Congestion event, window now {}", congestionWindow);
+    }
+  }
+
+  @Override
+  public void onPacketsDiscarded(final List<SentPacket> packets) {
+    for (final SentPacket packet : packets) {
+      bytesInFlight -= packet.getSize();
+    }
+  }
+
+  @Override
+  public void onPersistentCongestion() {
+    congestionWindow = MINIMUM_WINDOW;
+    log.debug("Persistent congestion, window now {}", congestionWindow);
+  }
+
+  private boolean inRecovery(final long sentTime) {
+    return sentTime <= recoveryStartTime;
+  }
+
+  @Override
+  public long getCongestionWindow() {
+    return congestionWindow;
+  }
+
+  @Override
+  public long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  public long getSlowStartThreshold() {
+    return slowStartThreshold;
+  }
+}
@@ -0,0 +1,68 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Token bucket spreading packets over time at the pacing rate, to avoid sending a full congestion
+ * window back-to-back. Packets are released in small bursts sized to cover the timer granularity,
+ * so the sender does not have to wake up for every packet. Not thread safe, callers are expected to
+ * synchronize.
+ */
+public class Pacer {
+
+  /** Smallest burst allowed, in bytes */
+  public static final long MIN_BURST = 2 * MAX_DATAGRAM_SIZE;
+
+  private final long granularity;
+  private long tokens;
+  private long lastRefill = Long.MIN_VALUE;
+
+  /**
+   * @param initialBurst bytes that can be sent before pacing kicks in
+   * @param granularity resolution of the timer used to wait for tokens, in nanoseconds
+   */
+  public Pacer(final long initialBurst, final long granularity) {
+    this.tokens = initialBurst;
+    this.granularity = granularity;
+  }
+
+  /**
+   * @param rate pacing rate in bytes per second
+   * @return nanos to wait before a packet of the size can be sent, 0 if it can be sent now
+   */
+  public long timeUntilSend(final long now, final long rate, final int size) {
+    refill(now, rate);
+
+    if (tokens >= size) {
+      return 0;
+    }
+    // wait for a burst to accumulate, rather than a single packet
+    final long needed = Math.max(size, burst(rate)) - tokens;
+    return Math.max(needed * SECONDS.toNanos(1) / rate, granularity);
+  }
+
+  public void onPacketSent(final int size) {
+    tokens -= size;
+  }
+
+  private void refill(final long now, final long rate) {
+    if (lastRefill == Long.MIN_VALUE) {
+      lastRefill = now;
+      return;
+    }
+
+    // cap the elapsed time to not overflow after long idle periods
+    final long elapsed = Math.min(now - lastRefill, SECONDS.toNanos(1));
+    final long added = elapsed * rate / SECONDS.toNanos(1);
+    if (added > 0) {
+      // never accumulate more than a burst, but keep any initial tokens
+      tokens = Math.min(tokens + added, Math.max(tokens, burst(rate)));
+      lastRefill = now;
+    }
+  }
+
+  private long burst(final long rate) {
+    return Math.max(MIN_BURST, rate * granularity / SECONDS.toNanos(1));
+  }
+}
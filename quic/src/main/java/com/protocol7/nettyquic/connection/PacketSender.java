@@ -1,11 +1,19 @@
 package com.protocol7.nettyquic.connection;
 
 import com.protocol7.nettyquic.protocol.packets.Packet;
+import com.protocol7.nettyquic.protocol.packets.UnprotectedPacket;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import io.netty.util.concurrent.Future;
+import java.util.concurrent.Executor;
 
 public interface PacketSender {
   Future<Void> send(Packet packet, AEAD aead);
 
+  /** Sends a packet without packet protection, e.g. from a server before a connection is set up */
+  Future<Void> send(UnprotectedPacket packet);
+
   Future<Void> destroy();
+
+  /** The executor packets for the connection are handled on */
+  Executor getExecutor();
 }
@@ -0,0 +1,86 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Round trip time estimates for a connection, all values are in nanoseconds. Before the first
+ * sample, the smoothed RTT is the initial RTT of 333 ms.
+ */
+public class RttEstimator {
+
+  public static final long INITIAL_RTT = MILLISECONDS.toNanos(333);
+
+  private boolean hasSample = false;
+  private long latestRtt = 0;
+  private long minRtt = 0;
+  private long smoothedRtt = INITIAL_RTT;
+  private long rttVar = INITIAL_RTT / 2;
+
+  /**
+   * @param rttSample time from sending a packet until it was acked
+   * @param ackDelay the delay reported by the peer between receiving the packet and sending the
+   *     ack, excluded from the smoothed RTT when plausible
+   */
+  public synchronized void onSample(final long rttSample, final long ackDelay) {
+    checkArgument(rttSample >= 0);
+    checkArgument(ackDelay >= 0);
+
+    latestRtt = rttSample;
+
+    if (!hasSample) {
+      hasSample = true;
+      minRtt = rttSample;
+      smoothedRtt = rttSample;
+      rttVar = rttSample / 2;
+      return;
+    }
+
+    // min RTT ignores ack delay, it is the lower bound for the path
+    minRtt = Math.min(minRtt, rttSample);
+
+    long adjustedRtt = rttSample;
+    if (rttSample > minRtt + ackDelay) {
+      adjustedRtt = rttSample - ackDelay;
+    }
+
+    rttVar = (3 * rttVar + Math.abs(smoothedRtt - adjustedRtt)) / 4;
+    smoothedRtt = (7 * smoothedRtt + adjustedRtt) / 8;
+  }
+
+  public synchronized boolean hasSample() {
+    return hasSample;
+  }
+
+  /** The most recent sample, 0 before the first sample */
+  public synchronized long getLatestRtt() {
+    return latestRtt;
+  }
+
+  /** The smallest sample seen, 0 before the first sample */
+  public synchronized long getMinRtt() {
+    return minRtt;
+  }
+
+  public synchronized long getSmoothedRtt() {
+    return smoothedRtt;
+  }
+
+  public synchronized long getRttVar() {
+    return rttVar;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "RttEstimator{"
+        + "latestRtt="
+        + latestRtt
+        + ", minRtt="
+        + minRtt
+        + ", smoothedRtt="
+        + smoothedRtt
+        + ", rttVar="
+        + rttVar
+        + '}';
+  }
+}
@@ -1,49 +1,182 @@
 package com.protocol7.nettyquic.protocol;
 
+import static com.protocol7.nettyquic.tls.EncryptionLevel.Initial;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Queues;
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.connection.CongestionController;
 import com.protocol7.nettyquic.connection.Connection;
+import com.protocol7.nettyquic.connection.DeliveryRateEstimator;
+import com.protocol7.nettyquic.connection.NewRenoCongestionController;
+import com.protocol7.nettyquic.connection.Pacer;
+import com.protocol7.nettyquic.connection.RttEstimator;
 import com.protocol7.nettyquic.connection.Sender;
 import com.protocol7.nettyquic.protocol.frames.AckBlock;
 import com.protocol7.nettyquic.protocol.frames.AckFrame;
+import com.protocol7.nettyquic.protocol.frames.ConnectionCloseFrame;
+import com.protocol7.nettyquic.protocol.frames.Frame;
+import com.protocol7.nettyquic.protocol.frames.PaddingFrame;
 import com.protocol7.nettyquic.protocol.packets.*;
+import com.protocol7.nettyquic.tls.EncryptionLevel;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import com.protocol7.nettyquic.utils.Timers;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-// TODO resends
+/**
+ * Tracks sent packets per encryption level until acknowledged. Packets are declared lost when a
+ * packet sent sufficiently later has been acked (packet threshold), or when they have been
+ * outstanding for longer than 9/8 of an RTT (time threshold). If no acks arrive at all, a probe
+ * timeout retransmits the oldest outstanding packets.
+ *
+ * <p>1-RTT packets are held back while the congestion window is full, and spread out over the RTT
+ * by a pacer so that a full window is not sent back-to-back.
+ *
+ * <p>0-RTT and 1-RTT packets share a packet number space, 0-RTT packets are acked in 1-RTT packets.
+ */
 public class PacketBuffer {
 
   public interface AckListener {
     void onAck(PacketNumber pn);
   }
 
+  private static final int PACKET_THRESHOLD = 3;
+  private static final long GRANULARITY = MILLISECONDS.toNanos(1);
+  private static final int MAX_PROBES = 2;
+  // caps the exponential backoff of the probe timeout, so that the shift can not overflow
+  private static final int MAX_PTO_BACKOFF = 16;
+  private static final int DEFAULT_ACK_DELAY_EXPONENT = 3;
+  private static final long DEFAULT_MAX_ACK_DELAY = MILLISECONDS.toNanos(25);
+  // number of ack-eliciting packets received before an ack is sent without delay
+  private static final int ACK_ELICITING_THRESHOLD = 2;
+  private static final int PERSISTENT_CONGESTION_THRESHOLD = 3;
+  // pace slightly faster than a window per RTT, to not be limited by timer delays
+  private static final double PACING_GAIN = 1.25;
+
   private final Logger log = LoggerFactory.getLogger(PacketBuffer.class);
 
-  private final Map<PacketNumber, Packet> buffer = new ConcurrentHashMap<>();
-  private final BlockingQueue<PacketNumber> ackQueue = Queues.newArrayBlockingQueue(1000);
+  private final Map<EncryptionLevel, PacketSpace> spaces = new EnumMap<>(EncryptionLevel.class);
   private final AtomicReference<PacketNumber> largestAcked =
       new AtomicReference<>(PacketNumber.MIN);
   private final Connection connection;
   private final Sender sender;
   private final AckListener ackListener;
+  private final Timer timer;
+  private final Ticker ticker;
+  private final RttEstimator rttEstimator = new RttEstimator();
+  private final CongestionController congestionController;
+  private final DeliveryRateEstimator deliveryRateEstimator = new DeliveryRateEstimator();
+  private final Pacer pacer = new Pacer(NewRenoCongestionController.INITIAL_WINDOW, GRANULARITY);
+  // our own ack settings, used for the acks we send
+  private final int ackDelayExponent;
+  private final long maxAckDelay;
+
+  // once set, 0-RTT packets are retransmitted as 1-RTT packets
+  private volatile boolean handshakeComplete = false;
+
+  // guarded by this
+  private Optional<Timeout> lossDetectionTimer = Optional.empty();
+  private Optional<Timeout> ackTimer = Optional.empty();
+  private Optional<Timeout> pacingTimer = Optional.empty();
+  // the peer's ack settings, used for the acks it sends. Defaults until its transport parameters
+  // are received.
+  private int peerAckDelayExponent = DEFAULT_ACK_DELAY_EXPONENT;
+  private long peerMaxAckDelay = DEFAULT_MAX_ACK_DELAY;
+  // frames waiting for the congestion window or the pacer. They are given a packet number when
+  // sent, so that packet numbers are sent in increasing order.
+  private final Deque<HeldPacket> pending = new ArrayDeque<>();
+  private int ptoCount = 0;
+  private boolean closed = false;
 
   public PacketBuffer(
       final Connection connection, final Sender sender, final AckListener ackListener) {
+    this(connection, sender, ackListener, NewRenoCongestionController.FACTORY);
+  }
+
+  public PacketBuffer(
+      final Connection connection,
+      final Sender sender,
+      final AckListener ackListener,
+      final CongestionController.Factory congestionControllerFactory) {
+    // same parameters as sent by the TLS sessions
+    this(
+        connection,
+        sender,
+        ackListener,
+        congestionControllerFactory,
+        TransportParameters.defaults(Version.CURRENT),
+        Timers.SHARED,
+        Ticker.systemTicker());
+  }
+
+  public PacketBuffer(
+      final Connection connection,
+      final Sender sender,
+      final AckListener ackListener,
+      final CongestionController.Factory congestionControllerFactory,
+      final TransportParameters transportParameters,
+      final Timer timer,
+      final Ticker ticker) {
     this.connection = connection;
     this.sender = sender;
     this.ackListener = ackListener;
+    this.timer = timer;
+    this.ticker = ticker;
+    this.congestionController = congestionControllerFactory.create(rttEstimator);
+
+    if (transportParameters.getAckDelayExponent() > -1) {
+      this.ackDelayExponent = transportParameters.getAckDelayExponent();
+    } else {
+      this.ackDelayExponent = DEFAULT_ACK_DELAY_EXPONENT;
+    }
+    if (transportParameters.getMaxAckDelay() > -1) {
+      this.maxAckDelay = MILLISECONDS.toNanos(transportParameters.getMaxAckDelay());
+    } else {
+      this.maxAckDelay = DEFAULT_MAX_ACK_DELAY;
+    }
+
+    for (EncryptionLevel level : EncryptionLevel.values()) {
+      if (level != EncryptionLevel.ZeroRtt) {
+        spaces.put(level, new PacketSpace(level));
+      }
+    }
+  }
+
+  /** Decodes the ack delays in the peer's acks, and waits for its acks, as set by the peer */
+  public synchronized void setPeerTransportParameters(TransportParameters transportParameters) {
+    if (transportParameters.getAckDelayExponent() > -1) {
+      peerAckDelayExponent = transportParameters.getAckDelayExponent();
+    }
+    if (transportParameters.getMaxAckDelay() > -1) {
+      peerMaxAckDelay = MILLISECONDS.toNanos(transportParameters.getMaxAckDelay());
+    }
   }
 
   @VisibleForTesting
-  protected Map<PacketNumber, Packet> getBuffer() {
+  protected synchronized Map<PacketNumber, SentPacket> getBuffer() {
+    Map<PacketNumber, SentPacket> buffer = new TreeMap<>();
+    for (PacketSpace space : spaces.values()) {
+      for (SentPacket packet : space.getSent()) {
+        buffer.put(packet.getPacketNumber(), packet);
+      }
+    }
     return buffer;
   }
 
@@ -51,134 +184,620 @@ public class PacketBuffer {
     return largestAcked.get();
   }
 
+  public RttEstimator getRttEstimator() {
+    return rttEstimator;
+  }
+
+  public CongestionController getCongestionController() {
+    return congestionController;
+  }
+
   public void send(Packet packet) {
     if (packet instanceof FullPacket) {
-      List<AckBlock> ackBlocks = drainAcks(ackQueue);
-      if (!ackBlocks.isEmpty()) {
-        // add to packet
-        AckFrame ackFrame = new AckFrame(123, ackBlocks);
-        sendImpl(((FullPacket) packet).addFrame(ackFrame));
+      FullPacket fullPacket = (FullPacket) packet;
+      buffer(fullPacket, fullPacket.getPacketNumber(), false).ifPresent(sender::send);
+    } else {
+      sender.send(packet);
+    }
+  }
+
+  /**
+   * Acks are added to packets as they are sent, not while they are held back, so that a held packet
+   * does not delay the acks. Acks not sent in time are sent on their own by the ack timer.
+   */
+  private FullPacket withAcks(FullPacket packet) {
+    // 0-RTT packets can not carry acks
+    if (packet instanceof ZeroRttPacket) {
+      return packet;
+    }
+    Optional<AckFrame> ackFrame = drainAcks(spaceLevel(packet));
+    if (ackFrame.isPresent()) {
+      return (FullPacket) packet.addFrame(ackFrame.get());
+    } else {
+      return packet;
+    }
+  }
+
+  /**
+   * @return the packet to send now, with any pending acks added, or empty if the packet must wait
+   *     for the congestion window or the pacer
+   */
+  private Optional<FullPacket> buffer(
+      FullPacket packet, PacketNumber originalPacketNumber, boolean probe) {
+    // only ack-eliciting packets are guaranteed to be acked, don't wait for anything else
+    if (!isAckEliciting(packet)) {
+      return Optional.of(withAcks(packet));
+    }
+
+    synchronized (this) {
+      if (closed) {
+        return Optional.of(withAcks(packet));
+      }
+
+      // handshake packets and probes are never held back
+      if (!probe
+          && spaceLevel(packet) == EncryptionLevel.OneRtt
+          && (!pending.isEmpty() || !congestionController.canSend())) {
+        pending.add(new HeldPacket(packet, originalPacketNumber));
+        log.debug("Congestion window full, holding packet {}", packet.getPacketNumber());
+        return Optional.empty();
+      }
+      if (!probe && spaceLevel(packet) == EncryptionLevel.OneRtt) {
+        long delay = pacingDelay(packet.calculateLength());
+        if (delay > 0) {
+          pending.add(new HeldPacket(packet, originalPacketNumber));
+          setPacingTimer(delay);
+          log.debug("Pacing, holding packet {}", packet.getPacketNumber());
+          return Optional.empty();
+        }
+      }
+
+      packet = withAcks(packet);
+      track(packet, originalPacketNumber);
+      if (congestionController.canSend()) {
+        // nothing more to send right now, rate samples will not reflect the bandwidth
+        deliveryRateEstimator.onAppLimited(congestionController.getBytesInFlight());
+      }
+    }
+    log.debug("Buffered packet {}", packet.getPacketNumber());
+    return Optional.of(packet);
+  }
+
+  // must be called while holding the lock
+  private void track(FullPacket packet, PacketNumber originalPacketNumber) {
+    SentPacket sentPacket =
+        deliveryRateEstimator.onPacketSent(
+            packet,
+            originalPacketNumber,
+            ticker.read(),
+            packet.calculateLength(),
+            congestionController.getBytesInFlight());
+    spaces.get(spaceLevel(packet)).onSent(sentPacket);
+    congestionController.onPacketSent(sentPacket);
+    pacer.onPacketSent(sentPacket.getSize());
+    setLossDetectionTimer();
+  }
+
+  private void sendPending() {
+    List<FullPacket> packets = new ArrayList<>();
+    synchronized (this) {
+      while (!closed && !pending.isEmpty() && congestionController.canSend()) {
+        long delay = pacingDelay(pending.peek().length);
+        if (delay > 0) {
+          setPacingTimer(delay);
+          break;
+        }
+        HeldPacket held = pending.poll();
+        FullPacket packet = withAcks(held.toPacket(connection.nextSendPacketNumber()));
+        track(packet, held.originalPacketNumber);
+        packets.add(packet);
+      }
+    }
+    packets.forEach(sender::send);
+  }
+
+  /**
+   * The frames of a packet held back by the congestion window or the pacer. The packet number it
+   * was created with is never sent, as acks sent while it was held have larger numbers.
+   */
+  private class HeldPacket {
+    private final List<Frame> frames;
+    private final boolean earlyData;
+    private final PacketNumber originalPacketNumber;
+    private final int length;
+
+    private HeldPacket(FullPacket packet, PacketNumber originalPacketNumber) {
+      this.frames = packet.getPayload().getFrames();
+      this.earlyData = packet instanceof ZeroRttPacket;
+      this.originalPacketNumber = originalPacketNumber;
+      this.length = packet.calculateLength();
+    }
+
+    private FullPacket toPacket(PacketNumber pn) {
+      if (earlyData && !handshakeComplete) {
+        return ZeroRttPacket.create(
+            connection.getRemoteConnectionId(),
+            connection.getLocalConnectionId(),
+            pn,
+            connection.getVersion(),
+            frames);
       } else {
-        sendImpl(packet);
+        return new ShortPacket(false, connection.getRemoteConnectionId(), pn, new Payload(frames));
       }
-    } else {
-      sendImpl(packet);
     }
   }
 
-  private void sendImpl(Packet packet) {
-    if (packet instanceof FullPacket) {
-      buffer.put(((FullPacket) packet).getPacketNumber(), packet);
-      log.debug("Buffered packet {}", ((FullPacket) packet).getPacketNumber());
+  // must be called while holding the lock
+  private long pacingDelay(int length) {
+    long rate = congestionController.getPacingRate();
+    if (rate <= 0) {
+      // RTT samples can be 0 on fast links, which would make the rate unbounded
+      long rtt = Math.max(rttEstimator.getSmoothedRtt(), GRANULARITY);
+      rate =
+          (long)
+              (PACING_GAIN * congestionController.getCongestionWindow() * SECONDS.toNanos(1) / rtt);
+    }
+    if (rate <= 0) {
+      return 0;
+    }
+    return pacer.timeUntilSend(ticker.read(), rate, length);
+  }
+
+  // must be called while holding the lock
+  private void setPacingTimer(long delay) {
+    if (!pacingTimer.isPresent()) {
+      pacingTimer = Optional.of(timer.newTimeout(this::onPacingTimeout, delay, NANOSECONDS));
+    }
+  }
+
+  private void onPacingTimeout(Timeout timeout) {
+    synchronized (this) {
+      if (closed || !pacingTimer.isPresent() || pacingTimer.get() != timeout) {
+        return;
+      }
+      pacingTimer = Optional.empty();
     }
-    sender.send(packet);
+    sendPending();
   }
 
   public void onPacket(Packet packet) {
-    if (packet instanceof FullPacket && !(packet instanceof InitialPacket)) {
-      ackQueue.add(((FullPacket) packet).getPacketNumber());
-      log.debug("Acked packet {}", ((FullPacket) packet).getPacketNumber());
+    if (packet instanceof RetryPacket) {
+      // initial packets sent before the retry will never be acked
+      discard(Initial);
+    } else if (packet instanceof FullPacket) {
+      FullPacket fullPacket = (FullPacket) packet;
+      EncryptionLevel level = spaceLevel(packet);
 
-      handleAcks(packet);
+      if (packet instanceof HandshakePacket) {
+        // the peer has handshake keys, no more initial packets will be sent or acked
+        discard(Initial);
+      }
+
+      handleAcks(fullPacket, level);
 
-      if (shouldFlush(packet)) {
+      if (onReceived(fullPacket, level)) {
         log.debug("Directly acking packet");
-        flushAcks();
+        // the remote connection ID is not yet set when the first initial packet is received
+        flushAcks(
+            level,
+            packet instanceof InitialPacket
+                ? packet.getSourceConnectionId()
+                : connection.getRemoteConnectionId());
       }
     }
   }
 
-  private boolean shouldFlush(Packet packet) {
-    if (packet instanceof InitialPacket || packet instanceof HandshakePacket) {
+  /** @return true if acks should be sent immediately */
+  private synchronized boolean onReceived(FullPacket packet, EncryptionLevel level) {
+    if (closed) {
       return false;
-    } else if (packet instanceof FullPacket && acksOnly((FullPacket) packet)) {
+    }
+
+    boolean ackEliciting = isAckEliciting(packet);
+    PacketSpace space = spaces.get(level);
+    boolean outOfOrder = space.onReceived(packet.getPacketNumber(), ticker.read(), ackEliciting);
+    log.debug("Acked packet {}", packet.getPacketNumber());
+
+    if (!ackEliciting) {
+      // will be acked along with the next ack-eliciting packet
       return false;
-    } else {
+    } else if (level != EncryptionLevel.OneRtt) {
+      // don't hold up the handshake
+      return true;
+    } else if (outOfOrder || space.getAckElicitingReceived() >= ACK_ELICITING_THRESHOLD) {
+      // reordering or loss, let the peer know as soon as possible
       return true;
+    } else {
+      if (!ackTimer.isPresent()) {
+        ackTimer = Optional.of(timer.newTimeout(this::onAckTimeout, maxAckDelay, NANOSECONDS));
+      }
+      return false;
     }
   }
 
-  private void handleAcks(Packet packet) {
-    if (packet instanceof FullPacket) {
-      ((FullPacket) packet)
-          .getPayload()
-          .getFrames()
-          .stream()
-          .filter(frame -> frame instanceof AckFrame)
-          .forEach(frame -> handleAcks((AckFrame) frame));
+  private void onAckTimeout(Timeout timeout) {
+    synchronized (this) {
+      if (closed || !ackTimer.isPresent() || ackTimer.get() != timeout) {
+        return;
+      }
+      ackTimer = Optional.empty();
     }
+    log.debug("Ack timer fired");
+    flushAcks(EncryptionLevel.OneRtt, connection.getRemoteConnectionId());
   }
 
-  private void handleAcks(AckFrame frame) {
-    frame.getBlocks().forEach(this::handleAcks);
+  private synchronized Optional<AckFrame> drainAcks(EncryptionLevel level) {
+    PacketSpace space = spaces.get(level);
+    List<AckBlock> blocks = space.drainAcks();
+    if (blocks.isEmpty()) {
+      return Optional.empty();
+    }
+
+    if (level == EncryptionLevel.OneRtt) {
+      ackTimer.ifPresent(Timeout::cancel);
+      ackTimer = Optional.empty();
+    }
+
+    long delay = Math.max(ticker.read() - space.getLargestReceivedTime(), 0);
+    long encodedDelay = NANOSECONDS.toMicros(delay) >> ackDelayExponent;
+    return Optional.of(new AckFrame(encodedDelay, blocks));
   }
 
-  private void handleAcks(AckBlock block) {
-    // TODO optimize
-    long smallest = block.getSmallest().asLong();
-    long largest = block.getLargest().asLong();
-    for (long i = smallest; i <= largest; i++) {
-      PacketNumber pn = new PacketNumber(i);
-      if (buffer.remove(pn) != null) {
-        log.debug("Acked packet {}", pn);
-        ackListener.onAck(pn);
-        largestAcked.getAndAccumulate(pn, PacketNumber::max);
+  private void handleAcks(FullPacket packet, EncryptionLevel level) {
+    List<SentPacket> acked = new ArrayList<>();
+    List<SentPacket> lost = new ArrayList<>();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      long now = ticker.read();
+      PacketSpace space = spaces.get(level);
+      for (Frame frame : packet.getPayload().getFrames()) {
+        if (frame instanceof AckFrame) {
+          AckFrame ackFrame = (AckFrame) frame;
+          List<SentPacket> newlyAcked = new ArrayList<>();
+          for (AckBlock block : ackFrame.getBlocks()) {
+            newlyAcked.addAll(space.onAcked(block));
+          }
+          sampleRtt(ackFrame, newlyAcked, level, now);
+          acked.addAll(newlyAcked);
+        }
+      }
+
+      if (!acked.isEmpty()) {
+        for (SentPacket sentPacket : acked) {
+          congestionController.onPacketAcked(sentPacket, now);
+          deliveryRateEstimator.onPacketAcked(sentPacket, now);
+        }
+        deliveryRateEstimator
+            .generateSample(rttEstimator.getMinRtt())
+            .ifPresent(sample -> congestionController.onDeliveryRateSample(sample, now));
+
+        lost.addAll(space.detectLostPackets(now, lossDelay(), PACKET_THRESHOLD));
+        onPacketsLost(lost, now);
+        ptoCount = 0;
+        setLossDetectionTimer();
       }
     }
+
+    for (SentPacket sentPacket : acked) {
+      log.debug("Acked packet {}", sentPacket.getPacketNumber());
+      largestAcked.getAndAccumulate(sentPacket.getPacketNumber(), PacketNumber::max);
+      ackListener.onAck(sentPacket.getOriginalPacketNumber());
+    }
+
+    retransmit(lost, false);
+    sendPending();
   }
 
-  private void flushAcks() {
-    List<AckBlock> blocks = drainAcks(ackQueue);
-    if (!blocks.isEmpty()) {
-      AckFrame ackFrame = new AckFrame(123, blocks);
-      Packet packet =
-          new ShortPacket(
-              false,
-              connection.getRemoteConnectionId(),
-              connection.nextSendPacketNumber(),
-              new Payload(ackFrame));
+  // must be called while holding the lock
+  private void onPacketsLost(List<SentPacket> lost, long now) {
+    if (lost.isEmpty()) {
+      return;
+    }
+    congestionController.onPacketsLost(lost, now);
 
-      log.debug("Flushed acks {}", blocks);
+    if (rttEstimator.hasSample()) {
+      long first = lost.stream().mapToLong(SentPacket::getTimeSent).min().getAsLong();
+      long last = lost.stream().mapToLong(SentPacket::getTimeSent).max().getAsLong();
+      long period =
+          (rttEstimator.getSmoothedRtt()
+                  + Math.max(4 * rttEstimator.getRttVar(), GRANULARITY)
+                  + peerMaxAckDelay)
+              * PERSISTENT_CONGESTION_THRESHOLD;
+      if (last - first > period) {
+        congestionController.onPersistentCongestion();
+      }
+    }
+  }
 
-      sendImpl(packet);
+  // must be called while holding the lock
+  private void sampleRtt(
+      AckFrame ackFrame, List<SentPacket> newlyAcked, EncryptionLevel level, long now) {
+    PacketNumber largest =
+        ackFrame
+            .getBlocks()
+            .stream()
+            .map(AckBlock::getLargest)
+            .max(PacketNumber::compareTo)
+            .orElseThrow(IllegalStateException::new);
+
+    // only the largest acked packet gives a sample, and only the first time it is acked
+    for (SentPacket sentPacket : newlyAcked) {
+      if (sentPacket.getPacketNumber().equals(largest)) {
+        long ackDelay = 0;
+        if (level == EncryptionLevel.OneRtt) {
+          // peers are not expected to delay acks for handshake packets, nor longer than they said.
+          // Compared before decoding, as shifting a large encoded delay would overflow.
+          long maxEncodedAckDelay = NANOSECONDS.toMicros(peerMaxAckDelay) >> peerAckDelayExponent;
+          if (ackFrame.getAckDelay() > maxEncodedAckDelay) {
+            ackDelay = peerMaxAckDelay;
+          } else {
+            ackDelay =
+                Math.min(
+                    MICROSECONDS.toNanos(ackFrame.getAckDelay() << peerAckDelayExponent),
+                    peerMaxAckDelay);
+          }
+        }
+        rttEstimator.onSample(now - sentPacket.getTimeSent(), ackDelay);
+        log.debug("RTT sample taken, now {}", rttEstimator);
+      }
     }
   }
 
-  // TODO break out and test directly
-  private List<AckBlock> drainAcks(BlockingQueue<PacketNumber> queue) {
-    List<PacketNumber> pns = new ArrayList<>();
-    ackQueue.drainTo(pns);
-    if (pns.isEmpty()) {
-      return Collections.emptyList();
+  private void flushAcks(EncryptionLevel level, Optional<ConnectionId> remoteConnectionId) {
+    Optional<AckFrame> ackFrame = drainAcks(level);
+    if (ackFrame.isPresent()) {
+      Packet packet;
+      if (level == Initial) {
+        packet =
+            InitialPacket.create(
+                remoteConnectionId,
+                connection.getLocalConnectionId(),
+                connection.nextSendPacketNumber(),
+                connection.getVersion(),
+                connection.getToken(),
+                ackFrame.get());
+      } else if (level == EncryptionLevel.Handshake) {
+        packet =
+            HandshakePacket.create(
+                remoteConnectionId,
+                connection.getLocalConnectionId(),
+                connection.nextSendPacketNumber(),
+                connection.getVersion(),
+                ackFrame.get());
+      } else {
+        packet =
+            new ShortPacket(
+                false,
+                remoteConnectionId,
+                connection.nextSendPacketNumber(),
+                new Payload(ackFrame.get()));
+      }
+
+      log.debug("Flushed acks {}", ackFrame.get());
+
+      // not ack-eliciting, so never held back by the congestion window
+      sender.send(packet);
     }
+  }
 
-    List<Long> pnsLong =
-        pns.stream().map(packetNumber -> packetNumber.asLong()).collect(Collectors.toList());
-    Collections.sort(pnsLong);
+  private void onLossDetectionTimeout(Timeout timeout) {
+    List<SentPacket> lost;
+    boolean probe;
+    synchronized (this) {
+      if (closed || !lossDetectionTimer.isPresent() || lossDetectionTimer.get() != timeout) {
+        // timer was rescheduled or cancelled after this timeout fired
+        return;
+      }
+      lossDetectionTimer = Optional.empty();
 
-    List<AckBlock> blocks = new ArrayList<>();
-    long lower = -1;
-    long upper = -1;
-    for (long pn : pnsLong) {
-      if (lower == -1) {
-        lower = pn;
-        upper = pn;
+      Optional<PacketSpace> lossSpace = earliest(PacketSpace::getLossTime);
+      if (lossSpace.isPresent()) {
+        long now = ticker.read();
+        lost = lossSpace.get().detectLostPackets(now, lossDelay(), PACKET_THRESHOLD);
+        onPacketsLost(lost, now);
+        probe = false;
+        log.debug("Loss timer fired, {} packets lost", lost.size());
       } else {
-        if (pn > upper + 1) {
-          blocks.add(AckBlock.fromLongs(lower, upper));
-          lower = pn;
-          upper = pn;
-        } else {
-          upper++;
+        Optional<PacketSpace> ptoSpace = earliest(this::probeTimeout);
+        if (!ptoSpace.isPresent()) {
+          return;
         }
+        // probe with the oldest data, these count as lost as they will be sent anew
+        lost = ptoSpace.get().pollOldest(MAX_PROBES);
+        congestionController.onPacketsDiscarded(lost);
+        probe = true;
+        ptoCount++;
+        log.debug("Probe timeout {} fired, probing with {} packets", ptoCount, lost.size());
       }
+      setLossDetectionTimer();
     }
-    blocks.add(AckBlock.fromLongs(lower, upper));
 
-    return blocks;
+    retransmit(lost, probe);
+  }
+
+  private void retransmit(List<SentPacket> lost, boolean probe) {
+    for (SentPacket sentPacket : lost) {
+      FullPacket packet = retransmission(sentPacket.getPacket());
+
+      log.debug("Retransmitting packet {} as {}", sentPacket.getPacketNumber(), packet);
+
+      buffer(packet, sentPacket.getOriginalPacketNumber(), probe).ifPresent(sender::send);
+    }
+  }
+
+  private FullPacket retransmission(FullPacket packet) {
+    // acks are stale by now and will be sent anew
+    List<Frame> frames =
+        packet
+            .getPayload()
+            .getFrames()
+            .stream()
+            .filter(frame -> !(frame instanceof AckFrame))
+            .collect(Collectors.toList());
+    PacketNumber pn = connection.nextSendPacketNumber();
+
+    if (packet instanceof InitialPacket) {
+      return InitialPacket.create(
+          connection.getRemoteConnectionId(),
+          connection.getLocalConnectionId(),
+          pn,
+          ((InitialPacket) packet).getVersion(),
+          ((InitialPacket) packet).getToken(),
+          frames);
+    } else if (packet instanceof HandshakePacket) {
+      return HandshakePacket.create(
+          connection.getRemoteConnectionId(),
+          connection.getLocalConnectionId(),
+          pn,
+          ((HandshakePacket) packet).getVersion(),
+          frames);
+    } else if (packet instanceof ZeroRttPacket && !handshakeComplete) {
+      return ZeroRttPacket.create(
+          connection.getRemoteConnectionId(),
+          connection.getLocalConnectionId(),
+          pn,
+          ((ZeroRttPacket) packet).getVersion(),
+          frames);
+    } else {
+      return new ShortPacket(false, connection.getRemoteConnectionId(), pn, new Payload(frames));
+    }
+  }
+
+  // must be called while holding the lock
+  private void setLossDetectionTimer() {
+    lossDetectionTimer.ifPresent(Timeout::cancel);
+    lossDetectionTimer = Optional.empty();
+
+    OptionalLong deadline = earliestTime(PacketSpace::getLossTime);
+    if (!deadline.isPresent()) {
+      deadline = earliestTime(this::probeTimeout);
+    }
+
+    if (deadline.isPresent()) {
+      long delay = Math.max(deadline.getAsLong() - ticker.read(), 0);
+      lossDetectionTimer =
+          Optional.of(timer.newTimeout(this::onLossDetectionTimeout, delay, NANOSECONDS));
+    }
+  }
+
+  private OptionalLong probeTimeout(PacketSpace space) {
+    if (!space.hasInFlight()) {
+      return OptionalLong.empty();
+    }
+    long pto = rttEstimator.getSmoothedRtt() + Math.max(4 * rttEstimator.getRttVar(), GRANULARITY);
+    if (space.getLevel() == EncryptionLevel.OneRtt) {
+      // the peer might delay its ack this long
+      pto += peerMaxAckDelay;
+    }
+    pto <<= Math.min(ptoCount, MAX_PTO_BACKOFF);
+    return OptionalLong.of(space.getTimeOfLastAckElicitingPacket().getAsLong() + pto);
+  }
+
+  private long lossDelay() {
+    long rtt = Math.max(rttEstimator.getLatestRtt(), rttEstimator.getSmoothedRtt());
+    return Math.max(rtt * 9 / 8, GRANULARITY);
+  }
+
+  private interface SpaceTime {
+    OptionalLong get(PacketSpace space);
+  }
+
+  private Optional<PacketSpace> earliest(SpaceTime time) {
+    Optional<PacketSpace> earliest = Optional.empty();
+    long earliestTime = Long.MAX_VALUE;
+    for (PacketSpace space : spaces.values()) {
+      OptionalLong t = time.get(space);
+      if (t.isPresent() && t.getAsLong() < earliestTime) {
+        earliest = Optional.of(space);
+        earliestTime = t.getAsLong();
+      }
+    }
+    return earliest;
+  }
+
+  private OptionalLong earliestTime(SpaceTime time) {
+    return earliest(time).map(time::get).orElse(OptionalLong.empty());
+  }
+
+  private void discard(EncryptionLevel level) {
+    synchronized (this) {
+      PacketSpace space = spaces.get(level);
+      if (space.hasInFlight()) {
+        log.debug("Discarding {} packet space", level);
+        congestionController.onPacketsDiscarded(new ArrayList<>(space.getSent()));
+        space.clear();
+        setLossDetectionTimer();
+      }
+    }
+  }
+
+  /**
+   * Marks the handshake as complete, 0-RTT packets are from now on retransmitted as 1-RTT packets.
+   * If the server rejected early data, outstanding 0-RTT packets will never be acked and are sent
+   * again directly.
+   */
+  public void onHandshakeComplete(boolean earlyDataAccepted) {
+    handshakeComplete = true;
+    if (!earlyDataAccepted) {
+      resendEarlyData();
+    }
+  }
+
+  /**
+   * Sends the frames of all outstanding 0-RTT packets again in new packets. Used when the 0-RTT
+   * packets sent can not have been opened by the peer, after a Retry or when early data was
+   * rejected.
+   */
+  public void resendEarlyData() {
+    List<SentPacket> earlyData = new ArrayList<>();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      PacketSpace space = spaces.get(EncryptionLevel.OneRtt);
+      for (SentPacket sentPacket : space.getSent()) {
+        if (sentPacket.getPacket() instanceof ZeroRttPacket) {
+          earlyData.add(sentPacket);
+        }
+      }
+      space.remove(earlyData);
+      congestionController.onPacketsDiscarded(earlyData);
+      setLossDetectionTimer();
+    }
+
+    log.debug("Resending {} 0-RTT packets", earlyData.size());
+    retransmit(earlyData, false);
+  }
+
+  /** Stops loss detection and drops all outstanding packets */
+  public synchronized void close() {
+    closed = true;
+    lossDetectionTimer.ifPresent(Timeout::cancel);
+    lossDetectionTimer = Optional.empty();
+    ackTimer.ifPresent(Timeout::cancel);
+    ackTimer = Optional.empty();
+    pacingTimer.ifPresent(Timeout::cancel);
+    pacingTimer = Optional.empty();
+    pending.clear();
+    spaces.values().forEach(PacketSpace::clear);
+  }
+
+  private static EncryptionLevel spaceLevel(Packet packet) {
+    EncryptionLevel level = EncryptionLevel.forPacket(packet);
+    return level == EncryptionLevel.ZeroRtt ? EncryptionLevel.OneRtt : level;
   }
 
-  private boolean acksOnly(FullPacket packet) {
-    return packet.getPayload().getFrames().stream().allMatch(frame -> frame instanceof AckFrame);
+  private boolean isAckEliciting(FullPacket packet) {
+    return packet
+        .getPayload()
+        .getFrames()
+        .stream()
+        .anyMatch(
+            frame ->
+                !(frame instanceof AckFrame
+                    || frame instanceof PaddingFrame
+                    || frame instanceof ConnectionCloseFrame));
   }
 }
@@ -0,0 +1,204 @@
+package com.protocol7.nettyquic.protocol;
+
+import com.google.common.collect.Queues;
+import com.protocol7.nettyquic.protocol.frames.AckBlock;
+import com.protocol7.nettyquic.tls.EncryptionLevel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Sent and received packet state for a single encryption level. Not thread safe, callers are
+ * expected to synchronize.
+ */
+public class PacketSpace {
+
+  private final EncryptionLevel level;
+  private final NavigableMap<PacketNumber, SentPacket> sent = new TreeMap<>();
+  private final BlockingQueue<PacketNumber> ackQueue = Queues.newArrayBlockingQueue(1000);
+  private Optional<PacketNumber> largestAcked = Optional.empty();
+  private OptionalLong lossTime = OptionalLong.empty();
+  private OptionalLong timeOfLastAckElicitingPacket = OptionalLong.empty();
+  private Optional<PacketNumber> largestReceived = Optional.empty();
+  private long largestReceivedTime = 0;
+  private int ackElicitingReceived = 0;
+
+  public PacketSpace(final EncryptionLevel level) {
+    this.level = level;
+  }
+
+  public EncryptionLevel getLevel() {
+    return level;
+  }
+
+  public void onSent(final SentPacket packet) {
+    sent.put(packet.getPacketNumber(), packet);
+    timeOfLastAckElicitingPacket = OptionalLong.of(packet.getTimeSent());
+  }
+
+  public List<SentPacket> onAcked(final AckBlock block) {
+    final NavigableMap<PacketNumber, SentPacket> acked =
+        sent.subMap(block.getSmallest(), true, block.getLargest(), true);
+    if (acked.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final List<SentPacket> newlyAcked = new ArrayList<>(acked.values());
+    acked.clear();
+
+    final PacketNumber largest = newlyAcked.get(newlyAcked.size() - 1).getPacketNumber();
+    largestAcked = Optional.of(largestAcked.map(pn -> pn.max(largest)).orElse(largest));
+
+    return newlyAcked;
+  }
+
+  /**
+   * Removes and returns packets sent before the largest acked packet that are either more than
+   * packetThreshold packets or more than lossDelay nanos older than it. Remaining candidates will
+   * be reflected in {@link #getLossTime()}.
+   */
+  public List<SentPacket> detectLostPackets(
+      final long now, final long lossDelay, final int packetThreshold) {
+    lossTime = OptionalLong.empty();
+    if (!largestAcked.isPresent()) {
+      return Collections.emptyList();
+    }
+    final long largest = largestAcked.get().asLong();
+    final long lostSendTime = now - lossDelay;
+
+    final List<SentPacket> lost = new ArrayList<>();
+    final Iterator<SentPacket> candidates =
+        sent.headMap(largestAcked.get(), false).values().iterator();
+    while (candidates.hasNext()) {
+      final SentPacket packet = candidates.next();
+      if (packet.getTimeSent() <= lostSendTime
+          || largest - packet.getPacketNumber().asLong() >= packetThreshold) {
+        candidates.remove();
+        lost.add(packet);
+      } else {
+        final long packetLossTime = packet.getTimeSent() + lossDelay;
+        if (!lossTime.isPresent() || packetLossTime < lossTime.getAsLong()) {
+          lossTime = OptionalLong.of(packetLossTime);
+        }
+      }
+    }
+    return lost;
+  }
+
+  /** Removes and returns up to max of the oldest packets, used for probing */
+  public List<SentPacket> pollOldest(final int max) {
+    final List<SentPacket> oldest = new ArrayList<>();
+    while (oldest.size() < max && !sent.isEmpty()) {
+      oldest.add(sent.pollFirstEntry().getValue());
+    }
+    return oldest;
+  }
+
+  /** Removes packets that will not be acked, without declaring them lost */
+  public void remove(final Collection<SentPacket> packets) {
+    for (final SentPacket packet : packets) {
+      sent.remove(packet.getPacketNumber());
+    }
+  }
+
+  public boolean hasInFlight() {
+    return !sent.isEmpty();
+  }
+
+  public Collection<SentPacket> getSent() {
+    return Collections.unmodifiableCollection(sent.values());
+  }
+
+  public Optional<PacketNumber> getLargestAcked() {
+    return largestAcked;
+  }
+
+  public OptionalLong getLossTime() {
+    return lossTime;
+  }
+
+  public OptionalLong getTimeOfLastAckElicitingPacket() {
+    return timeOfLastAckElicitingPacket;
+  }
+
+  /** Drops all state, used when the keys for this level are discarded */
+  public void clear() {
+    sent.clear();
+    ackQueue.clear();
+    ackElicitingReceived = 0;
+    lossTime = OptionalLong.empty();
+    timeOfLastAckElicitingPacket = OptionalLong.empty();
+  }
+
+  /** @return true if the packet did not directly follow the largest packet received so far */
+  public boolean onReceived(final PacketNumber pn, final long time, final boolean ackEliciting) {
+    ackQueue.add(pn);
+    if (ackEliciting) {
+      ackElicitingReceived++;
+    }
+
+    if (!largestReceived.isPresent()) {
+      largestReceived = Optional.of(pn);
+      largestReceivedTime = time;
+      return false;
+    }
+
+    final long largest = largestReceived.get().asLong();
+    if (pn.asLong() > largest) {
+      largestReceived = Optional.of(pn);
+      largestReceivedTime = time;
+    }
+    return pn.asLong() != largest + 1;
+  }
+
+  /** Number of ack-eliciting packets received since acks were last drained */
+  public int getAckElicitingReceived() {
+    return ackElicitingReceived;
+  }
+
+  /** Time the largest packet number so far was received, used to calculate the ack delay */
+  public long getLargestReceivedTime() {
+    return largestReceivedTime;
+  }
+
+  public List<AckBlock> drainAcks() {
+    ackElicitingReceived = 0;
+
+    final List<PacketNumber> pns = new ArrayList<>();
+    ackQueue.drainTo(pns);
+    if (pns.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final List<Long> pnsLong =
+        pns.stream().map(PacketNumber::asLong).sorted().collect(Collectors.toList());
+
+    final List<AckBlock> blocks = new ArrayList<>();
+    long lower = -1;
+    long upper = -1;
+    for (final long pn : pnsLong) {
+      if (lower == -1) {
+        lower = pn;
+        upper = pn;
+      } else if (pn > upper + 1) {
+        blocks.add(AckBlock.fromLongs(lower, upper));
+        lower = pn;
+        upper = pn;
+      } else {
+        // duplicates are ignored
+        upper = pn;
+      }
+    }
+    blocks.add(AckBlock.fromLongs(lower, upper));
+
+    return blocks;
+  }
+}
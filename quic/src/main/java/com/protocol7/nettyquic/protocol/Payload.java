@@ -5,33 +5,37 @@ import static java.util.Objects.requireNonNull;
 
 import com.protocol7.nettyquic.protocol.frames.Frame;
 import com.protocol7.nettyquic.tls.aead.AEAD;
-import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Payload {
 
+  /**
+   * Parses and opens a payload, the ciphertext is decrypted in place in the buffer
+   *
+   * @param aad the packet header, with header protection removed
+   */
   public static Payload parse(
       final ByteBuf bb,
       final int length,
       final AEAD aead,
       final PacketNumber pn,
-      final byte[] aad) {
-    final byte[] cipherText = new byte[length];
-    bb.readBytes(cipherText);
+      final ByteBuffer aad) {
+    final int offset = bb.readerIndex();
 
-    final byte[] raw;
+    final int plainTextLength;
     try {
-      raw = aead.open(cipherText, pn.asLong(), aad);
+      plainTextLength = aead.open(bb, offset, length, pn.asLong(), aad);
     } catch (GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
+    bb.skipBytes(length);
 
     final List<Frame> frames = new ArrayList<>();
-    final ByteBuf frameBuf = Unpooled.wrappedBuffer(raw);
+    final ByteBuf frameBuf = bb.slice(offset, plainTextLength);
 
     while (frameBuf.isReadable()) {
       final Frame frame = Frame.parse(frameBuf);
@@ -68,16 +72,23 @@ public class Payload {
     return frames.stream().mapToInt(f -> f.calculateLength()).sum() + AEAD.OVERHEAD;
   }
 
-  public void write(final ByteBuf bb, final AEAD aead, final PacketNumber pn, final byte[] aad) {
-    final ByteBuf raw = Unpooled.buffer();
+  /**
+   * Writes and seals the payload, the frames are written and then encrypted in place
+   *
+   * @param aad the packet header, before header protection is applied
+   */
+  public void write(
+      final ByteBuf bb, final AEAD aead, final PacketNumber pn, final ByteBuffer aad) {
+    final int start = bb.writerIndex();
     for (final Frame frame : frames) {
-      frame.write(raw);
+      frame.write(bb);
     }
-    final byte[] b = Bytes.drainToArray(raw);
+    final int length = bb.writerIndex() - start;
+    bb.ensureWritable(AEAD.OVERHEAD);
 
     try {
-      final byte[] sealed = aead.seal(b, pn.asLong(), aad);
-      bb.writeBytes(sealed);
+      final int sealedLength = aead.seal(bb, start, length, pn.asLong(), aad);
+      bb.writerIndex(start + sealedLength);
     } catch (GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
@@ -0,0 +1,106 @@
+package com.protocol7.nettyquic.protocol;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.nettyquic.protocol.packets.FullPacket;
+
+public class SentPacket {
+
+  private final FullPacket packet;
+  private final PacketNumber originalPacketNumber;
+  private final long timeSent;
+  private final int size;
+
+  // delivery rate state of the connection when the packet was sent
+  private final long delivered;
+  private final long deliveredTime;
+  private final long firstSentTime;
+  private final boolean appLimited;
+
+  public SentPacket(
+      final FullPacket packet,
+      final PacketNumber originalPacketNumber,
+      final long timeSent,
+      final int size) {
+    this(packet, originalPacketNumber, timeSent, size, 0, timeSent, timeSent, false);
+  }
+
+  public SentPacket(
+      final FullPacket packet,
+      final PacketNumber originalPacketNumber,
+      final long timeSent,
+      final int size,
+      final long delivered,
+      final long deliveredTime,
+      final long firstSentTime,
+      final boolean appLimited) {
+    this.packet = requireNonNull(packet);
+    this.originalPacketNumber = requireNonNull(originalPacketNumber);
+    this.timeSent = timeSent;
+    this.size = size;
+    this.delivered = delivered;
+    this.deliveredTime = deliveredTime;
+    this.firstSentTime = firstSentTime;
+    this.appLimited = appLimited;
+  }
+
+  public FullPacket getPacket() {
+    return packet;
+  }
+
+  public PacketNumber getPacketNumber() {
+    return packet.getPacketNumber();
+  }
+
+  /** The packet number the data was first sent with, retained across retransmissions */
+  public PacketNumber getOriginalPacketNumber() {
+    return originalPacketNumber;
+  }
+
+  public long getTimeSent() {
+    return timeSent;
+  }
+
+  /** Size of the packet on the wire in bytes */
+  public int getSize() {
+    return size;
+  }
+
+  /** Total bytes delivered on the connection when the packet was sent */
+  public long getDelivered() {
+    return delivered;
+  }
+
+  /** Time the most recent delivered packet was acked when the packet was sent */
+  public long getDeliveredTime() {
+    return deliveredTime;
+  }
+
+  /** Send time of the first packet in the flight the packet was sent in */
+  public long getFirstSentTime() {
+    return firstSentTime;
+  }
+
+  /** Whether the connection was limited by the application, not the network, when sent */
+  public boolean isAppLimited() {
+    return appLimited;
+  }
+
+  @Override
+  public String toString() {
+    return "SentPacket{"
+        + "packetNumber="
+        + getPacketNumber()
+        + ", originalPacketNumber="
+        + originalPacketNumber
+        + ", timeSent="
+        + timeSent
+        + ", size="
+        + size
+        + ", delivered="
+        + delivered
+        + ", appLimited="
+        + appLimited
+        + '}';
+  }
+}
@@ -69,6 +69,10 @@ public class StreamId {
     Varint.write(id, bb);
   }
 
+  public int calculateLength() {
+    return Varint.getLength(id);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
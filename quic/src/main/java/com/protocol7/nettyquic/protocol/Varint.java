@@ -77,7 +77,29 @@ public class Varint {
   public static void write(long value, ByteBuf bb) {
     checkRange(value);
 
-    bb.writeBytes(write(value));
+    // written directly, to not allocate an array per varint
+    if (value > 1073741823) {
+      bb.writeLong(value | 0xC000000000000000L);
+    } else if (value > 16383) {
+      bb.writeInt((int) value | 0x80000000);
+    } else if (value > 63) {
+      bb.writeShort((int) value | 0x4000);
+    } else {
+      bb.writeByte((int) value);
+    }
+  }
+
+  /** @return the number of bytes needed to encode the value */
+  public static int getLength(long value) {
+    if (value > 1073741823) {
+      return 8;
+    } else if (value > 16383) {
+      return 4;
+    } else if (value > 63) {
+      return 2;
+    } else {
+      return 1;
+    }
   }
 
   public static byte[] write(long value) {
@@ -81,6 +81,28 @@ public class AckFrame extends Frame {
     return blocks;
   }
 
+  @Override
+  public int calculateLength() {
+    final AckBlock firstBlock = blocks.get(0);
+    long largest = firstBlock.getLargest().asLong();
+    long smallest = firstBlock.getSmallest().asLong();
+
+    int len = 1;
+    len += Varint.getLength(largest);
+    len += Varint.getLength(ackDelay);
+    len += Varint.getLength((blocks.size() - 1) * 2);
+    len += Varint.getLength(largest - smallest);
+
+    for (int i = 1; i < blocks.size(); i++) {
+      final AckBlock block = blocks.get(i);
+
+      len += Varint.getLength(smallest - block.getLargest().asLong() - 1);
+      len += Varint.getLength(block.getLargest().asLong() - block.getSmallest().asLong());
+      smallest = block.getSmallest().asLong();
+    }
+    return len;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
@@ -82,6 +82,16 @@ public class ConnectionCloseFrame extends Frame {
     return reasonPhrase;
   }
 
+  @Override
+  public int calculateLength() {
+    int len = 1 + 2;
+    if (!application) {
+      len += Varint.getLength(frameType);
+    }
+    final int reasonPhraseLength = reasonPhrase.getBytes(StandardCharsets.UTF_8).length;
+    return len + Varint.getLength(reasonPhraseLength) + reasonPhraseLength;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     if (application) {
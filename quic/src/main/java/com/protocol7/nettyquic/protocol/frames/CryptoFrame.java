@@ -36,6 +36,11 @@ public class CryptoFrame extends Frame {
     return cryptoData;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(offset) + Varint.getLength(cryptoData.length) + cryptoData.length;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
@@ -2,7 +2,6 @@ package com.protocol7.nettyquic.protocol.frames;
 
 import com.protocol7.nettyquic.Writeable;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 
 public abstract class Frame implements Writeable {
 
@@ -53,16 +52,8 @@ public abstract class Frame implements Writeable {
     return type;
   }
 
-  public int calculateLength() {
-    // TODO implement in subclasses, this is slow
-    ByteBuf bb = Unpooled.buffer();
-    try {
-      write(bb);
-      return bb.writerIndex();
-    } finally {
-      bb.release();
-    }
-  }
+  /** @return the exact number of bytes written by {@link #write(ByteBuf)} */
+  public abstract int calculateLength();
 
   public abstract void write(ByteBuf bb);
 }
@@ -40,6 +40,11 @@ public class MaxStreamDataFrame extends Frame {
     return maxStreamData;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + streamId.calculateLength() + Varint.getLength(maxStreamData);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
@@ -43,8 +43,7 @@ public class PaddingFrame extends Frame {
 
   @Override
   public void write(final ByteBuf bb) {
-    final byte[] b = new byte[length];
-    bb.writeBytes(b);
+    bb.writeZero(length);
   }
 
   @Override
@@ -55,6 +55,11 @@ public class ResetStreamFrame extends Frame {
     return offset;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + streamId.calculateLength() + 2 + Varint.getLength(offset);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
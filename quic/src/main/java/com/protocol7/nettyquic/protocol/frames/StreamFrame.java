@@ -65,6 +65,15 @@ public class StreamFrame extends Frame {
     return data;
   }
 
+  @Override
+  public int calculateLength() {
+    int len = 1 + streamId.calculateLength();
+    if (offset > 0) {
+      len += Varint.getLength(offset);
+    }
+    return len + Varint.getLength(data.length) + data.length;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     byte type = getType().getType();
@@ -0,0 +1,12 @@
+package com.protocol7.nettyquic.protocol.packets;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import java.util.Optional;
+
+/** An Initial packet with the unprotected header parsed, so that the token can be checked first */
+public interface HalfParsedInitialPacket extends HalfParsedPacket<InitialPacket> {
+
+  Optional<ConnectionId> getSourceConnectionId();
+
+  Optional<byte[]> getToken();
+}
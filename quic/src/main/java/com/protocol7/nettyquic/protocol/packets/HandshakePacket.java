@@ -8,6 +8,7 @@ import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import com.protocol7.nettyquic.utils.Bytes;
 import com.protocol7.nettyquic.utils.Pair;
 import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.List;
@@ -38,7 +39,7 @@ public class HandshakePacket extends LongHeaderPacket {
     // TODO merge with InitialPacket parsing
     // TODO validate marker
 
-    bb.markReaderIndex();
+    final int headerOffset = bb.readerIndex();
 
     byte firstByte = bb.readByte();
     byte ptByte = (byte) ((firstByte & 0x30) >> 4);
@@ -98,15 +99,10 @@ public class HandshakePacket extends LongHeaderPacket {
           bb.readerIndex(bb.readerIndex() + pnLen);
           int payloadLength = length - (bb.readerIndex() - pnOffset); // subtract fromByte pn length
 
-          byte[] aad = new byte[bb.readerIndex()];
-          bb.resetReaderIndex();
-          bb.readBytes(aad);
-
-          // restore the AAD with the now removed header protected
-          aad[0] = decryptedFirstByte;
-          for (int i = 0; i < pnBytes.length; i++) {
-            aad[pnOffset + i] = pnBytes[i];
-          }
+          // remove the header protection in place, the unprotected header is the AAD
+          bb.setByte(headerOffset, decryptedFirstByte);
+          bb.setBytes(pnOffset, pnBytes);
+          ByteBuffer aad = bb.nioBuffer(headerOffset, bb.readerIndex() - headerOffset);
 
           Payload payload = Payload.parse(bb, payloadLength, aead, packetNumber, aad);
 
@@ -143,6 +139,11 @@ public class HandshakePacket extends LongHeaderPacket {
         getPayload().addFrame(frame));
   }
 
+  @Override
+  public int calculateLength() {
+    return calculatePrefixLength() + calculateSuffixLength();
+  }
+
   @Override
   public void write(ByteBuf bb, AEAD aead) {
     writePrefix(bb);
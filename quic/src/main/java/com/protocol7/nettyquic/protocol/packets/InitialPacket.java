@@ -10,6 +10,7 @@ import com.protocol7.nettyquic.utils.Bytes;
 import com.protocol7.nettyquic.utils.Opt;
 import com.protocol7.nettyquic.utils.Pair;
 import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.List;
@@ -46,8 +47,8 @@ public class InitialPacket extends LongHeaderPacket {
         destConnectionId, srcConnectionId, version, packetNumber, payload, token);
   }
 
-  public static HalfParsedPacket<InitialPacket> parse(ByteBuf bb) {
-    bb.markReaderIndex();
+  public static HalfParsedInitialPacket parse(ByteBuf bb) {
+    final int headerOffset = bb.readerIndex();
 
     byte firstByte = bb.readByte(); // TODO validate
 
@@ -69,7 +70,7 @@ public class InitialPacket extends LongHeaderPacket {
       token = Optional.empty();
     }
 
-    return new HalfParsedPacket<>() {
+    return new HalfParsedInitialPacket() {
       @Override
       public Optional<Version> getVersion() {
         return Optional.of(version);
@@ -80,6 +81,16 @@ public class InitialPacket extends LongHeaderPacket {
         return destConnId;
       }
 
+      @Override
+      public Optional<ConnectionId> getSourceConnectionId() {
+        return srcConnId;
+      }
+
+      @Override
+      public Optional<byte[]> getToken() {
+        return token;
+      }
+
       @Override
       public InitialPacket complete(AEADProvider aeadProvider) {
         int length = Varint.readAsInt(bb);
@@ -113,15 +124,10 @@ public class InitialPacket extends LongHeaderPacket {
           bb.readerIndex(bb.readerIndex() + pnLen);
           int payloadLength = length - (bb.readerIndex() - pnOffset); // subtract fromByte pn length
 
-          byte[] aad = new byte[bb.readerIndex()];
-          bb.resetReaderIndex();
-          bb.readBytes(aad);
-
-          // restore the AAD with the now removed header protected
-          aad[0] = decryptedFirstByte;
-          for (int i = 0; i < pnBytes.length; i++) {
-            aad[pnOffset + i] = pnBytes[i];
-          }
+          // remove the header protection in place, the unprotected header is the AAD
+          bb.setByte(headerOffset, decryptedFirstByte);
+          bb.setBytes(pnOffset, pnBytes);
+          ByteBuffer aad = bb.nioBuffer(headerOffset, bb.readerIndex() - headerOffset);
 
           Payload payload = Payload.parse(bb, payloadLength, aead, packetNumber, aad);
 
@@ -165,6 +171,15 @@ public class InitialPacket extends LongHeaderPacket {
         token);
   }
 
+  @Override
+  public int calculateLength() {
+    final int tokenLength = token.map(t -> t.length).orElse(0);
+    return calculatePrefixLength()
+        + Varint.getLength(tokenLength)
+        + tokenLength
+        + calculateSuffixLength();
+  }
+
   @Override
   public void write(ByteBuf bb, AEAD aead) {
     writePrefix(bb);
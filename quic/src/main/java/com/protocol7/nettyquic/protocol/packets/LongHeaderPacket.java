@@ -4,6 +4,7 @@ import com.protocol7.nettyquic.protocol.*;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Objects;
 import java.util.Optional;
@@ -61,7 +62,24 @@ public abstract class LongHeaderPacket implements FullPacket {
     return payload;
   }
 
+  protected int calculatePrefixLength() {
+    // first byte, version and connection ID lengths
+    return 1
+        + 4
+        + 1
+        + destinationConnectionId.map(ConnectionId::getLength).orElse(0)
+        + sourceConnectionId.map(ConnectionId::getLength).orElse(0);
+  }
+
+  protected int calculateSuffixLength() {
+    final int length = payload.calculateLength() + packetNumber.getLength();
+    return Varint.getLength(length) + length;
+  }
+
   protected void writePrefix(ByteBuf bb) {
+    // the payload is sealed in place, make sure the buffer isn't reallocated while doing so
+    bb.ensureWritable(calculateLength());
+
     int b = (PACKET_TYPE_MASK | packetType.getType() << 4) & 0xFF;
     b = b | 0x40; // fixed
 
@@ -84,10 +102,7 @@ public abstract class LongHeaderPacket implements FullPacket {
 
     bb.writeBytes(pn);
 
-    byte[] aad = new byte[bb.writerIndex()];
-    bb.markReaderIndex();
-    bb.readBytes(aad);
-    bb.resetReaderIndex();
+    ByteBuffer aad = bb.nioBuffer(0, bb.writerIndex());
 
     payload.write(bb, aead, packetNumber, aad);
 
@@ -33,6 +33,8 @@ public interface Packet {
         return InitialPacket.parse(bb);
       } else if (packetType == PacketType.Handshake.getType()) {
         return HandshakePacket.parse(bb);
+      } else if (packetType == PacketType.Zero_RTT_Protected.getType()) {
+        return ZeroRttPacket.parse(bb);
       } else if (packetType == PacketType.Retry.getType()) {
         return RetryPacket.parse(bb);
       } else {
@@ -47,6 +49,9 @@ public interface Packet {
 
   void write(ByteBuf bb, AEAD aead);
 
+  /** @return the exact number of bytes written by {@link #write(ByteBuf, AEAD)} */
+  int calculateLength();
+
   Optional<ConnectionId> getSourceConnectionId();
 
   Optional<ConnectionId> getDestinationConnectionId();
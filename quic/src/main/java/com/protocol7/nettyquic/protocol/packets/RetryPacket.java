@@ -2,7 +2,6 @@ package com.protocol7.nettyquic.protocol.packets;
 
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.Version;
-import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import com.protocol7.nettyquic.utils.Hex;
 import com.protocol7.nettyquic.utils.Opt;
@@ -12,7 +11,7 @@ import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 
-public class RetryPacket implements Packet {
+public class RetryPacket implements UnprotectedPacket {
 
   public static HalfParsedPacket<RetryPacket> parse(ByteBuf bb) {
     byte b = bb.readByte(); // TODO verify reserved and packet types
@@ -73,7 +72,19 @@ public class RetryPacket implements Packet {
   }
 
   @Override
-  public void write(ByteBuf bb, AEAD aead) {
+  public int calculateLength() {
+    // first byte, version and connection ID lengths
+    return 1
+        + 4
+        + 1
+        + destinationConnectionId.map(ConnectionId::getLength).orElse(0)
+        + sourceConnectionId.map(ConnectionId::getLength).orElse(0)
+        + originalConnectionId.getLength()
+        + retryToken.length;
+  }
+
+  @Override
+  public void write(ByteBuf bb) {
     int b = (PACKET_TYPE_MASK | PacketType.Retry.getType() << 4) & 0xFF;
     b = b | 0x40; // fixed
 
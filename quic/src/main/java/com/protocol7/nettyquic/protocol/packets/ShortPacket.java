@@ -7,6 +7,7 @@ import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.Optional;
@@ -14,7 +15,7 @@ import java.util.Optional;
 public class ShortPacket implements FullPacket {
 
   public static HalfParsedPacket<ShortPacket> parse(ByteBuf bb, int connIdLength) {
-    bb.markReaderIndex();
+    final int headerOffset = bb.readerIndex();
 
     byte firstByte = bb.readByte();
 
@@ -28,8 +29,6 @@ public class ShortPacket implements FullPacket {
       throw new IllegalArgumentException("Reserved bit must be 1");
     }
 
-    boolean keyPhase = (firstByte & 0x4) == 0x4;
-
     Optional<ConnectionId> connId;
     if (connIdLength > 0) {
       connId = Optional.of(ConnectionId.read(connIdLength, bb));
@@ -51,6 +50,7 @@ public class ShortPacket implements FullPacket {
       @Override
       public ShortPacket complete(AEADProvider aeadProvider) {
 
+        // header protection keys are not changed by key updates
         AEAD aead = aeadProvider.get(EncryptionLevel.OneRtt);
 
         int pnOffset = bb.readerIndex();
@@ -71,6 +71,7 @@ public class ShortPacket implements FullPacket {
 
           byte decryptedFirstByte = decryptedHeader[0];
           int pnLen = (decryptedFirstByte & 0x3) + 1;
+          boolean keyPhase = (decryptedFirstByte & 0x4) == 0x4;
 
           byte[] pnBytes = Arrays.copyOfRange(decryptedHeader, 1, 1 + pnLen);
 
@@ -79,17 +80,14 @@ public class ShortPacket implements FullPacket {
           // move reader ahead by what the PN length actually was
           bb.readerIndex(bb.readerIndex() + pnLen);
 
-          byte[] aad = new byte[bb.readerIndex()];
-          bb.resetReaderIndex();
-          bb.readBytes(aad);
-
-          // restore the AAD with the now removed header protected
-          aad[0] = decryptedFirstByte;
-          for (int i = 0; i < pnBytes.length; i++) {
-            aad[pnOffset + i] = pnBytes[i];
-          }
+          // remove the header protection in place, the unprotected header is the AAD
+          bb.setByte(headerOffset, decryptedFirstByte);
+          bb.setBytes(pnOffset, pnBytes);
+          ByteBuffer aad = bb.nioBuffer(headerOffset, bb.readerIndex() - headerOffset);
 
-          Payload payload = Payload.parse(bb, bb.readableBytes(), aead, packetNumber, aad);
+          AEAD payloadAead = aeadProvider.getOneRtt(keyPhase, packetNumber);
+          Payload payload = Payload.parse(bb, bb.readableBytes(), payloadAead, packetNumber, aad);
+          aeadProvider.onOneRttOpened(payloadAead, packetNumber);
 
           return new ShortPacket(keyPhase, connId, packetNumber, payload);
         } catch (GeneralSecurityException e) {
@@ -115,6 +113,11 @@ public class ShortPacket implements FullPacket {
     this.payload = payload;
   }
 
+  /** The key phase bit as received, packets are sent with the key phase of the AEAD */
+  public boolean getKeyPhase() {
+    return keyPhase;
+  }
+
   @Override
   public PacketType getType() {
     throw new RuntimeException("Not implemented");
@@ -125,11 +128,23 @@ public class ShortPacket implements FullPacket {
     return new ShortPacket(keyPhase, connectionId, packetNumber, payload.addFrame(frame));
   }
 
+  @Override
+  public int calculateLength() {
+    return 1
+        + connectionId.map(ConnectionId::getLength).orElse(0)
+        + packetNumber.getLength()
+        + payload.calculateLength();
+  }
+
   @Override
   public void write(ByteBuf bb, AEAD aead) {
+    // the payload is sealed in place, make sure the buffer isn't reallocated while doing so
+    bb.ensureWritable(calculateLength());
+
     byte b = 0;
     b = (byte) (b | 0x40); // reserved must be 1
-    if (keyPhase) {
+    // the key phase is that of the keys the packet is protected with
+    if (aead.getKeyPhase()) {
       b = (byte) (b | 0x4);
     }
     // TODO spin bit
@@ -149,10 +164,7 @@ public class ShortPacket implements FullPacket {
     byte[] pn = packetNumber.write(pnLen);
     bb.writeBytes(pn);
 
-    byte[] aad = new byte[bb.writerIndex()];
-    bb.markReaderIndex();
-    bb.readBytes(aad);
-    bb.resetReaderIndex();
+    ByteBuffer aad = bb.nioBuffer(0, bb.writerIndex());
 
     payload.write(bb, aead, packetNumber, aad);
 
@@ -0,0 +1,16 @@
+package com.protocol7.nettyquic.protocol.packets;
+
+import com.protocol7.nettyquic.tls.aead.AEAD;
+import io.netty.buffer.ByteBuf;
+
+/** A packet sent without packet protection, a Retry or Version Negotiation packet */
+public interface UnprotectedPacket extends Packet {
+
+  void write(ByteBuf bb);
+
+  /** The AEAD is not used, prefer {@link #write(ByteBuf)} */
+  @Override
+  default void write(ByteBuf bb, AEAD aead) {
+    write(bb);
+  }
+}
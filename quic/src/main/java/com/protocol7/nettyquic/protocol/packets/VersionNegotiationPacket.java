@@ -2,7 +2,6 @@ package com.protocol7.nettyquic.protocol.packets;
 
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.Version;
-import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import com.protocol7.nettyquic.utils.Pair;
 import com.protocol7.nettyquic.utils.Rnd;
@@ -12,7 +11,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
-public class VersionNegotiationPacket implements Packet {
+public class VersionNegotiationPacket implements UnprotectedPacket {
 
   private static final int MARKER = 0b10000000;
 
@@ -85,7 +84,18 @@ public class VersionNegotiationPacket implements Packet {
   }
 
   @Override
-  public void write(final ByteBuf bb, final AEAD notUsed) {
+  public int calculateLength() {
+    // marker, version and connection ID lengths
+    return 1
+        + 4
+        + 1
+        + destinationConnectionId.map(ConnectionId::getLength).orElse(0)
+        + sourceConnectionId.map(ConnectionId::getLength).orElse(0)
+        + 4 * supportedVersions.size();
+  }
+
+  @Override
+  public void write(final ByteBuf bb) {
     int marker = Rnd.rndInt() & 0xFF;
     marker |= MARKER;
     bb.writeByte(marker);
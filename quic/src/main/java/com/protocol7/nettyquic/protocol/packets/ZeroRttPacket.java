@@ -0,0 +1,171 @@
+package com.protocol7.nettyquic.protocol.packets;
+
+import com.protocol7.nettyquic.protocol.*;
+import com.protocol7.nettyquic.protocol.frames.Frame;
+import com.protocol7.nettyquic.tls.EncryptionLevel;
+import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.aead.AEADProvider;
+import com.protocol7.nettyquic.utils.Bytes;
+import com.protocol7.nettyquic.utils.Pair;
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Early data sent by a client resuming a session, before the handshake completes. Shares the packet
+ * number space with 1-RTT packets, so it is acked in those.
+ */
+public class ZeroRttPacket extends LongHeaderPacket {
+
+  public static ZeroRttPacket create(
+      Optional<ConnectionId> destConnectionId,
+      Optional<ConnectionId> srcConnectionId,
+      PacketNumber packetNumber,
+      Version version,
+      Frame... frames) {
+    return create(destConnectionId, srcConnectionId, packetNumber, version, Arrays.asList(frames));
+  }
+
+  public static ZeroRttPacket create(
+      Optional<ConnectionId> destConnectionId,
+      Optional<ConnectionId> srcConnectionId,
+      PacketNumber packetNumber,
+      Version version,
+      List<Frame> frames) {
+    Payload payload = new Payload(frames);
+    return new ZeroRttPacket(destConnectionId, srcConnectionId, version, packetNumber, payload);
+  }
+
+  public static HalfParsedPacket<ZeroRttPacket> parse(ByteBuf bb) {
+    final int headerOffset = bb.readerIndex();
+
+    byte firstByte = bb.readByte();
+    byte ptByte = (byte) ((firstByte & 0x30) >> 4);
+    PacketType packetType = PacketType.fromByte(ptByte);
+    if (packetType != PacketType.Zero_RTT_Protected) {
+      throw new IllegalArgumentException("Invalid packet type");
+    }
+
+    Version version = Version.read(bb);
+
+    final Pair<Optional<ConnectionId>, Optional<ConnectionId>> cids = ConnectionId.readPair(bb);
+
+    final Optional<ConnectionId> destConnId = cids.getFirst();
+    final Optional<ConnectionId> srcConnId = cids.getSecond();
+
+    return new HalfParsedPacket<>() {
+      @Override
+      public Optional<Version> getVersion() {
+        return Optional.of(version);
+      }
+
+      @Override
+      public Optional<ConnectionId> getConnectionId() {
+        return destConnId;
+      }
+
+      @Override
+      public ZeroRttPacket complete(AEADProvider aeadProvider) {
+        int length = Varint.readAsInt(bb);
+
+        AEAD aead = aeadProvider.get(EncryptionLevel.ZeroRtt);
+
+        int pnOffset = bb.readerIndex();
+        int sampleOffset = pnOffset + 4;
+
+        byte[] sample = new byte[aead.getSampleLength()];
+
+        bb.getBytes(sampleOffset, sample);
+
+        // get 4 bytes for PN. Might be too long, but we'll handle that below
+        byte[] pn = new byte[4];
+        bb.getBytes(pnOffset, pn);
+
+        // decrypt the protected header parts
+        try {
+          byte[] decryptedHeader =
+              aead.decryptHeader(sample, Bytes.concat(new byte[] {firstByte}, pn), false);
+
+          byte decryptedFirstByte = decryptedHeader[0];
+          int pnLen = (decryptedFirstByte & 0x3) + 1;
+
+          byte[] pnBytes = Arrays.copyOfRange(decryptedHeader, 1, 1 + pnLen);
+
+          PacketNumber packetNumber = PacketNumber.parse(pnBytes);
+
+          // move reader ahead by what the PN length actually was
+          bb.readerIndex(bb.readerIndex() + pnLen);
+          int payloadLength = length - (bb.readerIndex() - pnOffset); // subtract fromByte pn length
+
+          // remove the header protection in place, the unprotected header is the AAD
+          bb.setByte(headerOffset, decryptedFirstByte);
+          bb.setBytes(pnOffset, pnBytes);
+          ByteBuffer aad = bb.nioBuffer(headerOffset, bb.readerIndex() - headerOffset);
+
+          Payload payload = Payload.parse(bb, payloadLength, aead, packetNumber, aad);
+
+          return new ZeroRttPacket(destConnId, srcConnId, version, packetNumber, payload);
+        } catch (GeneralSecurityException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  private ZeroRttPacket(
+      Optional<ConnectionId> destinationConnectionId,
+      Optional<ConnectionId> sourceConnectionId,
+      Version version,
+      PacketNumber packetNumber,
+      Payload payload) {
+    super(
+        PacketType.Zero_RTT_Protected,
+        destinationConnectionId,
+        sourceConnectionId,
+        version,
+        packetNumber,
+        payload);
+  }
+
+  @Override
+  public ZeroRttPacket addFrame(Frame frame) {
+    return new ZeroRttPacket(
+        getDestinationConnectionId(),
+        getSourceConnectionId(),
+        getVersion(),
+        getPacketNumber(),
+        getPayload().addFrame(frame));
+  }
+
+  @Override
+  public int calculateLength() {
+    return calculatePrefixLength() + calculateSuffixLength();
+  }
+
+  @Override
+  public void write(ByteBuf bb, AEAD aead) {
+    writePrefix(bb);
+    writeSuffix(bb, aead);
+  }
+
+  @Override
+  public String toString() {
+    return "ZeroRttPacket{"
+        + "packetType="
+        + getType()
+        + ", destinationConnectionId="
+        + getDestinationConnectionId()
+        + ", sourceConnectionId="
+        + getSourceConnectionId()
+        + ", version="
+        + getVersion()
+        + ", packetNumber="
+        + getPacketNumber()
+        + ", payload="
+        + getPayload()
+        + '}';
+  }
+}
@@ -1,9 +1,11 @@
 package com.protocol7.nettyquic.server;
 
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.connection.PacketSender;
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.streams.StreamListener;
+import com.protocol7.nettyquic.tls.ServerFlightTemplate;
 import java.security.PrivateKey;
 import java.util.List;
 import java.util.Map;
@@ -16,17 +18,30 @@ public class Connections {
 
   private final Logger log = LoggerFactory.getLogger(Connections.class);
 
-  private final List<byte[]> certificates;
+  private final ServerFlightTemplate flightTemplate;
   private final PrivateKey privateKey;
+  private final QuicConfig config;
   private final Map<ConnectionId, ServerConnection> connections = new ConcurrentHashMap<>();
 
   public Connections(final List<byte[]> certificates, final PrivateKey privateKey) {
-    this.certificates = certificates;
+    this(certificates, privateKey, QuicConfig.defaults());
+  }
+
+  public Connections(
+      final List<byte[]> certificates, final PrivateKey privateKey, final QuicConfig config) {
+    // encoded once, the same messages are sent in every handshake
+    this.flightTemplate = new ServerFlightTemplate(certificates);
     this.privateKey = privateKey;
+    this.config = config;
   }
 
+  /**
+   * @param originalConnId for a connection set up after a Retry, the destination connection ID of
+   *     the client's first Initial
+   */
   public ServerConnection get(
       final Optional<ConnectionId> connIdOpt,
+      final Optional<ConnectionId> originalConnId,
       final StreamListener streamHandler,
       final PacketSender packetSender) {
 
@@ -35,7 +50,12 @@ public class Connections {
     ServerConnection conn = connections.get(connId);
     if (conn == null) {
       log.debug("Creating new server connection for {}", connId);
-      conn = new ServerConnection(connId, streamHandler, packetSender, certificates, privateKey);
+      // the transport parameters name the connection IDs of the Retry, so the client can
+      // authenticate them
+      final ServerFlightTemplate template =
+          originalConnId.map(id -> flightTemplate.forRetry(id, connId)).orElse(flightTemplate);
+      conn =
+          new ServerConnection(connId, streamHandler, packetSender, template, privateKey, config);
       final ServerConnection existingConn = connections.putIfAbsent(connId, conn);
       if (existingConn != null) {
         conn = existingConn;
@@ -4,24 +4,94 @@ import com.protocol7.nettyquic.connection.PacketSender;
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.protocol.packets.FullPacket;
+import com.protocol7.nettyquic.protocol.packets.HalfParsedInitialPacket;
 import com.protocol7.nettyquic.protocol.packets.HalfParsedPacket;
 import com.protocol7.nettyquic.protocol.packets.Packet;
+import com.protocol7.nettyquic.protocol.packets.RetryPacket;
 import com.protocol7.nettyquic.protocol.packets.VersionNegotiationPacket;
 import com.protocol7.nettyquic.streams.StreamListener;
 import io.netty.buffer.ByteBuf;
+import java.net.InetSocketAddress;
 import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 public class PacketRouter {
 
+  /** Clients pad the datagrams carrying their first Initial to at least this many bytes */
+  public static final int MIN_INITIAL_DATAGRAM_LENGTH = 1200;
+
+  private final Logger log = LoggerFactory.getLogger(PacketRouter.class);
+
   private final Version version;
   private final Connections connections;
   private final StreamListener listener;
+  private final Optional<RetryTokens> retryTokens;
 
   public PacketRouter(Version version, Connections connections, StreamListener listener) {
+    this(version, connections, listener, Optional.empty());
+  }
+
+  /**
+   * @param retryTokens seals the tokens of the Retry packets sent to validate client addresses. If
+   *     empty, connections are set up for any Initial packet, without a Retry.
+   */
+  public PacketRouter(
+      Version version,
+      Connections connections,
+      StreamListener listener,
+      Optional<RetryTokens> retryTokens) {
     this.version = version;
     this.connections = connections;
     this.listener = listener;
+    this.retryTokens = retryTokens;
+  }
+
+  private boolean isKnownConnection(HalfParsedPacket<?> halfParsed) {
+    Optional<ConnectionId> destConnId = halfParsed.getConnectionId();
+    return destConnId.isPresent() && connections.get(destConnId.get()).isPresent();
+  }
+
+  private boolean isOtherVersion(HalfParsedPacket<?> halfParsed) {
+    return halfParsed.getVersion().isPresent() && halfParsed.getVersion().get() != version;
+  }
+
+  /**
+   * Only an Initial with a valid Retry token can set up a new connection, other Initial packets are
+   * answered with a Retry. Nothing is kept for packets from addresses not validated.
+   *
+   * @return the destination connection ID of the client's first Initial, empty if the packet is not
+   *     from a validated address
+   */
+  private Optional<ConnectionId> validateAddress(
+      HalfParsedPacket<?> halfParsed, InetSocketAddress peerAddress, PacketSender sender) {
+    Optional<ConnectionId> destConnId = halfParsed.getConnectionId();
+    if (!(halfParsed instanceof HalfParsedInitialPacket) || !destConnId.isPresent()) {
+      log.debug("Dropping packet for unknown connection {}", destConnId);
+      return Optional.empty();
+    }
+
+    HalfParsedInitialPacket initial = (HalfParsedInitialPacket) halfParsed;
+    if (!initial.getToken().isPresent()) {
+      ConnectionId retryConnId = ConnectionId.random();
+      RetryPacket retry =
+          new RetryPacket(
+              version,
+              initial.getSourceConnectionId(),
+              Optional.of(retryConnId),
+              destConnId.get(),
+              retryTokens.get().seal(peerAddress, destConnId.get(), retryConnId));
+      sender.send(retry);
+      return Optional.empty();
+    }
+
+    Optional<ConnectionId> originalConnId =
+        retryTokens.get().open(initial.getToken().get(), peerAddress, destConnId.get());
+    if (!originalConnId.isPresent()) {
+      log.debug("Dropping Initial with invalid token from {}", peerAddress);
+    }
+    return originalConnId;
   }
 
   private boolean validateVersion(
@@ -31,27 +101,53 @@ public class PacketRouter {
       if (halfParsed.getVersion().get() != version) {
         VersionNegotiationPacket verNeg =
             new VersionNegotiationPacket(halfParsed.getConnectionId(), srcConnId, Version.CURRENT);
-        sender.send(verNeg, null); // TODO remove null
+        sender.send(verNeg);
         return false;
       }
     }
     return true;
   }
 
-  public void route(ByteBuf bb, PacketSender sender) {
+  public void route(ByteBuf bb, InetSocketAddress peerAddress, PacketSender sender) {
+    final int datagramLength = bb.readableBytes();
 
     while (bb.isReadable()) {
       HalfParsedPacket<?> halfParsed = Packet.parse(bb, -1);
 
+      Optional<ConnectionId> originalConnId = Optional.empty();
+      if (!isOtherVersion(halfParsed) && !isKnownConnection(halfParsed)) {
+        if (halfParsed instanceof HalfParsedInitialPacket
+            && datagramLength < MIN_INITIAL_DATAGRAM_LENGTH) {
+          log.debug("Dropping Initial in datagram of {} bytes", datagramLength);
+          break;
+        }
+
+        if (retryTokens.isPresent()) {
+          originalConnId = validateAddress(halfParsed, peerAddress, sender);
+          if (!originalConnId.isPresent()) {
+            // skip rest of datagram, coalesced packets are from the same address
+            break;
+          }
+        }
+      }
+
       ServerConnection conn =
           connections.get(
               halfParsed.getConnectionId(),
+              originalConnId,
               listener,
               sender); // TODO fix for when connId is omitted
 
       if (validateVersion(halfParsed, sender, conn.getLocalConnectionId())) {
 
-        Packet packet = halfParsed.complete(conn::getAEAD);
+        Packet packet;
+        try {
+          packet = halfParsed.complete(conn.getAEADProvider());
+        } catch (IllegalStateException e) {
+          // no keys for the packet, e.g. early data sent before a retry, or rejected
+          log.debug("Dropping packet that can not be opened", e);
+          break;
+        }
 
         MDC.put("actor", "server");
         if (packet instanceof FullPacket) {
@@ -1,5 +1,6 @@
 package com.protocol7.nettyquic.server;
 
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.streams.StreamListener;
 import com.protocol7.nettyquic.utils.Futures;
@@ -15,6 +16,13 @@ import java.net.InetSocketAddress;
 import java.security.PrivateKey;
 import java.util.List;
 
+/**
+ * A QUIC server bound to a UDP address. By default, a client is sent a Retry to validate its
+ * address before a connection is set up for it. This costs each new connection a round trip, but
+ * keeps an Initial from a spoofed address from making the server set up a connection and send its
+ * handshake flight to that address. Servers that accept that risk can build their config with
+ * {@link QuicConfig.Builder#withoutRetryTokens()}.
+ */
 public class QuicServer {
 
   public static Future<QuicServer> bind(
@@ -22,19 +30,31 @@ public class QuicServer {
       StreamListener streamHandler,
       List<byte[]> certificates,
       PrivateKey privateKey) {
+    return bind(address, streamHandler, certificates, privateKey, QuicConfig.defaults());
+  }
+
+  /** @param config settings for every connection of the server */
+  public static Future<QuicServer> bind(
+      final InetSocketAddress address,
+      StreamListener streamHandler,
+      List<byte[]> certificates,
+      PrivateKey privateKey,
+      QuicConfig config) {
     return Futures.thenSync(
-        bindImpl(address, streamHandler, certificates, privateKey), g -> new QuicServer(g));
+        bindImpl(address, streamHandler, certificates, privateKey, config), g -> new QuicServer(g));
   }
 
   private static Future<EventExecutorGroup> bindImpl(
       final InetSocketAddress address,
       final StreamListener streamHandler,
       List<byte[]> certificates,
-      PrivateKey privateKey) {
+      PrivateKey privateKey,
+      QuicConfig config) {
     NioEventLoopGroup group = new NioEventLoopGroup();
 
-    Connections connections = new Connections(certificates, privateKey);
-    PacketRouter router = new PacketRouter(Version.CURRENT, connections, streamHandler);
+    Connections connections = new Connections(certificates, privateKey, config);
+    PacketRouter router =
+        new PacketRouter(Version.CURRENT, connections, streamHandler, config.getRetryTokens());
 
     final Bootstrap b = new Bootstrap();
     b.group(group)
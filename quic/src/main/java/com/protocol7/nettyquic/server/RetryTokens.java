@@ -0,0 +1,171 @@
+package com.protocol7.nettyquic.server;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.utils.Bytes;
+import com.protocol7.nettyquic.utils.Rnd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Optional;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Seals the tokens sent in Retry packets, so that the client address can be validated without the
+ * server keeping any state between the Retry and the Initial echoing the token. A token holds the
+ * original destination connection ID of the client and the time it was issued, and is bound to the
+ * client address and the connection ID of the Retry. Tokens are encrypted with AES-GCM under a key
+ * that is replaced every token lifetime, the previous key is kept so that every token can be opened
+ * for its whole lifetime. Thread safe, share between the connections of a server.
+ */
+public class RetryTokens {
+
+  /** Default time a token can be used after the Retry it was sent in, in nanoseconds */
+  public static final long DEFAULT_LIFETIME = SECONDS.toNanos(10);
+
+  private static final int KEY_ID_LENGTH = 4;
+  private static final int NONCE_LENGTH = 12;
+  private static final int TAG_LENGTH = 16;
+
+  private final long lifetime;
+  private final Ticker ticker;
+
+  private Key currentKey;
+  private Key previousKey;
+
+  public RetryTokens() {
+    this(DEFAULT_LIFETIME, Ticker.systemTicker());
+  }
+
+  /** @param lifetime time a token can be used, in nanoseconds */
+  public RetryTokens(final long lifetime, final Ticker ticker) {
+    this.lifetime = lifetime;
+    this.ticker = requireNonNull(ticker);
+    this.currentKey = new Key(ticker.read());
+  }
+
+  /**
+   * @param address the client address the Retry is sent to
+   * @param originalConnectionId destination connection ID of the Initial from the client
+   * @param retryConnectionId source connection ID of the Retry, the client uses it as the
+   *     destination connection ID of the Initial echoing the token
+   */
+  public byte[] seal(
+      final InetSocketAddress address,
+      final ConnectionId originalConnectionId,
+      final ConnectionId retryConnectionId) {
+    final long now = ticker.read();
+    final Key key = getKey(now);
+
+    final ByteBuf bb = Unpooled.buffer();
+    bb.writeLong(now);
+    bb.writeByte(originalConnectionId.getLength());
+    originalConnectionId.write(bb);
+    final byte[] state = Bytes.drainToArray(bb);
+
+    final byte[] nonce = Rnd.rndBytes(NONCE_LENGTH);
+    try {
+      final Cipher cipher = cipher(Cipher.ENCRYPT_MODE, key, nonce, address, retryConnectionId);
+      return Bytes.concat(key.id, nonce, cipher.doFinal(state));
+    } catch (final GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @param address the client address the Initial echoing the token was sent from
+   * @param retryConnectionId destination connection ID of the Initial echoing the token
+   * @return the original destination connection ID of the client, or empty if the token can not be
+   *     opened, has expired, or was issued to another address or connection ID
+   */
+  public Optional<ConnectionId> open(
+      final byte[] token, final InetSocketAddress address, final ConnectionId retryConnectionId) {
+    if (token.length < KEY_ID_LENGTH + NONCE_LENGTH + TAG_LENGTH) {
+      return Optional.empty();
+    }
+
+    final long now = ticker.read();
+    final Optional<Key> key = findKey(Arrays.copyOf(token, KEY_ID_LENGTH), now);
+    if (!key.isPresent()) {
+      return Optional.empty();
+    }
+
+    final byte[] nonce = Arrays.copyOfRange(token, KEY_ID_LENGTH, KEY_ID_LENGTH + NONCE_LENGTH);
+    final byte[] plaintext;
+    try {
+      final Cipher cipher =
+          cipher(Cipher.DECRYPT_MODE, key.get(), nonce, address, retryConnectionId);
+      plaintext =
+          cipher.doFinal(
+              token, KEY_ID_LENGTH + NONCE_LENGTH, token.length - KEY_ID_LENGTH - NONCE_LENGTH);
+    } catch (final GeneralSecurityException e) {
+      // tampered with, sent from another address or for another connection
+      return Optional.empty();
+    }
+
+    final ByteBuf bb = Unpooled.wrappedBuffer(plaintext);
+    final long issuedAt = bb.readLong();
+    final ConnectionId originalConnectionId = ConnectionId.read(bb.readUnsignedByte(), bb);
+
+    if (now - issuedAt > lifetime) {
+      return Optional.empty();
+    }
+    return Optional.of(originalConnectionId);
+  }
+
+  private synchronized Key getKey(final long now) {
+    if (now - currentKey.createdAt >= lifetime) {
+      previousKey = currentKey;
+      currentKey = new Key(now);
+    }
+    return currentKey;
+  }
+
+  private synchronized Optional<Key> findKey(final byte[] id, final long now) {
+    // rotate first, so that keys too old to have sealed a valid token are dropped
+    getKey(now);
+
+    if (Arrays.equals(id, currentKey.id)) {
+      return Optional.of(currentKey);
+    } else if (previousKey != null && Arrays.equals(id, previousKey.id)) {
+      return Optional.of(previousKey);
+    } else {
+      return Optional.empty();
+    }
+  }
+
+  private static Cipher cipher(
+      final int mode,
+      final Key key,
+      final byte[] nonce,
+      final InetSocketAddress address,
+      final ConnectionId retryConnectionId)
+      throws GeneralSecurityException {
+    final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(mode, key.key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+
+    // authenticated but not sent, a token only opens for the address and connection ID given
+    cipher.updateAAD(key.id);
+    cipher.updateAAD(address.getAddress().getAddress());
+    cipher.updateAAD(new byte[] {(byte) (address.getPort() >> 8), (byte) address.getPort()});
+    cipher.updateAAD(retryConnectionId.asBytes());
+    return cipher;
+  }
+
+  private static class Key {
+    private final byte[] id = Rnd.rndBytes(KEY_ID_LENGTH);
+    private final SecretKeySpec key = new SecretKeySpec(Rnd.rndBytes(16), "AES");
+    private final long createdAt;
+
+    private Key(final long createdAt) {
+      this.createdAt = createdAt;
+    }
+  }
+}
@@ -1,9 +1,10 @@
 package com.protocol7.nettyquic.server;
 
-import static com.protocol7.nettyquic.tls.EncryptionLevel.Initial;
-
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.connection.PacketSender;
+import com.protocol7.nettyquic.connection.RttEstimator;
 import com.protocol7.nettyquic.protocol.*;
 import com.protocol7.nettyquic.protocol.frames.Frame;
 import com.protocol7.nettyquic.protocol.packets.FullPacket;
@@ -13,13 +14,17 @@ import com.protocol7.nettyquic.streams.Stream;
 import com.protocol7.nettyquic.streams.StreamListener;
 import com.protocol7.nettyquic.streams.Streams;
 import com.protocol7.nettyquic.tls.EncryptionLevel;
+import com.protocol7.nettyquic.tls.ServerFlightTemplate;
 import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.aead.AEADProvider;
 import com.protocol7.nettyquic.tls.aead.AEADs;
 import com.protocol7.nettyquic.tls.aead.InitialAEAD;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import io.netty.util.concurrent.Future;
 import java.security.PrivateKey;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +44,7 @@ public class ServerConnection implements Connection {
   private final ServerStateMachine stateMachine;
   private final PacketBuffer packetBuffer;
 
+  private final long keyUpdateInterval;
   private AEADs aeads;
 
   public ServerConnection(
@@ -47,11 +53,44 @@ public class ServerConnection implements Connection {
       final PacketSender packetSender,
       final List<byte[]> certificates,
       final PrivateKey privateKey) {
+    this(localConnectionId, handler, packetSender, certificates, privateKey, QuicConfig.defaults());
+  }
+
+  public ServerConnection(
+      final ConnectionId localConnectionId,
+      final StreamListener handler,
+      final PacketSender packetSender,
+      final List<byte[]> certificates,
+      final PrivateKey privateKey,
+      final QuicConfig config) {
+    this(
+        localConnectionId,
+        handler,
+        packetSender,
+        new ServerFlightTemplate(certificates),
+        privateKey,
+        config);
+  }
+
+  /** @param flightTemplate the encoded handshake messages shared between connections */
+  public ServerConnection(
+      final ConnectionId localConnectionId,
+      final StreamListener handler,
+      final PacketSender packetSender,
+      final ServerFlightTemplate flightTemplate,
+      final PrivateKey privateKey,
+      final QuicConfig config) {
+    this.keyUpdateInterval = config.getKeyUpdateInterval();
     this.handler = handler;
     this.packetSender = packetSender;
-    this.stateMachine = new ServerStateMachine(this, certificates, privateKey);
-    this.streams = new Streams(this);
-    this.packetBuffer = new PacketBuffer(this, this::sendPacketUnbuffered, this.streams);
+    this.stateMachine = new ServerStateMachine(this, flightTemplate, privateKey, config);
+    this.streams = new Streams(this, config.getMaxReceiveWindow());
+    this.packetBuffer =
+        new PacketBuffer(
+            this,
+            this::sendPacketUnbuffered,
+            this.streams,
+            config.getCongestionControllerFactory());
 
     this.localConnectionId = Optional.of(localConnectionId);
 
@@ -59,7 +98,11 @@ public class ServerConnection implements Connection {
   }
 
   private void initAEAD() {
-    this.aeads = new AEADs(InitialAEAD.create(localConnectionId.get(), false));
+    this.aeads =
+        new AEADs(
+            InitialAEAD.create(localConnectionId.get(), false),
+            keyUpdateInterval,
+            Ticker.systemTicker());
   }
 
   public Optional<ConnectionId> getRemoteConnectionId() {
@@ -80,6 +123,11 @@ public class ServerConnection implements Connection {
     initAEAD();
   }
 
+  /** The executor packets for the connection are handled on */
+  public Executor getExecutor() {
+    return packetSender.getExecutor();
+  }
+
   public Version getVersion() {
     return version.get();
   }
@@ -97,18 +145,38 @@ public class ServerConnection implements Connection {
   }
 
   private void sendPacketUnbuffered(Packet packet) {
-    packetSender.send(packet, getAEAD(Initial)).awaitUninterruptibly(); // TODO fix
-    log.debug("Server sent {}", packet);
+    packetSender
+        .send(packet, aeads.getForSending(EncryptionLevel.forPacket(packet)))
+        .addListener(
+            future -> {
+              if (future.isSuccess()) {
+                log.debug("Server sent {}", packet);
+              } else {
+                log.warn("Server failed to send {}", packet, future.cause());
+              }
+            });
   }
 
   public void onPacket(Packet packet) {
     log.debug("Server got {}", packet);
 
+    if (!aeads.available(EncryptionLevel.forPacket(packet))) {
+      // early data received before the retry, or rejected
+      log.debug("Dropping packet without keys {}", packet);
+      return;
+    }
+
     if (stateMachine.getState() != ServerState.BeforeInitial) {
       packetBuffer.onPacket(packet);
+      // with incorrect conn ID
+      stateMachine.processPacket(packet);
+    } else {
+      stateMachine.processPacket(packet);
+      // only ack the ClientHello once handled, a dropped one must be retransmitted by the client
+      if (stateMachine.getState() != ServerState.BeforeInitial) {
+        packetBuffer.onPacket(packet);
+      }
     }
-    // with incorrect conn ID
-    stateMachine.processPacket(packet);
   }
 
   @Override
@@ -121,6 +189,16 @@ public class ServerConnection implements Connection {
     return Optional.empty();
   }
 
+  /** Provides AEADs for parsing packets, including 1-RTT keys for both key phases */
+  @Override
+  public AEADProvider getAEADProvider() {
+    return aeads;
+  }
+
+  public void setZeroRttAead(AEAD zeroRttAead) {
+    aeads.setZeroRttAead(zeroRttAead);
+  }
+
   public void setHandshakeAead(AEAD handshakeAead) {
     aeads.setHandshakeAead(handshakeAead);
   }
@@ -133,10 +211,23 @@ public class ServerConnection implements Connection {
     return streams.getOrCreate(streamId, handler);
   }
 
+  public Streams getStreams() {
+    return streams;
+  }
+
+  public void setPeerTransportParameters(TransportParameters transportParameters) {
+    streams.setPeerTransportParameters(transportParameters);
+    packetBuffer.setPeerTransportParameters(transportParameters);
+  }
+
   public PacketNumber lastAckedPacketNumber() {
     return packetBuffer.getLargestAcked();
   }
 
+  public RttEstimator getRttEstimator() {
+    return packetBuffer.getRttEstimator();
+  }
+
   public PacketNumber nextSendPacketNumber() {
     return sendPacketNumber.updateAndGet(packetNumber -> packetNumber.next());
   }
@@ -147,11 +238,14 @@ public class ServerConnection implements Connection {
 
   public Future<Void> close() {
     stateMachine.closeImmediate();
+    packetBuffer.close();
 
     return packetSender.destroy();
   }
 
   public Future<Void> closeByPeer() {
+    packetBuffer.close();
+
     return packetSender.destroy();
   }
 }
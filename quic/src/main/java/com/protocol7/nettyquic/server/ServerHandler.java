@@ -15,6 +15,9 @@ public class ServerHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
   @Override
   protected void channelRead0(final ChannelHandlerContext ctx, final DatagramPacket datagram) {
-    router.route(datagram.content(), new NettyPacketSender(ctx.channel(), datagram.sender()));
+    router.route(
+        datagram.content(),
+        datagram.sender(),
+        new NettyPacketSender(ctx.channel(), datagram.sender()));
   }
 }
@@ -2,6 +2,7 @@ package com.protocol7.nettyquic.server;
 
 public enum ServerState {
   BeforeInitial,
+  HandlingClientHello,
   WaitingForFinished,
   Ready,
   Closing,
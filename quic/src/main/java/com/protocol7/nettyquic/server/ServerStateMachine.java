@@ -1,19 +1,24 @@
 package com.protocol7.nettyquic.server;
 
+import static com.protocol7.nettyquic.server.ServerState.BeforeInitial;
+import static com.protocol7.nettyquic.server.ServerState.HandlingClientHello;
 import static com.protocol7.nettyquic.server.ServerState.Ready;
 import static com.protocol7.nettyquic.server.ServerState.WaitingForFinished;
 
-import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.protocol.TransportError;
 import com.protocol7.nettyquic.protocol.frames.*;
 import com.protocol7.nettyquic.protocol.packets.*;
 import com.protocol7.nettyquic.streams.Stream;
+import com.protocol7.nettyquic.tls.ServerFlightTemplate;
 import com.protocol7.nettyquic.tls.ServerTlsSession;
 import com.protocol7.nettyquic.tls.ServerTlsSession.ServerHelloAndHandshake;
-import com.protocol7.nettyquic.utils.Rnd;
 import java.security.PrivateKey;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,11 +33,26 @@ public class ServerStateMachine {
   private ServerState state = ServerState.BeforeInitial;
   private final ServerConnection connection;
   private final ServerTlsSession tlsEngine;
+  private final Optional<Executor> handshakeExecutor;
 
   public ServerStateMachine(
       final ServerConnection connection, List<byte[]> certificates, PrivateKey privateKey) {
+    this(connection, new ServerFlightTemplate(certificates), privateKey, QuicConfig.defaults());
+  }
+
+  /**
+   * @param flightTemplate the encoded handshake messages shared between connections
+   * @param config if it has a handshake executor, the crypto for handling the ClientHello is run on
+   *     it and the state machine is then resumed on the executor of the connection
+   */
+  public ServerStateMachine(
+      final ServerConnection connection,
+      ServerFlightTemplate flightTemplate,
+      PrivateKey privateKey,
+      QuicConfig config) {
     this.connection = connection;
-    tlsEngine = new ServerTlsSession(certificates, privateKey);
+    this.handshakeExecutor = config.getHandshakeExecutor();
+    tlsEngine = new ServerTlsSession(flightTemplate, privateKey, config);
   }
 
   public synchronized void processPacket(Packet packet) {
@@ -43,73 +63,113 @@ public class ServerStateMachine {
         packet.getDestinationConnectionId());
 
     // TODO check version
-    if (state == ServerState.BeforeInitial) {
+    if (state == BeforeInitial) {
       if (packet instanceof InitialPacket) {
         InitialPacket initialPacket = (InitialPacket) packet;
 
-        if (initialPacket.getToken().isPresent()) {
-          //  TODO validate token
-
-          connection.setRemoteConnectionId(packet.getSourceConnectionId().get());
-
-          CryptoFrame cf = (CryptoFrame) initialPacket.getPayload().getFrames().get(0);
-
-          ServerHelloAndHandshake shah = tlsEngine.handleClientHello(cf.getCryptoData());
-
-          connection.setHandshakeAead(shah.getHandshakeAEAD());
-          connection.setOneRttAead(shah.getOneRttAEAD());
+        // the client address, if required, is validated by the token before reaching us
+        connection.setRemoteConnectionId(packet.getSourceConnectionId().get());
 
-          InitialPacket serverHello =
-              InitialPacket.create(
-                  connection.getRemoteConnectionId(),
-                  connection.getLocalConnectionId(),
-                  connection.nextSendPacketNumber(),
-                  connection.getVersion(),
-                  Optional.empty(),
-                  new CryptoFrame(0, shah.getServerHello()));
-          connection.sendPacket(serverHello);
+        CryptoFrame cf = (CryptoFrame) initialPacket.getPayload().getFrames().get(0);
 
-          HandshakePacket handshake =
-              HandshakePacket.create(
-                  connection.getRemoteConnectionId(),
-                  connection.getLocalConnectionId(),
-                  connection.nextSendPacketNumber(),
-                  connection.getVersion(),
-                  new CryptoFrame(0, shah.getServerHandshake()));
-          connection.sendPacket(handshake);
-
-          state = WaitingForFinished;
+        if (handshakeExecutor.isPresent()) {
+          handleClientHelloAsync(cf.getCryptoData());
         } else {
-          byte[] retryToken = Rnd.rndBytes(34); // TODO generate a useful token
-
-          ConnectionId newLocalConnectionId = ConnectionId.random();
-          connection.setLocalConnectionId(newLocalConnectionId);
-
-          RetryPacket retry =
-              new RetryPacket(
-                  connection.getVersion(),
-                  initialPacket.getSourceConnectionId(),
-                  Optional.of(newLocalConnectionId),
-                  initialPacket.getDestinationConnectionId().get(),
-                  retryToken);
-          connection.sendPacket(retry);
+          sendServerHello(tlsEngine.handleClientHello(cf.getCryptoData()));
         }
       } else {
         log.warn("Unexpected packet in BeforeInitial: " + packet);
       }
+    } else if (state == HandlingClientHello) {
+      // retransmitted initial packets are ignored, and there are no keys for any others yet
+      log.debug("Unexpected packet in HandlingClientHello: " + packet);
     } else if (state == WaitingForFinished) {
-      FullPacket fp = (FullPacket) packet;
-      CryptoFrame cryptoFrame = (CryptoFrame) fp.getPayload().getFrames().get(0);
-      tlsEngine.handleClientFinished(cryptoFrame.getCryptoData());
-
-      state = Ready;
+      if (packet instanceof InitialPacket) {
+        // retransmitted initial packets are ignored
+        log.debug("Unexpected initial packet in WaitingForFinished: " + packet);
+      } else {
+        FullPacket fp = (FullPacket) packet;
+        Optional<CryptoFrame> cryptoFrame =
+            fp.getPayload()
+                .getFrames()
+                .stream()
+                .filter(frame -> frame instanceof CryptoFrame)
+                .map(frame -> (CryptoFrame) frame)
+                .findFirst();
+
+        // without the finished, this packet was reordered or the finished lost
+        if (cryptoFrame.isPresent()) {
+          tlsEngine.handleClientFinished(cryptoFrame.get().getCryptoData());
+
+          state = Ready;
+
+          tlsEngine
+              .newSessionTicket()
+              .ifPresent(ticket -> connection.sendPacket(new CryptoFrame(0, ticket)));
+        }
 
-      handleFrames(fp);
+        handleFrames(fp);
+      }
     } else if (state == Ready) {
       handleFrames((FullPacket) packet);
     }
   }
 
+  private void handleClientHelloAsync(byte[] clientHello) {
+    state = HandlingClientHello;
+    try {
+      CompletableFuture.supplyAsync(
+              () -> tlsEngine.handleClientHello(clientHello), handshakeExecutor.get())
+          .whenCompleteAsync(this::onClientHelloHandled, connection.getExecutor());
+    } catch (RejectedExecutionException e) {
+      // handled once the client retransmits the initial packet
+      log.debug("Handshake executor busy, dropping ClientHello");
+      state = BeforeInitial;
+    }
+  }
+
+  private synchronized void onClientHelloHandled(ServerHelloAndHandshake shah, Throwable e) {
+    if (state != HandlingClientHello) {
+      // closed while handling the ClientHello
+      return;
+    }
+
+    if (e != null) {
+      log.warn("Failed to handle ClientHello", e);
+      state = BeforeInitial;
+    } else {
+      sendServerHello(shah);
+    }
+  }
+
+  private void sendServerHello(ServerHelloAndHandshake shah) {
+    connection.setHandshakeAead(shah.getHandshakeAEAD());
+    connection.setOneRttAead(shah.getOneRttAEAD());
+    shah.getEarlyDataAEAD().ifPresent(connection::setZeroRttAead);
+    connection.setPeerTransportParameters(shah.getTransportParameters());
+
+    InitialPacket serverHello =
+        InitialPacket.create(
+            connection.getRemoteConnectionId(),
+            connection.getLocalConnectionId(),
+            connection.nextSendPacketNumber(),
+            connection.getVersion(),
+            Optional.empty(),
+            new CryptoFrame(0, shah.getServerHello()));
+    connection.sendPacket(serverHello);
+
+    HandshakePacket handshake =
+        HandshakePacket.create(
+            connection.getRemoteConnectionId(),
+            connection.getLocalConnectionId(),
+            connection.nextSendPacketNumber(),
+            connection.getVersion(),
+            new CryptoFrame(0, shah.getServerHandshake()));
+    connection.sendPacket(handshake);
+
+    state = WaitingForFinished;
+  }
+
   private void handleFrames(FullPacket packet) {
     for (Frame frame : packet.getPayload().getFrames()) {
 
@@ -121,6 +181,15 @@ public class ServerStateMachine {
         ResetStreamFrame rsf = (ResetStreamFrame) frame;
         Stream stream = connection.getOrCreateStream(rsf.getStreamId());
         stream.onReset(rsf.getApplicationErrorCode(), rsf.getOffset());
+      } else if (frame instanceof MaxDataFrame) {
+        MaxDataFrame mdf = (MaxDataFrame) frame;
+        connection.getStreams().onMaxData(mdf.getMaxData());
+      } else if (frame instanceof MaxStreamDataFrame) {
+        MaxStreamDataFrame msdf = (MaxStreamDataFrame) frame;
+        connection.getStreams().onMaxStreamData(msdf.getStreamId(), msdf.getMaxStreamData());
+      } else if (frame instanceof DataBlockedFrame || frame instanceof StreamDataBlockedFrame) {
+        // window updates are sent as data is consumed, nothing more to do
+        log.debug("Peer blocked by flow control: {}", frame);
       } else if (frame instanceof PingFrame) {
         PingFrame pf = (PingFrame) frame;
       } else if (frame instanceof ConnectionCloseFrame) {
@@ -132,7 +201,10 @@ public class ServerStateMachine {
   private void handlePeerClose() {
     log.debug("Peer closing connection");
     state = ServerState.Closing;
-    connection.closeByPeer().awaitUninterruptibly(); // TODO fix, make async
+    connection.closeByPeer().addListener(future -> onClosed());
+  }
+
+  private synchronized void onClosed() {
     log.debug("Connection closed");
     state = ServerState.Closed;
   }
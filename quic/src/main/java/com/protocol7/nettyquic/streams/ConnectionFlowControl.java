@@ -0,0 +1,108 @@
+package com.protocol7.nettyquic.streams;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.nettyquic.connection.Connection;
+import com.protocol7.nettyquic.protocol.frames.DataBlockedFrame;
+import com.protocol7.nettyquic.protocol.frames.MaxDataFrame;
+
+/**
+ * Connection level flow control, shared by all streams. Tracks the credit given by the peer in
+ * MAX_DATA for the data we send, and extends the credit given to the peer as the application
+ * consumes received data.
+ *
+ * <p>Stream locks may be held when calling into this class, never the other way around.
+ */
+public class ConnectionFlowControl {
+
+  private final Connection connection;
+  private final ReceiveWindow receiveWindow;
+
+  // send side, limit set by the peer
+  private long maxData;
+  private long dataSent = 0;
+  private long blockedAt = -1;
+
+  // receive side, limit advertised to the peer
+  private long dataReceived = 0;
+
+  public ConnectionFlowControl(
+      final Connection connection, final long maxData, final ReceiveWindow receiveWindow) {
+    this.connection = requireNonNull(connection);
+    this.maxData = maxData;
+    this.receiveWindow = requireNonNull(receiveWindow);
+  }
+
+  /**
+   * Reserves connection credit for sending stream data. If no credit is left, a DATA_BLOCKED frame
+   * is sent, once per limit.
+   *
+   * @return the number of bytes that can be sent, at most wanted
+   */
+  public long reserve(final long wanted) {
+    final long granted;
+    final long limit;
+    synchronized (this) {
+      granted = Math.max(0, Math.min(wanted, maxData - dataSent));
+      dataSent += granted;
+
+      if (granted > 0 || wanted == 0 || blockedAt == maxData) {
+        return granted;
+      }
+      blockedAt = maxData;
+      limit = maxData;
+    }
+    connection.sendPacket(new DataBlockedFrame(limit));
+    return granted;
+  }
+
+  /**
+   * Sets the initial limit from the peer's transport parameters. Like MAX_DATA, the limit is never
+   * lowered, as data might already have been sent under a limit raised by a MAX_DATA frame.
+   */
+  public synchronized void setMaxData(final long maxData) {
+    this.maxData = Math.max(this.maxData, maxData);
+  }
+
+  /** @return true if the limit was raised and blocked streams should be flushed */
+  public synchronized boolean onMaxData(final long maxData) {
+    if (maxData > this.maxData) {
+      this.maxData = maxData;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Called when a stream receives data beyond its previously highest offset
+   *
+   * @return false if the peer exceeded the connection limit
+   */
+  public synchronized boolean onReceived(final long bytes) {
+    dataReceived += bytes;
+    return receiveWindow.isAllowed(dataReceived);
+  }
+
+  /** Called as the application reads data, extends the limit when half the window is used */
+  public void onConsumed(final long bytes) {
+    final long newLimit;
+    synchronized (this) {
+      newLimit = receiveWindow.onConsumed(bytes);
+    }
+    if (newLimit > 0) {
+      connection.sendPacket(new MaxDataFrame(newLimit));
+    }
+  }
+
+  public synchronized long getMaxData() {
+    return maxData;
+  }
+
+  public synchronized long getReceiveLimit() {
+    return receiveWindow.getLimit();
+  }
+
+  public synchronized long getReceiveWindow() {
+    return receiveWindow.getWindow();
+  }
+}
@@ -0,0 +1,89 @@
+package com.protocol7.nettyquic.streams;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.connection.Connection;
+
+/**
+ * Receive side of a flow control window. The limit advertised to the peer is extended as the
+ * application consumes data. Flow control lets the peer send at most one window per round trip, so
+ * if the application consumes more than half of that, the window is likely what limits the transfer
+ * and is doubled, up to a ceiling. Not thread safe, callers are expected to synchronize.
+ */
+public class ReceiveWindow {
+
+  /** Default ceiling for auto-tuned windows, in bytes */
+  public static final long DEFAULT_MAX_WINDOW = 16 * 1024 * 1024;
+
+  private final Connection connection;
+  private final Ticker ticker;
+  private final long maxWindow;
+
+  private long window;
+  private long limit;
+  private long consumed = 0;
+
+  // start of the period since the last window update
+  private long epochStart = Long.MIN_VALUE;
+  private long epochConsumed = 0;
+
+  public ReceiveWindow(
+      final Connection connection, final Ticker ticker, final long window, final long maxWindow) {
+    this.connection = requireNonNull(connection);
+    this.ticker = requireNonNull(ticker);
+    this.window = window;
+    this.limit = window;
+    this.maxWindow = Math.max(window, maxWindow);
+  }
+
+  /** @return true if data up to the offset is within the advertised limit */
+  public boolean isAllowed(final long offset) {
+    return offset <= limit;
+  }
+
+  /**
+   * Called as the application consumes data. Once half of the window is used, the limit is extended
+   * and should be sent to the peer.
+   *
+   * @return the new limit, or 0 if it was not extended
+   */
+  public long onConsumed(final long bytes) {
+    final long now = ticker.read();
+    if (epochStart == Long.MIN_VALUE) {
+      epochStart = now;
+    }
+    consumed += bytes;
+
+    if (limit - consumed >= window / 2) {
+      return 0;
+    }
+
+    maybeGrow(now);
+    limit = consumed + window;
+    epochStart = now;
+    epochConsumed = consumed;
+    return limit;
+  }
+
+  private void maybeGrow(final long now) {
+    if (window >= maxWindow) {
+      return;
+    }
+
+    final long rtt = connection.getRttEstimator().getSmoothedRtt();
+    final double elapsed = now - epochStart;
+    final double consumedInEpoch = consumed - epochConsumed;
+    if (elapsed * window < 2.0 * rtt * consumedInEpoch) {
+      window = Math.min(window * 2, maxWindow);
+    }
+  }
+
+  public long getWindow() {
+    return window;
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+}
@@ -1,14 +1,27 @@
 package com.protocol7.nettyquic.streams;
 
+import com.google.common.base.Ticker;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.protocol.StreamId;
+import com.protocol7.nettyquic.protocol.TransportError;
+import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.protocol.frames.ConnectionCloseFrame;
 import com.protocol7.nettyquic.protocol.frames.Frame;
+import com.protocol7.nettyquic.protocol.frames.FrameType;
+import com.protocol7.nettyquic.protocol.frames.MaxStreamDataFrame;
 import com.protocol7.nettyquic.protocol.frames.ResetStreamFrame;
+import com.protocol7.nettyquic.protocol.frames.StreamDataBlockedFrame;
 import com.protocol7.nettyquic.protocol.frames.StreamFrame;
 import com.protocol7.nettyquic.protocol.packets.FullPacket;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Stream {
 
@@ -26,6 +39,8 @@ public class Stream {
     }
   }
 
+  private final Logger log = LoggerFactory.getLogger(Stream.class);
+
   private final StreamId id;
   private final Connection connection;
   private final StreamListener listener;
@@ -34,16 +49,69 @@ public class Stream {
   private final SendStateMachine sendStateMachine = new SendStateMachine();
   private final ReceiveStateMachine receiveStateMachine = new ReceiveStateMachine();
   private final ReceivedDataBuffer receivedDataBuffer = new ReceivedDataBuffer();
+  private final ConnectionFlowControl flowControl;
+
+  // send side flow control, guarded by this
+  private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+  private boolean finWritten = false;
+  private long maxStreamData;
+  private long blockedAt = -1;
+
+  // receive side flow control, only accessed when handling frames
+  private final ReceiveWindow receiveWindow;
+  private long highestReceived = 0;
+  private boolean finReceived = false;
 
   public Stream(
       final StreamId id,
       final Connection connection,
       final StreamListener listener,
       StreamType streamType) {
+    this(
+        id,
+        connection,
+        listener,
+        streamType,
+        defaultFlowControl(connection),
+        TransportParameters.defaults(Version.CURRENT).getInitialMaxStreamDataBidiRemote(),
+        new ReceiveWindow(
+            connection,
+            Ticker.systemTicker(),
+            TransportParameters.defaults(Version.CURRENT).getInitialMaxStreamDataBidiLocal(),
+            ReceiveWindow.DEFAULT_MAX_WINDOW));
+  }
+
+  /**
+   * @param maxStreamData initial limit for data sent on the stream, as set by the peer
+   * @param receiveWindow limit for data received on the stream
+   */
+  public Stream(
+      final StreamId id,
+      final Connection connection,
+      final StreamListener listener,
+      final StreamType streamType,
+      final ConnectionFlowControl flowControl,
+      final long maxStreamData,
+      final ReceiveWindow receiveWindow) {
     this.id = id;
     this.connection = connection;
     this.listener = listener;
     this.streamType = streamType;
+    this.flowControl = flowControl;
+    this.maxStreamData = maxStreamData;
+    this.receiveWindow = receiveWindow;
+  }
+
+  private static ConnectionFlowControl defaultFlowControl(final Connection connection) {
+    final TransportParameters tps = TransportParameters.defaults(Version.CURRENT);
+    return new ConnectionFlowControl(
+        connection,
+        tps.getInitialMaxData(),
+        new ReceiveWindow(
+            connection,
+            Ticker.systemTicker(),
+            tps.getInitialMaxData(),
+            ReceiveWindow.DEFAULT_MAX_WINDOW));
   }
 
   public StreamId getId() {
@@ -54,19 +122,72 @@ public class Stream {
     return streamType;
   }
 
-  public void write(final byte[] b, boolean finish) {
+  /**
+   * Writes data to the stream. Data beyond the flow control limits set by the peer is queued and
+   * sent when the limits are raised.
+   */
+  public synchronized void write(final byte[] b, boolean finish) {
     canWrite();
 
-    final long frameOffset = offset.getAndAdd(b.length);
-    final StreamFrame sf = new StreamFrame(id, frameOffset, finish, b);
-    FullPacket p = connection.sendPacket(sf);
+    if (finish) {
+      finWritten = true;
+    }
+    pendingWrites.add(new PendingWrite(b, finish));
+    flush();
+  }
+
+  /** Sends as much of the queued data as the stream and connection limits allow */
+  synchronized void flush() {
+    while (!pendingWrites.isEmpty()) {
+      final PendingWrite write = pendingWrites.peek();
+
+      final long streamCredit = maxStreamData - offset.get();
+      final int wanted = (int) Math.min(write.remaining(), streamCredit);
+      final int granted = (int) flowControl.reserve(wanted);
+      if (granted == 0 && write.remaining() > 0) {
+        if (streamCredit == 0) {
+          sendBlocked();
+        }
+        // DATA_BLOCKED is sent by the connection flow control
+        return;
+      }
 
-    sendStateMachine.onStream(p.getPacketNumber(), finish);
+      final byte[] data = write.take(granted);
+      final boolean fin = write.isDone() && write.finish;
+      if (write.isDone()) {
+        pendingWrites.poll();
+      }
+
+      final long frameOffset = offset.getAndAdd(data.length);
+      final StreamFrame sf = new StreamFrame(id, frameOffset, fin, data);
+      FullPacket p = connection.sendPacket(sf);
+
+      sendStateMachine.onStream(p.getPacketNumber(), fin);
+    }
   }
 
-  public void reset(int applicationErrorCode) {
+  // must be called while holding the lock
+  private void sendBlocked() {
+    if (blockedAt != maxStreamData) {
+      blockedAt = maxStreamData;
+      connection.sendPacket(new StreamDataBlockedFrame(id, maxStreamData));
+    }
+  }
+
+  /** The peer raised the limit for data sent on this stream */
+  public synchronized void onMaxStreamData(final long maxStreamData) {
+    if (maxStreamData > this.maxStreamData) {
+      this.maxStreamData = maxStreamData;
+      flush();
+    }
+  }
+
+  public synchronized void reset(int applicationErrorCode) {
     canReset();
 
+    // queued data will never be sent
+    pendingWrites.clear();
+
     final Frame frame = new ResetStreamFrame(id, applicationErrorCode, offset.get());
 
     final FullPacket p = connection.sendPacket(frame);
@@ -75,7 +196,7 @@ public class Stream {
   }
 
   private void canWrite() {
-    if (!streamType.canSend() || !sendStateMachine.canSend()) {
+    if (!streamType.canSend() || !sendStateMachine.canSend() || finWritten) {
       throw new IllegalStateException();
     }
   }
@@ -87,11 +208,29 @@ public class Stream {
   }
 
   public void onData(final long offset, final boolean finish, final byte[] b) {
+    final long end = offset + b.length;
+    if (!receiveWindow.isAllowed(end)) {
+      onFlowControlError();
+      return;
+    }
+    if (end > highestReceived) {
+      final long newBytes = end - highestReceived;
+      highestReceived = end;
+      if (!flowControl.onReceived(newBytes)) {
+        onFlowControlError();
+        return;
+      }
+    }
+    if (finish) {
+      finReceived = true;
+    }
+
     receivedDataBuffer.onData(b, offset, finish);
 
     Optional<byte[]> data = receivedDataBuffer.read();
     while (data.isPresent()) {
       listener.onData(this, data.get());
+      onConsumed(data.get().length);
       data = receivedDataBuffer.read();
     }
     if (receivedDataBuffer.isDone()) {
@@ -101,6 +240,25 @@ public class Stream {
     receiveStateMachine.onStream(finish);
   }
 
+  private void onConsumed(final int length) {
+    flowControl.onConsumed(length);
+
+    final long limit = receiveWindow.onConsumed(length);
+    // once the final size is known, the peer needs no more credit
+    if (limit > 0 && !finReceived) {
+      connection.sendPacket(new MaxStreamDataFrame(id, limit));
+    }
+  }
+
+  private void onFlowControlError() {
+    log.warn("Peer exceeded flow control limit on stream {}", id);
+    connection.sendPacket(
+        ConnectionCloseFrame.connection(
+            TransportError.FLOW_CONTROL_ERROR.getValue(),
+            FrameType.STREAM.getType(),
+            "Flow control limit exceeded"));
+  }
+
   public void onReset(final int applicationErrorCode, final long offset) {
     receiveStateMachine.onReset();
     listener.onReset(this, applicationErrorCode, offset);
@@ -114,4 +272,34 @@ public class Stream {
   public boolean isClosed() {
     return !sendStateMachine.canSend() || !receiveStateMachine.canReceive();
   }
+
+  private static class PendingWrite {
+    private final byte[] data;
+    private final boolean finish;
+    private int position = 0;
+
+    private PendingWrite(final byte[] data, final boolean finish) {
+      this.data = data;
+      this.finish = finish;
+    }
+
+    private int remaining() {
+      return data.length - position;
+    }
+
+    private boolean isDone() {
+      return position == data.length;
+    }
+
+    private byte[] take(final int length) {
+      final byte[] b;
+      if (position == 0 && length == data.length) {
+        b = data;
+      } else {
+        b = Arrays.copyOfRange(data, position, position + length);
+      }
+      position += length;
+      return b;
+    }
+  }
 }
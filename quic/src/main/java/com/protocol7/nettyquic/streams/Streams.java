@@ -1,28 +1,68 @@
 package com.protocol7.nettyquic.streams;
 
+import com.google.common.base.Ticker;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.protocol.PacketBuffer;
 import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.protocol.StreamId;
+import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.streams.Stream.StreamType;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class Streams implements PacketBuffer.AckListener {
 
   private final Connection connection;
+  private final TransportParameters localTransportParameters;
+  private final long maxReceiveWindow;
+  private final Ticker ticker;
+  private final ConnectionFlowControl flowControl;
   private final Map<StreamId, Stream> streams = new ConcurrentHashMap<>();
+  private final Set<StreamId> localStreams = ConcurrentHashMap.newKeySet();
   private StreamId maxId = new StreamId(0);
+  // until the handshake is done, assume the peer uses the same limits as we do
+  private volatile TransportParameters peerTransportParameters;
 
   public Streams(final Connection connection) {
+    this(connection, ReceiveWindow.DEFAULT_MAX_WINDOW);
+  }
+
+  public Streams(final Connection connection, final long maxReceiveWindow) {
+    // same parameters as sent by the TLS sessions
+    this(
+        connection,
+        TransportParameters.defaults(Version.CURRENT),
+        maxReceiveWindow,
+        Ticker.systemTicker());
+  }
+
+  /**
+   * @param maxReceiveWindow ceiling for the connection and stream receive windows, which grow from
+   *     the initial limits in the local transport parameters as needed
+   */
+  public Streams(
+      final Connection connection,
+      final TransportParameters localTransportParameters,
+      final long maxReceiveWindow,
+      final Ticker ticker) {
     this.connection = connection;
+    this.localTransportParameters = localTransportParameters;
+    this.peerTransportParameters = localTransportParameters;
+    this.maxReceiveWindow = maxReceiveWindow;
+    this.ticker = ticker;
+
+    final long maxData = limit(localTransportParameters.getInitialMaxData());
+    this.flowControl = new ConnectionFlowControl(connection, maxData, receiveWindow(maxData));
   }
 
   public Stream openStream(boolean client, boolean bidirectional, StreamListener handler) {
     StreamType type = bidirectional ? StreamType.Bidirectional : StreamType.Sending;
     StreamId streamId = StreamId.next(maxId, client, bidirectional);
     this.maxId = streamId;
-    Stream stream = new Stream(streamId, connection, handler, type);
+    Stream stream = createStream(streamId, handler, type, true);
+    localStreams.add(streamId);
     streams.put(streamId, stream);
     return stream;
   }
@@ -31,8 +71,8 @@ public class Streams implements PacketBuffer.AckListener {
     Stream stream = streams.get(streamId);
     if (stream == null) {
       stream =
-          new Stream(
-              streamId, connection, handler, StreamType.Bidirectional); // TODO support stream type
+          createStream(
+              streamId, handler, StreamType.Bidirectional, false); // TODO support stream type
       Stream existingStream = streams.putIfAbsent(streamId, stream);
       if (existingStream != null) {
         stream = existingStream;
@@ -41,6 +81,82 @@ public class Streams implements PacketBuffer.AckListener {
     return stream;
   }
 
+  private Stream createStream(
+      final StreamId streamId,
+      final StreamListener handler,
+      final StreamType type,
+      final boolean local) {
+    return new Stream(
+        streamId,
+        connection,
+        handler,
+        type,
+        flowControl,
+        sendLimit(streamId, local),
+        receiveWindow(streamId, local));
+  }
+
+  /**
+   * Initial limit for data we send, the peer's local limit applies to streams opened by the peer
+   */
+  private long sendLimit(final StreamId streamId, final boolean local) {
+    final TransportParameters peer = peerTransportParameters;
+    if (!streamId.isBidirectional()) {
+      return limit(peer.getInitialMaxStreamDataUni());
+    } else if (local) {
+      return limit(peer.getInitialMaxStreamDataBidiRemote());
+    } else {
+      return limit(peer.getInitialMaxStreamDataBidiLocal());
+    }
+  }
+
+  private ReceiveWindow receiveWindow(final StreamId streamId, final boolean local) {
+    if (!streamId.isBidirectional()) {
+      return receiveWindow(limit(localTransportParameters.getInitialMaxStreamDataUni()));
+    } else if (local) {
+      return receiveWindow(limit(localTransportParameters.getInitialMaxStreamDataBidiLocal()));
+    } else {
+      return receiveWindow(limit(localTransportParameters.getInitialMaxStreamDataBidiRemote()));
+    }
+  }
+
+  private ReceiveWindow receiveWindow(final long initialWindow) {
+    return new ReceiveWindow(connection, ticker, initialWindow, maxReceiveWindow);
+  }
+
+  // absent parameters give no credit
+  private static long limit(final int value) {
+    return Math.max(value, 0);
+  }
+
+  /**
+   * Called when the handshake is done. Streams already opened, e.g. for early data, were given the
+   * limits assumed until then, and get the peer's limits if higher.
+   */
+  public void setPeerTransportParameters(final TransportParameters peerTransportParameters) {
+    this.peerTransportParameters = peerTransportParameters;
+    flowControl.setMaxData(limit(peerTransportParameters.getInitialMaxData()));
+
+    for (Stream stream : streams.values()) {
+      stream.onMaxStreamData(sendLimit(stream.getId(), localStreams.contains(stream.getId())));
+    }
+  }
+
+  public void onMaxData(final long maxData) {
+    if (flowControl.onMaxData(maxData)) {
+      for (Stream stream : streams.values()) {
+        stream.flush();
+      }
+    }
+  }
+
+  public void onMaxStreamData(final StreamId streamId, final long maxStreamData) {
+    final Stream stream = streams.get(streamId);
+    if (stream != null) {
+      stream.onMaxStreamData(maxStreamData);
+    }
+  }
+
   public void onAck(PacketNumber pn) {
     for (Stream stream : streams.values()) {
       stream.onAck(pn);
@@ -6,8 +6,6 @@ import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.spec.MGF1ParameterSpec;
-import java.security.spec.PSSParameterSpec;
 import java.util.Arrays;
 
 public class CertificateVerify {
@@ -26,17 +24,16 @@ public class CertificateVerify {
   private static final byte[] SERVER_PREFIX = Bytes.concat(PADDING, SERVER_CONTEXT, SEPARATOR);
   private static final byte[] CLIENT_PREFIX = Bytes.concat(PADDING, CLIENT_CONTEXT, SEPARATOR);
 
-  private static final String ALGORITHM = "RSASSA-PSS";
-  private static final PSSParameterSpec PARAMETER_SPEC =
-      new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1);
-
   public static byte[] sign(byte[] data, PrivateKey key, boolean isClient) {
+    return sign(data, key, SignatureScheme.RSA_PSS_RSAE_SHA256, isClient);
+  }
+
+  public static byte[] sign(byte[] data, PrivateKey key, SignatureScheme scheme, boolean isClient) {
     byte[] prefix = isClient ? CLIENT_PREFIX : SERVER_PREFIX;
     byte[] toSign = Bytes.concat(prefix, data);
 
     try {
-      Signature sig = Signature.getInstance(ALGORITHM);
-      sig.setParameter(PARAMETER_SPEC);
+      Signature sig = scheme.newSignature();
 
       sig.initSign(key);
       sig.update(toSign);
@@ -48,12 +45,20 @@ public class CertificateVerify {
 
   public static boolean verify(
       byte[] signature, byte[] data, PublicKey publicKey, boolean isClient) {
+    return verify(signature, data, publicKey, SignatureScheme.RSA_PSS_RSAE_SHA256, isClient);
+  }
+
+  public static boolean verify(
+      byte[] signature,
+      byte[] data,
+      PublicKey publicKey,
+      SignatureScheme scheme,
+      boolean isClient) {
     byte[] prefix = isClient ? CLIENT_PREFIX : SERVER_PREFIX;
     byte[] toVerify = Bytes.concat(prefix, data);
 
     try {
-      Signature sig = Signature.getInstance(ALGORITHM);
-      sig.setParameter(PARAMETER_SPEC);
+      Signature sig = scheme.newSignature();
 
       sig.initVerify(publicKey);
       sig.update(toVerify);
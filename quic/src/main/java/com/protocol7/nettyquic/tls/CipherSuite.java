@@ -4,13 +4,14 @@ import io.netty.buffer.ByteBuf;
 import java.util.*;
 
 public enum CipherSuite {
-  TLS_AES_128_GCM_SHA256(0x1301),
-  TLS_AES_256_GCM_SHA384(0x1302),
-  TLS_CHACHA20_POLY1305_SHA256(0x1303);
+  TLS_AES_128_GCM_SHA256(0x1301, 16, "SHA-256", 32),
+  TLS_AES_256_GCM_SHA384(0x1302, 32, "SHA-384", 48),
+  TLS_CHACHA20_POLY1305_SHA256(0x1303, 32, "SHA-256", 32);
 
   private static final EnumSet<CipherSuite> ALL = EnumSet.allOf(CipherSuite.class);
 
-  public static final List<CipherSuite> SUPPORTED = List.of(TLS_AES_128_GCM_SHA256);
+  public static final List<CipherSuite> SUPPORTED =
+      List.of(TLS_AES_128_GCM_SHA256, TLS_AES_256_GCM_SHA384, TLS_CHACHA20_POLY1305_SHA256);
 
   public static List<CipherSuite> parseKnown(ByteBuf bb) {
     int len = bb.readShort() / 2;
@@ -45,12 +46,38 @@ public enum CipherSuite {
   }
 
   private final int value;
+  private final int keyLength;
+  private final String hashAlgorithm;
+  private final int hashLength;
 
-  CipherSuite(int value) {
+  CipherSuite(int value, int keyLength, String hashAlgorithm, int hashLength) {
     this.value = value;
+    this.keyLength = keyLength;
+    this.hashAlgorithm = hashAlgorithm;
+    this.hashLength = hashLength;
   }
 
   public int getValue() {
     return value;
   }
+
+  /** Length of the AEAD and header protection keys, in bytes */
+  public int getKeyLength() {
+    return keyLength;
+  }
+
+  /** Hash used for the transcript and key derivation, as a MessageDigest algorithm name */
+  public String getHashAlgorithm() {
+    return hashAlgorithm;
+  }
+
+  /** The HMAC algorithm for HKDF and the finished messages, as a Mac algorithm name */
+  public String getMacAlgorithm() {
+    return "Hmac" + hashAlgorithm.replace("-", "");
+  }
+
+  /** Length of the hash output and of the secrets derived with it, in bytes */
+  public int getHashLength() {
+    return hashLength;
+  }
 }
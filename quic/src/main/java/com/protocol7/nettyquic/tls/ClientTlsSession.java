@@ -1,17 +1,29 @@
 package com.protocol7.nettyquic.tls;
 
 import static com.protocol7.nettyquic.tls.aead.Labels.CLIENT_HANDSHAKE_TRAFFIC_SECRET;
+import static com.protocol7.nettyquic.tls.aead.Labels.RESUMPTION;
+import static com.protocol7.nettyquic.tls.aead.Labels.RESUMPTION_MASTER_SECRET;
+import static java.util.Objects.requireNonNull;
 
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.aead.HandshakeAEAD;
 import com.protocol7.nettyquic.tls.aead.OneRttAEAD;
+import com.protocol7.nettyquic.tls.aead.ZeroRttAEAD;
+import com.protocol7.nettyquic.tls.extensions.CompressCertificate;
+import com.protocol7.nettyquic.tls.extensions.EarlyData;
+import com.protocol7.nettyquic.tls.extensions.Extension;
 import com.protocol7.nettyquic.tls.extensions.ExtensionType;
 import com.protocol7.nettyquic.tls.extensions.KeyShare;
+import com.protocol7.nettyquic.tls.extensions.PreSharedKey;
+import com.protocol7.nettyquic.tls.extensions.PskKeyExchangeModes;
 import com.protocol7.nettyquic.tls.extensions.SupportedVersions;
 import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import com.protocol7.nettyquic.tls.messages.ClientFinished;
 import com.protocol7.nettyquic.tls.messages.ClientHello;
+import com.protocol7.nettyquic.tls.messages.NewSessionTicket;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.EncryptedExtensions;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificate;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificateVerify;
@@ -21,6 +33,9 @@ import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,23 +44,57 @@ public class ClientTlsSession {
 
   private final Logger log = LoggerFactory.getLogger(ClientTlsSession.class);
 
+  private final List<CipherSuite> cipherSuites;
+  private final SessionTicketCache ticketCache;
+  private final String serverName;
+  private final KeyExchangePool keyExchangePool;
+
   private KeyExchange kek;
+  private CipherSuite cipherSuite;
 
   private ByteBuf handshakeBuffer;
   private byte[] clientHello;
   private byte[] serverHello;
+  private TranscriptHash transcript;
+  private byte[] helloHash;
   private byte[] handshakeSecret;
+  private byte[] resumptionMasterSecret;
+  private Optional<AEAD> earlyDataAead;
+
+  // kept over resets, so that the same ticket is offered again after a retry
+  private Optional<SessionTicketCache.Ticket> ticket = Optional.empty();
+  private boolean resumed;
+  private boolean earlyDataAccepted;
 
   public ClientTlsSession() {
+    this(QuicConfig.defaults(), "");
+  }
+
+  /**
+   * @param config cipher suites, ticket cache and key exchange pool of the client
+   * @param serverName the server tickets are stored for and taken from the cache
+   */
+  public ClientTlsSession(QuicConfig config, String serverName) {
+    this.cipherSuites = config.getCipherSuites();
+    this.ticketCache = config.getTicketCache();
+    this.serverName = requireNonNull(serverName);
+    this.keyExchangePool = config.getKeyExchangePool();
     reset();
   }
 
   public void reset() {
-    kek = KeyExchange.generate(Group.X25519);
+    kek = null;
     handshakeBuffer = Unpooled.buffer(); // replace with position keeping buffer
     clientHello = null;
     serverHello = null;
+    transcript = null;
+    helloHash = null;
     handshakeSecret = null;
+    resumptionMasterSecret = null;
+    cipherSuite = null;
+    earlyDataAead = Optional.empty();
+    resumed = false;
+    earlyDataAccepted = false;
   }
 
   public byte[] startHandshake() {
@@ -53,11 +102,65 @@ public class ClientTlsSession {
       throw new IllegalStateException("Already started");
     }
 
-    ClientHello ch = ClientHello.defaults(kek, TransportParameters.defaults(Version.CURRENT));
+    kek = keyExchangePool.take();
+
+    if (!ticket.isPresent()) {
+      ticket = ticketCache.take(serverName).filter(t -> cipherSuites.contains(t.getCipherSuite()));
+    }
+
+    TransportParameters tps = TransportParameters.defaults(Version.CURRENT);
+    if (!ticket.isPresent()) {
+      ClientHello ch =
+          ClientHello.defaults(kek, tps, cipherSuites, List.of(CompressCertificate.DEFAULT));
+      clientHello = Bytes.write(bb -> ch.write(bb, true));
+      return clientHello;
+    }
+
+    // pre_shared_key must be last, it is written with an empty binder which is then filled in
+    CipherSuite ticketCipherSuite = ticket.get().getCipherSuite();
+    int binderLength = ticketCipherSuite.getHashLength();
+    List<Extension> extensions = new ArrayList<>();
+    extensions.add(CompressCertificate.DEFAULT);
+    extensions.add(PskKeyExchangeModes.PSK_DHE);
+    if (ticket.get().isEarlyDataAllowed()) {
+      extensions.add(EarlyData.INDICATION);
+    }
+    extensions.add(
+        PreSharedKey.offer(
+            ticket.get().getTicket(), ticket.get().getObfuscatedAge(), binderLength));
+    ClientHello ch = ClientHello.defaults(kek, tps, cipherSuites, extensions);
     clientHello = Bytes.write(bb -> ch.write(bb, true));
+
+    // binder = HMAC(finished_key(binder_key), Hash(ClientHello up to the binders))
+    int bindersLength = 2 + 1 + binderLength;
+    byte[] truncatedHello = Arrays.copyOf(clientHello, clientHello.length - bindersLength);
+    byte[] binder =
+        VerifyData.create(
+            ticketCipherSuite,
+            HKDF.calculateBinderKey(ticketCipherSuite, ticket.get().getPsk()),
+            Hash.hash(ticketCipherSuite, truncatedHello));
+    System.arraycopy(binder, 0, clientHello, clientHello.length - binderLength, binderLength);
+
+    if (ticket.get().isEarlyDataAllowed()) {
+      earlyDataAead =
+          Optional.of(
+              ZeroRttAEAD.create(
+                  ticket.get().getPsk(),
+                  Hash.hash(ticketCipherSuite, clientHello),
+                  ticketCipherSuite));
+    }
+
     return clientHello;
   }
 
+  /**
+   * @return the AEAD to send early data with after the ClientHello last started, or empty if the
+   *     ticket offered does not allow early data
+   */
+  public Optional<AEAD> getEarlyDataAead() {
+    return earlyDataAead;
+  }
+
   public AEAD handleServerHello(byte[] msg) {
     if (clientHello == null) {
       throw new IllegalStateException("Not started");
@@ -68,6 +171,11 @@ public class ClientTlsSession {
     ByteBuf bb = Unpooled.wrappedBuffer(msg);
     ServerHello hello = ServerHello.parse(bb, true);
 
+    if (!cipherSuites.contains(hello.getCipherSuites())) {
+      throw new IllegalArgumentException("Cipher suite not offered: " + hello.getCipherSuites());
+    }
+    cipherSuite = hello.getCipherSuites();
+
     SupportedVersions version =
         (SupportedVersions)
             hello
@@ -83,11 +191,26 @@ public class ClientTlsSession {
     byte[] peerPublicKey = keyShareExtension.getKey(Group.X25519).get();
     byte[] sharedSecret = kek.generateSharedSecret(peerPublicKey);
 
-    byte[] helloHash = Hash.sha256(clientHello, serverHello);
-
-    handshakeSecret = HKDF.calculateHandshakeSecret(sharedSecret);
+    transcript = new TranscriptHash(cipherSuite);
+    transcript.update(clientHello);
+    transcript.update(serverHello);
+    helloHash = transcript.snapshot();
+
+    Optional<Extension> preSharedKey = hello.geExtension(ExtensionType.pre_shared_key);
+    if (preSharedKey.isPresent()) {
+      if (!ticket.isPresent()
+          || ((PreSharedKey) preSharedKey.get()).getSelectedIdentity() != 0
+          || cipherSuite != ticket.get().getCipherSuite()) {
+        throw new IllegalArgumentException("Server selected a PSK not offered");
+      }
+      resumed = true;
+      handshakeSecret =
+          HKDF.calculateHandshakeSecret(cipherSuite, ticket.get().getPsk(), sharedSecret);
+    } else {
+      handshakeSecret = HKDF.calculateHandshakeSecret(cipherSuite, sharedSecret);
+    }
 
-    return HandshakeAEAD.create(handshakeSecret, helloHash, true);
+    return HandshakeAEAD.create(handshakeSecret, helloHash, true, cipherSuite);
   }
 
   public synchronized Optional<HandshakeResult> handleHandshake(byte[] msg) {
@@ -99,48 +222,87 @@ public class ClientTlsSession {
 
     handshakeBuffer.markReaderIndex();
     try {
-      int pos = handshakeBuffer.readerIndex();
+      int start = handshakeBuffer.readerIndex();
       EncryptedExtensions ee = EncryptedExtensions.parse(handshakeBuffer, true);
-      ServerCertificate sc = ServerCertificate.parse(handshakeBuffer);
-
-      byte[] scvBytes = new byte[handshakeBuffer.readerIndex() - pos];
-      handshakeBuffer.resetReaderIndex();
-      handshakeBuffer.readBytes(scvBytes);
-
-      ServerCertificateVerify scv = ServerCertificateVerify.parse(handshakeBuffer);
-
-      validateServerCertificateVerify(sc, scv, scvBytes);
-
-      byte[] finBytes = new byte[handshakeBuffer.readerIndex() - pos];
-      handshakeBuffer.resetReaderIndex();
-      handshakeBuffer.readBytes(finBytes);
 
+      boolean earlyDataIndicated =
+          ee.getExtensions()
+              .stream()
+              .anyMatch(ext -> ext.getType().equals(ExtensionType.early_data));
+      if (earlyDataIndicated && (!earlyDataAead.isPresent() || !resumed)) {
+        throw new IllegalArgumentException("Server accepted early data not offered");
+      }
+
+      // when resuming, the server is authenticated by the PSK and sends no certificate
+      ServerCertificate sc = null;
+      ServerCertificateVerify scv = null;
+      int scvStart = start;
+      if (!resumed) {
+        sc = ServerHandshake.parseCertificate(handshakeBuffer);
+        scvStart = handshakeBuffer.readerIndex();
+        scv = ServerCertificateVerify.parse(handshakeBuffer);
+      }
+
+      int finStart = handshakeBuffer.readerIndex();
       ServerHandshakeFinished fin = ServerHandshakeFinished.parse(handshakeBuffer);
+      int end = handshakeBuffer.readerIndex();
 
-      byte[] helloHash = Hash.sha256(clientHello, serverHello);
-      validateServerFinish(fin, helloHash, finBytes);
+      // the whole flight is received, add it to the transcript as it is verified
+      if (!resumed) {
+        transcript.update(handshakeBuffer, start, scvStart - start);
+        validateServerCertificateVerify(sc, scv, transcript.snapshot());
+      }
+      transcript.update(handshakeBuffer, scvStart, finStart - scvStart);
+      validateServerFinish(fin, transcript.snapshot());
 
       // TODO verify certificate
 
-      handshakeBuffer.resetReaderIndex();
-
-      byte[] hs = Bytes.drainToArray(handshakeBuffer);
+      transcript.update(handshakeBuffer, finStart, end - finStart);
       handshakeBuffer = Unpooled.buffer();
 
-      byte[] handshakeHash = Hash.sha256(clientHello, serverHello, hs);
+      byte[] handshakeHash = transcript.snapshot();
 
-      AEAD aead = OneRttAEAD.create(handshakeSecret, handshakeHash, true);
+      AEAD aead = OneRttAEAD.create(handshakeSecret, handshakeHash, true, cipherSuite);
 
       // TODO dedup
       byte[] clientHandshakeTrafficSecret =
-          HKDF.expandLabel(handshakeSecret, CLIENT_HANDSHAKE_TRAFFIC_SECRET, helloHash, 32);
+          HKDF.expandLabel(
+              cipherSuite,
+              handshakeSecret,
+              CLIENT_HANDSHAKE_TRAFFIC_SECRET,
+              helloHash,
+              cipherSuite.getHashLength());
 
       ClientFinished clientFinished =
-          ClientFinished.create(clientHandshakeTrafficSecret, handshakeHash);
+          ClientFinished.create(cipherSuite, clientHandshakeTrafficSecret, handshakeHash);
 
       byte[] b = Bytes.write(clientFinished);
-
-      return Optional.of(new HandshakeResult(b, aead));
+      transcript.update(b);
+
+      // resumption_master_secret = HKDF-Expand-Label(
+      //    key = master_secret,
+      //    label = "res master",
+      //    context = Hash(ClientHello...client Finished),
+      //    len = hash_length)
+      resumptionMasterSecret =
+          HKDF.expandLabel(
+              cipherSuite,
+              HKDF.calculateMasterSecret(cipherSuite, handshakeSecret),
+              RESUMPTION_MASTER_SECRET,
+              transcript.snapshot(),
+              cipherSuite.getHashLength());
+
+      TransportParameters transportParameters =
+          (TransportParameters)
+              ee.getExtensions()
+                  .stream()
+                  .filter(ext -> ext.getType().equals(ExtensionType.QUIC))
+                  .findFirst()
+                  .orElseThrow(IllegalArgumentException::new);
+
+      earlyDataAccepted = earlyDataIndicated;
+
+      return Optional.of(new HandshakeResult(b, aead, transportParameters, earlyDataAccepted));
     } catch (IndexOutOfBoundsException e) {
       // wait for more data
       log.debug("Need more data, waiting...");
@@ -150,31 +312,94 @@ public class ClientTlsSession {
     }
   }
 
-  private void validateServerFinish(
-      ServerHandshakeFinished fin, byte[] helloHash, byte[] finBytes) {
-    // verify server fin
-    byte[] finishedHash = Hash.sha256(clientHello, serverHello, finBytes);
+  /** Stores a ticket sent by the server after the handshake, for resuming later connections */
+  public synchronized void handleNewSessionTicket(byte[] msg) {
+    if (resumptionMasterSecret == null) {
+      throw new IllegalStateException("Got ticket before handshake finished");
+    }
+
+    NewSessionTicket nst = NewSessionTicket.parse(Unpooled.wrappedBuffer(msg));
+
+    // QUIC requires the maximum to be 0xffffffff, anything else is a protocol violation
+    Optional<EarlyData> earlyData =
+        nst.getExtensions()
+            .stream()
+            .filter(ext -> ext.getType().equals(ExtensionType.early_data))
+            .map(ext -> (EarlyData) ext)
+            .findFirst();
+    if (earlyData.isPresent()
+        && earlyData.get().getMaxEarlyDataSize() != EarlyData.QUIC_MAX_EARLY_DATA_SIZE) {
+      throw new IllegalArgumentException("Invalid max_early_data_size");
+    }
+
+    // PSK = HKDF-Expand-Label(resumption_master_secret, "resumption", ticket_nonce, Hash.length)
+    byte[] psk =
+        HKDF.expandLabel(
+            cipherSuite,
+            resumptionMasterSecret,
+            RESUMPTION,
+            nst.getNonce(),
+            cipherSuite.getHashLength());
+
+    ticketCache.put(
+        serverName,
+        cipherSuite,
+        nst.getTicket(),
+        psk,
+        nst.getAgeAdd(),
+        nst.getLifetime(),
+        earlyData.isPresent());
+  }
+
+  /** @return true if the server accepted the ticket offered, resuming a previous session */
+  public boolean isResumed() {
+    return resumed;
+  }
 
+  /**
+   * @return true if the server accepted the early data sent, if not, it must be sent again once the
+   *     handshake is complete
+   */
+  public boolean isEarlyDataAccepted() {
+    return earlyDataAccepted;
+  }
+
+  /** @param finishedHash hash of the transcript up to the server CertificateVerify */
+  private void validateServerFinish(ServerHandshakeFinished fin, byte[] finishedHash) {
     byte[] serverHandshakeTrafficSecret =
-        HKDF.expandLabel(handshakeSecret, "s hs traffic", helloHash, 32);
+        HKDF.expandLabel(
+            cipherSuite, handshakeSecret, "s hs traffic", helloHash, cipherSuite.getHashLength());
 
     boolean valid =
         VerifyData.verify(
-            fin.getVerificationData(), serverHandshakeTrafficSecret, finishedHash, false);
+            cipherSuite,
+            fin.getVerificationData(),
+            serverHandshakeTrafficSecret,
+            finishedHash,
+            false);
     if (!valid) {
       throw new RuntimeException("Server verification data not valid");
     }
   }
 
   private void validateServerCertificateVerify(
-      ServerCertificate sc, ServerCertificateVerify scv, byte[] handshakeData) {
-    byte[] toVerify = Hash.sha256(clientHello, serverHello, handshakeData);
-
+      ServerCertificate sc, ServerCertificateVerify scv, byte[] toVerify) {
     byte[] serverSig = scv.getSignature();
 
     PublicKey serverKey = sc.getAsCertificiates().get(0).getPublicKey();
 
-    boolean valid = CertificateVerify.verify(serverSig, toVerify, serverKey, false);
+    // we offer all supported schemes
+    SignatureScheme scheme =
+        SignatureScheme.fromValue(scv.getType())
+            .filter(SignatureScheme.SUPPORTED::contains)
+            .orElseThrow(
+                () ->
+                    new IllegalArgumentException("Unsupported signature scheme: " + scv.getType()));
+    if (!scheme.matches(serverKey)) {
+      throw new IllegalArgumentException(scheme + " does not match the server certificate");
+    }
+
+    boolean valid = CertificateVerify.verify(serverSig, toVerify, serverKey, scheme, false);
     if (!valid) {
       throw new RuntimeException("Invalid server certificate verify");
     }
@@ -183,10 +408,22 @@ public class ClientTlsSession {
   public static class HandshakeResult {
     private final byte[] fin;
     private final AEAD oneRttAead;
+    private final TransportParameters transportParameters;
+    private final boolean earlyDataAccepted;
 
-    public HandshakeResult(byte[] fin, AEAD oneRttAead) {
+    public HandshakeResult(byte[] fin, AEAD oneRttAead, TransportParameters transportParameters) {
+      this(fin, oneRttAead, transportParameters, false);
+    }
+
+    public HandshakeResult(
+        byte[] fin,
+        AEAD oneRttAead,
+        TransportParameters transportParameters,
+        boolean earlyDataAccepted) {
       this.fin = fin;
       this.oneRttAead = oneRttAead;
+      this.transportParameters = transportParameters;
+      this.earlyDataAccepted = earlyDataAccepted;
     }
 
     public byte[] getFin() {
@@ -196,5 +433,15 @@ public class ClientTlsSession {
     public AEAD getOneRttAead() {
       return oneRttAead;
     }
+
+    /** Transport parameters sent by the server */
+    public TransportParameters getTransportParameters() {
+      return transportParameters;
+    }
+
+    /** If the server accepted the early data sent */
+    public boolean isEarlyDataAccepted() {
+      return earlyDataAccepted;
+    }
   }
 }
@@ -4,6 +4,7 @@ import com.protocol7.nettyquic.protocol.packets.*;
 
 public enum EncryptionLevel {
   Initial,
+  ZeroRtt,
   Handshake,
   OneRtt;
 
@@ -12,6 +13,8 @@ public enum EncryptionLevel {
         || packet instanceof RetryPacket
         || packet instanceof VersionNegotiationPacket) {
       return Initial;
+    } else if (packet instanceof ZeroRttPacket) {
+      return ZeroRtt;
     } else if (packet instanceof HandshakePacket) {
       return Handshake;
     } else {
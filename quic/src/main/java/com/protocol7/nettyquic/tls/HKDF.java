@@ -1,57 +1,203 @@
 package com.protocol7.nettyquic.tls;
 
-import com.protocol7.nettyquic.utils.Bytes;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import static com.protocol7.nettyquic.tls.aead.Labels.DERIVED;
+import static com.protocol7.nettyquic.tls.aead.Labels.RESUMPTION_BINDER;
+
+import com.google.common.base.Preconditions;
 import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
+/** HKDF as defined in RFC 5869, with the TLS 1.3 key schedule built on it */
 public class HKDF {
 
   private static final String LABEL_PREFIX = "tls13 ";
 
-  public static final at.favre.lib.crypto.HKDF hkdf = at.favre.lib.crypto.HKDF.fromHmacSha256();
+  // Mac instances are costly to create, so they are kept per thread and rekeyed for each use
+  private static final ThreadLocal<Map<String, Mac>> macs = ThreadLocal.withInitial(HashMap::new);
+
+  private static final Map<CipherSuite, byte[]> EMPTY_HASHES = new EnumMap<>(CipherSuite.class);
+  private static final Map<CipherSuite, byte[]> DERIVED_SECRETS = new EnumMap<>(CipherSuite.class);
+
+  static {
+    for (CipherSuite cipherSuite : CipherSuite.values()) {
+      int hashLength = cipherSuite.getHashLength();
+
+      // early_secret = hkdf-Extract(
+      //         salt=00,
+      //         key=00...)
+      byte[] earlySecret = extract(cipherSuite, new byte[1], new byte[hashLength]);
+      byte[] emptyHash = Hash.hash(cipherSuite, "".getBytes(StandardCharsets.US_ASCII));
+      EMPTY_HASHES.put(cipherSuite, emptyHash);
 
-  // early_secret = hkdf-Extract(
-  //         salt=00,
-  //         key=00...)
-  private static final byte[] EARLY_SECRET = hkdf.extract(new byte[1], new byte[32]);
-  public static final byte[] EMPTY_HASH = Hash.sha256("".getBytes(StandardCharsets.US_ASCII));
+      //         derived_secret = hkdf-Expand-Label(
+      //                key = early_secret,
+      //                label = "derived",
+      //                context = empty_hash,
+      //                len = hash_length)
+      DERIVED_SECRETS.put(
+          cipherSuite, expandLabel(cipherSuite, earlySecret, "derived", emptyHash, hashLength));
+    }
+  }
 
-  //         derived_secret = hkdf-Expand-Label(
-  //                key = early_secret,
-  //                label = "derived",
-  //                context = empty_hash,
-  //                len = 32)
-  private static final byte[] DERIVED_SECRET = expandLabel(EARLY_SECRET, "derived", EMPTY_HASH, 32);
+  public static final byte[] EMPTY_HASH = emptyHash(CipherSuite.TLS_AES_128_GCM_SHA256);
 
   public static byte[] calculateHandshakeSecret(byte[] sharedSecret) {
+    return calculateHandshakeSecret(CipherSuite.TLS_AES_128_GCM_SHA256, sharedSecret);
+  }
+
+  public static byte[] calculateHandshakeSecret(CipherSuite cipherSuite, byte[] sharedSecret) {
     //         handshake_secret = hkdf-Extract(
     //                salt = derived_secret,
     //                key = shared_secret)
-    return hkdf.extract(DERIVED_SECRET, sharedSecret);
+    return extract(cipherSuite, DERIVED_SECRETS.get(cipherSuite), sharedSecret);
+  }
+
+  /** Handshake secret for a handshake resumed with a pre-shared key */
+  public static byte[] calculateHandshakeSecret(
+      CipherSuite cipherSuite, byte[] psk, byte[] sharedSecret) {
+    // derived_secret = hkdf-Expand-Label(
+    //        key = early_secret,
+    //        label = "derived",
+    //        context = empty_hash,
+    //        len = hash_length)
+    byte[] derivedSecret =
+        expandLabel(
+            cipherSuite,
+            calculateEarlySecret(cipherSuite, psk),
+            DERIVED,
+            EMPTY_HASHES.get(cipherSuite),
+            cipherSuite.getHashLength());
+
+    return extract(cipherSuite, derivedSecret, sharedSecret);
+  }
+
+  public static byte[] calculateEarlySecret(CipherSuite cipherSuite, byte[] psk) {
+    // early_secret = hkdf-Extract(
+    //         salt=00,
+    //         key=psk)
+    return extract(cipherSuite, new byte[1], psk);
+  }
+
+  /** Key for the binders proving that a client offering a resumption PSK holds it */
+  public static byte[] calculateBinderKey(CipherSuite cipherSuite, byte[] psk) {
+    // binder_key = hkdf-Expand-Label(
+    //         key = early_secret,
+    //         label = "res binder",
+    //         context = empty_hash,
+    //         len = hash_length)
+    return expandLabel(
+        cipherSuite,
+        calculateEarlySecret(cipherSuite, psk),
+        RESUMPTION_BINDER,
+        EMPTY_HASHES.get(cipherSuite),
+        cipherSuite.getHashLength());
+  }
+
+  public static byte[] calculateMasterSecret(CipherSuite cipherSuite, byte[] handshakeSecret) {
+    int hashLength = cipherSuite.getHashLength();
+
+    // derived_secret = HKDF-Expand-Label(
+    //                key = handshake_secret,
+    //                label = "derived",
+    //                context = empty_hash,
+    //                len = hash_length)
+    byte[] derivedSecret =
+        expandLabel(
+            cipherSuite, handshakeSecret, DERIVED, EMPTY_HASHES.get(cipherSuite), hashLength);
+
+    //        master_secret = HKDF-Extract(
+    //                salt=derived_secret,
+    //                key=00...)
+    return extract(cipherSuite, derivedSecret, new byte[hashLength]);
+  }
+
+  /** Hash of an empty transcript, with the hash of the cipher suite */
+  public static byte[] emptyHash(CipherSuite cipherSuite) {
+    return EMPTY_HASHES.get(cipherSuite).clone();
   }
 
   public static byte[] extract(byte[] salt, byte[] inputKeyingMaterial) {
-    return hkdf.extract(salt, inputKeyingMaterial);
+    return extract(CipherSuite.TLS_AES_128_GCM_SHA256, salt, inputKeyingMaterial);
+  }
+
+  public static byte[] extract(CipherSuite cipherSuite, byte[] salt, byte[] inputKeyingMaterial) {
+    // an absent salt is a string of zeros of the hash length
+    if (salt.length == 0) {
+      salt = new byte[cipherSuite.getHashLength()];
+    }
+    return mac(cipherSuite, salt).doFinal(inputKeyingMaterial);
   }
 
   public static byte[] expandLabel(byte[] key, String label, byte[] context, int length) {
+    return expandLabel(CipherSuite.TLS_AES_128_GCM_SHA256, key, label, context, length);
+  }
+
+  public static byte[] expandLabel(
+      CipherSuite cipherSuite, byte[] key, String label, byte[] context, int length) {
     byte[] expandedLabel = makeLabel(label, context, length);
-    return hkdf.expand(key, expandedLabel, length);
+    return expand(cipherSuite, key, expandedLabel, length);
   }
 
-  private static byte[] makeLabel(String label, byte[] context, int length) {
-    byte[] expandedLabel = (LABEL_PREFIX + label).getBytes(StandardCharsets.US_ASCII);
+  private static byte[] expand(CipherSuite cipherSuite, byte[] key, byte[] info, int length) {
+    Preconditions.checkArgument(length <= 255 * cipherSuite.getHashLength());
+
+    Mac mac = mac(cipherSuite, key);
+
+    // T(i) = HMAC(PRK, T(i - 1) | info | i), the output is T(1) | T(2) | ...
+    byte[] out = new byte[length];
+    byte[] t = new byte[0];
+    int pos = 0;
+    for (int i = 1; pos < length; i++) {
+      mac.update(t);
+      mac.update(info);
+      mac.update((byte) i);
+      t = mac.doFinal();
 
-    ByteBuf bb = Unpooled.buffer();
-    bb.writeShort(length);
-    bb.writeByte(expandedLabel.length);
+      int len = Math.min(t.length, length - pos);
+      System.arraycopy(t, 0, out, pos, len);
+      pos += len;
+    }
+    return out;
+  }
 
-    bb.writeBytes(expandedLabel);
+  private static Mac mac(CipherSuite cipherSuite, byte[] key) {
+    String algorithm = cipherSuite.getMacAlgorithm();
+    Mac mac =
+        macs.get()
+            .computeIfAbsent(
+                algorithm,
+                a -> {
+                  try {
+                    return Mac.getInstance(a);
+                  } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException(e);
+                  }
+                });
+    try {
+      mac.init(new SecretKeySpec(key, algorithm));
+    } catch (InvalidKeyException e) {
+      throw new IllegalArgumentException(e);
+    }
+    return mac;
+  }
 
-    bb.writeByte(context.length);
-    bb.writeBytes(context);
+  private static byte[] makeLabel(String label, byte[] context, int length) {
+    byte[] expandedLabel = (LABEL_PREFIX + label).getBytes(StandardCharsets.US_ASCII);
 
-    return Bytes.drainToArray(bb);
+    // HkdfLabel: uint16 length, opaque label<7..255>, opaque context<0..255>
+    byte[] hkdfLabel = new byte[2 + 1 + expandedLabel.length + 1 + context.length];
+    hkdfLabel[0] = (byte) (length >> 8);
+    hkdfLabel[1] = (byte) length;
+    hkdfLabel[2] = (byte) expandedLabel.length;
+    System.arraycopy(expandedLabel, 0, hkdfLabel, 3, expandedLabel.length);
+    hkdfLabel[3 + expandedLabel.length] = (byte) context.length;
+    System.arraycopy(context, 0, hkdfLabel, 4 + expandedLabel.length, context.length);
+    return hkdfLabel;
   }
 }
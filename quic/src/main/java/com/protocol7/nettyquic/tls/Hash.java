@@ -3,20 +3,36 @@ package com.protocol7.nettyquic.tls;
 import com.protocol7.nettyquic.utils.Bytes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Hash {
 
-  private static final ThreadLocal<MessageDigest> digests =
-      ThreadLocal.withInitial(
-          () -> {
-            try {
-              return MessageDigest.getInstance("SHA-256");
-            } catch (NoSuchAlgorithmException e) {
-              throw new RuntimeException(e);
-            }
-          });
+  private static final ThreadLocal<Map<String, MessageDigest>> digests =
+      ThreadLocal.withInitial(HashMap::new);
 
   public static byte[] sha256(byte[]... data) {
-    return digests.get().digest(Bytes.concat(data));
+    return hash("SHA-256", data);
+  }
+
+  /** Hashes the data with the hash of the cipher suite */
+  public static byte[] hash(CipherSuite cipherSuite, byte[]... data) {
+    return hash(cipherSuite.getHashAlgorithm(), data);
+  }
+
+  private static byte[] hash(String algorithm, byte[]... data) {
+    MessageDigest digest =
+        digests
+            .get()
+            .computeIfAbsent(
+                algorithm,
+                a -> {
+                  try {
+                    return MessageDigest.getInstance(a);
+                  } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException(e);
+                  }
+                });
+    return digest.digest(Bytes.concat(data));
   }
 }
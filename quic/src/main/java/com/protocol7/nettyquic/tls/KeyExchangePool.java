@@ -0,0 +1,103 @@
+package com.protocol7.nettyquic.tls;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ephemeral key pairs generated ahead of time, so that handshakes do not wait for key generation.
+ * Every key pair is handed out once only. The pool is refilled in the background as pairs are
+ * taken, if it has run dry the pair is generated by the caller. Thread safe, share between
+ * sessions.
+ */
+public class KeyExchangePool {
+
+  /** Default number of key pairs kept ready */
+  public static final int DEFAULT_DEPTH = 32;
+
+  /** Shared X25519 pool, used by sessions unless given another */
+  public static final KeyExchangePool X25519 = new KeyExchangePool(Group.X25519, DEFAULT_DEPTH);
+
+  private final Group group;
+  private final BlockingQueue<KeyExchange> keys;
+  private final Executor refiller;
+  private final AtomicBoolean refilling = new AtomicBoolean();
+
+  /** Refills on a background thread, which exits while the pool is full */
+  public KeyExchangePool(final Group group, final int depth) {
+    this(group, depth, newRefiller());
+  }
+
+  /** @param depth number of key pairs kept ready */
+  public KeyExchangePool(final Group group, final int depth, final Executor refiller) {
+    Preconditions.checkArgument(depth > 0);
+
+    this.group = requireNonNull(group);
+    this.keys = new ArrayBlockingQueue<>(depth);
+    this.refiller = requireNonNull(refiller);
+    refill();
+  }
+
+  public Group getGroup() {
+    return group;
+  }
+
+  /** Number of key pairs ready to be taken */
+  public int size() {
+    return keys.size();
+  }
+
+  /** Removes a key pair from the pool, or generates one if it is empty */
+  public KeyExchange take() {
+    final KeyExchange key = keys.poll();
+    refill();
+    return key != null ? key : KeyExchange.generate(group);
+  }
+
+  private void refill() {
+    if (keys.remainingCapacity() > 0 && refilling.compareAndSet(false, true)) {
+      try {
+        refiller.execute(this::fill);
+      } catch (final RejectedExecutionException e) {
+        refilling.set(false);
+      }
+    }
+  }
+
+  private void fill() {
+    try {
+      while (keys.remainingCapacity() > 0) {
+        keys.offer(KeyExchange.generate(group));
+      }
+    } finally {
+      refilling.set(false);
+    }
+    // pairs taken after the last check
+    refill();
+  }
+
+  private static Executor newRefiller() {
+    final ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            1,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("key-exchange-pool-%d")
+                .setDaemon(true)
+                .build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,98 @@
+package com.protocol7.nettyquic.tls;
+
+import com.google.common.base.Preconditions;
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.tls.extensions.EarlyData;
+import com.protocol7.nettyquic.tls.extensions.Extension;
+import com.protocol7.nettyquic.tls.extensions.ExtensionType;
+import com.protocol7.nettyquic.tls.extensions.RawExtension;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.CompressedCertificate;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.EncryptedExtensions;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificate;
+import com.protocol7.nettyquic.utils.Bytes;
+import java.util.List;
+
+/**
+ * The parts of the server handshake flight that are the same for every connection, encoded once.
+ * Handshakes then only encode the parts that vary, the ServerHello, CertificateVerify and Finished.
+ * The certificate chain is kept both as is and compressed, for clients supporting RFC 8879.
+ * Immutable, share between the connections of a server.
+ */
+public class ServerFlightTemplate {
+
+  private final Extension transportParameters;
+  private final byte[] encryptedExtensions;
+  private final byte[] encryptedExtensionsEarlyData;
+  private final byte[] certificate;
+  private final byte[] compressedCertificate;
+
+  /** @param certificates the server certificate chain, the server certificate first */
+  public ServerFlightTemplate(final List<byte[]> certificates) {
+    Preconditions.checkArgument(!certificates.isEmpty());
+
+    final ServerCertificate sc = new ServerCertificate(new byte[0], certificates);
+    this.certificate = Bytes.write(sc);
+
+    // compressed once here, so that compression costs nothing per handshake
+    final byte[] compressed = Bytes.write(CompressedCertificate.compress(sc));
+    this.compressedCertificate = compressed.length < certificate.length ? compressed : certificate;
+
+    final TransportParameters tps = TransportParameters.defaults(Version.CURRENT);
+    this.transportParameters = encode(tps);
+    this.encryptedExtensions = Bytes.write(new EncryptedExtensions(List.of(tps)));
+    this.encryptedExtensionsEarlyData =
+        Bytes.write(new EncryptedExtensions(List.of(tps, EarlyData.INDICATION)));
+  }
+
+  private ServerFlightTemplate(final ServerFlightTemplate template, final TransportParameters tps) {
+    this.certificate = template.certificate;
+    this.compressedCertificate = template.compressedCertificate;
+
+    this.transportParameters = encode(tps);
+    this.encryptedExtensions = Bytes.write(new EncryptedExtensions(List.of(tps)));
+    this.encryptedExtensionsEarlyData =
+        Bytes.write(new EncryptedExtensions(List.of(tps, EarlyData.INDICATION)));
+  }
+
+  private static Extension encode(final TransportParameters tps) {
+    return new RawExtension(ExtensionType.QUIC, Bytes.write(bb -> tps.write(bb, false)));
+  }
+
+  /**
+   * A template for a connection set up after a Retry, with the transport parameters naming the
+   * connection IDs the client used. Only the transport parameters are encoded again.
+   *
+   * @param originalConnId the destination connection ID of the client's first Initial
+   * @param retryConnId the source connection ID of the Retry
+   */
+  public ServerFlightTemplate forRetry(
+      final ConnectionId originalConnId, final ConnectionId retryConnId) {
+    return new ServerFlightTemplate(
+        this,
+        TransportParameters.newDefaultsBuilder(Version.CURRENT)
+            .withOriginalConnectionId(originalConnId.asBytes())
+            .withRetrySourceConnectionId(retryConnId.asBytes())
+            .build());
+  }
+
+  /** Server transport parameters, as sent in the ServerHello */
+  public Extension getTransportParameters() {
+    return transportParameters;
+  }
+
+  // the arrays below are shared, and must not be modified
+
+  byte[] getEncryptedExtensions(final boolean earlyDataAccepted) {
+    return earlyDataAccepted ? encryptedExtensionsEarlyData : encryptedExtensions;
+  }
+
+  /**
+   * @param compressed if the client supports zlib certificate compression, a Certificate message is
+   *     still returned if compression would not make it smaller
+   */
+  byte[] getCertificate(final boolean compressed) {
+    return compressed ? compressedCertificate : certificate;
+  }
+}
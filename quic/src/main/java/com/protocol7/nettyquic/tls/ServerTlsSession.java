@@ -1,55 +1,103 @@
 package com.protocol7.nettyquic.tls;
 
-import static com.protocol7.nettyquic.utils.Bytes.peekToArray;
+import static com.protocol7.nettyquic.tls.aead.Labels.RESUMPTION;
+import static com.protocol7.nettyquic.tls.aead.Labels.RESUMPTION_MASTER_SECRET;
 import static java.util.Objects.requireNonNull;
 
-import com.google.common.base.Preconditions;
-import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.QuicConfig;
+import com.protocol7.nettyquic.Writeable;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.aead.HandshakeAEAD;
 import com.protocol7.nettyquic.tls.aead.OneRttAEAD;
+import com.protocol7.nettyquic.tls.aead.ZeroRttAEAD;
+import com.protocol7.nettyquic.tls.extensions.CompressCertificate;
+import com.protocol7.nettyquic.tls.extensions.EarlyData;
+import com.protocol7.nettyquic.tls.extensions.Extension;
 import com.protocol7.nettyquic.tls.extensions.ExtensionType;
 import com.protocol7.nettyquic.tls.extensions.KeyShare;
+import com.protocol7.nettyquic.tls.extensions.PreSharedKey;
+import com.protocol7.nettyquic.tls.extensions.PskKeyExchangeModes;
+import com.protocol7.nettyquic.tls.extensions.SignatureAlgorithms;
 import com.protocol7.nettyquic.tls.extensions.SupportedVersions;
 import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import com.protocol7.nettyquic.tls.messages.ClientFinished;
 import com.protocol7.nettyquic.tls.messages.ClientHello;
-import com.protocol7.nettyquic.tls.messages.ServerHandshake.EncryptedExtensions;
-import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificate;
+import com.protocol7.nettyquic.tls.messages.NewSessionTicket;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificateVerify;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerHandshakeFinished;
 import com.protocol7.nettyquic.tls.messages.ServerHello;
 import com.protocol7.nettyquic.utils.Bytes;
+import com.protocol7.nettyquic.utils.Rnd;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.security.PrivateKey;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ServerTlsSession {
 
+  private final Logger log = LoggerFactory.getLogger(ServerTlsSession.class);
+
   private KeyExchange kek;
 
   private final PrivateKey privateKey;
-  private final List<byte[]> certificates;
+  private final SignatureScheme signatureScheme;
+  private final ServerFlightTemplate flightTemplate;
+  private final List<CipherSuite> cipherSuites;
+  private final Optional<SessionTickets> sessionTickets;
+  private final KeyExchangePool keyExchangePool;
   private byte[] clientHello;
   private byte[] serverHello;
-  private byte[] handshake;
+  private TranscriptHash transcript;
+  private byte[] helloHash;
+  private byte[] handshakeHash;
   private byte[] handshakeSecret;
+  private CipherSuite cipherSuite;
+  private byte[] psk;
+  private byte[] resumptionMasterSecret;
+  private boolean earlyDataAccepted;
+  private int ticketsIssued;
 
   public ServerTlsSession(List<byte[]> certificates, PrivateKey privateKey) {
-    Preconditions.checkArgument(!certificates.isEmpty());
+    this(certificates, privateKey, QuicConfig.defaults());
+  }
 
+  /** @param config cipher suites, session tickets and key exchange pool of the server */
+  public ServerTlsSession(List<byte[]> certificates, PrivateKey privateKey, QuicConfig config) {
+    this(new ServerFlightTemplate(certificates), privateKey, config);
+  }
+
+  /**
+   * @param flightTemplate the encoded parts of the handshake flight that are the same for every
+   *     connection
+   */
+  public ServerTlsSession(
+      ServerFlightTemplate flightTemplate, PrivateKey privateKey, QuicConfig config) {
     this.privateKey = privateKey;
-    this.certificates = requireNonNull(certificates);
+    this.signatureScheme = SignatureScheme.forKey(privateKey);
+    this.flightTemplate = requireNonNull(flightTemplate);
+    this.cipherSuites = config.getCipherSuites();
+    this.sessionTickets = config.getSessionTickets();
+    this.keyExchangePool = config.getKeyExchangePool();
     reset();
   }
 
   public void reset() {
-    kek = KeyExchange.generate(Group.X25519);
+    kek = null;
     clientHello = null;
     serverHello = null;
-    handshake = null;
+    transcript = null;
+    helloHash = null;
+    handshakeHash = null;
     handshakeSecret = null;
+    cipherSuite = null;
+    psk = null;
+    resumptionMasterSecret = null;
+    earlyDataAccepted = false;
+    ticketsIssued = 0;
   }
 
   public ServerHelloAndHandshake handleClientHello(byte[] msg) {
@@ -70,78 +118,286 @@ public class ServerTlsSession {
         (KeyShare)
             ch.geExtension(ExtensionType.key_share).orElseThrow(IllegalArgumentException::new);
 
+    TransportParameters transportParameters =
+        (TransportParameters)
+            ch.geExtension(ExtensionType.QUIC).orElseThrow(IllegalArgumentException::new);
+
+    cipherSuite = selectCipherSuite(ch.getCipherSuites());
+
+    Optional<SessionTickets.State> resumption = resume(ch, msg);
+    List<Extension> serverHelloExtensions = List.of();
+    Optional<AEAD> earlyDataAEAD = Optional.empty();
+    if (resumption.isPresent()) {
+      cipherSuite = resumption.get().getCipherSuite();
+      psk = resumption.get().getPsk();
+      // we only ever look at the first identity offered
+      serverHelloExtensions = List.of(PreSharedKey.selected(0));
+
+      earlyDataAccepted = acceptEarlyData(ch, resumption.get());
+    }
+
+    // the cipher suite is now known, hash with it from here on
+    transcript = new TranscriptHash(cipherSuite);
+    transcript.update(clientHello);
+
+    if (earlyDataAccepted) {
+      earlyDataAEAD = Optional.of(ZeroRttAEAD.create(psk, transcript.snapshot(), cipherSuite));
+    }
+
+    // the scheme is given by our key, so a client not supporting it can not authenticate us
+    if (!isResumed()) {
+      SignatureAlgorithms signatureAlgorithms =
+          (SignatureAlgorithms)
+              ch.geExtension(ExtensionType.signature_algorithms)
+                  .orElseThrow(IllegalArgumentException::new);
+      if (!signatureAlgorithms.getAlgorithms().contains(signatureScheme.getValue())) {
+        throw new IllegalArgumentException("Client does not support " + signatureScheme);
+      }
+    }
+
     // create ServerHello
+    kek = keyExchangePool.take();
     serverHello =
-        Bytes.write(ServerHello.defaults(kek, TransportParameters.defaults(Version.CURRENT)));
+        Bytes.write(
+            ServerHello.defaults(
+                kek, flightTemplate.getTransportParameters(), cipherSuite, serverHelloExtensions));
+    transcript.update(serverHello);
+    helloHash = transcript.snapshot();
 
     ByteBuf handshakeBB = Unpooled.buffer();
 
-    EncryptedExtensions ee = EncryptedExtensions.defaults(Version.CURRENT);
-    ee.write(handshakeBB);
-
-    ServerCertificate sc = new ServerCertificate(new byte[0], certificates);
-    sc.write(handshakeBB);
+    write(handshakeBB, flightTemplate.getEncryptedExtensions(earlyDataAccepted));
 
-    // create server cert verification
-    byte[] toVerify = peekToArray(handshakeBB);
+    // the server is authenticated by the PSK when resuming, certificates are not sent
+    if (!isResumed()) {
+      write(handshakeBB, flightTemplate.getCertificate(supportsCertificateCompression(ch)));
 
-    byte[] verificationSig =
-        CertificateVerify.sign(Hash.sha256(clientHello, serverHello, toVerify), privateKey, false);
+      // create server cert verification
+      byte[] verificationSig =
+          CertificateVerify.sign(transcript.snapshot(), privateKey, signatureScheme, false);
 
-    ServerCertificateVerify scv = new ServerCertificateVerify(2052, verificationSig);
-    scv.write(handshakeBB);
+      ServerCertificateVerify scv =
+          new ServerCertificateVerify(signatureScheme.getValue(), verificationSig);
+      write(handshakeBB, scv);
+    }
 
     // create server finished
     byte[] peerPublicKey = keyShareExtension.getKey(Group.X25519).get();
     byte[] sharedSecret = kek.generateSharedSecret(peerPublicKey);
-    handshakeSecret = HKDF.calculateHandshakeSecret(sharedSecret);
-    byte[] helloHash = Hash.sha256(clientHello, serverHello);
-
+    if (isResumed()) {
+      handshakeSecret = HKDF.calculateHandshakeSecret(cipherSuite, psk, sharedSecret);
+    } else {
+      handshakeSecret = HKDF.calculateHandshakeSecret(cipherSuite, sharedSecret);
+    }
     // create handshake AEAD
-    AEAD handshakeAEAD = HandshakeAEAD.create(handshakeSecret, helloHash, true);
+    AEAD handshakeAEAD = HandshakeAEAD.create(handshakeSecret, helloHash, true, cipherSuite);
 
     byte[] serverHandshakeTrafficSecret =
-        HKDF.expandLabel(handshakeSecret, "s hs traffic", helloHash, 32);
+        HKDF.expandLabel(
+            cipherSuite, handshakeSecret, "s hs traffic", helloHash, cipherSuite.getHashLength());
 
-    // finished_hash = SHA256(Client Hello ... Server Cert Verify)
-    byte[] finishedHash = Hash.sha256(clientHello, serverHello, peekToArray(handshakeBB));
+    // finished_hash = Hash(Client Hello ... Server Cert Verify)
+    byte[] finishedHash = transcript.snapshot();
 
-    byte[] verifyData = VerifyData.create(serverHandshakeTrafficSecret, finishedHash);
+    byte[] verifyData = VerifyData.create(cipherSuite, serverHandshakeTrafficSecret, finishedHash);
 
     ServerHandshakeFinished fin = new ServerHandshakeFinished(verifyData);
-    fin.write(handshakeBB);
+    write(handshakeBB, fin);
 
     // create 1-RTT AEAD
-    handshake = Bytes.drainToArray(handshakeBB);
+    byte[] handshake = Bytes.drainToArray(handshakeBB);
+
+    handshakeHash = transcript.snapshot();
+    AEAD oneRttAEAD = OneRttAEAD.create(handshakeSecret, handshakeHash, false, cipherSuite);
+
+    return new ServerHelloAndHandshake(
+        serverHello, handshake, handshakeAEAD, oneRttAEAD, transportParameters, earlyDataAEAD);
+  }
+
+  private boolean supportsCertificateCompression(ClientHello ch) {
+    return ch.geExtension(ExtensionType.compress_certificate)
+        .map(ext -> ((CompressCertificate) ext).getAlgorithms().contains(CompressCertificate.ZLIB))
+        .orElse(false);
+  }
+
+  /** Writes a handshake message, adding it to the transcript */
+  private void write(ByteBuf bb, Writeable message) {
+    int start = bb.writerIndex();
+    message.write(bb);
+    transcript.update(bb, start, bb.writerIndex() - start);
+  }
+
+  /** Writes an already encoded handshake message, adding it to the transcript */
+  private void write(ByteBuf bb, byte[] message) {
+    bb.writeBytes(message);
+    transcript.update(message);
+  }
+
+  /** Early data is accepted if offered, allowed by the ticket and not a replay */
+  private boolean acceptEarlyData(ClientHello ch, SessionTickets.State state) {
+    if (!ch.geExtension(ExtensionType.early_data).isPresent()) {
+      return false;
+    }
+
+    PreSharedKey preSharedKey = (PreSharedKey) ch.geExtension(ExtensionType.pre_shared_key).get();
+    boolean accepted =
+        sessionTickets
+            .get()
+            .acceptEarlyData(
+                state,
+                preSharedKey.getIdentities().get(0).getObfuscatedTicketAge(),
+                preSharedKey.getBinders().get(0));
+    if (!accepted) {
+      log.debug("Rejecting early data");
+    }
+    return accepted;
+  }
+
+  /**
+   * Opens the ticket offered by the client, if any, and verifies the binder for it.
+   *
+   * @return the resumption state, or empty if a full handshake must be done
+   */
+  private Optional<SessionTickets.State> resume(ClientHello ch, byte[] msg) {
+    Optional<Extension> modes = ch.geExtension(ExtensionType.psk_key_exchange_modes);
+    Optional<Extension> offered = ch.geExtension(ExtensionType.pre_shared_key);
+    if (!sessionTickets.isPresent() || !modes.isPresent() || !offered.isPresent()) {
+      return Optional.empty();
+    }
+
+    List<Extension> extensions = ch.getExtensions();
+    if (extensions.get(extensions.size() - 1) != offered.get()) {
+      throw new IllegalArgumentException("pre_shared_key must be the last extension");
+    }
+
+    // without (EC)DHE, the session would lose forward secrecy
+    if (!((PskKeyExchangeModes) modes.get()).supports(PskKeyExchangeModes.PSK_DHE_KE)) {
+      return Optional.empty();
+    }
+
+    PreSharedKey preSharedKey = (PreSharedKey) offered.get();
+    Optional<SessionTickets.State> state =
+        sessionTickets.get().open(preSharedKey.getIdentities().get(0).getIdentity());
+    if (!state.isPresent()) {
+      log.debug("Unknown or expired ticket, doing a full handshake");
+      return Optional.empty();
+    }
+
+    CipherSuite ticketCipherSuite = state.get().getCipherSuite();
+    if (!cipherSuites.contains(ticketCipherSuite)
+        || !ch.getCipherSuites().contains(ticketCipherSuite)) {
+      return Optional.empty();
+    }
 
-    byte[] handshakeHash = Hash.sha256(clientHello, serverHello, handshake);
-    AEAD oneRttAEAD = OneRttAEAD.create(handshakeSecret, handshakeHash, false);
+    // binder = HMAC(finished_key(binder_key), Hash(ClientHello up to the binders))
+    byte[] truncatedHello = Arrays.copyOf(msg, msg.length - preSharedKey.getBindersLength());
+    byte[] binderKey = HKDF.calculateBinderKey(ticketCipherSuite, state.get().getPsk());
+    boolean valid =
+        VerifyData.verify(
+            ticketCipherSuite,
+            preSharedKey.getBinders().get(0),
+            binderKey,
+            Hash.hash(ticketCipherSuite, truncatedHello),
+            false);
+    if (!valid) {
+      throw new IllegalArgumentException("Invalid PSK binder");
+    }
 
-    return new ServerHelloAndHandshake(serverHello, handshake, handshakeAEAD, oneRttAEAD);
+    return state;
+  }
+
+  /** @return true if the handshake resumed a previous session using a ticket */
+  public boolean isResumed() {
+    return psk != null;
+  }
+
+  /** @return true if early data from the client is accepted in this handshake */
+  public boolean isEarlyDataAccepted() {
+    return earlyDataAccepted;
+  }
+
+  /** Picks the most preferred of our cipher suites offered by the client */
+  private CipherSuite selectCipherSuite(List<CipherSuite> offered) {
+    for (CipherSuite cipherSuite : cipherSuites) {
+      if (offered.contains(cipherSuite)) {
+        return cipherSuite;
+      }
+    }
+    throw new IllegalArgumentException("No supported cipher suite offered: " + offered);
   }
 
   public synchronized void handleClientFinished(byte[] msg) {
-    if (clientHello == null || serverHello == null || handshake == null) {
+    if (clientHello == null || serverHello == null || handshakeHash == null) {
       throw new IllegalStateException("Got handshake in unexpected state");
     }
 
     ByteBuf bb = Unpooled.wrappedBuffer(msg);
     ClientFinished fin = ClientFinished.parse(bb);
 
-    byte[] helloHash = Hash.sha256(clientHello, serverHello);
-
     byte[] clientHandshakeTrafficSecret =
-        HKDF.expandLabel(handshakeSecret, "c hs traffic", helloHash, 32);
-
-    byte[] handshakeHash = Hash.sha256(clientHello, serverHello, handshake);
+        HKDF.expandLabel(
+            cipherSuite, handshakeSecret, "c hs traffic", helloHash, cipherSuite.getHashLength());
 
     boolean valid =
         VerifyData.verify(
-            fin.getVerificationData(), clientHandshakeTrafficSecret, handshakeHash, false);
+            cipherSuite,
+            fin.getVerificationData(),
+            clientHandshakeTrafficSecret,
+            handshakeHash,
+            false);
 
     if (!valid) {
       throw new RuntimeException("Invalid client verification");
     }
+    transcript.update(msg);
+
+    // resumption_master_secret = HKDF-Expand-Label(
+    //    key = master_secret,
+    //    label = "res master",
+    //    context = Hash(ClientHello...client Finished),
+    //    len = hash_length)
+    resumptionMasterSecret =
+        HKDF.expandLabel(
+            cipherSuite,
+            HKDF.calculateMasterSecret(cipherSuite, handshakeSecret),
+            RESUMPTION_MASTER_SECRET,
+            transcript.snapshot(),
+            cipherSuite.getHashLength());
+  }
+
+  /**
+   * Issues a ticket the client can use to resume this session. Must be called after the client
+   * finished.
+   *
+   * @return the NewSessionTicket message, or empty if tickets are not enabled
+   */
+  public synchronized Optional<byte[]> newSessionTicket() {
+    if (resumptionMasterSecret == null) {
+      throw new IllegalStateException("Handshake not finished");
+    }
+    if (!sessionTickets.isPresent()) {
+      return Optional.empty();
+    }
+
+    byte[] nonce = new byte[] {(byte) ticketsIssued++};
+    long ageAdd = Integer.toUnsignedLong(Rnd.rndInt());
+
+    // PSK = HKDF-Expand-Label(resumption_master_secret, "resumption", ticket_nonce, Hash.length)
+    byte[] ticketPsk =
+        HKDF.expandLabel(
+            cipherSuite, resumptionMasterSecret, RESUMPTION, nonce, cipherSuite.getHashLength());
+
+    byte[] ticket = sessionTickets.get().seal(cipherSuite, ticketPsk, ageAdd);
+
+    List<Extension> extensions = List.of();
+    if (sessionTickets.get().isEarlyDataEnabled()) {
+      extensions = List.of(new EarlyData(EarlyData.QUIC_MAX_EARLY_DATA_SIZE));
+    }
+
+    return Optional.of(
+        Bytes.write(
+            new NewSessionTicket(
+                sessionTickets.get().getLifetimeSeconds(), ageAdd, nonce, ticket, extensions)));
   }
 
   public static class ServerHelloAndHandshake {
@@ -152,12 +408,38 @@ public class ServerTlsSession {
     private final AEAD handshakeAEAD;
     private final AEAD oneRttAEAD;
 
+    private final TransportParameters transportParameters;
+
+    private final Optional<AEAD> earlyDataAEAD;
+
+    public ServerHelloAndHandshake(
+        byte[] serverHello,
+        byte[] serverHandshake,
+        AEAD handshakeAEAD,
+        AEAD oneRttAEAD,
+        TransportParameters transportParameters) {
+      this(
+          serverHello,
+          serverHandshake,
+          handshakeAEAD,
+          oneRttAEAD,
+          transportParameters,
+          Optional.empty());
+    }
+
     public ServerHelloAndHandshake(
-        byte[] serverHello, byte[] serverHandshake, AEAD handshakeAEAD, AEAD oneRttAEAD) {
+        byte[] serverHello,
+        byte[] serverHandshake,
+        AEAD handshakeAEAD,
+        AEAD oneRttAEAD,
+        TransportParameters transportParameters,
+        Optional<AEAD> earlyDataAEAD) {
       this.serverHello = serverHello;
       this.serverHandshake = serverHandshake;
       this.handshakeAEAD = handshakeAEAD;
       this.oneRttAEAD = oneRttAEAD;
+      this.transportParameters = transportParameters;
+      this.earlyDataAEAD = earlyDataAEAD;
     }
 
     public byte[] getServerHello() {
@@ -175,5 +457,15 @@ public class ServerTlsSession {
     public AEAD getOneRttAEAD() {
       return oneRttAEAD;
     }
+
+    /** Transport parameters sent by the client */
+    public TransportParameters getTransportParameters() {
+      return transportParameters;
+    }
+
+    /** The AEAD to open early data with, empty if early data is not accepted */
+    public Optional<AEAD> getEarlyDataAEAD() {
+      return earlyDataAEAD;
+    }
   }
 }
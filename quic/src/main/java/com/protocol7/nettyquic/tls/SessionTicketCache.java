@@ -0,0 +1,186 @@
+package com.protocol7.nettyquic.tls;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Session tickets received by clients, to resume later connections to the same server. A ticket is
+ * only offered once, as reusing it would let connections be linked by it. Thread safe, share
+ * between the connections of a client.
+ */
+public class SessionTicketCache {
+
+  /** Tickets kept per server, older tickets are dropped when more are received */
+  public static final int MAX_TICKETS_PER_SERVER = 4;
+
+  // lifetime limit from RFC 8446 section 4.6.1
+  private static final long MAX_LIFETIME = SECONDS.toNanos(7 * 24 * 60 * 60);
+
+  private final Ticker ticker;
+  private final Map<String, Deque<Entry>> tickets = new HashMap<>();
+
+  public SessionTicketCache() {
+    this(Ticker.systemTicker());
+  }
+
+  public SessionTicketCache(final Ticker ticker) {
+    this.ticker = requireNonNull(ticker);
+  }
+
+  /** @param lifetime lifetime from the server, in seconds */
+  public void put(
+      final String server,
+      final CipherSuite cipherSuite,
+      final byte[] ticket,
+      final byte[] psk,
+      final long ageAdd,
+      final long lifetime) {
+    put(server, cipherSuite, ticket, psk, ageAdd, lifetime, false);
+  }
+
+  /**
+   * @param lifetime lifetime from the server, in seconds
+   * @param earlyData if the server allows early data with the ticket
+   */
+  public synchronized void put(
+      final String server,
+      final CipherSuite cipherSuite,
+      final byte[] ticket,
+      final byte[] psk,
+      final long ageAdd,
+      final long lifetime,
+      final boolean earlyData) {
+    final long now = ticker.read();
+    final Deque<Entry> entries = tickets.computeIfAbsent(server, s -> new ArrayDeque<>());
+    entries.addFirst(
+        new Entry(
+            cipherSuite,
+            ticket,
+            psk,
+            ageAdd,
+            now,
+            now + Math.min(SECONDS.toNanos(lifetime), MAX_LIFETIME),
+            earlyData));
+
+    while (entries.size() > MAX_TICKETS_PER_SERVER) {
+      entries.removeLast();
+    }
+  }
+
+  /** Removes and returns the newest ticket for the server that has not expired */
+  public synchronized Optional<Ticket> take(final String server) {
+    final Deque<Entry> entries = tickets.get(server);
+    if (entries == null) {
+      return Optional.empty();
+    }
+
+    final long now = ticker.read();
+    Optional<Ticket> ticket = Optional.empty();
+    while (!ticket.isPresent() && !entries.isEmpty()) {
+      final Entry entry = entries.removeFirst();
+      if (now < entry.expiresAt) {
+        final long age = NANOSECONDS.toMillis(now - entry.receivedAt);
+        ticket =
+            Optional.of(
+                new Ticket(
+                    entry.cipherSuite,
+                    entry.ticket,
+                    entry.psk,
+                    (age + entry.ageAdd) & 0xFFFFFFFFL,
+                    entry.earlyData));
+      }
+    }
+
+    if (entries.isEmpty()) {
+      tickets.remove(server);
+    }
+    return ticket;
+  }
+
+  private static class Entry {
+    private final CipherSuite cipherSuite;
+    private final byte[] ticket;
+    private final byte[] psk;
+    private final long ageAdd;
+    private final long receivedAt;
+    private final long expiresAt;
+    private final boolean earlyData;
+
+    private Entry(
+        final CipherSuite cipherSuite,
+        final byte[] ticket,
+        final byte[] psk,
+        final long ageAdd,
+        final long receivedAt,
+        final long expiresAt,
+        final boolean earlyData) {
+      this.cipherSuite = cipherSuite;
+      this.ticket = ticket;
+      this.psk = psk;
+      this.ageAdd = ageAdd;
+      this.receivedAt = receivedAt;
+      this.expiresAt = expiresAt;
+      this.earlyData = earlyData;
+    }
+  }
+
+  /** A ticket taken from the cache, ready to be offered to the server */
+  public static class Ticket {
+    private final CipherSuite cipherSuite;
+    private final byte[] ticket;
+    private final byte[] psk;
+    private final long obfuscatedAge;
+    private final boolean earlyData;
+
+    public Ticket(
+        final CipherSuite cipherSuite,
+        final byte[] ticket,
+        final byte[] psk,
+        final long obfuscatedAge) {
+      this(cipherSuite, ticket, psk, obfuscatedAge, false);
+    }
+
+    public Ticket(
+        final CipherSuite cipherSuite,
+        final byte[] ticket,
+        final byte[] psk,
+        final long obfuscatedAge,
+        final boolean earlyData) {
+      this.cipherSuite = cipherSuite;
+      this.ticket = ticket;
+      this.psk = psk;
+      this.obfuscatedAge = obfuscatedAge;
+      this.earlyData = earlyData;
+    }
+
+    public CipherSuite getCipherSuite() {
+      return cipherSuite;
+    }
+
+    public byte[] getTicket() {
+      return ticket;
+    }
+
+    public byte[] getPsk() {
+      return psk;
+    }
+
+    /** Age of the ticket in milliseconds plus the age add from the server, modulo 2^32 */
+    public long getObfuscatedAge() {
+      return obfuscatedAge;
+    }
+
+    /** If the server allows early data with the ticket */
+    public boolean isEarlyDataAllowed() {
+      return earlyData;
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package com.protocol7.nettyquic.tls;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.utils.Bytes;
+import com.protocol7.nettyquic.utils.Rnd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Seals the state needed to resume a session into the ticket sent to the client, so that the server
+ * keeps no state per ticket. Tickets are encrypted with AES-GCM under a key that is replaced every
+ * ticket lifetime, the previous key is kept so that every ticket can be opened for its whole
+ * lifetime. Thread safe, share between the connections of a server.
+ *
+ * <p>If enabled, tickets also allow 0-RTT early data. As early data can be replayed by an attacker,
+ * it is only accepted if the ticket age given by the client is within a window of the actual age,
+ * and if no ClientHello with the same binder has been seen within that window, as described in RFC
+ * 8446 section 8. This only protects against replays to this server, not to others sharing the
+ * ticket keys.
+ */
+public class SessionTickets {
+
+  /** Default time a ticket can be used for resumption, in nanoseconds */
+  public static final long DEFAULT_LIFETIME = HOURS.toNanos(12);
+
+  /** Maximum difference between the ticket age given by a client and the actual age */
+  public static final long EARLY_DATA_WINDOW = SECONDS.toNanos(10);
+
+  // when full, early data is rejected until ClientHellos recorded fall out of the window
+  private static final int MAX_RECORDED_HELLOS = 100_000;
+
+  private static final int KEY_ID_LENGTH = 4;
+  private static final int NONCE_LENGTH = 12;
+  private static final int TAG_LENGTH = 16;
+
+  private final long lifetime;
+  private final boolean earlyData;
+  private final Ticker ticker;
+
+  private Key currentKey;
+  private Key previousKey;
+  // binders of ClientHellos with accepted early data, by the time they can be forgotten
+  private final Map<ByteBuffer, Long> recordedHellos = new LinkedHashMap<>();
+
+  public SessionTickets() {
+    this(DEFAULT_LIFETIME, Ticker.systemTicker());
+  }
+
+  /** @param lifetime time a ticket can be used for resumption, in nanoseconds */
+  public SessionTickets(final long lifetime, final Ticker ticker) {
+    this(lifetime, false, ticker);
+  }
+
+  /**
+   * @param lifetime time a ticket can be used for resumption, in nanoseconds
+   * @param earlyData if tickets issued allow 0-RTT early data
+   */
+  public SessionTickets(final long lifetime, final boolean earlyData, final Ticker ticker) {
+    this.lifetime = lifetime;
+    this.earlyData = earlyData;
+    this.ticker = requireNonNull(ticker);
+    this.currentKey = new Key(ticker.read());
+  }
+
+  /** Ticket lifetime in seconds, as sent to clients */
+  public long getLifetimeSeconds() {
+    return NANOSECONDS.toSeconds(lifetime);
+  }
+
+  /** If tickets issued allow early data */
+  public boolean isEarlyDataEnabled() {
+    return earlyData;
+  }
+
+  public byte[] seal(final CipherSuite cipherSuite, final byte[] psk, final long ageAdd) {
+    final long now = ticker.read();
+    final Key key = getKey(now);
+
+    final ByteBuf bb = Unpooled.buffer();
+    bb.writeShort(cipherSuite.getValue());
+    bb.writeLong(now);
+    bb.writeInt((int) ageAdd);
+    bb.writeBoolean(earlyData);
+    bb.writeByte(psk.length);
+    bb.writeBytes(psk);
+    final byte[] state = Bytes.drainToArray(bb);
+
+    final byte[] nonce = Rnd.rndBytes(NONCE_LENGTH);
+    try {
+      final Cipher cipher = cipher(Cipher.ENCRYPT_MODE, key, nonce);
+      return Bytes.concat(key.id, nonce, cipher.doFinal(state));
+    } catch (final GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** @return the state sealed in the ticket, or empty if it can not be opened or has expired */
+  public Optional<State> open(final byte[] ticket) {
+    if (ticket.length < KEY_ID_LENGTH + NONCE_LENGTH + TAG_LENGTH) {
+      return Optional.empty();
+    }
+
+    final long now = ticker.read();
+    final Optional<Key> key = findKey(Arrays.copyOf(ticket, KEY_ID_LENGTH), now);
+    if (!key.isPresent()) {
+      return Optional.empty();
+    }
+
+    final byte[] nonce = Arrays.copyOfRange(ticket, KEY_ID_LENGTH, KEY_ID_LENGTH + NONCE_LENGTH);
+    final byte[] plaintext;
+    try {
+      final Cipher cipher = cipher(Cipher.DECRYPT_MODE, key.get(), nonce);
+      plaintext =
+          cipher.doFinal(
+              ticket, KEY_ID_LENGTH + NONCE_LENGTH, ticket.length - KEY_ID_LENGTH - NONCE_LENGTH);
+    } catch (final GeneralSecurityException e) {
+      // tampered with, or sealed under another key with the same ID
+      return Optional.empty();
+    }
+
+    final ByteBuf bb = Unpooled.wrappedBuffer(plaintext);
+    final Optional<CipherSuite> cipherSuite = CipherSuite.fromValue(bb.readShort());
+    final long issuedAt = bb.readLong();
+    final long ageAdd = bb.readUnsignedInt();
+    final boolean ticketEarlyData = bb.readBoolean();
+    final byte[] psk = new byte[bb.readUnsignedByte()];
+    bb.readBytes(psk);
+
+    if (!cipherSuite.isPresent() || now - issuedAt > lifetime) {
+      return Optional.empty();
+    }
+    return Optional.of(new State(cipherSuite.get(), psk, ageAdd, issuedAt, ticketEarlyData));
+  }
+
+  /**
+   * Checks if early data can be accepted with a ticket, and if so records the ClientHello to reject
+   * replays of it.
+   *
+   * @param obfuscatedTicketAge ticket age sent by the client
+   * @param binder binder of the ClientHello, unique for each ClientHello
+   * @return true if early data can be accepted
+   */
+  public synchronized boolean acceptEarlyData(
+      final State state, final long obfuscatedTicketAge, final byte[] binder) {
+    if (!earlyData || !state.isEarlyDataAllowed()) {
+      return false;
+    }
+
+    final long now = ticker.read();
+    final long clientAge =
+        MILLISECONDS.toNanos((obfuscatedTicketAge - state.getAgeAdd()) & 0xFFFFFFFFL);
+    final long age = now - state.getIssuedAt();
+    if (Math.abs(age - clientAge) > EARLY_DATA_WINDOW) {
+      return false;
+    }
+
+    // insertion ordered, and all expire the same time after being recorded
+    final Iterator<Long> expired = recordedHellos.values().iterator();
+    while (expired.hasNext() && expired.next() - now < 0) {
+      expired.remove();
+    }
+
+    // a replay arriving later than this would fail the age check
+    final ByteBuffer key = ByteBuffer.wrap(binder);
+    if (recordedHellos.containsKey(key) || recordedHellos.size() >= MAX_RECORDED_HELLOS) {
+      return false;
+    }
+    recordedHellos.put(key, now + 2 * EARLY_DATA_WINDOW);
+    return true;
+  }
+
+  private synchronized Key getKey(final long now) {
+    if (now - currentKey.createdAt >= lifetime) {
+      previousKey = currentKey;
+      currentKey = new Key(now);
+    }
+    return currentKey;
+  }
+
+  private synchronized Optional<Key> findKey(final byte[] id, final long now) {
+    // rotate first, so that keys too old to have sealed a valid ticket are dropped
+    getKey(now);
+
+    if (Arrays.equals(id, currentKey.id)) {
+      return Optional.of(currentKey);
+    } else if (previousKey != null && Arrays.equals(id, previousKey.id)) {
+      return Optional.of(previousKey);
+    } else {
+      return Optional.empty();
+    }
+  }
+
+  private static Cipher cipher(final int mode, final Key key, final byte[] nonce)
+      throws GeneralSecurityException {
+    final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(mode, key.key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+    cipher.updateAAD(key.id);
+    return cipher;
+  }
+
+  private static class Key {
+    private final byte[] id = Rnd.rndBytes(KEY_ID_LENGTH);
+    private final SecretKeySpec key = new SecretKeySpec(Rnd.rndBytes(16), "AES");
+    private final long createdAt;
+
+    private Key(final long createdAt) {
+      this.createdAt = createdAt;
+    }
+  }
+
+  /** Resumption state sealed in a ticket */
+  public static class State {
+    private final CipherSuite cipherSuite;
+    private final byte[] psk;
+    private final long ageAdd;
+    private final long issuedAt;
+    private final boolean earlyDataAllowed;
+
+    public State(
+        final CipherSuite cipherSuite,
+        final byte[] psk,
+        final long ageAdd,
+        final long issuedAt,
+        final boolean earlyDataAllowed) {
+      this.cipherSuite = cipherSuite;
+      this.psk = psk;
+      this.ageAdd = ageAdd;
+      this.issuedAt = issuedAt;
+      this.earlyDataAllowed = earlyDataAllowed;
+    }
+
+    /** Cipher suite of the session the ticket was issued on, resumption must use the same */
+    public CipherSuite getCipherSuite() {
+      return cipherSuite;
+    }
+
+    public byte[] getPsk() {
+      return psk;
+    }
+
+    public long getAgeAdd() {
+      return ageAdd;
+    }
+
+    /** Ticker time the ticket was issued at, in nanoseconds */
+    public long getIssuedAt() {
+      return issuedAt;
+    }
+
+    /** If the ticket was issued allowing early data */
+    public boolean isEarlyDataAllowed() {
+      return earlyDataAllowed;
+    }
+  }
+}
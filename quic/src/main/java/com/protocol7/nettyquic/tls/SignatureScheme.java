@@ -0,0 +1,115 @@
+package com.protocol7.nettyquic.tls;
+
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.Signature;
+import java.security.interfaces.ECKey;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+
+/** Signature schemes for CertificateVerify, the scheme used is given by the server key */
+public enum SignatureScheme {
+  ECDSA_SECP256R1_SHA256(0x0403, "SHA256withECDSA", null),
+  ED25519(0x0807, "Ed25519", null),
+  RSA_PSS_RSAE_SHA256(
+      0x0804,
+      "RSASSA-PSS",
+      new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+
+  private static final EnumSet<SignatureScheme> ALL = EnumSet.allOf(SignatureScheme.class);
+
+  private static final ECParameterSpec SECP256R1 = ecParameters("secp256r1");
+
+  /** Schemes available in this runtime, in order of preference. Ed25519 requires Java 15. */
+  public static final List<SignatureScheme> SUPPORTED = available();
+
+  public static Optional<SignatureScheme> fromValue(int value) {
+    for (SignatureScheme scheme : ALL) {
+      if (scheme.value == value) {
+        return Optional.of(scheme);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** @throws IllegalArgumentException if no supported scheme can sign with the key */
+  public static SignatureScheme forKey(Key key) {
+    for (SignatureScheme scheme : SUPPORTED) {
+      if (scheme.matches(key)) {
+        return scheme;
+      }
+    }
+    throw new IllegalArgumentException("No signature scheme supported for key: " + key);
+  }
+
+  private static List<SignatureScheme> available() {
+    List<SignatureScheme> schemes = new ArrayList<>();
+    for (SignatureScheme scheme : ALL) {
+      try {
+        scheme.newSignature();
+        schemes.add(scheme);
+      } catch (GeneralSecurityException e) {
+        // not provided by this runtime
+      }
+    }
+    return List.copyOf(schemes);
+  }
+
+  private static ECParameterSpec ecParameters(String curve) {
+    try {
+      AlgorithmParameters params = AlgorithmParameters.getInstance("EC");
+      params.init(new ECGenParameterSpec(curve));
+      return params.getParameterSpec(ECParameterSpec.class);
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final int value;
+  private final String algorithm;
+  private final AlgorithmParameterSpec parameterSpec;
+
+  SignatureScheme(int value, String algorithm, AlgorithmParameterSpec parameterSpec) {
+    this.value = value;
+    this.algorithm = algorithm;
+    this.parameterSpec = parameterSpec;
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  /** If the scheme signs with, or verifies with, the key */
+  public boolean matches(Key key) {
+    switch (this) {
+      case ECDSA_SECP256R1_SHA256:
+        if (key instanceof ECKey) {
+          ECParameterSpec params = ((ECKey) key).getParams();
+          return params.getCurve().equals(SECP256R1.getCurve())
+              && params.getGenerator().equals(SECP256R1.getGenerator());
+        }
+        return false;
+      case ED25519:
+        // Ed448 keys also report EdDSA, and fail once used
+        return key.getAlgorithm().equals("Ed25519") || key.getAlgorithm().equals("EdDSA");
+      default:
+        return key.getAlgorithm().equals("RSA");
+    }
+  }
+
+  Signature newSignature() throws GeneralSecurityException {
+    Signature signature = Signature.getInstance(algorithm);
+    if (parameterSpec != null) {
+      signature.setParameter(parameterSpec);
+    }
+    return signature;
+  }
+}
@@ -0,0 +1,41 @@
+package com.protocol7.nettyquic.tls;
+
+import io.netty.buffer.ByteBuf;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Running hash over the handshake messages, updated once as each message is sent or received.
+ * Snapshots give the transcript hash at each point secrets are derived from, without hashing the
+ * messages before it again. Not thread safe.
+ */
+public class TranscriptHash {
+
+  private final MessageDigest digest;
+
+  public TranscriptHash(final CipherSuite cipherSuite) {
+    try {
+      this.digest = MessageDigest.getInstance(cipherSuite.getHashAlgorithm());
+    } catch (final NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public void update(final byte[] message) {
+    digest.update(message);
+  }
+
+  /** Adds the bytes from index to the transcript, without changing the indices of the buffer */
+  public void update(final ByteBuf bb, final int index, final int length) {
+    digest.update(bb.nioBuffer(index, length));
+  }
+
+  /** @return the hash of the messages added so far, more messages can be added after */
+  public byte[] snapshot() {
+    try {
+      return ((MessageDigest) digest.clone()).digest();
+    } catch (final CloneNotSupportedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -3,34 +3,59 @@ package com.protocol7.nettyquic.tls;
 import static com.protocol7.nettyquic.tls.aead.Labels.FINISHED;
 
 import com.google.common.base.Preconditions;
-import com.google.common.hash.Hashing;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 public class VerifyData {
 
   public static byte[] create(byte[] handshakeTrafficSecret, byte[] finishedHash) {
-    Preconditions.checkArgument(handshakeTrafficSecret.length == 32);
-    Preconditions.checkArgument(finishedHash.length == 32);
+    return create(CipherSuite.TLS_AES_128_GCM_SHA256, handshakeTrafficSecret, finishedHash);
+  }
+
+  public static byte[] create(
+      CipherSuite cipherSuite, byte[] handshakeTrafficSecret, byte[] finishedHash) {
+    int hashLength = cipherSuite.getHashLength();
+    Preconditions.checkArgument(handshakeTrafficSecret.length == hashLength);
+    Preconditions.checkArgument(finishedHash.length == hashLength);
 
     // finished_key = HKDF-Expand-Label(
     //    key = client_handshake_traffic_secret,
     //    label = "finished",
     //    context = "",
-    //    len = 32)
-    byte[] finishedKey = HKDF.expandLabel(handshakeTrafficSecret, FINISHED, new byte[0], 32);
+    //    len = hash_length)
+    byte[] finishedKey =
+        HKDF.expandLabel(cipherSuite, handshakeTrafficSecret, FINISHED, new byte[0], hashLength);
 
-    // verify_data = HMAC-SHA256(
+    // verify_data = HMAC(
     //	key = finished_key,
     //	msg = finished_hash)
-    return Hashing.hmacSha256(finishedKey).hashBytes(finishedHash).asBytes();
+    try {
+      Mac mac = Mac.getInstance(cipherSuite.getMacAlgorithm());
+      mac.init(new SecretKeySpec(finishedKey, cipherSuite.getMacAlgorithm()));
+      return mac.doFinal(finishedHash);
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   public static boolean verify(
       byte[] verifyData, byte[] handshakeTrafficSecret, byte[] finishedHash, boolean quic) {
+    return verify(
+        CipherSuite.TLS_AES_128_GCM_SHA256, verifyData, handshakeTrafficSecret, finishedHash, quic);
+  }
+
+  public static boolean verify(
+      CipherSuite cipherSuite,
+      byte[] verifyData,
+      byte[] handshakeTrafficSecret,
+      byte[] finishedHash,
+      boolean quic) {
     Preconditions.checkArgument(verifyData.length > 0);
-    Preconditions.checkArgument(handshakeTrafficSecret.length == 32);
-    Preconditions.checkArgument(finishedHash.length == 32);
+    Preconditions.checkArgument(handshakeTrafficSecret.length == cipherSuite.getHashLength());
+    Preconditions.checkArgument(finishedHash.length == cipherSuite.getHashLength());
 
-    byte[] actual = create(handshakeTrafficSecret, finishedHash);
+    byte[] actual = create(cipherSuite, handshakeTrafficSecret, finishedHash);
 
     return CryptoEquals.isEqual(verifyData, actual);
   }
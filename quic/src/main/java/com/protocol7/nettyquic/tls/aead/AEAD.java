@@ -1,33 +1,67 @@
 package com.protocol7.nettyquic.tls.aead;
 
-import com.google.common.primitives.Longs;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.utils.Hex;
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.ChaCha20ParameterSpec;
 import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public class AEAD {
 
   public static final int OVERHEAD = 16;
 
-  private static byte[] makeNonce(final byte[] iv, final long packetNumber) {
-    final byte[] nonce = new byte[iv.length];
+  private static final byte[] HEADER_MASK_ZEROS = new byte[5];
 
-    System.arraycopy(Longs.toByteArray(packetNumber), 0, nonce, nonce.length - 8, 8);
+  private static void makeNonce(final byte[] iv, final long packetNumber, final byte[] nonce) {
+    // the packet number is left padded to the IV length and XORed with it
     for (int i = 0; i < iv.length; i++) {
-      nonce[i] ^= iv[i];
+      final int shift = (iv.length - 1 - i) * 8;
+      final byte pnByte = shift < 64 ? (byte) (packetNumber >>> shift) : 0;
+      nonce[i] = (byte) (iv[i] ^ pnByte);
+    }
+  }
+
+  private static Cipher newCipher(final String transformation) {
+    try {
+      return Cipher.getInstance(transformation, "SunJCE");
+    } catch (final GeneralSecurityException shouldNeverHappen) {
+      throw new RuntimeException(shouldNeverHappen);
     }
-    return nonce;
   }
 
-  private static byte[] prepareKey(final byte[] key) {
+  private static Cipher newHeaderCipher(final CipherSuite cipherSuite, final SecretKey key) {
+    if (isChaCha20(cipherSuite)) {
+      // keyed per packet, the sample is used as the nonce
+      return newCipher("ChaCha20");
+    }
+    try {
+      final Cipher cipher = newCipher("AES/ECB/NoPadding");
+      // ECB has no IV, so the cipher can be reused for every packet once keyed
+      cipher.init(Cipher.ENCRYPT_MODE, key);
+      return cipher;
+    } catch (final GeneralSecurityException shouldNeverHappen) {
+      throw new RuntimeException(shouldNeverHappen);
+    }
+  }
+
+  private static boolean isChaCha20(final CipherSuite cipherSuite) {
+    return cipherSuite == CipherSuite.TLS_CHACHA20_POLY1305_SHA256;
+  }
+
+  private static byte[] prepareKey(final byte[] key, final int length) {
     if (key == null) {
       throw new IllegalArgumentException("key must not be null");
-    } else if (key.length != 16) {
-      throw new IllegalArgumentException("key must be 16 bytes");
+    } else if (key.length != length) {
+      throw new IllegalArgumentException("key must be " + length + " bytes");
     }
     return Arrays.copyOf(key, key.length);
   }
@@ -41,6 +75,11 @@ public class AEAD {
     return Arrays.copyOf(iv, iv.length);
   }
 
+  private final CipherSuite cipherSuite;
+  private final boolean keyPhase;
+  // traffic secrets the keys were derived from, only kept for 1-RTT keys that can be updated
+  private final byte[] mySecret;
+  private final byte[] otherSecret;
   private final byte[] myKey;
   private final byte[] otherKey;
   private final byte[] myIV;
@@ -48,6 +87,23 @@ public class AEAD {
   private final byte[] myPnKey;
   private final byte[] otherPnKey;
 
+  private final SecretKey mySecretKey;
+  private final SecretKey otherSecretKey;
+  private final SecretKey myPnSecretKey;
+  private final SecretKey otherPnSecretKey;
+
+  // separate ciphers per direction, so the expanded key can be reused between packets. Packets of
+  // a connection are protected on its event loop, so locking these is uncontended. Guarded by
+  // this, ChaCha20 ciphers are replaced when a nonce repeats.
+  private Cipher sealCipher;
+  private Cipher openCipher;
+  private Cipher myHeaderCipher;
+  private Cipher otherHeaderCipher;
+
+  // scratch space for nonces and header protection masks, guarded by this
+  private final byte[] nonce = new byte[12];
+  private final byte[] mask = new byte[16];
+
   public AEAD(
       final byte[] myKey,
       final byte[] otherKey,
@@ -55,22 +111,179 @@ public class AEAD {
       final byte[] otherIV,
       final byte[] myPnKey,
       final byte[] otherPnKey) {
-    this.myKey = prepareKey(myKey);
-    this.otherKey = prepareKey(otherKey);
+    this(CipherSuite.TLS_AES_128_GCM_SHA256, myKey, otherKey, myIV, otherIV, myPnKey, otherPnKey);
+  }
+
+  public AEAD(
+      final CipherSuite cipherSuite,
+      final byte[] myKey,
+      final byte[] otherKey,
+      final byte[] myIV,
+      final byte[] otherIV,
+      final byte[] myPnKey,
+      final byte[] otherPnKey) {
+    this(cipherSuite, false, null, null, myKey, otherKey, myIV, otherIV, myPnKey, otherPnKey);
+  }
+
+  AEAD(
+      final CipherSuite cipherSuite,
+      final boolean keyPhase,
+      final byte[] mySecret,
+      final byte[] otherSecret,
+      final byte[] myKey,
+      final byte[] otherKey,
+      final byte[] myIV,
+      final byte[] otherIV,
+      final byte[] myPnKey,
+      final byte[] otherPnKey) {
+    this.cipherSuite = requireNonNull(cipherSuite);
+    this.keyPhase = keyPhase;
+    this.mySecret = mySecret;
+    this.otherSecret = otherSecret;
+    final int keyLength = cipherSuite.getKeyLength();
+    this.myKey = prepareKey(myKey, keyLength);
+    this.otherKey = prepareKey(otherKey, keyLength);
     this.myIV = prepareIV(myIV);
     this.otherIV = prepareIV(otherIV);
-    this.myPnKey = prepareKey(myPnKey);
-    this.otherPnKey = prepareKey(otherPnKey);
+    this.myPnKey = prepareKey(myPnKey, keyLength);
+    this.otherPnKey = prepareKey(otherPnKey, keyLength);
+
+    final String algorithm = isChaCha20(cipherSuite) ? "ChaCha20" : "AES";
+    this.mySecretKey = new SecretKeySpec(this.myKey, algorithm);
+    this.otherSecretKey = new SecretKeySpec(this.otherKey, algorithm);
+    this.myPnSecretKey = new SecretKeySpec(this.myPnKey, algorithm);
+    this.otherPnSecretKey = new SecretKeySpec(this.otherPnKey, algorithm);
+
+    final String transformation =
+        isChaCha20(cipherSuite) ? "ChaCha20-Poly1305" : "AES/GCM/NoPadding";
+    this.sealCipher = newCipher(transformation);
+    this.openCipher = newCipher(transformation);
+    this.myHeaderCipher = newHeaderCipher(cipherSuite, myPnSecretKey);
+    this.otherHeaderCipher = newHeaderCipher(cipherSuite, otherPnSecretKey);
+  }
+
+  public CipherSuite getCipherSuite() {
+    return cipherSuite;
+  }
+
+  /** The key phase bit of short header packets protected with these keys */
+  public boolean getKeyPhase() {
+    return keyPhase;
+  }
+
+  /** @return true if the next generation of keys can be derived, only 1-RTT keys can be updated */
+  public boolean isUpdatable() {
+    return mySecret != null;
+  }
+
+  /** Derives the keys for the next key phase, header protection keys are not updated */
+  public AEAD nextGeneration() {
+    if (!isUpdatable()) {
+      throw new IllegalStateException("Keys can not be updated");
+    }
+    return OneRttAEAD.nextGeneration(this);
+  }
+
+  byte[] getMySecret() {
+    return mySecret;
   }
 
-  public byte[] open(final byte[] src, final long packetNumber, final byte[] aad)
+  byte[] getOtherSecret() {
+    return otherSecret;
+  }
+
+  public synchronized byte[] open(final byte[] src, final long packetNumber, final byte[] aad)
       throws GeneralSecurityException {
-    return process(src, packetNumber, aad, otherKey, otherIV, Cipher.DECRYPT_MODE);
+    final Cipher cipher = initCipher(false, packetNumber);
+    cipher.updateAAD(aad);
+    return cipher.doFinal(src);
   }
 
-  public byte[] seal(final byte[] src, final long packetNumber, final byte[] aad)
+  public synchronized byte[] seal(final byte[] src, final long packetNumber, final byte[] aad)
       throws GeneralSecurityException {
-    return process(src, packetNumber, aad, myKey, myIV, Cipher.ENCRYPT_MODE);
+    final Cipher cipher = initCipher(true, packetNumber);
+    cipher.updateAAD(aad);
+    return cipher.doFinal(src);
+  }
+
+  /**
+   * Opens the ciphertext in src into dst. The buffers may share memory at the same offset, to
+   * decrypt in place.
+   *
+   * @return the number of plaintext bytes written to dst
+   */
+  public int open(
+      final ByteBuffer src, final ByteBuffer dst, final long packetNumber, final ByteBuffer aad)
+      throws GeneralSecurityException {
+    return process(false, src, dst, packetNumber, aad);
+  }
+
+  /**
+   * Seals the plaintext in src into dst, which must have room for the {@link #OVERHEAD}. The
+   * buffers may share memory at the same offset, to encrypt in place.
+   *
+   * @return the number of ciphertext bytes written to dst
+   */
+  public int seal(
+      final ByteBuffer src, final ByteBuffer dst, final long packetNumber, final ByteBuffer aad)
+      throws GeneralSecurityException {
+    return process(true, src, dst, packetNumber, aad);
+  }
+
+  /**
+   * Opens length bytes of ciphertext at the offset, replacing them with the plaintext
+   *
+   * @return the plaintext length
+   */
+  public int open(
+      final ByteBuf bb,
+      final int offset,
+      final int length,
+      final long packetNumber,
+      final ByteBuffer aad)
+      throws GeneralSecurityException {
+    if (bb.nioBufferCount() != 1) {
+      // not backed by a single buffer, the NIO views would be copies
+      final byte[] plainText = open(getBytes(bb, offset, length), packetNumber, getBytes(aad));
+      bb.setBytes(offset, plainText);
+      return plainText.length;
+    }
+    return open(bb.nioBuffer(offset, length), bb.nioBuffer(offset, length), packetNumber, aad);
+  }
+
+  /**
+   * Seals length bytes of plaintext at the offset, replacing them with the ciphertext. The buffer
+   * capacity must have room for the {@link #OVERHEAD}, the writer index is not changed.
+   *
+   * @return the ciphertext length
+   */
+  public int seal(
+      final ByteBuf bb,
+      final int offset,
+      final int length,
+      final long packetNumber,
+      final ByteBuffer aad)
+      throws GeneralSecurityException {
+    if (bb.nioBufferCount() != 1) {
+      // not backed by a single buffer, the NIO views would be copies
+      final byte[] cipherText = seal(getBytes(bb, offset, length), packetNumber, getBytes(aad));
+      bb.setBytes(offset, cipherText);
+      return cipherText.length;
+    }
+    return seal(
+        bb.nioBuffer(offset, length), bb.nioBuffer(offset, length + OVERHEAD), packetNumber, aad);
+  }
+
+  private static byte[] getBytes(final ByteBuf bb, final int offset, final int length) {
+    final byte[] b = new byte[length];
+    bb.getBytes(offset, b);
+    return b;
+  }
+
+  private static byte[] getBytes(final ByteBuffer bb) {
+    final byte[] b = new byte[bb.remaining()];
+    bb.duplicate().get(b);
+    return b;
   }
 
   public int getSampleLength() {
@@ -79,35 +292,39 @@ public class AEAD {
 
   public byte[] decryptHeader(final byte[] sample, final byte[] bs, boolean shortHeader)
       throws GeneralSecurityException {
-    return processHeader(sample, bs, shortHeader, otherPnKey);
+    return processHeader(sample, bs, shortHeader, false);
   }
 
   public byte[] encryptHeader(final byte[] sample, final byte[] bs, boolean shortHeader)
       throws GeneralSecurityException {
-    return processHeader(sample, bs, shortHeader, myPnKey);
+    return processHeader(sample, bs, shortHeader, true);
   }
 
-  private final ThreadLocal<Cipher> pnCiphers =
-      ThreadLocal.withInitial(
-          () -> {
-            try {
-              return Cipher.getInstance("AES/ECB/NoPadding", "SunJCE");
-            } catch (final GeneralSecurityException shouldNeverHappen) {
-              throw new RuntimeException(shouldNeverHappen);
-            }
-          });
-
-  private byte[] processHeader(
-      final byte[] sample, final byte[] bs, boolean shortHeader, byte[] key)
+  private synchronized byte[] processHeader(
+      final byte[] sample, final byte[] bs, boolean shortHeader, final boolean mine)
       throws GeneralSecurityException {
     byte[] out = Arrays.copyOf(bs, bs.length);
 
-    final Cipher cipher = pnCiphers.get();
-    final SecretKey secretKey = new SecretKeySpec(key, 0, key.length, "AES");
-
-    cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-
-    byte[] mask = cipher.doFinal(sample);
+    if (isChaCha20(cipherSuite)) {
+      // the first 4 bytes of the sample are the block counter, in little endian, the rest the nonce
+      final int counter =
+          (sample[0] & 0xFF)
+              | (sample[1] & 0xFF) << 8
+              | (sample[2] & 0xFF) << 16
+              | (sample[3] & 0xFF) << 24;
+      final byte[] nonce = Arrays.copyOfRange(sample, 4, 16);
+      final Cipher cipher;
+      if (mine) {
+        cipher = myHeaderCipher = reusableCipher(myHeaderCipher, "ChaCha20", nonce);
+      } else {
+        cipher = otherHeaderCipher = reusableCipher(otherHeaderCipher, "ChaCha20", nonce);
+      }
+      final SecretKey key = mine ? myPnSecretKey : otherPnSecretKey;
+      cipher.init(Cipher.ENCRYPT_MODE, key, new ChaCha20ParameterSpec(nonce, counter));
+      cipher.doFinal(HEADER_MASK_ZEROS, 0, HEADER_MASK_ZEROS.length, mask, 0);
+    } else {
+      (mine ? myHeaderCipher : otherHeaderCipher).doFinal(sample, 0, mask.length, mask, 0);
+    }
 
     byte maskMask;
     if (shortHeader) {
@@ -124,32 +341,52 @@ public class AEAD {
     return out;
   }
 
-  private final ThreadLocal<Cipher> aeadCiphers =
-      ThreadLocal.withInitial(
-          () -> {
-            try {
-              return Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
-            } catch (final GeneralSecurityException shouldNeverHappen) {
-              throw new RuntimeException(shouldNeverHappen);
-            }
-          });
-
-  private byte[] process(
-      final byte[] src,
+  private synchronized int process(
+      final boolean seal,
+      final ByteBuffer src,
+      final ByteBuffer dst,
       final long packetNumber,
-      final byte[] aad,
-      final byte[] key,
-      final byte[] iv,
-      final int mode)
+      final ByteBuffer aad)
       throws GeneralSecurityException {
-    final Cipher cipher = aeadCiphers.get();
-    final SecretKey secretKey = new SecretKeySpec(key, 0, key.length, "AES");
-    byte[] nonce = makeNonce(iv, packetNumber);
-    final GCMParameterSpec spec = new GCMParameterSpec(128, nonce);
+    final Cipher cipher = initCipher(seal, packetNumber);
+    // don't move the position of the caller's buffer
+    cipher.updateAAD(aad.duplicate());
+    return cipher.doFinal(src, dst);
+  }
 
-    cipher.init(mode, secretKey, spec);
-    cipher.updateAAD(aad);
-    return cipher.doFinal(src);
+  // must be called while holding the lock
+  private Cipher initCipher(final boolean seal, final long packetNumber)
+      throws GeneralSecurityException {
+    final SecretKey key = seal ? mySecretKey : otherSecretKey;
+    final int mode = seal ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+    makeNonce(seal ? myIV : otherIV, packetNumber, nonce);
+    // the specs take a copy of the nonce
+    if (isChaCha20(cipherSuite)) {
+      final Cipher cipher;
+      if (seal) {
+        cipher = sealCipher = reusableCipher(sealCipher, "ChaCha20-Poly1305", nonce);
+      } else {
+        cipher = openCipher = reusableCipher(openCipher, "ChaCha20-Poly1305", nonce);
+      }
+      cipher.init(mode, key, new IvParameterSpec(nonce));
+      return cipher;
+    } else {
+      final Cipher cipher = seal ? sealCipher : openCipher;
+      cipher.init(mode, key, new GCMParameterSpec(128, nonce));
+      return cipher;
+    }
+  }
+
+  /**
+   * The JDK refuses to initialize a ChaCha20 cipher with the same nonce as the previous
+   * initialization, even when decrypting, e.g. a duplicated packet. Use a new cipher in that case.
+   */
+  private static Cipher reusableCipher(
+      final Cipher cipher, final String transformation, final byte[] nonce) {
+    if (Arrays.equals(cipher.getIV(), nonce)) {
+      return newCipher(transformation);
+    }
+    return cipher;
   }
 
   public byte[] getMyKey() {
@@ -179,7 +416,11 @@ public class AEAD {
   @Override
   public String toString() {
     return "AEAD{"
-        + "myKey="
+        + "cipherSuite="
+        + cipherSuite
+        + ", keyPhase="
+        + keyPhase
+        + ", myKey="
         + Hex.hex(myKey)
         + ", otherKey="
         + Hex.hex(otherKey)
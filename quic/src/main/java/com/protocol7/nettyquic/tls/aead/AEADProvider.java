@@ -1,8 +1,20 @@
 package com.protocol7.nettyquic.tls.aead;
 
+import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.tls.EncryptionLevel;
 
 public interface AEADProvider {
 
   AEAD get(EncryptionLevel level);
+
+  /**
+   * The AEAD for opening a 1-RTT packet with the key phase bit and packet number. By default, key
+   * updates are not supported and the current 1-RTT AEAD is used.
+   */
+  default AEAD getOneRtt(boolean keyPhase, PacketNumber packetNumber) {
+    return get(EncryptionLevel.OneRtt);
+  }
+
+  /** Called after a 1-RTT packet was successfully opened with the AEAD */
+  default void onOneRttOpened(AEAD aead, PacketNumber packetNumber) {}
 }
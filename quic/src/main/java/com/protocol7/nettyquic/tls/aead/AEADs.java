@@ -1,40 +1,87 @@
 package com.protocol7.nettyquic.tls.aead;
 
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.tls.EncryptionLevel;
 import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class AEADs {
+/**
+ * AEADs for each encryption level. The 1-RTT keys are updated, as described in RFC 9001 section 6,
+ * when the peer flips the key phase, or after a number of packets have been sent with the same
+ * keys. The next generation of keys is always derived ahead of time, so switching is cheap. The
+ * previous keys are kept for a while, to open packets reordered around the update.
+ */
+public class AEADs implements AEADProvider {
+
+  /** Half of the 2^23 packets confidentiality limit for AES-GCM, leaves time to complete updates */
+  public static final long DEFAULT_KEY_UPDATE_INTERVAL = 1 << 22;
+
+  /** How long previous 1-RTT keys are kept after an update, covers three PTOs on most paths */
+  public static final long PREVIOUS_KEYS_TIMEOUT = SECONDS.toNanos(3);
 
   private final Logger log = LoggerFactory.getLogger(AEADs.class);
 
   private final AEAD initialAead;
+  private final AtomicReference<AEAD> zeroRttAead = new AtomicReference<>();
   private final AtomicReference<AEAD> handshakeAead = new AtomicReference<>();
-  private final AtomicReference<AEAD> oneRttAead = new AtomicReference<>();
+  private final long keyUpdateInterval;
+  private final Ticker ticker;
+
+  // the current 1-RTT keys are read without locking, the rest of the key update state is guarded
+  // by this
+  private volatile AEAD oneRttAead;
+  private AEAD nextOneRttAead;
+  private AEAD previousOneRttAead;
+  private long previousDiscardAt;
+  private long lowestReceivedInPhase = -1;
+  private long sentInPhase = 0;
 
   public AEADs(final AEAD initialAead) {
+    this(initialAead, DEFAULT_KEY_UPDATE_INTERVAL, Ticker.systemTicker());
+  }
+
+  /**
+   * @param keyUpdateInterval number of 1-RTT packets sent with the same keys before initiating a
+   *     key update
+   */
+  public AEADs(final AEAD initialAead, final long keyUpdateInterval, final Ticker ticker) {
     this.initialAead = requireNonNull(initialAead);
+    this.keyUpdateInterval = keyUpdateInterval;
+    this.ticker = requireNonNull(ticker);
   }
 
   public boolean available(final EncryptionLevel level) {
     if (level == EncryptionLevel.Initial) {
       return true;
+    } else if (level == EncryptionLevel.ZeroRtt) {
+      return zeroRttAead.get() != null;
     } else if (level == EncryptionLevel.Handshake) {
       return handshakeAead.get() != null;
     } else {
-      return oneRttAead.get() != null;
+      return oneRttAead != null;
     }
   }
 
+  @Override
   public AEAD get(final EncryptionLevel level) {
     requireNonNull(level);
 
     if (level == EncryptionLevel.Initial) {
       log.debug("Using initial AEAD: {}", initialAead);
       return initialAead;
+    } else if (level == EncryptionLevel.ZeroRtt) {
+      final AEAD aead = zeroRttAead.get();
+      if (aead == null) {
+        throw new IllegalStateException("0-RTT AEAD not set");
+      }
+
+      log.debug("Using 0-RTT AEAD: {}", aead);
+      return aead;
     } else if (level == EncryptionLevel.Handshake) {
       final AEAD aead = handshakeAead.get();
       if (aead == null) {
@@ -44,7 +91,7 @@ public class AEADs {
       log.debug("Using handshake AEAD: {}", aead);
       return aead;
     } else {
-      final AEAD aead = oneRttAead.get();
+      final AEAD aead = oneRttAead;
       if (aead == null) {
         throw new IllegalStateException("1-RTT AEAD not set");
       }
@@ -54,11 +101,97 @@ public class AEADs {
     }
   }
 
+  /**
+   * The AEAD to send a packet with. Counts the 1-RTT packets sent and initiates a key update once
+   * the interval is reached.
+   */
+  public AEAD getForSending(final EncryptionLevel level) {
+    if (level != EncryptionLevel.OneRtt) {
+      return get(level);
+    }
+
+    synchronized (this) {
+      get(level); // fail if not set
+      sentInPhase++;
+      // only update again once the peer has responded to the previous update
+      if (sentInPhase >= keyUpdateInterval
+          && nextOneRttAead != null
+          && lowestReceivedInPhase >= 0) {
+        log.debug("Initiating key update after {} packets", sentInPhase);
+        update();
+      }
+      return oneRttAead;
+    }
+  }
+
+  @Override
+  public synchronized AEAD getOneRtt(final boolean keyPhase, final PacketNumber packetNumber) {
+    final AEAD current = get(EncryptionLevel.OneRtt);
+    if (keyPhase == current.getKeyPhase()) {
+      return current;
+    }
+
+    discardPreviousIfExpired();
+    final long pn = packetNumber.asLong();
+    if (previousOneRttAead != null && (lowestReceivedInPhase < 0 || pn < lowestReceivedInPhase)) {
+      // reordered from before the update
+      return previousOneRttAead;
+    } else if (nextOneRttAead != null) {
+      // the peer is updating keys, switched to once the packet can be opened
+      return nextOneRttAead;
+    } else {
+      return current;
+    }
+  }
+
+  @Override
+  public synchronized void onOneRttOpened(final AEAD aead, final PacketNumber packetNumber) {
+    if (aead == nextOneRttAead) {
+      log.debug("Peer initiated key update");
+      update();
+    }
+
+    if (aead == oneRttAead) {
+      final long pn = packetNumber.asLong();
+      if (lowestReceivedInPhase < 0 || pn < lowestReceivedInPhase) {
+        lowestReceivedInPhase = pn;
+      }
+    }
+  }
+
+  // must be called while holding the lock
+  private void update() {
+    previousOneRttAead = oneRttAead;
+    previousDiscardAt = ticker.read() + PREVIOUS_KEYS_TIMEOUT;
+    oneRttAead = nextOneRttAead;
+    nextOneRttAead = oneRttAead.nextGeneration();
+    lowestReceivedInPhase = -1;
+    sentInPhase = 0;
+  }
+
+  // must be called while holding the lock
+  private void discardPreviousIfExpired() {
+    if (previousOneRttAead != null && ticker.read() - previousDiscardAt > 0) {
+      log.debug("Discarding previous 1-RTT keys");
+      previousOneRttAead = null;
+    }
+  }
+
+  /** Only set when early data is offered by a client, or accepted by a server */
+  public void setZeroRttAead(final AEAD zeroRttAead) {
+    this.zeroRttAead.set(requireNonNull(zeroRttAead));
+  }
+
   public void setHandshakeAead(final AEAD handshakeAead) {
     this.handshakeAead.set(requireNonNull(handshakeAead));
   }
 
-  public void setOneRttAead(final AEAD oneRttAead) {
-    this.oneRttAead.set(requireNonNull(oneRttAead));
+  public synchronized void setOneRttAead(final AEAD oneRttAead) {
+    this.oneRttAead = requireNonNull(oneRttAead);
+    // derive the next generation ahead of time, so key updates don't stall the data path
+    this.nextOneRttAead = oneRttAead.isUpdatable() ? oneRttAead.nextGeneration() : null;
+    this.previousOneRttAead = null;
+    this.lowestReceivedInPhase = -1;
+    this.sentInPhase = 0;
   }
 }
@@ -2,63 +2,78 @@ package com.protocol7.nettyquic.tls.aead;
 
 import static com.protocol7.nettyquic.tls.aead.Labels.*;
 
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.tls.HKDF;
 
 public class HandshakeAEAD {
 
   public static AEAD create(byte[] handshakeSecret, byte[] helloHash, boolean isClient) {
+    return create(handshakeSecret, helloHash, isClient, CipherSuite.TLS_AES_128_GCM_SHA256);
+  }
+
+  public static AEAD create(
+      byte[] handshakeSecret, byte[] helloHash, boolean isClient, CipherSuite cipherSuite) {
+    final int keyLength = cipherSuite.getKeyLength();
+    final int hashLength = cipherSuite.getHashLength();
 
     // client_handshake_traffic_secret = hkdf-Expand-Label(
     //    key = handshake_secret,
     //    label = "c hs traffic",
     //    context = hello_hash,
-    //    len = 32)
+    //    len = hash_length)
     byte[] clientHandshakeTrafficSecret =
-        HKDF.expandLabel(handshakeSecret, CLIENT_HANDSHAKE_TRAFFIC_SECRET, helloHash, 32);
+        HKDF.expandLabel(
+            cipherSuite, handshakeSecret, CLIENT_HANDSHAKE_TRAFFIC_SECRET, helloHash, hashLength);
 
     // server_handshake_traffic_secret = hkdf-Expand-Label(
     //    key = handshake_secret,
     //    label = "s hs traffic",
     //    context = hello_hash,
-    //    len = 32)
+    //    len = hash_length)
     byte[] serverHandshakeTrafficSecret =
-        HKDF.expandLabel(handshakeSecret, SERVER_HANDSHAKE_TRAFFIC_SECRET, helloHash, 32);
+        HKDF.expandLabel(
+            cipherSuite, handshakeSecret, SERVER_HANDSHAKE_TRAFFIC_SECRET, helloHash, hashLength);
 
     // client_handshake_key = hkdf-Expand-Label(
     //    key = client_handshake_traffic_secret,
     //    label = "key",
     //    context = "",
-    //    len = 16)
+    //    len = key_length)
     byte[] clientHandshakeKey =
-        HKDF.expandLabel(clientHandshakeTrafficSecret, KEY, new byte[0], 16);
+        HKDF.expandLabel(cipherSuite, clientHandshakeTrafficSecret, KEY, new byte[0], keyLength);
 
     // server_handshake_key = hkdf-Expand-Label(
     //    key = server_handshake_traffic_secret,
     //    label = "key",
     //    context = "",
-    //    len = 16)
+    //    len = key_length)
     byte[] serverHandshakeKey =
-        HKDF.expandLabel(serverHandshakeTrafficSecret, KEY, new byte[0], 16);
+        HKDF.expandLabel(cipherSuite, serverHandshakeTrafficSecret, KEY, new byte[0], keyLength);
 
     // client_handshake_iv = hkdf-Expand-Label(
     //    key = client_handshake_traffic_secret,
     //    label = "iv",
     //    context = "",
     //    len = 12)
-    byte[] clientHandshakeIV = HKDF.expandLabel(clientHandshakeTrafficSecret, IV, new byte[0], 12);
+    byte[] clientHandshakeIV =
+        HKDF.expandLabel(cipherSuite, clientHandshakeTrafficSecret, IV, new byte[0], 12);
 
     // server_handshake_iv = hkdf-Expand-Label(
     //    key = server_handshake_traffic_secret,
     //    label = "iv",
     //    context = "",
     //    len = 12)
-    byte[] serverHandshakeIV = HKDF.expandLabel(serverHandshakeTrafficSecret, IV, new byte[0], 12);
+    byte[] serverHandshakeIV =
+        HKDF.expandLabel(cipherSuite, serverHandshakeTrafficSecret, IV, new byte[0], 12);
 
-    byte[] clientPnKey = HKDF.expandLabel(clientHandshakeTrafficSecret, HP_KEY, new byte[0], 16);
-    byte[] serverPnKey = HKDF.expandLabel(serverHandshakeTrafficSecret, HP_KEY, new byte[0], 16);
+    byte[] clientPnKey =
+        HKDF.expandLabel(cipherSuite, clientHandshakeTrafficSecret, HP_KEY, new byte[0], keyLength);
+    byte[] serverPnKey =
+        HKDF.expandLabel(cipherSuite, serverHandshakeTrafficSecret, HP_KEY, new byte[0], keyLength);
 
     if (isClient) {
       return new AEAD(
+          cipherSuite,
           clientHandshakeKey,
           serverHandshakeKey,
           clientHandshakeIV,
@@ -67,6 +82,7 @@ public class HandshakeAEAD {
           serverPnKey);
     } else {
       return new AEAD(
+          cipherSuite,
           serverHandshakeKey,
           clientHandshakeKey,
           serverHandshakeIV,
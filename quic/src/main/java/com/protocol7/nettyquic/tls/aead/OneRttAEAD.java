@@ -2,76 +2,93 @@ package com.protocol7.nettyquic.tls.aead;
 
 import static com.protocol7.nettyquic.tls.aead.Labels.*;
 
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.tls.HKDF;
 
 public class OneRttAEAD {
 
-  private static final byte[] ZEROS = new byte[32];
   private static final byte[] EMPTY = new byte[0];
 
   public static AEAD create(byte[] handshakeSecret, byte[] handshakeHash, boolean isClient) {
+    return create(handshakeSecret, handshakeHash, isClient, CipherSuite.TLS_AES_128_GCM_SHA256);
+  }
 
-    // derived_secret = HKDF-Expand-Label(
-    //                key = handshake_secret,
-    //                label = "derived",
-    //                context = empty_hash,
-    //                len = 32)
-    byte[] derivedSecret = HKDF.expandLabel(handshakeSecret, DERIVED, HKDF.EMPTY_HASH, 32);
+  public static AEAD create(
+      byte[] handshakeSecret, byte[] handshakeHash, boolean isClient, CipherSuite cipherSuite) {
+    final int keyLength = cipherSuite.getKeyLength();
+    final int hashLength = cipherSuite.getHashLength();
 
-    //        master_secret = HKDF-Extract(
-    //                salt=derived_secret,
-    //                key=00...)
-    byte[] masterSecret = HKDF.hkdf.extract(derivedSecret, ZEROS);
+    byte[] masterSecret = HKDF.calculateMasterSecret(cipherSuite, handshakeSecret);
 
     // client_application_traffic_secret = HKDF-Expand-Label(
     //    key = master_secret,
     //    label = "c ap traffic",
     //    context = handshake_hash,
-    //    len = 32)
+    //    len = hash_length)
     byte[] clientApplicationTrafficSecret =
-        HKDF.expandLabel(masterSecret, CLIENT_APPLICATION_TRAFFIC_SECRET, handshakeHash, 32);
+        HKDF.expandLabel(
+            cipherSuite,
+            masterSecret,
+            CLIENT_APPLICATION_TRAFFIC_SECRET,
+            handshakeHash,
+            hashLength);
 
     // server_application_traffic_secret = HKDF-Expand-Label(
     //    key = master_secret,
     //    label = "s ap traffic",
     //    context = handshake_hash,
-    //    len = 32)
+    //    len = hash_length)
     byte[] serverApplicationTrafficSecret =
-        HKDF.expandLabel(masterSecret, SERVER_APPLICATION_TRAFFIC_SECRET, handshakeHash, 32);
+        HKDF.expandLabel(
+            cipherSuite,
+            masterSecret,
+            SERVER_APPLICATION_TRAFFIC_SECRET,
+            handshakeHash,
+            hashLength);
 
     // client_application_key = HKDF-Expand-Label(
     //    key = client_application_traffic_secret,
     //    label = "key",
     //    context = "",
-    //    len = 16)
-    byte[] clientApplicationKey = HKDF.expandLabel(clientApplicationTrafficSecret, KEY, EMPTY, 16);
+    //    len = key_length)
+    byte[] clientApplicationKey =
+        HKDF.expandLabel(cipherSuite, clientApplicationTrafficSecret, KEY, EMPTY, keyLength);
 
     // server_application_key = HKDF-Expand-Label(
     //    key = server_application_traffic_secret,
     //    label = "key",
     //    context = "",
-    //    len = 16)
-    byte[] serverApplicationKey = HKDF.expandLabel(serverApplicationTrafficSecret, KEY, EMPTY, 16);
+    //    len = key_length)
+    byte[] serverApplicationKey =
+        HKDF.expandLabel(cipherSuite, serverApplicationTrafficSecret, KEY, EMPTY, keyLength);
 
     // client_application_iv = HKDF-Expand-Label(
     //    key = client_application_traffic_secret,
     //    label = "iv",
     //    context = "",
     //    len = 12)
-    byte[] clientApplicationIV = HKDF.expandLabel(clientApplicationTrafficSecret, IV, EMPTY, 12);
+    byte[] clientApplicationIV =
+        HKDF.expandLabel(cipherSuite, clientApplicationTrafficSecret, IV, EMPTY, 12);
 
     // server_application_iv = HKDF-Expand-Label(
     //    key = server_application_traffic_secret,
     //    label = "iv",
     //    context = "",
     //    len = 12)
-    byte[] serverApplicationIV = HKDF.expandLabel(serverApplicationTrafficSecret, IV, EMPTY, 12);
+    byte[] serverApplicationIV =
+        HKDF.expandLabel(cipherSuite, serverApplicationTrafficSecret, IV, EMPTY, 12);
 
-    byte[] clientPnKey = HKDF.expandLabel(clientApplicationTrafficSecret, HP_KEY, EMPTY, 16);
-    byte[] serverPnKey = HKDF.expandLabel(serverApplicationTrafficSecret, HP_KEY, EMPTY, 16);
+    byte[] clientPnKey =
+        HKDF.expandLabel(cipherSuite, clientApplicationTrafficSecret, HP_KEY, EMPTY, keyLength);
+    byte[] serverPnKey =
+        HKDF.expandLabel(cipherSuite, serverApplicationTrafficSecret, HP_KEY, EMPTY, keyLength);
 
     if (isClient) {
       return new AEAD(
+          cipherSuite,
+          false,
+          clientApplicationTrafficSecret,
+          serverApplicationTrafficSecret,
           clientApplicationKey,
           serverApplicationKey,
           clientApplicationIV,
@@ -80,6 +97,10 @@ public class OneRttAEAD {
           serverPnKey);
     } else {
       return new AEAD(
+          cipherSuite,
+          false,
+          serverApplicationTrafficSecret,
+          clientApplicationTrafficSecret,
           serverApplicationKey,
           clientApplicationKey,
           serverApplicationIV,
@@ -88,4 +109,34 @@ public class OneRttAEAD {
           clientPnKey);
     }
   }
+
+  /** Derives the keys for the next key phase, as described in RFC 9001 section 6 */
+  static AEAD nextGeneration(AEAD aead) {
+    final CipherSuite cipherSuite = aead.getCipherSuite();
+    final int keyLength = cipherSuite.getKeyLength();
+    final int hashLength = cipherSuite.getHashLength();
+
+    // application_traffic_secret_N+1 = HKDF-Expand-Label(
+    //    key = application_traffic_secret_N,
+    //    label = "quic ku",
+    //    context = "",
+    //    len = hash_length)
+    byte[] mySecret =
+        HKDF.expandLabel(cipherSuite, aead.getMySecret(), KEY_UPDATE, EMPTY, hashLength);
+    byte[] otherSecret =
+        HKDF.expandLabel(cipherSuite, aead.getOtherSecret(), KEY_UPDATE, EMPTY, hashLength);
+
+    // keys and IVs are derived as for the first generation, header protection keys are kept
+    return new AEAD(
+        cipherSuite,
+        !aead.getKeyPhase(),
+        mySecret,
+        otherSecret,
+        HKDF.expandLabel(cipherSuite, mySecret, KEY, EMPTY, keyLength),
+        HKDF.expandLabel(cipherSuite, otherSecret, KEY, EMPTY, keyLength),
+        HKDF.expandLabel(cipherSuite, mySecret, IV, EMPTY, 12),
+        HKDF.expandLabel(cipherSuite, otherSecret, IV, EMPTY, 12),
+        aead.getMyPnKey(),
+        aead.getOtherPnKey());
+  }
 }
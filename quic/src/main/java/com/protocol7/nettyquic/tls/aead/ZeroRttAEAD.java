@@ -0,0 +1,37 @@
+package com.protocol7.nettyquic.tls.aead;
+
+import static com.protocol7.nettyquic.tls.aead.Labels.*;
+
+import com.protocol7.nettyquic.tls.CipherSuite;
+import com.protocol7.nettyquic.tls.HKDF;
+
+/** Keys for early data, only ever sent by the client */
+public class ZeroRttAEAD {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  public static AEAD create(byte[] psk, byte[] clientHelloHash, CipherSuite cipherSuite) {
+    final int keyLength = cipherSuite.getKeyLength();
+
+    // client_early_traffic_secret = HKDF-Expand-Label(
+    //    key = early_secret,
+    //    label = "c e traffic",
+    //    context = Hash(ClientHello),
+    //    len = hash_length)
+    byte[] clientEarlyTrafficSecret =
+        HKDF.expandLabel(
+            cipherSuite,
+            HKDF.calculateEarlySecret(cipherSuite, psk),
+            CLIENT_EARLY_TRAFFIC_SECRET,
+            clientHelloHash,
+            cipherSuite.getHashLength());
+
+    byte[] key = HKDF.expandLabel(cipherSuite, clientEarlyTrafficSecret, KEY, EMPTY, keyLength);
+    byte[] iv = HKDF.expandLabel(cipherSuite, clientEarlyTrafficSecret, IV, EMPTY, 12);
+    byte[] pnKey =
+        HKDF.expandLabel(cipherSuite, clientEarlyTrafficSecret, HP_KEY, EMPTY, keyLength);
+
+    // the same keys in both directions, the server only opens with them
+    return new AEAD(cipherSuite, key, key, iv, iv, pnKey, pnKey);
+  }
+}
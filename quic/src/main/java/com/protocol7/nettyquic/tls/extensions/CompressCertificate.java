@@ -0,0 +1,77 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import static java.util.Arrays.asList;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The algorithms a client can decompress the server certificate with, as described in RFC 8879.
+ * Only sent by clients, a server supporting one of them sends a CompressedCertificate message.
+ */
+public class CompressCertificate implements Extension {
+
+  public static final int ZLIB = 1;
+
+  /** zlib, the only algorithm we support as it is provided by the JDK */
+  public static final CompressCertificate DEFAULT = new CompressCertificate(ZLIB);
+
+  public static CompressCertificate parse(ByteBuf bb) {
+    int len = bb.readUnsignedByte();
+
+    List<Integer> algorithms = new ArrayList<>();
+    for (int i = 0; i < len / 2; i++) {
+      algorithms.add(bb.readUnsignedShort());
+    }
+
+    return new CompressCertificate(algorithms);
+  }
+
+  private final List<Integer> algorithms;
+
+  public CompressCertificate(final List<Integer> algorithms) {
+    this.algorithms = algorithms;
+  }
+
+  public CompressCertificate(final Integer... algorithms) {
+    this(asList(algorithms));
+  }
+
+  @Override
+  public ExtensionType getType() {
+    return ExtensionType.compress_certificate;
+  }
+
+  public List<Integer> getAlgorithms() {
+    return algorithms;
+  }
+
+  @Override
+  public void write(ByteBuf bb, boolean ignored) {
+    bb.writeByte(algorithms.size() * 2);
+
+    for (int algorithm : algorithms) {
+      bb.writeShort(algorithm);
+    }
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final CompressCertificate that = (CompressCertificate) o;
+    return Objects.equals(algorithms, that.algorithms);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(algorithms);
+  }
+
+  @Override
+  public String toString() {
+    return "CompressCertificate{" + algorithms + '}';
+  }
+}
@@ -0,0 +1,51 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Offers early data in a ClientHello, accepts it in EncryptedExtensions, or allows it for a ticket
+ * in a NewSessionTicket. Only the last carries a value, the maximum amount of early data.
+ */
+public class EarlyData implements Extension {
+
+  /** QUIC limits early data by transport parameters instead, tickets must carry this value */
+  public static final long QUIC_MAX_EARLY_DATA_SIZE = 0xFFFFFFFFL;
+
+  public static final EarlyData INDICATION = new EarlyData(-1);
+
+  public static EarlyData parse(ByteBuf bb) {
+    if (bb.isReadable()) {
+      return new EarlyData(bb.readUnsignedInt());
+    } else {
+      return INDICATION;
+    }
+  }
+
+  private final long maxEarlyDataSize;
+
+  public EarlyData(long maxEarlyDataSize) {
+    this.maxEarlyDataSize = maxEarlyDataSize;
+  }
+
+  @Override
+  public ExtensionType getType() {
+    return ExtensionType.early_data;
+  }
+
+  /** Maximum amount of early data allowed with a ticket, -1 outside of a NewSessionTicket */
+  public long getMaxEarlyDataSize() {
+    return maxEarlyDataSize;
+  }
+
+  @Override
+  public void write(ByteBuf bb, boolean isClient) {
+    if (maxEarlyDataSize > -1) {
+      bb.writeInt((int) maxEarlyDataSize);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "EarlyData{maxEarlyDataSize=" + maxEarlyDataSize + '}';
+  }
+}
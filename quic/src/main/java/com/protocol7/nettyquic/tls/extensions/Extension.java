@@ -33,6 +33,16 @@ public interface Extension {
         return SupportedVersions.parse(b, isClient);
       } else if (type == ExtensionType.supported_groups) {
         return SupportedGroups.parse(b);
+      } else if (type == ExtensionType.psk_key_exchange_modes) {
+        return PskKeyExchangeModes.parse(b);
+      } else if (type == ExtensionType.pre_shared_key) {
+        return PreSharedKey.parse(b, isClient);
+      } else if (type == ExtensionType.early_data) {
+        return EarlyData.parse(b);
+      } else if (type == ExtensionType.signature_algorithms) {
+        return SignatureAlgorithms.parse(b);
+      } else if (type == ExtensionType.compress_certificate) {
+        return CompressCertificate.parse(b);
       } else {
         return RawExtension.parse(type, b);
       }
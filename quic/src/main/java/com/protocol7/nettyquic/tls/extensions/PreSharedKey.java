@@ -0,0 +1,156 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import com.protocol7.nettyquic.utils.Hex;
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-shared keys offered by the client, as identities with a binder for each, or the identity
+ * selected by the server. Must be the last extension in a ClientHello, as the binders cover all of
+ * the ClientHello before them.
+ */
+public class PreSharedKey implements Extension {
+
+  public static PreSharedKey parse(ByteBuf bb, boolean isClient) {
+    if (isClient) {
+      return new PreSharedKey(List.of(), List.of(), bb.readUnsignedShort());
+    }
+
+    List<Identity> identities = new ArrayList<>();
+    int identitiesLen = bb.readUnsignedShort();
+    int identitiesEnd = bb.readerIndex() + identitiesLen;
+    while (bb.readerIndex() < identitiesEnd) {
+      byte[] identity = new byte[bb.readUnsignedShort()];
+      bb.readBytes(identity);
+      long obfuscatedTicketAge = bb.readUnsignedInt();
+
+      identities.add(new Identity(identity, obfuscatedTicketAge));
+    }
+
+    List<byte[]> binders = new ArrayList<>();
+    int bindersLen = bb.readUnsignedShort();
+    int bindersEnd = bb.readerIndex() + bindersLen;
+    while (bb.readerIndex() < bindersEnd) {
+      byte[] binder = new byte[bb.readUnsignedByte()];
+      bb.readBytes(binder);
+
+      binders.add(binder);
+    }
+
+    if (identities.isEmpty() || identities.size() != binders.size()) {
+      throw new IllegalArgumentException("Each PSK identity must have a binder");
+    }
+
+    return new PreSharedKey(identities, binders, -1);
+  }
+
+  /** A single identity offered by a client, the binder is filled in once the hello is written */
+  public static PreSharedKey offer(byte[] identity, long obfuscatedTicketAge, int binderLength) {
+    return new PreSharedKey(
+        List.of(new Identity(identity, obfuscatedTicketAge)), List.of(new byte[binderLength]), -1);
+  }
+
+  public static PreSharedKey selected(int selectedIdentity) {
+    return new PreSharedKey(List.of(), List.of(), selectedIdentity);
+  }
+
+  private final List<Identity> identities;
+  private final List<byte[]> binders;
+  private final int selectedIdentity;
+
+  private PreSharedKey(List<Identity> identities, List<byte[]> binders, int selectedIdentity) {
+    this.identities = List.copyOf(identities);
+    this.binders = List.copyOf(binders);
+    this.selectedIdentity = selectedIdentity;
+  }
+
+  @Override
+  public ExtensionType getType() {
+    return ExtensionType.pre_shared_key;
+  }
+
+  public List<Identity> getIdentities() {
+    return identities;
+  }
+
+  public List<byte[]> getBinders() {
+    return binders;
+  }
+
+  /** Index of the identity accepted by the server, -1 in a ClientHello */
+  public int getSelectedIdentity() {
+    return selectedIdentity;
+  }
+
+  /** Length of the binders when written, these are the bytes last in the ClientHello */
+  public int getBindersLength() {
+    int len = 2;
+    for (byte[] binder : binders) {
+      len += 1 + binder.length;
+    }
+    return len;
+  }
+
+  @Override
+  public void write(ByteBuf bb, boolean isClient) {
+    if (!isClient) {
+      bb.writeShort(selectedIdentity);
+      return;
+    }
+
+    int identitiesLenPos = bb.writerIndex();
+    bb.writeShort(0);
+    for (Identity identity : identities) {
+      bb.writeShort(identity.getIdentity().length);
+      bb.writeBytes(identity.getIdentity());
+      bb.writeInt((int) identity.getObfuscatedTicketAge());
+    }
+    bb.setShort(identitiesLenPos, bb.writerIndex() - identitiesLenPos - 2);
+
+    int bindersLenPos = bb.writerIndex();
+    bb.writeShort(0);
+    for (byte[] binder : binders) {
+      bb.writeByte(binder.length);
+      bb.writeBytes(binder);
+    }
+    bb.setShort(bindersLenPos, bb.writerIndex() - bindersLenPos - 2);
+  }
+
+  @Override
+  public String toString() {
+    if (identities.isEmpty()) {
+      return "PreSharedKey{selectedIdentity=" + selectedIdentity + '}';
+    }
+    return "PreSharedKey{identities=" + identities + '}';
+  }
+
+  public static class Identity {
+    private final byte[] identity;
+    private final long obfuscatedTicketAge;
+
+    public Identity(byte[] identity, long obfuscatedTicketAge) {
+      this.identity = identity;
+      this.obfuscatedTicketAge = obfuscatedTicketAge;
+    }
+
+    public byte[] getIdentity() {
+      return identity;
+    }
+
+    /** Age of the ticket in milliseconds, plus the age add from the ticket, modulo 2^32 */
+    public long getObfuscatedTicketAge() {
+      return obfuscatedTicketAge;
+    }
+
+    @Override
+    public String toString() {
+      return "Identity{"
+          + "identity="
+          + Hex.hex(identity)
+          + ", obfuscatedTicketAge="
+          + obfuscatedTicketAge
+          + '}';
+    }
+  }
+}
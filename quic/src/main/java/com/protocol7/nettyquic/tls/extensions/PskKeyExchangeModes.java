@@ -0,0 +1,57 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import com.protocol7.nettyquic.utils.Hex;
+import io.netty.buffer.ByteBuf;
+
+/** The modes a client supports for using a pre-shared key, only sent by clients */
+public class PskKeyExchangeModes implements Extension {
+
+  public static final byte PSK_KE = 0;
+  public static final byte PSK_DHE_KE = 1;
+
+  /** PSK with (EC)DHE key establishment, the only mode we use as it keeps forward secrecy */
+  public static final PskKeyExchangeModes PSK_DHE = new PskKeyExchangeModes(PSK_DHE_KE);
+
+  public static PskKeyExchangeModes parse(ByteBuf bb) {
+    int len = bb.readByte();
+    byte[] modes = new byte[len];
+    bb.readBytes(modes);
+
+    return new PskKeyExchangeModes(modes);
+  }
+
+  private final byte[] modes;
+
+  public PskKeyExchangeModes(byte... modes) {
+    this.modes = modes;
+  }
+
+  @Override
+  public ExtensionType getType() {
+    return ExtensionType.psk_key_exchange_modes;
+  }
+
+  public byte[] getModes() {
+    return modes;
+  }
+
+  public boolean supports(byte mode) {
+    for (byte m : modes) {
+      if (m == mode) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void write(ByteBuf bb, boolean isClient) {
+    bb.writeByte(modes.length);
+    bb.writeBytes(modes);
+  }
+
+  @Override
+  public String toString() {
+    return "PskKeyExchangeModes{" + Hex.hex(modes) + '}';
+  }
+}
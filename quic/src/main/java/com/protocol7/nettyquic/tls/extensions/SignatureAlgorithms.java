@@ -2,6 +2,7 @@ package com.protocol7.nettyquic.tls.extensions;
 
 import static java.util.Arrays.asList;
 
+import com.protocol7.nettyquic.tls.SignatureScheme;
 import io.netty.buffer.ByteBuf;
 import java.util.ArrayList;
 import java.util.List;
@@ -9,8 +10,13 @@ import java.util.Objects;
 
 public class SignatureAlgorithms implements Extension {
 
+  /** The signature schemes supported in this runtime */
   public static SignatureAlgorithms defaults() {
-    return new SignatureAlgorithms(0x0804); // RSA-PSS-RSAE-SHA256
+    List<Integer> algorithms = new ArrayList<>();
+    for (SignatureScheme scheme : SignatureScheme.SUPPORTED) {
+      algorithms.add(scheme.getValue());
+    }
+    return new SignatureAlgorithms(algorithms);
   }
 
   public static SignatureAlgorithms parse(ByteBuf bb) {
@@ -18,7 +24,7 @@ public class SignatureAlgorithms implements Extension {
 
     List<Integer> algorithms = new ArrayList<>();
     while (bb.isReadable()) {
-      algorithms.add((int) bb.readShort());
+      algorithms.add(bb.readUnsignedShort());
     }
 
     return new SignatureAlgorithms(algorithms);
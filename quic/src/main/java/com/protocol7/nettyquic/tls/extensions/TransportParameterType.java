@@ -18,7 +18,8 @@ public enum TransportParameterType {
   ACK_DELAY_EXPONENT(0x000a),
   MAX_ACK_DELAY(0x000b),
   DISABLE_MIGRATION(0x000c),
-  PREFERRED_ADDRESS(0x000d);
+  PREFERRED_ADDRESS(0x000d),
+  RETRY_SOURCE_CONNECTION_ID(0x0010);
 
   public static TransportParameterType fromValue(byte[] value) {
     Preconditions.checkArgument(value.length == 2);
@@ -30,6 +30,7 @@ public class TransportParameters implements Extension {
     private int initialMaxStreamDataUni = -1;
     private int maxAckDelay = -1;
     private byte[] originalConnectionId = new byte[0];
+    private byte[] retrySourceConnectionId = new byte[0];
 
     public Builder(final Version version) {
       this.version = version;
@@ -105,6 +106,11 @@ public class TransportParameters implements Extension {
       return this;
     }
 
+    public Builder withRetrySourceConnectionId(final byte[] retrySourceConnectionId) {
+      this.retrySourceConnectionId = retrySourceConnectionId;
+      return this;
+    }
+
     public TransportParameters build() {
       return new TransportParameters(
           version,
@@ -121,7 +127,8 @@ public class TransportParameters implements Extension {
           initialMaxStreamDataBidiRemote,
           initialMaxStreamDataUni,
           maxAckDelay,
-          originalConnectionId);
+          originalConnectionId,
+          retrySourceConnectionId);
     }
   }
 
@@ -130,6 +137,11 @@ public class TransportParameters implements Extension {
   }
 
   public static TransportParameters defaults(final Version version) {
+    return newDefaultsBuilder(version).build();
+  }
+
+  /** A builder with the default parameters set, for adding per connection parameters */
+  public static Builder newDefaultsBuilder(final Version version) {
     return new Builder(version)
         .withInitialMaxStreamDataBidiLocal(32768)
         .withInitialMaxData(49152)
@@ -140,7 +152,8 @@ public class TransportParameters implements Extension {
         .withDisableMigration(true)
         .withInitialMaxStreamDataBidiRemote(32768)
         .withInitialMaxStreamDataUni(32768)
-        .build();
+        .withAckDelayExponent(3)
+        .withMaxAckDelay(25);
   }
 
   public static TransportParameters parse(final ByteBuf bb, final boolean isClient) {
@@ -213,6 +226,9 @@ public class TransportParameters implements Extension {
           case ORIGINAL_CONNECTION_ID:
             builder.withOriginalConnectionId(data);
             break;
+          case RETRY_SOURCE_CONNECTION_ID:
+            builder.withRetrySourceConnectionId(data);
+            break;
         }
       }
       return builder.build();
@@ -249,6 +265,7 @@ public class TransportParameters implements Extension {
   private final int initialMaxStreamDataUni;
   private final int maxAckDelay;
   private final byte[] originalConnectionId;
+  private final byte[] retrySourceConnectionId;
 
   private TransportParameters(
       final Version version,
@@ -265,7 +282,8 @@ public class TransportParameters implements Extension {
       final int initialMaxStreamDataBidiRemote,
       final int initialMaxStreamDataUni,
       final int maxAckDelay,
-      final byte[] originalConnectionId) {
+      final byte[] originalConnectionId,
+      final byte[] retrySourceConnectionId) {
     this.version = version;
     this.supportedVersions = supportedVersions;
     this.initialMaxStreamDataBidiLocal = initialMaxStreamDataBidiLocal;
@@ -281,6 +299,7 @@ public class TransportParameters implements Extension {
     this.initialMaxStreamDataUni = initialMaxStreamDataUni;
     this.maxAckDelay = maxAckDelay;
     this.originalConnectionId = originalConnectionId;
+    this.retrySourceConnectionId = retrySourceConnectionId;
   }
 
   @Override
@@ -348,6 +367,10 @@ public class TransportParameters implements Extension {
     return originalConnectionId;
   }
 
+  public byte[] getRetrySourceConnectionId() {
+    return retrySourceConnectionId;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) return true;
@@ -367,7 +390,8 @@ public class TransportParameters implements Extension {
         && initialMaxStreamDataUni == that.initialMaxStreamDataUni
         && maxAckDelay == that.maxAckDelay
         && Arrays.equals(statelessResetToken, that.statelessResetToken)
-        && Arrays.equals(originalConnectionId, that.originalConnectionId);
+        && Arrays.equals(originalConnectionId, that.originalConnectionId)
+        && Arrays.equals(retrySourceConnectionId, that.retrySourceConnectionId);
   }
 
   @Override
@@ -389,6 +413,7 @@ public class TransportParameters implements Extension {
             maxAckDelay);
     result = 31 * result + Arrays.hashCode(statelessResetToken);
     result = 31 * result + Arrays.hashCode(originalConnectionId);
+    result = 31 * result + Arrays.hashCode(retrySourceConnectionId);
     return result;
   }
 
@@ -425,6 +450,8 @@ public class TransportParameters implements Extension {
         + maxAckDelay
         + ", originalConnectionId="
         + Arrays.toString(originalConnectionId)
+        + ", retrySourceConnectionId="
+        + Arrays.toString(retrySourceConnectionId)
         + '}';
   }
 
@@ -499,6 +526,11 @@ public class TransportParameters implements Extension {
       bb.writeShort(originalConnectionId.length);
       bb.writeBytes(originalConnectionId);
     }
+    if (retrySourceConnectionId.length > 0) {
+      bb.writeBytes(RETRY_SOURCE_CONNECTION_ID.asBytes());
+      bb.writeShort(retrySourceConnectionId.length);
+      bb.writeBytes(retrySourceConnectionId);
+    }
 
     bb.setShort(lenPos, bb.writerIndex() - lenPos - 2);
   }
@@ -1,6 +1,7 @@
 package com.protocol7.nettyquic.tls.messages;
 
 import com.protocol7.nettyquic.Writeable;
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.tls.VerifyData;
 import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
@@ -8,7 +9,12 @@ import io.netty.buffer.ByteBuf;
 public class ClientFinished implements Writeable {
 
   public static ClientFinished create(byte[] clientHandshakeTrafficSecret, byte[] finHash) {
-    byte[] verifyData = VerifyData.create(clientHandshakeTrafficSecret, finHash);
+    return create(CipherSuite.TLS_AES_128_GCM_SHA256, clientHandshakeTrafficSecret, finHash);
+  }
+
+  public static ClientFinished create(
+      CipherSuite cipherSuite, byte[] clientHandshakeTrafficSecret, byte[] finHash) {
+    byte[] verifyData = VerifyData.create(cipherSuite, clientHandshakeTrafficSecret, finHash);
 
     return new ClientFinished(verifyData);
   }
@@ -12,6 +12,7 @@ import com.protocol7.nettyquic.utils.Hex;
 import com.protocol7.nettyquic.utils.Rnd;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -19,16 +20,31 @@ import java.util.Optional;
 public class ClientHello {
 
   public static ClientHello defaults(KeyExchange ke, TransportParameters tps) {
+    return defaults(ke, tps, CipherSuite.SUPPORTED);
+  }
+
+  public static ClientHello defaults(
+      KeyExchange ke, TransportParameters tps, List<CipherSuite> cipherSuites) {
+    return defaults(ke, tps, cipherSuites, List.of());
+  }
+
+  /** @param additionalExtensions extensions written after the defaults, in order */
+  public static ClientHello defaults(
+      KeyExchange ke,
+      TransportParameters tps,
+      List<CipherSuite> cipherSuites,
+      List<Extension> additionalExtensions) {
     byte[] clientRandom = Rnd.rndBytes(32);
     byte[] sessionId = new byte[0];
-    List<CipherSuite> cipherSuites = CipherSuite.SUPPORTED;
     List<Extension> extensions =
-        List.of(
-            KeyShare.of(ke.getGroup(), ke.getPublicKey()),
-            SignatureAlgorithms.defaults(),
-            new SupportedGroups(Group.X25519),
-            SupportedVersions.TLS13,
-            tps);
+        new ArrayList<>(
+            List.of(
+                KeyShare.of(ke.getGroup(), ke.getPublicKey()),
+                SignatureAlgorithms.defaults(),
+                new SupportedGroups(Group.X25519),
+                SupportedVersions.TLS13,
+                tps));
+    extensions.addAll(additionalExtensions);
 
     return new ClientHello(clientRandom, sessionId, cipherSuites, extensions);
   }
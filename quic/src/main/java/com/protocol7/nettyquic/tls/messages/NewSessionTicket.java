@@ -0,0 +1,117 @@
+package com.protocol7.nettyquic.tls.messages;
+
+import com.protocol7.nettyquic.Writeable;
+import com.protocol7.nettyquic.tls.extensions.Extension;
+import com.protocol7.nettyquic.utils.Bytes;
+import com.protocol7.nettyquic.utils.Hex;
+import io.netty.buffer.ByteBuf;
+import java.util.List;
+
+/** Sent by the server after the handshake, a ticket the client can use to resume the session */
+public class NewSessionTicket implements Writeable {
+
+  public static NewSessionTicket parse(ByteBuf bb) {
+    int type = bb.readByte();
+    if (type != 0x04) {
+      throw new IllegalArgumentException("Invalid type: " + type);
+    }
+
+    Bytes.read24(bb); // length
+
+    long lifetime = bb.readUnsignedInt();
+    long ageAdd = bb.readUnsignedInt();
+
+    byte[] nonce = new byte[bb.readUnsignedByte()];
+    bb.readBytes(nonce);
+
+    byte[] ticket = new byte[bb.readUnsignedShort()];
+    bb.readBytes(ticket);
+
+    int extLen = bb.readUnsignedShort();
+    ByteBuf extBB = bb.readBytes(extLen);
+    try {
+      List<Extension> extensions = Extension.parseAll(extBB, true);
+
+      return new NewSessionTicket(lifetime, ageAdd, nonce, ticket, extensions);
+    } finally {
+      extBB.release();
+    }
+  }
+
+  private final long lifetime;
+  private final long ageAdd;
+  private final byte[] nonce;
+  private final byte[] ticket;
+  private final List<Extension> extensions;
+
+  public NewSessionTicket(
+      long lifetime, long ageAdd, byte[] nonce, byte[] ticket, List<Extension> extensions) {
+    this.lifetime = lifetime;
+    this.ageAdd = ageAdd;
+    this.nonce = nonce;
+    this.ticket = ticket;
+    this.extensions = extensions;
+  }
+
+  /** How long the ticket can be used, in seconds */
+  public long getLifetime() {
+    return lifetime;
+  }
+
+  /** Added to the ticket age sent by the client, to avoid connections being linked by it */
+  public long getAgeAdd() {
+    return ageAdd;
+  }
+
+  /** Unique per ticket issued on a connection, used to derive the resumption PSK */
+  public byte[] getNonce() {
+    return nonce;
+  }
+
+  public byte[] getTicket() {
+    return ticket;
+  }
+
+  public List<Extension> getExtensions() {
+    return extensions;
+  }
+
+  public void write(ByteBuf bb) {
+    bb.writeByte(0x04);
+
+    int lenPos = bb.writerIndex();
+    Bytes.write24(bb, 0);
+
+    bb.writeInt((int) lifetime);
+    bb.writeInt((int) ageAdd);
+
+    bb.writeByte(nonce.length);
+    bb.writeBytes(nonce);
+
+    bb.writeShort(ticket.length);
+    bb.writeBytes(ticket);
+
+    int extLenPos = bb.writerIndex();
+    bb.writeShort(0);
+    Extension.writeAll(extensions, bb, false);
+    bb.setShort(extLenPos, bb.writerIndex() - extLenPos - 2);
+
+    Bytes.set24(bb, lenPos, bb.writerIndex() - lenPos - 3);
+  }
+
+  @Override
+  public String toString() {
+    return "NewSessionTicket{"
+        + "lifetime="
+        + lifetime
+        + ", ageAdd="
+        + ageAdd
+        + ", nonce="
+        + Hex.hex(nonce)
+        + ", ticket="
+        + Hex.hex(ticket)
+        + ", extensions="
+        + extensions
+        + '}';
+  }
+}
@@ -2,11 +2,14 @@ package com.protocol7.nettyquic.tls.messages;
 
 import com.protocol7.nettyquic.Writeable;
 import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.tls.extensions.CompressCertificate;
 import com.protocol7.nettyquic.tls.extensions.Extension;
 import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.security.GeneralSecurityException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
@@ -14,6 +17,9 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class ServerHandshake {
 
@@ -21,11 +27,19 @@ public class ServerHandshake {
 
     return new ServerHandshake(
         EncryptedExtensions.parse(bb, isClient),
-        ServerCertificate.parse(bb),
+        parseCertificate(bb),
         ServerCertificateVerify.parse(bb),
         ServerHandshakeFinished.parse(bb));
   }
 
+  /** Parses a Certificate message, decompressing it if sent as a CompressedCertificate */
+  public static ServerCertificate parseCertificate(ByteBuf bb) {
+    if (bb.getByte(bb.readerIndex()) == 0x19) {
+      return CompressedCertificate.parse(bb).decompress();
+    }
+    return ServerCertificate.parse(bb);
+  }
+
   private final EncryptedExtensions encryptedExtensions;
   private final ServerCertificate serverCertificate;
   private final ServerCertificateVerify serverCertificateVerify;
@@ -213,6 +227,140 @@ public class ServerHandshake {
     }
   }
 
+  /** A Certificate message compressed as described in RFC 8879 */
+  public static class CompressedCertificate implements Writeable {
+
+    // limits the memory a peer can make us allocate, far above any sane certificate chain
+    public static final int MAX_UNCOMPRESSED_LENGTH = 1 << 20;
+
+    /** Compresses the certificate message with zlib, the handshake header is not compressed */
+    public static CompressedCertificate compress(ServerCertificate certificate) {
+      byte[] message = Bytes.write(certificate);
+
+      Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+      try {
+        deflater.setInput(message, 4, message.length - 4);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        while (!deflater.finished()) {
+          int len = deflater.deflate(buf);
+          out.write(buf, 0, len);
+        }
+        return new CompressedCertificate(
+            CompressCertificate.ZLIB, message.length - 4, out.toByteArray());
+      } finally {
+        deflater.end();
+      }
+    }
+
+    public static CompressedCertificate parse(ByteBuf bb) {
+      // compressed server cert
+      int compressedCertType = bb.readByte();
+      if (compressedCertType != 0x19) {
+        throw new IllegalArgumentException("Invalid compressed cert type: " + compressedCertType);
+      }
+
+      int ccMsgLen = Bytes.read24(bb);
+
+      int algorithm = bb.readUnsignedShort();
+      int uncompressedLength = Bytes.read24(bb);
+
+      byte[] compressed = new byte[Bytes.read24(bb)];
+      bb.readBytes(compressed);
+
+      return new CompressedCertificate(algorithm, uncompressedLength, compressed);
+    }
+
+    private final int algorithm;
+    private final int uncompressedLength;
+    private final byte[] compressed;
+
+    public CompressedCertificate(int algorithm, int uncompressedLength, byte[] compressed) {
+      this.algorithm = algorithm;
+      this.uncompressedLength = uncompressedLength;
+      this.compressed = compressed;
+    }
+
+    public int getAlgorithm() {
+      return algorithm;
+    }
+
+    public int getUncompressedLength() {
+      return uncompressedLength;
+    }
+
+    public byte[] getCompressed() {
+      return compressed;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the algorithm is not supported, or if the data does not
+     *     decompress to exactly the uncompressed length
+     */
+    public ServerCertificate decompress() {
+      if (algorithm != CompressCertificate.ZLIB) {
+        throw new IllegalArgumentException("Unsupported compression algorithm: " + algorithm);
+      }
+      if (uncompressedLength > MAX_UNCOMPRESSED_LENGTH) {
+        throw new IllegalArgumentException(
+            "Compressed certificate too large: " + uncompressedLength);
+      }
+
+      // restore the handshake header of the certificate message
+      byte[] message = new byte[4 + uncompressedLength];
+      message[0] = 0x0b;
+      message[1] = (byte) (uncompressedLength >> 16);
+      message[2] = (byte) (uncompressedLength >> 8);
+      message[3] = (byte) uncompressedLength;
+
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(compressed);
+
+        int len = 0;
+        byte[] overflow = new byte[1];
+        while (!inflater.finished()) {
+          int read =
+              len < uncompressedLength
+                  ? inflater.inflate(message, 4 + len, uncompressedLength - len)
+                  : inflater.inflate(overflow);
+          if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            throw new IllegalArgumentException("Truncated compressed certificate");
+          }
+          len += read;
+          if (len > uncompressedLength) {
+            throw new IllegalArgumentException("Compressed certificate longer than given");
+          }
+        }
+        if (len != uncompressedLength) {
+          throw new IllegalArgumentException("Compressed certificate shorter than given");
+        }
+      } catch (DataFormatException e) {
+        throw new IllegalArgumentException("Invalid compressed certificate", e);
+      } finally {
+        inflater.end();
+      }
+
+      return ServerCertificate.parse(Unpooled.wrappedBuffer(message));
+    }
+
+    public void write(ByteBuf bb) {
+      // compressed server cert
+      bb.writeByte(0x19);
+      int ccMsgLenPos = bb.writerIndex();
+      Bytes.write24(bb, 0);
+
+      bb.writeShort(algorithm);
+      Bytes.write24(bb, uncompressedLength);
+      Bytes.write24(bb, compressed.length);
+      bb.writeBytes(compressed);
+
+      Bytes.set24(bb, ccMsgLenPos, bb.writerIndex() - ccMsgLenPos - 3);
+    }
+  }
+
   public static class ServerCertificateVerify implements Writeable {
 
     public static ServerCertificateVerify parse(ByteBuf bb) {
@@ -10,6 +10,7 @@ import com.protocol7.nettyquic.tls.extensions.*;
 import com.protocol7.nettyquic.utils.Bytes;
 import com.protocol7.nettyquic.utils.Rnd;
 import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -19,15 +20,33 @@ public class ServerHello implements Writeable {
   private static final byte[] VERSION = new byte[] {0x03, 0x03};
 
   public static ServerHello defaults(KeyExchange ke, TransportParameters tps) {
+    return defaults(ke, tps, CipherSuite.TLS_AES_128_GCM_SHA256);
+  }
+
+  public static ServerHello defaults(
+      KeyExchange ke, TransportParameters tps, CipherSuite cipherSuites) {
+    return defaults(ke, tps, cipherSuites, List.of());
+  }
+
+  /**
+   * @param tps transport parameters, or the same already encoded as a raw extension
+   * @param additionalExtensions extensions written after the defaults, in order
+   */
+  public static ServerHello defaults(
+      KeyExchange ke,
+      Extension tps,
+      CipherSuite cipherSuites,
+      List<Extension> additionalExtensions) {
     byte[] clientRandom = Rnd.rndBytes(32);
     byte[] sessionId = new byte[0];
-    CipherSuite cipherSuites = CipherSuite.TLS_AES_128_GCM_SHA256;
     List<Extension> extensions =
-        List.of(
-            KeyShare.of(ke.getGroup(), ke.getPublicKey()),
-            new SupportedGroups(Group.X25519),
-            SupportedVersions.TLS13,
-            tps);
+        new ArrayList<>(
+            List.of(
+                KeyShare.of(ke.getGroup(), ke.getPublicKey()),
+                new SupportedGroups(Group.X25519),
+                SupportedVersions.TLS13,
+                tps));
+    extensions.addAll(additionalExtensions);
 
     return new ServerHello(clientRandom, sessionId, cipherSuites, extensions);
   }
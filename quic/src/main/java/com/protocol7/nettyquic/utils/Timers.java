@@ -0,0 +1,15 @@
+package com.protocol7.nettyquic.utils;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class Timers {
+
+  // shared by all connections, a wheel per connection would mean a thread per connection
+  public static final Timer SHARED =
+      new HashedWheelTimer(new DefaultThreadFactory("quic-timer", true), 1, TimeUnit.MILLISECONDS);
+
+  private Timers() {}
+}
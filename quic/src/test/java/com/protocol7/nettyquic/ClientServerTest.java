@@ -1,28 +1,51 @@
 package com.protocol7.nettyquic;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.google.common.base.Ticker;
 import com.protocol7.nettyquic.client.ClientConnection;
 import com.protocol7.nettyquic.client.ClientState;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.connection.PacketSender;
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.packets.Packet;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import com.protocol7.nettyquic.protocol.packets.UnprotectedPacket;
 import com.protocol7.nettyquic.server.ServerConnection;
 import com.protocol7.nettyquic.server.ServerState;
 import com.protocol7.nettyquic.streams.Stream;
 import com.protocol7.nettyquic.streams.StreamListener;
+import com.protocol7.nettyquic.tls.CipherSuite;
+import com.protocol7.nettyquic.tls.EncryptionLevel;
 import com.protocol7.nettyquic.tls.KeyUtil;
+import com.protocol7.nettyquic.tls.SessionTicketCache;
+import com.protocol7.nettyquic.tls.SessionTickets;
 import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.aead.AEADs;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.util.concurrent.DefaultEventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.SucceededFuture;
 import java.security.PrivateKey;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -38,8 +61,13 @@ public class ClientServerTest {
 
   private final ConnectionId destConnectionId = ConnectionId.random();
   private final ConnectionId srcConnectionId = ConnectionId.random();
+  private final SessionTicketCache ticketCache = spy(new SessionTicketCache());
+  private final SessionTickets sessionTickets = spy(new SessionTickets());
+  private final SessionTickets earlyDataTickets =
+      spy(new SessionTickets(SessionTickets.DEFAULT_LIFETIME, true, Ticker.systemTicker()));
   private final ForwardingPacketSender clientSender = new ForwardingPacketSender();
   private final ForwardingPacketSender serverSender = new ForwardingPacketSender();
+  private Optional<Executor> handshakeExecutor = Optional.empty();
 
   private @Mock StreamListener clientListener;
   private @Mock StreamListener serverListener;
@@ -49,36 +77,90 @@ public class ClientServerTest {
     private final DefaultEventExecutor executor = new DefaultEventExecutor();
 
     private Connection peer;
+    private boolean serializeShortPackets = false;
 
     public void setPeer(Connection peer) {
       this.peer = peer;
     }
 
+    /** Write and parse short packets, to exercise header protection and key phases */
+    public void setSerializeShortPackets(boolean serializeShortPackets) {
+      this.serializeShortPackets = serializeShortPackets;
+    }
+
     @Override
     public Future<Void> send(Packet packet, AEAD aead) {
-      executor.execute(() -> peer.onPacket(packet));
+      if (serializeShortPackets && packet instanceof ShortPacket) {
+        ByteBuf bb = Unpooled.buffer();
+        packet.write(bb, aead);
+        executor.execute(
+            () -> {
+              int connIdLength = peer.getLocalConnectionId().get().getLength();
+              peer.onPacket(ShortPacket.parse(bb, connIdLength).complete(peer.getAEADProvider()));
+            });
+      } else {
+        executor.execute(() -> peer.onPacket(packet));
+      }
 
       return new SucceededFuture(executor, null);
     }
 
+    @Override
+    public Future<Void> send(UnprotectedPacket packet) {
+      return send(packet, null);
+    }
+
     @Override
     public Future<Void> destroy() {
       return new SucceededFuture(executor, null);
     }
+
+    @Override
+    public Executor getExecutor() {
+      return executor;
+    }
   }
 
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
 
-    clientConnection = new ClientConnection(destConnectionId, clientListener, clientSender);
+    createConnections(CipherSuite.SUPPORTED);
+  }
+
+  private void createConnections(List<CipherSuite> cipherSuites) {
+    createConnections(cipherSuites, AEADs.DEFAULT_KEY_UPDATE_INTERVAL);
+  }
+
+  private void createConnections(List<CipherSuite> cipherSuites, long keyUpdateInterval) {
+    createConnections(cipherSuites, keyUpdateInterval, sessionTickets);
+  }
+
+  private void createConnections(
+      List<CipherSuite> cipherSuites, long keyUpdateInterval, SessionTickets sessionTickets) {
+    QuicConfig.Builder config =
+        QuicConfig.newBuilder()
+            .withCipherSuites(cipherSuites)
+            .withKeyUpdateInterval(keyUpdateInterval)
+            .withSessionTickets(sessionTickets)
+            .withTicketCache(ticketCache);
+    handshakeExecutor.ifPresent(config::withHandshakeExecutor);
+
+    clientConnection =
+        new ClientConnection(
+            destConnectionId, clientListener, clientSender, config.build(), "server");
 
     List<byte[]> certificates = KeyUtil.getCertsFromCrt("src/test/resources/server.crt");
     PrivateKey privateKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
 
     serverConnection =
         new ServerConnection(
-            srcConnectionId, serverListener, serverSender, certificates, privateKey);
+            srcConnectionId,
+            serverListener,
+            serverSender,
+            certificates,
+            privateKey,
+            config.build());
 
     clientSender.setPeer(serverConnection);
     serverSender.setPeer(clientConnection);
@@ -86,7 +168,7 @@ public class ClientServerTest {
 
   @Test
   public void handshake() {
-    clientConnection.handshake().awaitUninterruptibly();
+    await(clientConnection.handshake());
 
     sleep();
 
@@ -118,6 +200,120 @@ public class ClientServerTest {
     verify(clientListener).onData(any(), eq(PONG));
   }
 
+  @Test
+  public void pingPongHandshakeOffloaded() {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      handshakeExecutor = Optional.of(executor);
+      createConnections(CipherSuite.SUPPORTED);
+
+      pingPong();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void pingPongChaCha20() {
+    createConnections(List.of(CipherSuite.TLS_CHACHA20_POLY1305_SHA256));
+
+    pingPong();
+  }
+
+  @Test
+  public void pingPongAes256() {
+    createConnections(List.of(CipherSuite.TLS_AES_256_GCM_SHA384));
+
+    pingPong();
+  }
+
+  @Test
+  public void resumption() {
+    handshake();
+    sleep();
+
+    verify(ticketCache).put(eq("server"), any(), any(), any(), anyLong(), anyLong(), anyBoolean());
+
+    // a new connection to the same server offers the ticket
+    createConnections(CipherSuite.SUPPORTED);
+    pingPong();
+
+    verify(sessionTickets).open(any());
+  }
+
+  /** Connects for a ticket allowing early data, then resumes sending a ping as early data */
+  private void pingPongEarlyData() {
+    createConnections(CipherSuite.SUPPORTED, AEADs.DEFAULT_KEY_UPDATE_INTERVAL, earlyDataTickets);
+    handshake();
+    sleep();
+
+    createConnections(CipherSuite.SUPPORTED, AEADs.DEFAULT_KEY_UPDATE_INTERVAL, earlyDataTickets);
+
+    // respond pong to any ping
+    doAnswer(
+            invocation -> {
+              Stream stream = invocation.getArgument(0);
+              stream.write(PONG, true);
+              return null;
+            })
+        .when(serverListener)
+        .onData(any(), eq(PING));
+
+    Future<Void> handshake = clientConnection.handshake();
+    assertTrue(clientConnection.canSendEarlyData());
+    clientConnection.openStream().write(PING, true);
+
+    await(handshake);
+    sleep();
+
+    verify(serverListener).onData(any(), eq(PING));
+    verify(clientListener).onData(any(), eq(PONG));
+  }
+
+  @Test
+  public void earlyData() {
+    pingPongEarlyData();
+
+    assertTrue(clientConnection.isEarlyDataAccepted());
+  }
+
+  @Test
+  public void earlyDataRejected() {
+    doReturn(false).when(earlyDataTickets).acceptEarlyData(any(), anyLong(), any());
+
+    // sent again once the handshake is complete
+    pingPongEarlyData();
+
+    assertFalse(clientConnection.isEarlyDataAccepted());
+  }
+
+  @Test
+  public void keyUpdate() {
+    createConnections(CipherSuite.SUPPORTED, 2);
+    clientSender.setSerializeShortPackets(true);
+    serverSender.setSerializeShortPackets(true);
+    handshake();
+    AEAD initialKeys = clientConnection.getAEAD(EncryptionLevel.OneRtt);
+
+    // respond pong to any ping
+    doAnswer(
+            invocation -> {
+              Stream stream = invocation.getArgument(0);
+              stream.write(PONG, true);
+              return null;
+            })
+        .when(serverListener)
+        .onData(any(), eq(PING));
+
+    for (int i = 0; i < 5; i++) {
+      clientConnection.openStream().write(PING, true);
+      sleep();
+    }
+
+    verify(clientListener, times(5)).onData(any(), eq(PONG));
+    assertNotSame(initialKeys, clientConnection.getAEAD(EncryptionLevel.OneRtt));
+  }
+
   @Test
   public void clientCloses() {
     handshake();
@@ -142,6 +338,12 @@ public class ClientServerTest {
     assertEquals(ServerState.Closed, serverConnection.getState());
   }
 
+  private void await(Future<?> future) {
+    // fail instead of hanging if the handshake fails
+    assertTrue("Timed out", future.awaitUninterruptibly(5, SECONDS));
+    assertTrue("Failed: " + future.cause(), future.isSuccess());
+  }
+
   private void sleep() {
     try {
       Thread.sleep(200);
@@ -0,0 +1,109 @@
+package com.protocol7.nettyquic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.connection.BbrCongestionController;
+import com.protocol7.nettyquic.connection.NewRenoCongestionController;
+import com.protocol7.nettyquic.server.RetryTokens;
+import com.protocol7.nettyquic.streams.ReceiveWindow;
+import com.protocol7.nettyquic.tls.CipherSuite;
+import com.protocol7.nettyquic.tls.Group;
+import com.protocol7.nettyquic.tls.KeyExchangePool;
+import com.protocol7.nettyquic.tls.SessionTicketCache;
+import com.protocol7.nettyquic.tls.SessionTickets;
+import com.protocol7.nettyquic.tls.aead.AEADs;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+public class QuicConfigTest {
+
+  @Test
+  public void defaults() {
+    QuicConfig config = QuicConfig.defaults();
+
+    assertSame(NewRenoCongestionController.FACTORY, config.getCongestionControllerFactory());
+    assertEquals(ReceiveWindow.DEFAULT_MAX_WINDOW, config.getMaxReceiveWindow());
+    assertEquals(CipherSuite.SUPPORTED, config.getCipherSuites());
+    assertEquals(AEADs.DEFAULT_KEY_UPDATE_INTERVAL, config.getKeyUpdateInterval());
+    assertSame(KeyExchangePool.X25519, config.getKeyExchangePool());
+    assertTrue(config.getSessionTickets().isPresent());
+    assertFalse(config.getHandshakeExecutor().isPresent());
+    assertTrue(config.getRetryTokens().isPresent());
+  }
+
+  @Test
+  public void defaultsNotShared() {
+    QuicConfig config1 = QuicConfig.defaults();
+    QuicConfig config2 = QuicConfig.defaults();
+
+    assertNotSame(config1.getSessionTickets().get(), config2.getSessionTickets().get());
+    assertNotSame(config1.getTicketCache(), config2.getTicketCache());
+    assertNotSame(config1.getRetryTokens().get(), config2.getRetryTokens().get());
+  }
+
+  @Test
+  public void build() {
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 1, task -> {});
+    SessionTickets sessionTickets = new SessionTickets();
+    SessionTicketCache ticketCache = new SessionTicketCache();
+    Executor executor = Runnable::run;
+    RetryTokens retryTokens = new RetryTokens();
+
+    QuicConfig config =
+        QuicConfig.newBuilder()
+            .withCongestionController(BbrCongestionController.FACTORY)
+            .withMaxReceiveWindow(1234)
+            .withCipherSuites(List.of(CipherSuite.TLS_CHACHA20_POLY1305_SHA256))
+            .withKeyUpdateInterval(100)
+            .withKeyExchangePool(pool)
+            .withSessionTickets(sessionTickets)
+            .withHandshakeExecutor(executor)
+            .withTicketCache(ticketCache)
+            .withRetryTokens(retryTokens)
+            .build();
+
+    assertSame(BbrCongestionController.FACTORY, config.getCongestionControllerFactory());
+    assertEquals(1234, config.getMaxReceiveWindow());
+    assertEquals(List.of(CipherSuite.TLS_CHACHA20_POLY1305_SHA256), config.getCipherSuites());
+    assertEquals(100, config.getKeyUpdateInterval());
+    assertSame(pool, config.getKeyExchangePool());
+    assertSame(sessionTickets, config.getSessionTickets().get());
+    assertSame(executor, config.getHandshakeExecutor().get());
+    assertSame(ticketCache, config.getTicketCache());
+    assertSame(retryTokens, config.getRetryTokens().get());
+  }
+
+  @Test
+  public void withoutSessionTickets() {
+    QuicConfig config = QuicConfig.newBuilder().withoutSessionTickets().build();
+
+    assertFalse(config.getSessionTickets().isPresent());
+  }
+
+  @Test
+  public void withoutRetryTokens() {
+    QuicConfig config = QuicConfig.newBuilder().withoutRetryTokens().build();
+
+    assertFalse(config.getRetryTokens().isPresent());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void noCipherSuites() {
+    QuicConfig.newBuilder().withCipherSuites(List.of());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxReceiveWindow() {
+    QuicConfig.newBuilder().withMaxReceiveWindow(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidKeyUpdateInterval() {
+    QuicConfig.newBuilder().withKeyUpdateInterval(0);
+  }
+}
@@ -0,0 +1,115 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.INITIAL_WINDOW;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.PacketNumber;
+import com.protocol7.nettyquic.protocol.Payload;
+import com.protocol7.nettyquic.protocol.SentPacket;
+import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class BbrCongestionControllerTest {
+
+  private final BbrCongestionController controller =
+      new BbrCongestionController(new RttEstimator());
+
+  @Test
+  public void startup() {
+    assertEquals(BbrCongestionController.Mode.STARTUP, controller.getMode());
+    assertEquals(INITIAL_WINDOW, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void pacingRateWithZeroRtt() {
+    final RttEstimator rttEstimator = new RttEstimator();
+    rttEstimator.onSample(0, 0);
+    final BbrCongestionController controller = new BbrCongestionController(rttEstimator);
+
+    // paced as if the RTT was the timer granularity
+    assertEquals(
+        BbrCongestionController.HIGH_GAIN * INITIAL_WINDOW * 1000, controller.getPacingRate(), 1);
+  }
+
+  @Test
+  public void lossDoesNotReduceWindow() {
+    final SentPacket packet = packet(0);
+    controller.onPacketSent(packet);
+    controller.onPacketsLost(List.of(packet), 10);
+
+    assertEquals(INITIAL_WINDOW, controller.getCongestionWindow());
+    assertEquals(0, controller.getBytesInFlight());
+  }
+
+  @Test
+  public void estimatesBandwidthAndRtt() {
+    final long bandwidth = 10_000_000 / 8;
+    final long rtt = MILLISECONDS.toNanos(40);
+    final EmulatedLink link =
+        new EmulatedLink(
+            bandwidth, rtt, MILLISECONDS.toNanos(40), 0, BbrCongestionController.FACTORY);
+    link.run(SECONDS.toNanos(5));
+
+    final BbrCongestionController bbr = (BbrCongestionController) link.getCongestionController();
+    assertEquals(BbrCongestionController.Mode.PROBE_BW, bbr.getMode());
+    assertEquals(bandwidth, bbr.getBtlBw(), bandwidth * 0.1);
+    assertEquals(rtt, bbr.getRtProp(), MILLISECONDS.toNanos(5));
+  }
+
+  @Test
+  public void probeRtt() {
+    final EmulatedLink link =
+        new EmulatedLink(
+            10_000_000 / 8,
+            MILLISECONDS.toNanos(40),
+            MILLISECONDS.toNanos(40),
+            0,
+            BbrCongestionController.FACTORY);
+
+    // the min RTT is not refreshed while the queue is kept non-empty, forcing a probe
+    boolean probed = false;
+    for (int i = 0; i < 150 && !probed; i++) {
+      link.run(MILLISECONDS.toNanos(100));
+      probed =
+          ((BbrCongestionController) link.getCongestionController()).getMode()
+              == BbrCongestionController.Mode.PROBE_RTT;
+    }
+    assertTrue(probed);
+  }
+
+  @Test
+  public void keepsThroughputWithRandomLoss() {
+    // 20 Mbit/s with 50 ms RTT and 1% random loss, as seen on lossy mobile links
+    final long bandwidth = 20_000_000 / 8;
+    final long rtt = MILLISECONDS.toNanos(50);
+    final long duration = SECONDS.toNanos(20);
+
+    final double bbr =
+        new EmulatedLink(bandwidth, rtt, rtt, 0.01, BbrCongestionController.FACTORY)
+            .utilization(duration);
+    final double cubic =
+        new EmulatedLink(bandwidth, rtt, rtt, 0.01, CubicCongestionController.FACTORY)
+            .utilization(duration);
+
+    assertTrue("BBR utilization " + bbr, bbr > 0.8);
+    assertTrue("BBR " + bbr + " vs CUBIC " + cubic, bbr > cubic * 2);
+  }
+
+  private SentPacket packet(final long timeSent) {
+    final ShortPacket packet =
+        new ShortPacket(
+            false,
+            Optional.of(ConnectionId.random()),
+            new PacketNumber(0),
+            new Payload(PingFrame.INSTANCE));
+    return new SentPacket(packet, packet.getPacketNumber(), timeSent, (int) MAX_DATAGRAM_SIZE);
+  }
+}
@@ -0,0 +1,149 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.INITIAL_WINDOW;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MINIMUM_WINDOW;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.PacketNumber;
+import com.protocol7.nettyquic.protocol.Payload;
+import com.protocol7.nettyquic.protocol.SentPacket;
+import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class CubicCongestionControllerTest {
+
+  private final RttEstimator rttEstimator = new RttEstimator();
+  private final CubicCongestionController controller = new CubicCongestionController(rttEstimator);
+
+  private long pn = 0;
+
+  @Test
+  public void slowStart() {
+    ack(0, 10);
+
+    assertEquals(INITIAL_WINDOW + MAX_DATAGRAM_SIZE, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void lossReducesWindowByBeta() {
+    loss(0, 10);
+
+    assertEquals((long) (INITIAL_WINDOW * 0.7), controller.getCongestionWindow());
+    assertEquals(controller.getCongestionWindow(), controller.getSlowStartThreshold());
+    assertEquals(INITIAL_WINDOW, controller.getWindowMax());
+  }
+
+  @Test
+  public void onlyReactOncePerRecoveryPeriod() {
+    loss(0, 10);
+    // sent before recovery started
+    loss(5, 20);
+
+    assertEquals((long) (INITIAL_WINDOW * 0.7), controller.getCongestionWindow());
+  }
+
+  @Test
+  public void fastConvergence() {
+    loss(0, 10);
+    final long window = controller.getCongestionWindow();
+
+    // a second loss at a smaller window lowers the plateau below that window
+    loss(20, 30);
+
+    assertEquals((long) (window * 1.7 / 2), controller.getWindowMax());
+  }
+
+  @Test
+  public void growsBackToWindowMax() {
+    rttEstimator.onSample(MILLISECONDS.toNanos(100), 0);
+    loss(0, 10);
+    final long windowMax = controller.getWindowMax();
+
+    // ack a full window every RTT for a few seconds
+    long now = MILLISECONDS.toNanos(20);
+    while (now < SECONDS.toNanos(5)) {
+      final long window = controller.getCongestionWindow();
+      for (long acked = 0; acked < window; acked += MAX_DATAGRAM_SIZE) {
+        ack(now, now + MILLISECONDS.toNanos(100));
+      }
+      now += MILLISECONDS.toNanos(100);
+    }
+
+    assertTrue(controller.getCongestionWindow() > windowMax);
+  }
+
+  @Test
+  public void tcpFriendlyRegion() {
+    // with a short RTT, the cubic function grows slower than Reno
+    rttEstimator.onSample(MILLISECONDS.toNanos(1), 0);
+    loss(0, 10);
+    final long window = controller.getCongestionWindow();
+
+    for (int i = 0; i < 100; i++) {
+      ack(20 + i, 21 + i);
+    }
+
+    // the cubic function is still far from its plateau, but the window follows the Reno estimate
+    // which grows by 3 * 0.3 / 1.7 datagrams per window acked
+    final long newWindow = controller.getCongestionWindow();
+    final double renoGrowth =
+        3 * 0.3 / 1.7 * 100 * MAX_DATAGRAM_SIZE * MAX_DATAGRAM_SIZE / newWindow;
+    assertTrue(newWindow - window >= (long) renoGrowth);
+  }
+
+  @Test
+  public void persistentCongestion() {
+    controller.onPersistentCongestion();
+
+    assertEquals(MINIMUM_WINDOW, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void fillsHighBandwidthDelayProductLink() {
+    // 100 Mbit/s with 100 ms RTT, with a bottleneck queue much smaller than the BDP
+    final long bandwidth = 100_000_000 / 8;
+    final long rtt = MILLISECONDS.toNanos(100);
+    final long queueDelay = MILLISECONDS.toNanos(10);
+    final long duration = SECONDS.toNanos(30);
+
+    final double cubic =
+        new EmulatedLink(bandwidth, rtt, queueDelay, 0, CubicCongestionController.FACTORY)
+            .utilization(duration);
+    final double reno =
+        new EmulatedLink(bandwidth, rtt, queueDelay, 0, NewRenoCongestionController.FACTORY)
+            .utilization(duration);
+
+    assertTrue("CUBIC utilization " + cubic, cubic > 0.6);
+    assertTrue("CUBIC " + cubic + " vs NewReno " + reno, cubic > reno * 1.5);
+  }
+
+  private void ack(final long timeSent, final long now) {
+    final SentPacket packet = packet(timeSent);
+    controller.onPacketSent(packet);
+    controller.onPacketAcked(packet, now);
+  }
+
+  private void loss(final long timeSent, final long now) {
+    final SentPacket packet = packet(timeSent);
+    controller.onPacketSent(packet);
+    controller.onPacketsLost(List.of(packet), now);
+  }
+
+  private SentPacket packet(final long timeSent) {
+    final ShortPacket packet =
+        new ShortPacket(
+            false,
+            Optional.of(ConnectionId.random()),
+            new PacketNumber(pn++),
+            new Payload(PingFrame.INSTANCE));
+    return new SentPacket(packet, packet.getPacketNumber(), timeSent, (int) MAX_DATAGRAM_SIZE);
+  }
+}
@@ -0,0 +1,108 @@
+package com.protocol7.nettyquic.connection;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.PacketNumber;
+import com.protocol7.nettyquic.protocol.Payload;
+import com.protocol7.nettyquic.protocol.SentPacket;
+import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import java.util.Optional;
+import org.junit.Test;
+
+public class DeliveryRateEstimatorTest {
+
+  private final DeliveryRateEstimator estimator = new DeliveryRateEstimator();
+  private long bytesInFlight = 0;
+  private long pn = 0;
+
+  @Test
+  public void noSampleWithoutAcks() {
+    assertFalse(estimator.generateSample(0).isPresent());
+  }
+
+  @Test
+  public void sample() {
+    // two packets sent 1 ms apart, acked 10 ms later each
+    final SentPacket packet1 = send(ms(0));
+    final SentPacket packet2 = send(ms(1));
+
+    estimator.onPacketAcked(packet1, ms(10));
+    bytesInFlight -= 1000;
+    estimator.generateSample(0);
+
+    estimator.onPacketAcked(packet2, ms(11));
+    bytesInFlight -= 1000;
+    final DeliveryRateSample sample = estimator.generateSample(0).get();
+
+    // the second packet was sent when nothing was delivered, over the 11 ms since the flight began
+    assertEquals(0, sample.getPriorDelivered());
+    assertEquals(2000, sample.getDelivered());
+    assertEquals(ms(11), sample.getInterval());
+    assertEquals(ms(10), sample.getRtt());
+    assertEquals(2000 * 1000 / 11, sample.getDeliveryRate());
+    assertFalse(sample.isAppLimited());
+  }
+
+  @Test
+  public void usesMostRecentlySentPacket() {
+    final SentPacket packet1 = send(ms(0));
+    estimator.onPacketAcked(packet1, ms(10));
+    bytesInFlight -= 1000;
+    estimator.generateSample(0);
+
+    final SentPacket packet2 = send(ms(10));
+    final SentPacket packet3 = send(ms(11));
+    estimator.onPacketAcked(packet3, ms(21));
+    estimator.onPacketAcked(packet2, ms(21));
+    final DeliveryRateSample sample = estimator.generateSample(0).get();
+
+    assertEquals(packet3.getDelivered(), sample.getPriorDelivered());
+    assertEquals(ms(10), sample.getRtt());
+  }
+
+  @Test
+  public void ignoreShortIntervals() {
+    final SentPacket packet = send(ms(0));
+    estimator.onPacketAcked(packet, ms(10));
+
+    assertFalse(estimator.generateSample(ms(20)).isPresent());
+  }
+
+  @Test
+  public void appLimited() {
+    estimator.onAppLimited(bytesInFlight);
+    assertTrue(estimator.isAppLimited());
+
+    final SentPacket packet = send(ms(0));
+    assertTrue(packet.isAppLimited());
+
+    estimator.onPacketAcked(packet, ms(10));
+    final DeliveryRateSample sample = estimator.generateSample(0).get();
+    assertTrue(sample.isAppLimited());
+
+    // everything in flight when app limited has now been delivered
+    assertFalse(estimator.isAppLimited());
+  }
+
+  private SentPacket send(final long now) {
+    final ShortPacket packet =
+        new ShortPacket(
+            false,
+            Optional.of(ConnectionId.random()),
+            new PacketNumber(pn++),
+            new Payload(PingFrame.INSTANCE));
+    final SentPacket sent =
+        estimator.onPacketSent(packet, packet.getPacketNumber(), now, 1000, bytesInFlight);
+    bytesInFlight += 1000;
+    return sent;
+  }
+
+  private long ms(final long ms) {
+    return MILLISECONDS.toNanos(ms);
+  }
+}
@@ -0,0 +1,243 @@
+package com.protocol7.nettyquic.connection;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.PacketNumber;
+import com.protocol7.nettyquic.protocol.Payload;
+import com.protocol7.nettyquic.protocol.SentPacket;
+import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Discrete event emulation of a sender looping back over a bottleneck link, with a drop tail queue
+ * and random loss. The sender always has data to send and is limited only by the congestion
+ * controller. Losses are detected with a packet threshold, acks are not delayed and every ack
+ * produces a delivery rate sample.
+ */
+public class EmulatedLink {
+
+  private static final int PACKET_SIZE = (int) NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+  private static final int PACKET_THRESHOLD = 3;
+
+  // an ack for the packet, or a pacer wakeup if the packet is null
+  private static class Ack implements Comparable<Ack> {
+    private final long time;
+    private final SentPacket packet;
+
+    private Ack(final long time, final SentPacket packet) {
+      this.time = time;
+      this.packet = packet;
+    }
+
+    @Override
+    public int compareTo(final Ack other) {
+      return Long.compare(time, other.time);
+    }
+  }
+
+  private final long bytesPerSecond;
+  private final long rtt;
+  private final long queueDelay;
+  private final double lossRate;
+  private final Random random = new Random(0);
+
+  private final RttEstimator rttEstimator = new RttEstimator();
+  private final DeliveryRateEstimator deliveryRateEstimator = new DeliveryRateEstimator();
+  private final CongestionController congestionController;
+
+  private final PriorityQueue<Ack> acks = new PriorityQueue<>();
+  private final NavigableMap<Long, SentPacket> inFlight = new TreeMap<>();
+  private final Optional<ConnectionId> connectionId = Optional.of(ConnectionId.random());
+
+  private long now = 0;
+  private long linkFreeAt = 0;
+  private long nextPacketNumber = 0;
+  private long delivered = 0;
+  private long packetsSent = 0;
+  private long dropped = 0;
+  private Optional<Pacer> pacer = Optional.empty();
+  private boolean wakeupScheduled = false;
+  // application limited workload, sending bursts of packets at an interval
+  private long available = Long.MAX_VALUE;
+  private long burstPackets = 0;
+  private long burstInterval = 0;
+  private long nextBurst = Long.MAX_VALUE;
+
+  /**
+   * @param bytesPerSecond bottleneck bandwidth
+   * @param rtt round trip propagation delay, in nanoseconds
+   * @param queueDelay max time a packet can wait in the bottleneck queue, in nanoseconds
+   * @param lossRate probability of a packet being dropped regardless of the queue
+   */
+  public EmulatedLink(
+      final long bytesPerSecond,
+      final long rtt,
+      final long queueDelay,
+      final double lossRate,
+      final CongestionController.Factory congestionControllerFactory) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.rtt = rtt;
+    this.queueDelay = queueDelay;
+    this.lossRate = lossRate;
+    this.congestionController = congestionControllerFactory.create(rttEstimator);
+  }
+
+  /** Paces packets like PacketBuffer does, instead of sending whenever the window allows */
+  public EmulatedLink withPacing() {
+    pacer =
+        Optional.of(new Pacer(NewRenoCongestionController.INITIAL_WINDOW, MILLISECONDS.toNanos(1)));
+    return this;
+  }
+
+  /** The application writes a burst of packets at each interval, instead of always having data */
+  public EmulatedLink withBursts(final long packets, final long interval) {
+    available = 0;
+    burstPackets = packets;
+    burstInterval = interval;
+    nextBurst = now;
+    return this;
+  }
+
+  /** Runs the emulation for the duration, in nanoseconds, and returns the bytes delivered */
+  public long run(final long duration) {
+    final long end = now + duration;
+    sendAll();
+    while (now < end) {
+      final long ackAt = acks.isEmpty() ? Long.MAX_VALUE : acks.peek().time;
+      // every packet in flight was lost, declare them lost after a timeout
+      final long timeoutAt =
+          acks.isEmpty() && !inFlight.isEmpty() ? now + SECONDS.toNanos(1) : Long.MAX_VALUE;
+
+      if (nextBurst <= ackAt && nextBurst <= timeoutAt) {
+        if (nextBurst == Long.MAX_VALUE) {
+          break;
+        }
+        now = nextBurst;
+        nextBurst += burstInterval;
+        available += burstPackets;
+      } else if (timeoutAt < ackAt) {
+        now = timeoutAt;
+        congestionController.onPacketsLost(new ArrayList<>(inFlight.values()), now);
+        inFlight.clear();
+      } else {
+        final Ack ack = acks.poll();
+        now = ack.time;
+        if (ack.packet == null) {
+          // pacer wakeup
+          wakeupScheduled = false;
+        } else {
+          onAck(ack.packet);
+        }
+      }
+      sendAll();
+    }
+    return delivered;
+  }
+
+  /** Delivered bytes per second as a fraction of the link bandwidth */
+  public double utilization(final long duration) {
+    return (double) run(duration) * SECONDS.toNanos(1) / duration / bytesPerSecond;
+  }
+
+  /** Fraction of sent packets dropped by the link */
+  public double getLossRate() {
+    return (double) dropped / packetsSent;
+  }
+
+  public CongestionController getCongestionController() {
+    return congestionController;
+  }
+
+  private void onAck(final SentPacket packet) {
+    final long pn = packet.getPacketNumber().asLong();
+    inFlight.remove(pn);
+    delivered += packet.getSize();
+
+    rttEstimator.onSample(now - packet.getTimeSent(), 0);
+    congestionController.onPacketAcked(packet, now);
+    deliveryRateEstimator.onPacketAcked(packet, now);
+    deliveryRateEstimator
+        .generateSample(rttEstimator.getMinRtt())
+        .ifPresent(sample -> congestionController.onDeliveryRateSample(sample, now));
+
+    final List<SentPacket> lost = new ArrayList<>();
+    final Iterator<SentPacket> candidates =
+        inFlight.headMap(pn - PACKET_THRESHOLD, true).values().iterator();
+    while (candidates.hasNext()) {
+      lost.add(candidates.next());
+      candidates.remove();
+    }
+    if (!lost.isEmpty()) {
+      congestionController.onPacketsLost(lost, now);
+    }
+  }
+
+  private void sendAll() {
+    while (available > 0 && congestionController.canSend()) {
+      if (pacer.isPresent()) {
+        final long delay = pacer.get().timeUntilSend(now, pacingRate(), PACKET_SIZE);
+        if (delay > 0) {
+          if (!wakeupScheduled) {
+            acks.add(new Ack(now + delay, null));
+            wakeupScheduled = true;
+          }
+          return;
+        }
+        pacer.get().onPacketSent(PACKET_SIZE);
+      }
+      send();
+    }
+  }
+
+  private long pacingRate() {
+    final long rate = congestionController.getPacingRate();
+    if (rate > 0) {
+      return rate;
+    }
+    return (long)
+        (1.25
+            * congestionController.getCongestionWindow()
+            * SECONDS.toNanos(1)
+            / rttEstimator.getSmoothedRtt());
+  }
+
+  private void send() {
+    available--;
+    final long pn = nextPacketNumber++;
+    final ShortPacket packet =
+        new ShortPacket(false, connectionId, new PacketNumber(pn), new Payload(PingFrame.INSTANCE));
+    final SentPacket sent =
+        deliveryRateEstimator.onPacketSent(
+            packet,
+            packet.getPacketNumber(),
+            now,
+            PACKET_SIZE,
+            congestionController.getBytesInFlight());
+    inFlight.put(pn, sent);
+    congestionController.onPacketSent(sent);
+
+    packetsSent++;
+    final long start = Math.max(now, linkFreeAt);
+    if (start - now > queueDelay) {
+      // queue full
+      dropped++;
+      return;
+    }
+    linkFreeAt = start + SECONDS.toNanos(PACKET_SIZE) / bytesPerSecond;
+    if (random.nextDouble() < lossRate) {
+      dropped++;
+      return;
+    }
+    acks.add(new Ack(linkFreeAt + rtt, sent));
+  }
+}
@@ -0,0 +1,108 @@
+package com.protocol7.nettyquic.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.nettyquic.protocol.packets.Packet;
+import com.protocol7.nettyquic.tls.aead.AEAD;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class NettyPacketSenderTest {
+
+  private final InetSocketAddress peerAddress = new InetSocketAddress("127.0.0.1", 4444);
+
+  @Mock private Channel channel;
+  @Mock private EventLoop eventLoop;
+  @Mock private ChannelPromise promise;
+  @Mock private Packet packet;
+  @Mock private AEAD aead;
+
+  private final List<Runnable> tasks = new ArrayList<>();
+  private NettyPacketSender sender;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    when(channel.eventLoop()).thenReturn(eventLoop);
+    when(channel.newPromise()).thenReturn(promise);
+    when(channel.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+    when(eventLoop.inEventLoop()).thenReturn(true);
+    doAnswer(
+            invocation -> {
+              tasks.add(invocation.getArgument(0));
+              return null;
+            })
+        .when(eventLoop)
+        .execute(any(Runnable.class));
+
+    sender = new NettyPacketSender(channel, peerAddress);
+  }
+
+  @Test
+  public void flushOncePerTick() {
+    sender.send(packet, aead);
+    sender.send(packet, aead);
+
+    final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+    verify(channel, times(2)).write(captor.capture(), any(ChannelPromise.class));
+    assertEquals(peerAddress, ((DatagramPacket) captor.getValue()).recipient());
+    verify(channel, never()).flush();
+
+    runTasks();
+    verify(channel, times(1)).flush();
+
+    // the next tick gets a new flush
+    sender.send(packet, aead);
+    runTasks();
+    verify(channel, times(2)).flush();
+  }
+
+  @Test
+  public void writeOnEventLoop() {
+    when(eventLoop.inEventLoop()).thenReturn(false);
+
+    sender.send(packet, aead);
+    verify(channel, never()).write(any(), any(ChannelPromise.class));
+
+    runTasks();
+    verify(channel).write(any(), any(ChannelPromise.class));
+    verify(channel).flush();
+  }
+
+  @Test
+  public void flushOnDestroy() {
+    sender.send(packet, aead);
+    sender.destroy();
+
+    final InOrder inOrder = inOrder(channel);
+    inOrder.verify(channel).write(any(), any(ChannelPromise.class));
+    inOrder.verify(channel).flush();
+    inOrder.verify(channel).close(promise);
+  }
+
+  private void runTasks() {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+}
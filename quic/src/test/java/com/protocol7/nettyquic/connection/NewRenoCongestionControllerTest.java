@@ -0,0 +1,135 @@
+package com.protocol7.nettyquic.connection;
+
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.INITIAL_WINDOW;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MAX_DATAGRAM_SIZE;
+import static com.protocol7.nettyquic.connection.NewRenoCongestionController.MINIMUM_WINDOW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.PacketNumber;
+import com.protocol7.nettyquic.protocol.Payload;
+import com.protocol7.nettyquic.protocol.SentPacket;
+import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class NewRenoCongestionControllerTest {
+
+  private final NewRenoCongestionController controller = new NewRenoCongestionController();
+
+  @Test
+  public void bytesInFlight() {
+    SentPacket packet1 = packet(1, 0);
+    SentPacket packet2 = packet(2, 0);
+    SentPacket packet3 = packet(3, 0);
+    controller.onPacketSent(packet1);
+    controller.onPacketSent(packet2);
+    controller.onPacketSent(packet3);
+
+    assertEquals(3 * MAX_DATAGRAM_SIZE, controller.getBytesInFlight());
+
+    controller.onPacketAcked(packet1, 10);
+    controller.onPacketsLost(List.of(packet2), 10);
+    controller.onPacketsDiscarded(List.of(packet3));
+
+    assertEquals(0, controller.getBytesInFlight());
+  }
+
+  @Test
+  public void canSend() {
+    int pn = 0;
+    while (controller.canSend()) {
+      controller.onPacketSent(packet(pn++, 0));
+    }
+
+    assertEquals(INITIAL_WINDOW / MAX_DATAGRAM_SIZE, pn);
+    assertFalse(controller.canSend());
+  }
+
+  @Test
+  public void slowStart() {
+    SentPacket packet = packet(1, 0);
+    controller.onPacketSent(packet);
+    controller.onPacketAcked(packet, 10);
+
+    assertEquals(INITIAL_WINDOW + MAX_DATAGRAM_SIZE, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void congestionAvoidance() {
+    // get out of slow start
+    loss(1, 0, 10);
+    long window = controller.getCongestionWindow();
+    assertEquals(window, controller.getSlowStartThreshold());
+
+    SentPacket packet = packet(2, 20);
+    controller.onPacketSent(packet);
+    controller.onPacketAcked(packet, 30);
+
+    assertEquals(
+        window + MAX_DATAGRAM_SIZE * MAX_DATAGRAM_SIZE / window, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void lossHalvesWindow() {
+    loss(1, 0, 10);
+
+    assertEquals(INITIAL_WINDOW / 2, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void onlyReactOncePerRecoveryPeriod() {
+    loss(1, 0, 10);
+    // sent before recovery started
+    loss(2, 5, 20);
+
+    assertEquals(INITIAL_WINDOW / 2, controller.getCongestionWindow());
+
+    // acks for packets sent before recovery started do not grow the window
+    SentPacket packet = packet(3, 8);
+    controller.onPacketSent(packet);
+    controller.onPacketAcked(packet, 30);
+    assertEquals(INITIAL_WINDOW / 2, controller.getCongestionWindow());
+
+    // sent after recovery started
+    loss(4, 15, 40);
+    assertEquals(INITIAL_WINDOW / 4, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void minimumWindow() {
+    for (int i = 0; i < 10; i++) {
+      loss(i, i * 10 + 5, i * 10 + 10);
+    }
+
+    assertEquals(MINIMUM_WINDOW, controller.getCongestionWindow());
+  }
+
+  @Test
+  public void persistentCongestion() {
+    controller.onPersistentCongestion();
+
+    assertEquals(MINIMUM_WINDOW, controller.getCongestionWindow());
+    assertTrue(controller.canSend());
+  }
+
+  private void loss(long pn, long timeSent, long now) {
+    SentPacket packet = packet(pn, timeSent);
+    controller.onPacketSent(packet);
+    controller.onPacketsLost(List.of(packet), now);
+  }
+
+  private SentPacket packet(long pn, long timeSent) {
+    ShortPacket packet =
+        new ShortPacket(
+            false,
+            Optional.of(ConnectionId.random()),
+            new PacketNumber(pn),
+            new Payload(PingFrame.INSTANCE));
+    return new SentPacket(packet, packet.getPacketNumber(), timeSent, (int) MAX_DATAGRAM_SIZE);
+  }
+}
@@ -0,0 +1,81 @@
+package com.protocol7.nettyquic.connection;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PacerTest {
+
+  private static final long RATE = 1_200_000; // 1200 bytes per ms
+  private static final long GRANULARITY = MILLISECONDS.toNanos(1);
+
+  private final Pacer pacer = new Pacer(3000, GRANULARITY);
+
+  @Test
+  public void initialBurst() {
+    assertEquals(0, pacer.timeUntilSend(0, RATE, 1200));
+    pacer.onPacketSent(1200);
+    assertEquals(0, pacer.timeUntilSend(0, RATE, 1200));
+    pacer.onPacketSent(1200);
+
+    // 600 bytes of tokens left, wait for a burst of two packets
+    assertEquals(
+        MILLISECONDS.toNanos(1) + MILLISECONDS.toNanos(1) / 2, pacer.timeUntilSend(0, RATE, 1200));
+  }
+
+  @Test
+  public void refill() {
+    pacer.onPacketSent(3000);
+
+    assertEquals(MILLISECONDS.toNanos(2), pacer.timeUntilSend(0, RATE, 1200));
+    assertEquals(0, pacer.timeUntilSend(MILLISECONDS.toNanos(2), RATE, 1200));
+  }
+
+  @Test
+  public void neverMoreThanBurst() {
+    pacer.onPacketSent(3000);
+
+    // a long idle period only gives a burst worth of tokens
+    pacer.timeUntilSend(0, RATE, 1200);
+    pacer.timeUntilSend(MILLISECONDS.toNanos(1000), RATE, 1200);
+    pacer.onPacketSent(2 * 1200);
+
+    assertEquals(
+        MILLISECONDS.toNanos(2), pacer.timeUntilSend(MILLISECONDS.toNanos(1000), RATE, 1200));
+  }
+
+  @Test
+  public void burstCoversGranularity() {
+    final long fastRate = 12_000_000; // 10 packets per ms
+    pacer.onPacketSent(3000);
+
+    assertEquals(MILLISECONDS.toNanos(1), pacer.timeUntilSend(0, fastRate, 1200));
+  }
+
+  @Test
+  public void pacingReducesLossOnShallowBuffers() {
+    // 100 Mbit/s with 50 ms RTT and a queue of only 1 ms, the application writes 100 packets every
+    // 100 ms
+    final long bandwidth = 100_000_000 / 8;
+    final long rtt = MILLISECONDS.toNanos(50);
+    final long queueDelay = MILLISECONDS.toNanos(1);
+    final long duration = SECONDS.toNanos(10);
+
+    final EmulatedLink unpaced =
+        new EmulatedLink(bandwidth, rtt, queueDelay, 0, NewRenoCongestionController.FACTORY)
+            .withBursts(100, MILLISECONDS.toNanos(100));
+    unpaced.run(duration);
+    final EmulatedLink paced =
+        new EmulatedLink(bandwidth, rtt, queueDelay, 0, NewRenoCongestionController.FACTORY)
+            .withPacing()
+            .withBursts(100, MILLISECONDS.toNanos(100));
+    paced.run(duration);
+
+    assertTrue(
+        "Paced loss " + paced.getLossRate() + " vs unpaced " + unpaced.getLossRate(),
+        paced.getLossRate() < unpaced.getLossRate() / 4);
+  }
+}
@@ -0,0 +1,68 @@
+package com.protocol7.nettyquic.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RttEstimatorTest {
+
+  private final RttEstimator estimator = new RttEstimator();
+
+  @Test
+  public void initial() {
+    assertFalse(estimator.hasSample());
+    assertEquals(RttEstimator.INITIAL_RTT, estimator.getSmoothedRtt());
+    assertEquals(RttEstimator.INITIAL_RTT / 2, estimator.getRttVar());
+    assertEquals(0, estimator.getLatestRtt());
+    assertEquals(0, estimator.getMinRtt());
+  }
+
+  @Test
+  public void firstSample() {
+    estimator.onSample(100, 50);
+
+    assertTrue(estimator.hasSample());
+    assertEquals(100, estimator.getLatestRtt());
+    assertEquals(100, estimator.getMinRtt());
+    // ack delay is ignored for the first sample
+    assertEquals(100, estimator.getSmoothedRtt());
+    assertEquals(50, estimator.getRttVar());
+  }
+
+  @Test
+  public void subtractAckDelay() {
+    estimator.onSample(100, 0);
+    estimator.onSample(180, 40);
+
+    assertEquals(180, estimator.getLatestRtt());
+    assertEquals(100, estimator.getMinRtt());
+    assertEquals((7 * 100 + 140) / 8, estimator.getSmoothedRtt());
+    assertEquals((3 * 50 + 40) / 4, estimator.getRttVar());
+  }
+
+  @Test
+  public void ignoreImplausibleAckDelay() {
+    estimator.onSample(100, 0);
+    // subtracting the ack delay would go below min RTT
+    estimator.onSample(120, 40);
+
+    assertEquals((7 * 100 + 120) / 8, estimator.getSmoothedRtt());
+  }
+
+  @Test
+  public void minRtt() {
+    estimator.onSample(100, 0);
+    estimator.onSample(80, 0);
+    estimator.onSample(120, 0);
+
+    assertEquals(80, estimator.getMinRtt());
+    assertEquals(120, estimator.getLatestRtt());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeSample() {
+    estimator.onSample(-1, 0);
+  }
+}
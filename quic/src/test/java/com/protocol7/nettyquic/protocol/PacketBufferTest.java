@@ -1,18 +1,35 @@
 package com.protocol7.nettyquic.protocol;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.connection.CongestionController;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.connection.Sender;
 import com.protocol7.nettyquic.protocol.frames.AckBlock;
 import com.protocol7.nettyquic.protocol.frames.AckFrame;
+import com.protocol7.nettyquic.protocol.frames.CryptoFrame;
 import com.protocol7.nettyquic.protocol.frames.Frame;
+import com.protocol7.nettyquic.protocol.frames.PaddingFrame;
 import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.FullPacket;
+import com.protocol7.nettyquic.protocol.packets.InitialPacket;
 import com.protocol7.nettyquic.protocol.packets.Packet;
 import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import com.protocol7.nettyquic.protocol.packets.ZeroRttPacket;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -23,6 +40,19 @@ public class PacketBufferTest {
 
   @Mock private Connection connection;
   @Mock private Sender sender;
+  @Mock private Timer timer;
+  @Mock private Timeout timeout;
+  @Mock private CongestionController congestionController;
+
+  private final List<PacketNumber> acked = new ArrayList<>();
+  private long now = 0;
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now;
+        }
+      };
 
   private PacketBuffer buffer;
 
@@ -33,8 +63,18 @@ public class PacketBufferTest {
     when(connection.getRemoteConnectionId()).thenReturn(Optional.of(ConnectionId.random()));
     when(connection.getLocalConnectionId()).thenReturn(Optional.of(ConnectionId.random()));
     when(connection.nextSendPacketNumber()).thenReturn(new PacketNumber(3));
-
-    buffer = new PacketBuffer(connection, sender, pn -> {});
+    when(timer.newTimeout(any(), anyLong(), any())).thenReturn(timeout);
+    when(congestionController.canSend()).thenReturn(true);
+
+    buffer =
+        new PacketBuffer(
+            connection,
+            sender,
+            acked::add,
+            rttEstimator -> congestionController,
+            TransportParameters.defaults(Version.CURRENT),
+            timer,
+            ticker);
   }
 
   private Packet packet(long pn, Frame... frames) {
@@ -85,6 +125,127 @@ public class PacketBufferTest {
     // assertBuffered(3);
   }
 
+  @Test
+  public void delayAck() {
+    buffer.onPacket(packet(2, PingFrame.INSTANCE));
+
+    // ack is delayed until the ack timer fires
+    verify(sender, never()).send(any());
+    TimerTask task = captureTimerTask();
+    verify(timer).newTimeout(any(), eq(MILLISECONDS.toNanos(25)), eq(TimeUnit.NANOSECONDS));
+
+    now = MILLISECONDS.toNanos(25);
+    runTimerTask(task);
+
+    AckFrame ackFrame = verifyAck();
+    assertEquals(List.of(AckBlock.fromLongs(2, 2)), ackFrame.getBlocks());
+    // 25 ms in microseconds, scaled by the ack delay exponent
+    assertEquals(25000 >> 3, ackFrame.getAckDelay());
+  }
+
+  @Test
+  public void ackEverySecondPacket() {
+    buffer.onPacket(packet(2, PingFrame.INSTANCE));
+    buffer.onPacket(packet(3, PingFrame.INSTANCE));
+
+    AckFrame ackFrame = verifyAck();
+    assertEquals(List.of(AckBlock.fromLongs(2, 3)), ackFrame.getBlocks());
+    assertEquals(0, ackFrame.getAckDelay());
+  }
+
+  @Test
+  public void ackOutOfOrderImmediately() {
+    buffer.onPacket(packet(2, PingFrame.INSTANCE));
+    buffer.send(packet(3, PingFrame.INSTANCE)); // acks 2
+    buffer.onPacket(packet(4, PingFrame.INSTANCE)); // gap
+
+    List<Packet> sent = captureSentPackets(2);
+    AckFrame ackFrame = (AckFrame) ((FullPacket) sent.get(1)).getPayload().getFrames().get(0);
+    assertEquals(List.of(AckBlock.fromLongs(4, 4)), ackFrame.getBlocks());
+  }
+
+  @Test
+  public void piggybackAck() {
+    buffer.onPacket(packet(2, PingFrame.INSTANCE));
+
+    buffer.send(packet(3, PingFrame.INSTANCE));
+
+    FullPacket actual = (FullPacket) verifySent();
+    assertEquals(2, actual.getPayload().getFrames().size());
+    AckFrame ackFrame = (AckFrame) actual.getPayload().getFrames().get(1);
+    assertEquals(List.of(AckBlock.fromLongs(2, 2)), ackFrame.getBlocks());
+
+    // the ack timer is cancelled
+    verify(timeout, atLeastOnce()).cancel();
+  }
+
+  private AckFrame verifyAck() {
+    FullPacket actual = (FullPacket) verifySent();
+    assertEquals(1, actual.getPayload().getFrames().size());
+    return (AckFrame) actual.getPayload().getFrames().get(0);
+  }
+
+  private Packet zeroRttPacket(long pn, Frame... frames) {
+    return ZeroRttPacket.create(
+        Optional.of(ConnectionId.random()),
+        Optional.of(ConnectionId.random()),
+        new PacketNumber(pn),
+        Version.CURRENT,
+        frames);
+  }
+
+  @Test
+  public void earlyDataAckedInOneRtt() {
+    buffer.onPacket(packet(2, PingFrame.INSTANCE));
+
+    // acks can not be sent in 0-RTT packets
+    buffer.send(zeroRttPacket(3, PingFrame.INSTANCE));
+    assertEquals(1, ((FullPacket) verifySent()).getPayload().getFrames().size());
+    assertBuffered(3);
+
+    buffer.onPacket(packet(4, new AckFrame(0, AckBlock.fromLongs(3, 3))));
+    assertBufferEmpty();
+  }
+
+  @Test
+  public void resendEarlyData() {
+    buffer.send(zeroRttPacket(2, PingFrame.INSTANCE));
+    buffer.send(packet(4, PingFrame.INSTANCE));
+
+    buffer.resendEarlyData();
+
+    ZeroRttPacket resent = (ZeroRttPacket) captureSentPackets(3).get(2);
+    assertEquals(new PacketNumber(3), resent.getPacketNumber());
+    assertEquals(new Payload(PingFrame.INSTANCE), resent.getPayload());
+
+    assertBuffered(3);
+    assertBuffered(4);
+    assertFalse(buffer.getBuffer().containsKey(new PacketNumber(2)));
+  }
+
+  @Test
+  public void earlyDataRejected() {
+    buffer.send(zeroRttPacket(2, PingFrame.INSTANCE));
+
+    buffer.onHandshakeComplete(false);
+
+    // sent again as 1-RTT
+    ShortPacket resent = (ShortPacket) captureSentPackets(2).get(1);
+    assertEquals(new PacketNumber(3), resent.getPacketNumber());
+    assertEquals(new Payload(PingFrame.INSTANCE), resent.getPayload());
+    assertEquals(1, buffer.getBuffer().size());
+  }
+
+  @Test
+  public void earlyDataAccepted() {
+    buffer.send(zeroRttPacket(2, PingFrame.INSTANCE));
+
+    buffer.onHandshakeComplete(true);
+
+    verify(sender, times(1)).send(any());
+    assertBuffered(2);
+  }
+
   @Test
   public void send() {
     Packet pingPacket = packet(2, PingFrame.INSTANCE);
@@ -114,6 +275,373 @@ public class PacketBufferTest {
     assertBufferEmpty();
   }
 
+  @Test
+  public void packetThresholdLoss() {
+    for (int i = 1; i <= 4; i++) {
+      buffer.send(packet(i, PingFrame.INSTANCE));
+    }
+
+    when(connection.nextSendPacketNumber()).thenReturn(new PacketNumber(10));
+
+    // acking 4 means 1 is more than 3 packets behind and lost
+    buffer.onPacket(packet(20, new AckFrame(123, AckBlock.fromLongs(4, 4))));
+
+    ShortPacket retransmit = (ShortPacket) captureSentPackets(5).get(4);
+    assertEquals(new PacketNumber(10), retransmit.getPacketNumber());
+    assertEquals(new Payload(PingFrame.INSTANCE), retransmit.getPayload());
+
+    assertBuffered(2);
+    assertBuffered(3);
+    assertBuffered(10);
+    assertFalse(buffer.getBuffer().containsKey(new PacketNumber(1)));
+
+    verify(congestionController).onPacketsLost(argThat(lost -> lost.size() == 1), eq(0L));
+
+    // acking the retransmission is reported with the original packet number
+    buffer.onPacket(packet(21, new AckFrame(123, AckBlock.fromLongs(10, 10))));
+    assertEquals(Arrays.asList(new PacketNumber(4), new PacketNumber(1)), acked);
+  }
+
+  @Test
+  public void congestionWindowFull() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    verify(congestionController).onPacketSent(argThat(p -> p.getSize() > 0));
+
+    when(congestionController.canSend()).thenReturn(false);
+    buffer.send(packet(2, PingFrame.INSTANCE));
+
+    // held until the window opens up
+    verify(sender, times(1)).send(any());
+    assertBuffered(1);
+    assertEquals(1, buffer.getBuffer().size());
+
+    // acks are not held back
+    buffer.onPacket(packet(20, PingFrame.INSTANCE));
+    buffer.onPacket(packet(21, PingFrame.INSTANCE));
+    verify(sender, times(2)).send(any());
+
+    when(congestionController.canSend()).thenReturn(true);
+    buffer.onPacket(packet(22, new AckFrame(0, AckBlock.fromLongs(1, 1))));
+
+    verify(congestionController)
+        .onPacketAcked(argThat(p -> p.getPacketNumber().asLong() == 1), eq(0L));
+    // numbered when sent, after the acks
+    assertEquals(
+        new PacketNumber(3), ((FullPacket) captureSentPackets(3).get(2)).getPacketNumber());
+    assertBuffered(3);
+  }
+
+  @Test
+  public void acksAddedWhenHeldPacketIsSent() {
+    when(connection.nextSendPacketNumber()).thenReturn(new PacketNumber(3), new PacketNumber(4));
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    when(congestionController.canSend()).thenReturn(false);
+
+    buffer.onPacket(packet(20, PingFrame.INSTANCE));
+    buffer.send(packet(2, PingFrame.INSTANCE));
+
+    // the held packet does not take the ack, it is sent on its own when the ack timer fires
+    verify(sender, times(1)).send(any());
+    runTimerTask(captureTimerTask());
+    assertEquals(List.of(AckBlock.fromLongs(20, 20)), verifyAck(captureSentPackets(2).get(1)));
+
+    buffer.onPacket(packet(21, PingFrame.INSTANCE));
+    when(congestionController.canSend()).thenReturn(true);
+    buffer.onPacket(packet(22, new AckFrame(0, AckBlock.fromLongs(1, 1))));
+
+    // acks received while the packet was held are added once it is sent, with a packet number
+    // larger than that of the ack sent before it
+    FullPacket released = (FullPacket) captureSentPackets(3).get(2);
+    assertEquals(
+        new PacketNumber(3), ((FullPacket) captureSentPackets(3).get(1)).getPacketNumber());
+    assertEquals(new PacketNumber(4), released.getPacketNumber());
+    AckFrame ackFrame = (AckFrame) released.getPayload().getFrames().get(1);
+    assertEquals(List.of(AckBlock.fromLongs(21, 21)), ackFrame.getBlocks());
+
+    // acking it is reported with the packet number it was created with
+    buffer.onPacket(packet(23, new AckFrame(0, AckBlock.fromLongs(4, 4))));
+    assertEquals(List.of(new PacketNumber(1), new PacketNumber(2)), acked);
+  }
+
+  private List<AckBlock> verifyAck(Packet packet) {
+    List<Frame> frames = ((FullPacket) packet).getPayload().getFrames();
+    assertEquals(1, frames.size());
+    return ((AckFrame) frames.get(0)).getBlocks();
+  }
+
+  @Test
+  public void pacing() {
+    // about a packet per ms
+    when(congestionController.getPacingRate()).thenReturn(1_100_000L);
+
+    for (int i = 1; i <= 15; i++) {
+      buffer.send(packet(i, PingFrame.INSTANCE, new PaddingFrame(1050)));
+    }
+
+    // the initial window goes out back-to-back, the rest is held by the pacer
+    int sent = mockingDetails(sender).getInvocations().size();
+    assertTrue(sent >= 9 && sent < 15);
+    ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+    verify(timer, atLeastOnce()).newTimeout(any(), delay.capture(), any());
+    assertTrue(delay.getValue() >= MILLISECONDS.toNanos(1));
+
+    // a small burst is released when the timer fires
+    TimerTask task = captureTimerTask();
+    now += delay.getValue();
+    runTimerTask(task);
+
+    int burst = mockingDetails(sender).getInvocations().size() - sent;
+    assertTrue(burst >= 1 && burst <= 2);
+  }
+
+  @Test
+  public void pacingWithZeroRtt() {
+    when(congestionController.getCongestionWindow()).thenReturn(12000L);
+
+    // acked within the same tick, e.g. on loopback
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    buffer.onPacket(packet(20, new AckFrame(0, AckBlock.fromLongs(1, 1))));
+    assertEquals(0, buffer.getRttEstimator().getSmoothedRtt());
+
+    for (int i = 2; i <= 30; i++) {
+      buffer.send(packet(i, PingFrame.INSTANCE, new PaddingFrame(1050)));
+    }
+    int sent = mockingDetails(sender).getInvocations().size();
+    assertTrue(sent < 30);
+
+    // paced as if the RTT was the timer granularity
+    TimerTask task = captureTimerTask();
+    now += MILLISECONDS.toNanos(1);
+    runTimerTask(task);
+
+    assertTrue(mockingDetails(sender).getInvocations().size() > sent);
+  }
+
+  @Test
+  public void pacedPacketDoesNotTakeAcks() {
+    when(congestionController.getPacingRate()).thenReturn(1_100_000L);
+    for (int i = 1; i <= 15; i++) {
+      buffer.send(packet(i, PingFrame.INSTANCE, new PaddingFrame(1050)));
+    }
+    int sent = mockingDetails(sender).getInvocations().size();
+    TimerTask pacingTask = captureTimerTask();
+
+    buffer.onPacket(packet(20, PingFrame.INSTANCE));
+    buffer.send(packet(16, PingFrame.INSTANCE));
+
+    // held by the pacer, the ack is sent on its own when the ack timer fires
+    assertEquals(sent, mockingDetails(sender).getInvocations().size());
+    runTimerTask(captureTimerTask());
+    assertEquals(
+        List.of(AckBlock.fromLongs(20, 20)), verifyAck(captureSentPackets(sent + 1).get(sent)));
+
+    // released by the pacer later, without acks
+    now += MILLISECONDS.toNanos(10);
+    runTimerTask(pacingTask);
+    int total = mockingDetails(sender).getInvocations().size();
+    assertTrue(total > sent + 1);
+    for (Packet released : captureSentPackets(total).subList(sent + 1, total)) {
+      List<Frame> frames = ((FullPacket) released).getPayload().getFrames();
+      assertFalse(frames.stream().anyMatch(frame -> frame instanceof AckFrame));
+    }
+  }
+
+  @Test
+  public void timeThresholdLoss() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    now = MILLISECONDS.toNanos(1);
+    buffer.send(packet(2, PingFrame.INSTANCE));
+
+    now = MILLISECONDS.toNanos(100);
+    buffer.onPacket(packet(20, new AckFrame(123, AckBlock.fromLongs(2, 2))));
+
+    // 1 is not yet lost, but a loss timer is scheduled for it
+    assertBuffered(1);
+    TimerTask task = captureTimerTask();
+
+    now = MILLISECONDS.toNanos(1000);
+    when(connection.nextSendPacketNumber()).thenReturn(new PacketNumber(10));
+    runTimerTask(task);
+
+    assertFalse(buffer.getBuffer().containsKey(new PacketNumber(1)));
+    assertBuffered(10);
+  }
+
+  @Test
+  public void probeTimeout() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    buffer.send(packet(2, PingFrame.INSTANCE));
+    buffer.send(packet(3, PingFrame.INSTANCE));
+
+    TimerTask task = captureTimerTask();
+
+    now = MILLISECONDS.toNanos(2000);
+    when(connection.nextSendPacketNumber())
+        .thenReturn(new PacketNumber(10))
+        .thenReturn(new PacketNumber(11));
+    runTimerTask(task);
+
+    // the two oldest packets are sent as probes
+    assertEquals(5, captureSentPackets(5).size());
+    assertBuffered(3);
+    assertBuffered(10);
+    assertBuffered(11);
+    assertEquals(3, buffer.getBuffer().size());
+  }
+
+  @Test
+  public void staleTimerIgnored() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    TimerTask task = captureTimerTask();
+
+    buffer.onPacket(packet(20, new AckFrame(123, AckBlock.fromLongs(1, 1))));
+
+    now = MILLISECONDS.toNanos(2000);
+    runTimerTask(task);
+
+    // only the original packet was sent
+    verify(sender, times(1)).send(any());
+  }
+
+  @Test
+  public void close() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+
+    buffer.close();
+
+    assertBufferEmpty();
+    verify(timeout, atLeastOnce()).cancel();
+  }
+
+  @Test
+  public void rttSample() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    buffer.send(packet(2, PingFrame.INSTANCE));
+
+    now = MILLISECONDS.toNanos(100);
+    // ack delay of 10 ms, scaled by the default exponent of 3
+    buffer.onPacket(packet(20, new AckFrame(1250, AckBlock.fromLongs(1, 2))));
+
+    assertEquals(MILLISECONDS.toNanos(100), buffer.getRttEstimator().getLatestRtt());
+    assertEquals(MILLISECONDS.toNanos(100), buffer.getRttEstimator().getSmoothedRtt());
+
+    buffer.send(packet(3, PingFrame.INSTANCE));
+    now = MILLISECONDS.toNanos(250);
+    buffer.onPacket(packet(21, new AckFrame(1250, AckBlock.fromLongs(3, 3))));
+
+    assertEquals(MILLISECONDS.toNanos(150), buffer.getRttEstimator().getLatestRtt());
+    assertEquals(MILLISECONDS.toNanos(100), buffer.getRttEstimator().getMinRtt());
+    assertEquals(
+        MILLISECONDS.toNanos((7 * 100 + 140) / 8), buffer.getRttEstimator().getSmoothedRtt());
+
+    // acking an already acked packet gives no sample
+    now = MILLISECONDS.toNanos(1000);
+    buffer.onPacket(packet(22, new AckFrame(0, AckBlock.fromLongs(3, 3))));
+    assertEquals(MILLISECONDS.toNanos(150), buffer.getRttEstimator().getLatestRtt());
+  }
+
+  @Test
+  public void rttSampleWithPeerAckDelay() {
+    buffer.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT)
+            .withAckDelayExponent(0)
+            .withMaxAckDelay(5)
+            .build());
+
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    now = MILLISECONDS.toNanos(100);
+    buffer.onPacket(packet(20, new AckFrame(0, AckBlock.fromLongs(1, 1))));
+
+    buffer.send(packet(2, PingFrame.INSTANCE));
+    now = MILLISECONDS.toNanos(250);
+    // ack delay of 10 ms with the peer's exponent of 0, capped at its max_ack_delay of 5 ms
+    buffer.onPacket(packet(21, new AckFrame(10000, AckBlock.fromLongs(2, 2))));
+
+    assertEquals(
+        MILLISECONDS.toNanos(7 * 100 + 145) / 8, buffer.getRttEstimator().getSmoothedRtt());
+  }
+
+  @Test
+  public void rttSampleWithLargestAckDelay() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+    now = MILLISECONDS.toNanos(100);
+    buffer.onPacket(packet(20, new AckFrame(0, AckBlock.fromLongs(1, 1))));
+
+    buffer.send(packet(2, PingFrame.INSTANCE));
+    now = MILLISECONDS.toNanos(250);
+    // would overflow when scaled by the exponent, capped at the default max_ack_delay of 25 ms
+    buffer.onPacket(packet(21, new AckFrame(Varint.MAX, AckBlock.fromLongs(2, 2))));
+
+    assertEquals(
+        MILLISECONDS.toNanos(7 * 100 + 125) / 8, buffer.getRttEstimator().getSmoothedRtt());
+  }
+
+  @Test
+  public void probeTimeoutWithPeerMaxAckDelay() {
+    buffer.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT).withMaxAckDelay(100).build());
+
+    buffer.send(packet(1, PingFrame.INSTANCE));
+
+    // initial RTT of 333 ms and variance of 4 * 333 / 2 ms, plus the peer's max_ack_delay
+    verify(timer).newTimeout(any(), eq(MILLISECONDS.toNanos(333 + 666 + 100)), any());
+  }
+
+  @Test
+  public void probeTimeoutBackoffCapped() {
+    buffer.send(packet(1, PingFrame.INSTANCE));
+
+    for (int i = 0; i < 40; i++) {
+      runTimerTask(captureTimerTask());
+    }
+
+    ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+    verify(timer, atLeastOnce()).newTimeout(any(), captor.capture(), any());
+    // initial RTT of 333 ms, variance of 4 * 333 / 2 ms and the default max_ack_delay, backed off
+    assertEquals(MILLISECONDS.toNanos(333 + 666 + 25) << 16, (long) captor.getValue());
+  }
+
+  @Test
+  public void ackInitialPacket() {
+    when(connection.getVersion()).thenReturn(Version.CURRENT);
+    ConnectionId peerConnId = ConnectionId.random();
+
+    buffer.onPacket(
+        InitialPacket.create(
+            Optional.of(ConnectionId.random()),
+            Optional.of(peerConnId),
+            new PacketNumber(1),
+            Version.CURRENT,
+            Optional.empty(),
+            new CryptoFrame(0, new byte[10])));
+
+    // acked directly, to the connection ID of the peer
+    InitialPacket ackPacket = (InitialPacket) verifySent();
+    assertEquals(peerConnId, ackPacket.getDestinationConnectionId().get());
+    AckFrame ackFrame = (AckFrame) ackPacket.getPayload().getFrames().get(0);
+    assertEquals(List.of(new AckBlock(1, 1)), ackFrame.getBlocks());
+  }
+
+  private TimerTask captureTimerTask() {
+    ArgumentCaptor<TimerTask> captor = ArgumentCaptor.forClass(TimerTask.class);
+    verify(timer, atLeastOnce()).newTimeout(captor.capture(), anyLong(), any());
+    return captor.getValue();
+  }
+
+  private void runTimerTask(TimerTask task) {
+    try {
+      task.run(timeout);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private List<Packet> captureSentPackets(int count) {
+    ArgumentCaptor<Packet> captor = ArgumentCaptor.forClass(Packet.class);
+    verify(sender, times(count)).send(captor.capture());
+    return captor.getAllValues();
+  }
+
   private void assertBuffered(long packetNumber) {
     // packet buffered for future acking
     assertTrue(buffer.getBuffer().containsKey(new PacketNumber(packetNumber)));
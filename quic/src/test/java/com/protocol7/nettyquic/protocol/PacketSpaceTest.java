@@ -0,0 +1,116 @@
+package com.protocol7.nettyquic.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.protocol.frames.AckBlock;
+import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.ShortPacket;
+import com.protocol7.nettyquic.tls.EncryptionLevel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class PacketSpaceTest {
+
+  private final PacketSpace space = new PacketSpace(EncryptionLevel.OneRtt);
+
+  @Test
+  public void drainAcks() {
+    space.onReceived(new PacketNumber(5), 0, true);
+    space.onReceived(new PacketNumber(1), 0, true);
+    space.onReceived(new PacketNumber(2), 0, true);
+    space.onReceived(new PacketNumber(2), 0, true);
+    space.onReceived(new PacketNumber(3), 0, true);
+
+    List<AckBlock> blocks = space.drainAcks();
+
+    assertEquals(Arrays.asList(AckBlock.fromLongs(1, 3), AckBlock.fromLongs(5, 5)), blocks);
+    assertTrue(space.drainAcks().isEmpty());
+  }
+
+  @Test
+  public void receivedOutOfOrder() {
+    assertFalse(space.onReceived(new PacketNumber(1), 10, true));
+    assertFalse(space.onReceived(new PacketNumber(2), 20, false));
+    // gap
+    assertTrue(space.onReceived(new PacketNumber(4), 30, true));
+    // reordered
+    assertTrue(space.onReceived(new PacketNumber(3), 40, true));
+
+    assertEquals(3, space.getAckElicitingReceived());
+    assertEquals(30, space.getLargestReceivedTime());
+
+    space.drainAcks();
+    assertEquals(0, space.getAckElicitingReceived());
+  }
+
+  @Test
+  public void onAcked() {
+    sent(1, 0);
+    sent(2, 0);
+    sent(3, 0);
+
+    List<SentPacket> acked = space.onAcked(AckBlock.fromLongs(2, 5));
+
+    assertEquals(2, acked.size());
+    assertEquals(new PacketNumber(3), space.getLargestAcked().get());
+    assertTrue(space.hasInFlight());
+
+    // acking again has no effect
+    assertTrue(space.onAcked(AckBlock.fromLongs(2, 3)).isEmpty());
+  }
+
+  @Test
+  public void detectLostByPacketThreshold() {
+    sent(1, 0);
+    sent(3, 0);
+    sent(5, 0);
+    space.onAcked(AckBlock.fromLongs(5, 5));
+
+    List<SentPacket> lost = space.detectLostPackets(0, 1000, 3);
+
+    assertEquals(1, lost.size());
+    assertEquals(new PacketNumber(1), lost.get(0).getPacketNumber());
+    assertEquals(1000, space.getLossTime().getAsLong());
+  }
+
+  @Test
+  public void detectLostByTimeThreshold() {
+    sent(1, 0);
+    sent(2, 500);
+    space.onAcked(AckBlock.fromLongs(2, 2));
+
+    assertTrue(space.detectLostPackets(999, 1000, 3).isEmpty());
+    assertEquals(1000, space.getLossTime().getAsLong());
+
+    assertEquals(1, space.detectLostPackets(1000, 1000, 3).size());
+    assertFalse(space.getLossTime().isPresent());
+    assertFalse(space.hasInFlight());
+  }
+
+  @Test
+  public void pollOldest() {
+    sent(3, 0);
+    sent(1, 0);
+    sent(2, 0);
+
+    List<SentPacket> oldest = space.pollOldest(2);
+
+    assertEquals(new PacketNumber(1), oldest.get(0).getPacketNumber());
+    assertEquals(new PacketNumber(2), oldest.get(1).getPacketNumber());
+    assertEquals(1, space.getSent().size());
+  }
+
+  private void sent(long pn, long time) {
+    ShortPacket packet =
+        new ShortPacket(
+            false,
+            Optional.of(ConnectionId.random()),
+            new PacketNumber(pn),
+            new Payload(PingFrame.INSTANCE));
+    space.onSent(new SentPacket(packet, packet.getPacketNumber(), time, 100));
+  }
+}
@@ -1,6 +1,7 @@
 package com.protocol7.nettyquic.protocol;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import com.protocol7.nettyquic.TestUtil;
 import com.protocol7.nettyquic.protocol.frames.*;
@@ -9,13 +10,14 @@ import com.protocol7.nettyquic.tls.aead.TestAEAD;
 import com.protocol7.nettyquic.utils.Hex;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
 import org.junit.Test;
 
 public class PayloadTest {
 
   private final AEAD aead = TestAEAD.create();
   private final PacketNumber pn = new PacketNumber(1);
-  private final byte[] aad = new byte[12];
+  private final ByteBuffer aad = ByteBuffer.allocate(12);
 
   @Test
   public void roundtrip() {
@@ -29,6 +31,21 @@ public class PayloadTest {
     assertEquals(payload, parsed);
   }
 
+  @Test
+  public void roundtripDirect() {
+    Payload payload = new Payload(PingFrame.INSTANCE, new PaddingFrame(1));
+
+    ByteBuf bb = Unpooled.directBuffer();
+    payload.write(bb, aead, pn, aad);
+
+    assertEquals(payload.calculateLength(), bb.writerIndex());
+
+    Payload parsed = Payload.parse(bb, payload.calculateLength(), aead, pn, aad);
+
+    assertEquals(payload, parsed);
+    assertFalse(bb.isReadable());
+  }
+
   @Test
   public void write() {
     Payload payload = new Payload(PingFrame.INSTANCE, new PaddingFrame(1));
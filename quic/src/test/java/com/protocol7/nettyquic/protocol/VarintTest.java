@@ -18,6 +18,27 @@ public class VarintTest {
     Varint.write(4611686018427387903L, bb);
   }
 
+  @Test
+  public void getLength() {
+    assertLength(0, 1);
+    assertLength(63, 1);
+    assertLength(64, 2);
+    assertLength(16383, 2);
+    assertLength(16384, 4);
+    assertLength(1073741823, 4);
+    assertLength(1073741824, 8);
+    assertLength(Varint.MAX, 8);
+  }
+
+  private void assertLength(long value, int expected) {
+    ByteBuf bb = Unpooled.buffer();
+    Varint.write(value, bb);
+
+    assertEquals(expected, Varint.getLength(value));
+    assertEquals(expected, bb.writerIndex());
+    assertEquals(value, Varint.readAsLong(bb));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void validateBoundsTooSmall() {
     ByteBuf bb = Unpooled.buffer();
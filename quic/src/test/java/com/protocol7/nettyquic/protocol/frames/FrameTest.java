@@ -1,5 +1,6 @@
 package com.protocol7.nettyquic.protocol.frames;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.protocol7.nettyquic.protocol.StreamId;
@@ -101,6 +102,8 @@ public class FrameTest {
     ByteBuf bb = Unpooled.buffer();
     frame.write(bb);
 
+    assertEquals(frame.calculateLength(), bb.writerIndex());
+
     Frame parsed = Frame.parse(bb);
 
     assertTrue(parsed.getClass().equals(frame.getClass()));
@@ -35,6 +35,8 @@ public class HandshakePacketTest {
 
     packet.write(bb, aead);
 
+    assertEquals(packet.calculateLength(), bb.writerIndex());
+
     HandshakePacket parsed = HandshakePacket.parse(bb).complete(l -> aead);
 
     assertEquals(destConnId, parsed.getDestinationConnectionId().get());
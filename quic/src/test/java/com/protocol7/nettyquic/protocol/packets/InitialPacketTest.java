@@ -40,6 +40,8 @@ public class InitialPacketTest {
 
     packet.write(bb, aead);
 
+    assertEquals(packet.calculateLength(), bb.writerIndex());
+
     InitialPacket parsed = InitialPacket.parse(bb).complete(l -> aead);
 
     assertEquals(destConnId, parsed.getDestinationConnectionId().get());
@@ -66,6 +68,8 @@ public class InitialPacketTest {
 
     packet.write(bb, aead);
 
+    assertEquals(packet.calculateLength(), bb.writerIndex());
+
     InitialPacket parsed = InitialPacket.parse(bb).complete(l -> aead);
 
     assertEquals(destConnId, parsed.getDestinationConnectionId().get());
@@ -2,12 +2,16 @@ package com.protocol7.nettyquic.protocol.packets;
 
 import static java.util.Optional.of;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.protocol.Payload;
 import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.tls.EncryptionLevel;
 import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.aead.AEADs;
+import com.protocol7.nettyquic.tls.aead.OneRttAEAD;
 import com.protocol7.nettyquic.tls.aead.TestAEAD;
 import com.protocol7.nettyquic.utils.Bits;
 import io.netty.buffer.ByteBuf;
@@ -26,6 +30,8 @@ public class ShortPacketTest {
     ShortPacket packet = packet();
     ByteBuf bb = buffer(packet);
 
+    assertEquals(packet.calculateLength(), bb.writerIndex());
+
     ShortPacket parsed = ShortPacket.parse(bb, dest.getLength()).complete(level -> aead);
 
     assertEquals(packet.getDestinationConnectionId(), parsed.getDestinationConnectionId());
@@ -33,6 +39,25 @@ public class ShortPacketTest {
     assertEquals(packet.getPayload(), parsed.getPayload());
   }
 
+  @Test
+  public void roundtripKeyPhase() throws Exception {
+    AEAD client = OneRttAEAD.create(new byte[32], new byte[32], true);
+    AEAD server = OneRttAEAD.create(new byte[32], new byte[32], false);
+    AEADs aeads = new AEADs(TestAEAD.create());
+    aeads.setOneRttAead(server);
+
+    ShortPacket packet = packet();
+    ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, client.nextGeneration());
+
+    ShortPacket parsed = ShortPacket.parse(bb, dest.getLength()).complete(aeads);
+
+    assertTrue(parsed.getKeyPhase());
+    assertEquals(packet.getPayload(), parsed.getPayload());
+    // the peer initiated update is followed
+    assertTrue(aeads.get(EncryptionLevel.OneRtt).getKeyPhase());
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void invalidFirstBit() {
     ByteBuf bb = buffer(packet());
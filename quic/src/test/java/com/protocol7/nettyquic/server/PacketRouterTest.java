@@ -4,6 +4,8 @@ import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -11,15 +13,20 @@ import com.protocol7.nettyquic.connection.PacketSender;
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.protocol.frames.PaddingFrame;
 import com.protocol7.nettyquic.protocol.frames.PingFrame;
+import com.protocol7.nettyquic.protocol.packets.HandshakePacket;
 import com.protocol7.nettyquic.protocol.packets.InitialPacket;
+import com.protocol7.nettyquic.protocol.packets.RetryPacket;
 import com.protocol7.nettyquic.protocol.packets.VersionNegotiationPacket;
 import com.protocol7.nettyquic.streams.StreamListener;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.aead.TestAEAD;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -34,6 +41,8 @@ public class PacketRouterTest {
 
   private ConnectionId destConnId = ConnectionId.random();
   private ConnectionId srcConnId = ConnectionId.random();
+  private InetSocketAddress address = new InetSocketAddress("127.0.0.1", 4444);
+  private RetryTokens retryTokens = new RetryTokens();
   @Mock private Connections connections;
   @Mock private ServerConnection connection;
   @Mock private StreamListener listener;
@@ -46,9 +55,10 @@ public class PacketRouterTest {
     router = new PacketRouter(Version.CURRENT, connections, listener);
 
     when(connections.get(any())).thenReturn(of(connection));
-    when(connections.get(any(), any(), any())).thenReturn(connection);
+    when(connections.get(any(), any(), any(), any())).thenReturn(connection);
 
     when(connection.getAEAD(any())).thenReturn(aead);
+    when(connection.getAEADProvider()).thenReturn(level -> aead);
     when(connection.getLocalConnectionId()).thenReturn(of(srcConnId));
   }
 
@@ -61,21 +71,42 @@ public class PacketRouterTest {
             new PacketNumber(2),
             Version.CURRENT,
             empty(),
-            PingFrame.INSTANCE);
+            PingFrame.INSTANCE,
+            new PaddingFrame(1200));
 
     ByteBuf bb = Unpooled.buffer();
     packet.write(bb, aead);
 
-    router.route(bb, sender);
+    router.route(bb, address, sender);
 
     verify(connection).onPacket(packet);
   }
 
+  @Test
+  public void dropInitialInShortDatagram() {
+    InitialPacket packet =
+        InitialPacket.create(
+            of(destConnId),
+            empty(),
+            new PacketNumber(2),
+            Version.CURRENT,
+            empty(),
+            PingFrame.INSTANCE);
+
+    ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+    when(connections.get(any())).thenReturn(empty());
+
+    router.route(bb, address, sender);
+
+    verify(connections, never()).get(any(), any(), any(), any());
+  }
+
   @Test(expected = RuntimeException.class)
   public void invalidPacket() {
     ByteBuf bb = Unpooled.wrappedBuffer("this is not a packet".getBytes());
 
-    router.route(bb, sender);
+    router.route(bb, address, sender);
   }
 
   @Test
@@ -92,11 +123,11 @@ public class PacketRouterTest {
     ByteBuf bb = Unpooled.buffer();
     packet.write(bb, aead);
 
-    router.route(bb, sender);
+    router.route(bb, address, sender);
 
     ArgumentCaptor<VersionNegotiationPacket> captor =
         ArgumentCaptor.forClass(VersionNegotiationPacket.class);
-    verify(sender).send(captor.capture(), any());
+    verify(sender).send(captor.capture());
 
     VersionNegotiationPacket verNeg = captor.getValue();
 
@@ -104,4 +135,116 @@ public class PacketRouterTest {
     assertEquals(srcConnId, verNeg.getSourceConnectionId().get());
     assertEquals(List.of(Version.CURRENT), verNeg.getSupportedVersions());
   }
+
+  private ByteBuf initial(Optional<byte[]> token) {
+    InitialPacket packet =
+        InitialPacket.create(
+            of(destConnId),
+            of(srcConnId),
+            new PacketNumber(2),
+            Version.CURRENT,
+            token,
+            PingFrame.INSTANCE,
+            new PaddingFrame(1200));
+
+    ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+    return bb;
+  }
+
+  private PacketRouter retryRouter() {
+    when(connections.get(any())).thenReturn(empty());
+    return new PacketRouter(Version.CURRENT, connections, listener, of(retryTokens));
+  }
+
+  @Test
+  public void retryInitialWithoutToken() {
+    retryRouter().route(initial(empty()), address, sender);
+
+    ArgumentCaptor<RetryPacket> captor = ArgumentCaptor.forClass(RetryPacket.class);
+    verify(sender).send(captor.capture());
+
+    RetryPacket retry = captor.getValue();
+    assertEquals(srcConnId, retry.getDestinationConnectionId().get());
+    assertEquals(destConnId, retry.getOriginalConnectionId());
+    assertEquals(
+        of(destConnId),
+        retryTokens.open(retry.getRetryToken(), address, retry.getSourceConnectionId().get()));
+
+    // no state kept for a client not validated
+    verify(connections, never()).get(any(), any(), any(), any());
+  }
+
+  @Test
+  public void routeInitialWithValidToken() {
+    ConnectionId originalConnId = ConnectionId.random();
+    byte[] token = retryTokens.seal(address, originalConnId, destConnId);
+
+    retryRouter().route(initial(of(token)), address, sender);
+
+    // the connection echoes the original connection ID in its transport parameters
+    verify(connections).get(eq(of(destConnId)), eq(of(originalConnId)), any(), any());
+    verify(connection).onPacket(any(InitialPacket.class));
+  }
+
+  @Test
+  public void dropInitialWithInvalidToken() {
+    byte[] token = retryTokens.seal(address, ConnectionId.random(), destConnId);
+    token[token.length - 1]++;
+
+    retryRouter().route(initial(of(token)), address, sender);
+
+    verify(connections, never()).get(any(), any(), any(), any());
+    verify(sender, never()).send(any(), any());
+    verify(sender, never()).send(any());
+  }
+
+  @Test
+  public void dropInitialWithTokenForOtherAddress() {
+    byte[] token = retryTokens.seal(address, ConnectionId.random(), destConnId);
+
+    retryRouter().route(initial(of(token)), new InetSocketAddress("127.0.0.2", 4444), sender);
+
+    verify(connections, never()).get(any(), any(), any(), any());
+    verify(sender, never()).send(any(), any());
+    verify(sender, never()).send(any());
+  }
+
+  @Test
+  public void dropHandshakePacketForUnknownConnection() {
+    HandshakePacket packet =
+        HandshakePacket.create(
+            of(destConnId),
+            of(srcConnId),
+            new PacketNumber(2),
+            Version.CURRENT,
+            PingFrame.INSTANCE);
+    ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+
+    retryRouter().route(bb, address, sender);
+
+    verify(connections, never()).get(any(), any(), any(), any());
+    verify(sender, never()).send(any(), any());
+    verify(sender, never()).send(any());
+  }
+
+  @Test
+  public void routeToExistingConnection() {
+    HandshakePacket packet =
+        HandshakePacket.create(
+            of(destConnId),
+            of(srcConnId),
+            new PacketNumber(2),
+            Version.CURRENT,
+            PingFrame.INSTANCE);
+    ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+
+    PacketRouter router = retryRouter();
+    when(connections.get(any())).thenReturn(of(connection));
+    router.route(bb, address, sender);
+
+    verify(connection).onPacket(packet);
+  }
 }
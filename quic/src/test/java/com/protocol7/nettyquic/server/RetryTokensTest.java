@@ -0,0 +1,108 @@
+package com.protocol7.nettyquic.server;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import java.net.InetSocketAddress;
+import org.junit.Test;
+
+public class RetryTokensTest {
+
+  private long now = 0;
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now;
+        }
+      };
+
+  private final RetryTokens tokens = new RetryTokens(SECONDS.toNanos(10), ticker);
+  private final InetSocketAddress address = new InetSocketAddress("127.0.0.1", 4444);
+  private final ConnectionId originalConnId = ConnectionId.random();
+  private final ConnectionId retryConnId = ConnectionId.random();
+
+  @Test
+  public void roundtrip() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    assertEquals(originalConnId, tokens.open(token, address, retryConnId).get());
+  }
+
+  @Test
+  public void otherAddress() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    assertFalse(
+        tokens.open(token, new InetSocketAddress("127.0.0.2", 4444), retryConnId).isPresent());
+  }
+
+  @Test
+  public void otherPort() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    assertFalse(
+        tokens.open(token, new InetSocketAddress("127.0.0.1", 4445), retryConnId).isPresent());
+  }
+
+  @Test
+  public void otherConnectionId() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    assertFalse(tokens.open(token, address, ConnectionId.random()).isPresent());
+  }
+
+  @Test
+  public void tampered() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+    token[token.length - 1]++;
+
+    assertFalse(tokens.open(token, address, retryConnId).isPresent());
+  }
+
+  @Test
+  public void tooShort() {
+    assertFalse(tokens.open(new byte[10], address, retryConnId).isPresent());
+  }
+
+  @Test
+  public void otherServer() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    assertFalse(
+        new RetryTokens(SECONDS.toNanos(10), ticker).open(token, address, retryConnId).isPresent());
+  }
+
+  @Test
+  public void openedAfterRotation() {
+    now = SECONDS.toNanos(10) - 1;
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    // key rotated, but the token is still within its lifetime
+    now = SECONDS.toNanos(10);
+    tokens.seal(address, originalConnId, retryConnId);
+
+    assertEquals(originalConnId, tokens.open(token, address, retryConnId).get());
+  }
+
+  @Test
+  public void expired() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    now = SECONDS.toNanos(10) + 1;
+
+    assertFalse(tokens.open(token, address, retryConnId).isPresent());
+  }
+
+  @Test
+  public void keyDropped() {
+    byte[] token = tokens.seal(address, originalConnId, retryConnId);
+
+    now = SECONDS.toNanos(20);
+
+    assertFalse(tokens.open(token, address, retryConnId).isPresent());
+  }
+}
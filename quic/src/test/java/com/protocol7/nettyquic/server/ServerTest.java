@@ -1,11 +1,11 @@
 package com.protocol7.nettyquic.server;
 
 import static java.util.Optional.empty;
-import static java.util.Optional.of;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.connection.PacketSender;
 import com.protocol7.nettyquic.protocol.*;
 import com.protocol7.nettyquic.protocol.frames.*;
@@ -16,11 +16,14 @@ import com.protocol7.nettyquic.tls.ClientTlsSession.HandshakeResult;
 import com.protocol7.nettyquic.tls.KeyUtil;
 import io.netty.util.concurrent.DefaultEventExecutor;
 import io.netty.util.concurrent.DefaultPromise;
-import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.concurrent.SucceededFuture;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -38,6 +41,10 @@ public class ServerTest {
   private StreamId streamId = StreamId.random(true, true);
 
   private ClientTlsSession clientTlsSession = new ClientTlsSession();
+  private final List<byte[]> certificates =
+      KeyUtil.getCertsFromCrt("src/test/resources/server.crt");
+  private final PrivateKey privateKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
+  private final List<Runnable> handshakeTasks = new ArrayList<>();
 
   @Mock private PacketSender packetSender;
   @Mock private StreamListener streamListener;
@@ -49,14 +56,17 @@ public class ServerTest {
     when(packetSender.send(any(), any()))
         .thenReturn(new SucceededFuture(new DefaultEventExecutor(), null));
     when(packetSender.destroy())
-        .thenReturn(new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE).setSuccess(null));
-
-    List<byte[]> certificates = KeyUtil.getCertsFromCrt("src/test/resources/server.crt");
-    PrivateKey privateKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
+        .thenReturn(new DefaultPromise<Void>(ImmediateEventExecutor.INSTANCE).setSuccess(null));
+    when(packetSender.getExecutor()).thenReturn(ImmediateEventExecutor.INSTANCE);
 
     connection =
         new ServerConnection(
-            srcConnectionId, streamListener, packetSender, certificates, privateKey);
+            srcConnectionId,
+            streamListener,
+            packetSender,
+            certificates,
+            privateKey,
+            QuicConfig.newBuilder().withoutSessionTickets().build());
   }
 
   @Test
@@ -64,18 +74,10 @@ public class ServerTest {
     assertEquals(ServerState.BeforeInitial, connection.getState());
     byte[] ch = clientTlsSession.startHandshake();
 
-    connection.onPacket(initialPacket(destConnectionId, empty(), new CryptoFrame(0, ch)));
-
-    RetryPacket retry = (RetryPacket) captureSentPacket(1);
-    assertTrue(retry.getDestinationConnectionId().isPresent());
-    assertEquals(srcConnectionId, retry.getDestinationConnectionId().get());
-    assertEquals(destConnectionId, retry.getOriginalConnectionId());
-    assertTrue(retry.getRetryToken().length > 0);
-    byte[] token = retry.getRetryToken();
+    // address validation is done by the router, before packets reach the connection
+    connection.onPacket(initialPacket(destConnectionId2, empty(), new CryptoFrame(0, ch)));
 
-    connection.onPacket(initialPacket(destConnectionId2, of(token), new CryptoFrame(0, ch)));
-
-    InitialPacket serverHello = (InitialPacket) captureSentPacket(2);
+    InitialPacket serverHello = (InitialPacket) captureSentPacket(1);
     assertEquals(srcConnectionId, serverHello.getDestinationConnectionId().get());
 
     assertTrue(serverHello.getSourceConnectionId().isPresent());
@@ -89,7 +91,7 @@ public class ServerTest {
 
     clientTlsSession.handleServerHello(cf.getCryptoData());
 
-    HandshakePacket handshake = (HandshakePacket) captureSentPacket(3);
+    HandshakePacket handshake = (HandshakePacket) captureSentPacket(2);
     assertEquals(srcConnectionId, handshake.getDestinationConnectionId().get());
     assertEquals(newSourceConnectionId, handshake.getSourceConnectionId().get());
     assertEquals(2, handshake.getPacketNumber().asLong());
@@ -98,11 +100,73 @@ public class ServerTest {
 
     HandshakeResult hr = clientTlsSession.handleHandshake(cf2.getCryptoData()).get();
 
+    // the client hello is acked once handled
+    InitialPacket initialAck = (InitialPacket) captureSentPacket(3);
+    assertEquals(srcConnectionId, initialAck.getDestinationConnectionId().get());
+    assertEquals(3, initialAck.getPacketNumber().asLong());
+    AckFrame clientHelloAck = (AckFrame) initialAck.getPayload().getFrames().get(0);
+    assertEquals(List.of(new AckBlock(1, 1)), clientHelloAck.getBlocks());
+
     connection.onPacket(packet(destConnectionId2, new CryptoFrame(0, hr.getFin())));
 
     assertEquals(ServerState.Ready, connection.getState());
   }
 
+  private void offloadHandshake(Executor handshakeExecutor) {
+    connection =
+        new ServerConnection(
+            srcConnectionId,
+            streamListener,
+            packetSender,
+            certificates,
+            privateKey,
+            QuicConfig.newBuilder()
+                .withoutSessionTickets()
+                .withHandshakeExecutor(handshakeExecutor)
+                .build());
+  }
+
+  @Test
+  public void handshakeOffloaded() {
+    offloadHandshake(handshakeTasks::add);
+
+    byte[] ch = clientTlsSession.startHandshake();
+    connection.onPacket(initialPacket(destConnectionId2, empty(), new CryptoFrame(0, ch)));
+    assertEquals(ServerState.HandlingClientHello, connection.getState());
+
+    // acked while being handled
+    assertTrue(captureSentPacket(1) instanceof InitialPacket);
+
+    // retransmitted while handling the first, acked but not handled again
+    connection.onPacket(initialPacket(destConnectionId2, empty(), new CryptoFrame(0, ch)));
+
+    assertTrue(captureSentPacket(2) instanceof InitialPacket);
+    assertEquals(1, handshakeTasks.size());
+
+    handshakeTasks.get(0).run();
+
+    assertEquals(ServerState.WaitingForFinished, connection.getState());
+    InitialPacket serverHello = (InitialPacket) captureSentPacket(3);
+    CryptoFrame cf = (CryptoFrame) serverHello.getPayload().getFrames().get(0);
+    clientTlsSession.handleServerHello(cf.getCryptoData());
+    assertTrue(captureSentPacket(4) instanceof HandshakePacket);
+  }
+
+  @Test
+  public void handshakeExecutorRejects() {
+    offloadHandshake(
+        task -> {
+          throw new RejectedExecutionException();
+        });
+
+    byte[] ch = clientTlsSession.startHandshake();
+    connection.onPacket(initialPacket(destConnectionId2, empty(), new CryptoFrame(0, ch)));
+
+    // dropped, until retransmitted by the client
+    assertEquals(ServerState.BeforeInitial, connection.getState());
+    verify(packetSender, never()).send(any(), any());
+  }
+
   @Test
   public void streamFrame() {
     handshake();
@@ -127,15 +191,17 @@ public class ServerTest {
 
     connection.onPacket(packet(destConnectionId2, PingFrame.INSTANCE));
 
-    assertAck(4, 3, 3, 3);
+    // finished and ping are acked together
+    assertAck(4, 4, 2, 3);
   }
 
   private void assertAck(int number, int packetNumber, int smallest, int largest) {
     ShortPacket ackPacket = (ShortPacket) captureSentPacket(number);
     assertEquals(packetNumber, ackPacket.getPacketNumber().asLong());
     assertTrue(ackPacket.getDestinationConnectionId().isPresent());
-    assertEquals(
-        new Payload(new AckFrame(123, new AckBlock(smallest, largest))), ackPacket.getPayload());
+    assertEquals(1, ackPacket.getPayload().getFrames().size());
+    AckFrame ackFrame = (AckFrame) ackPacket.getPayload().getFrames().get(0);
+    assertEquals(List.of(new AckBlock(smallest, largest)), ackFrame.getBlocks());
   }
 
   @Test
@@ -172,7 +238,8 @@ public class ServerTest {
 
   private Packet captureSentPacket(int number) {
     ArgumentCaptor<Packet> packetCaptor = ArgumentCaptor.forClass(Packet.class);
-    verify(packetSender, atLeast(number)).send(packetCaptor.capture(), any());
+    // acks might be delayed
+    verify(packetSender, timeout(1000).atLeast(number)).send(packetCaptor.capture(), any());
 
     List<Packet> values = packetCaptor.getAllValues();
     return values.get(number - 1);
@@ -0,0 +1,88 @@
+package com.protocol7.nettyquic.streams;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.connection.Connection;
+import com.protocol7.nettyquic.connection.RttEstimator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ReceiveWindowTest {
+
+  @Mock private Connection connection;
+
+  private final RttEstimator rttEstimator = new RttEstimator();
+  private long now = 0;
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now;
+        }
+      };
+
+  private ReceiveWindow window;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    rttEstimator.onSample(MILLISECONDS.toNanos(100), 0);
+    when(connection.getRttEstimator()).thenReturn(rttEstimator);
+
+    window = new ReceiveWindow(connection, ticker, 1000, 4000);
+  }
+
+  @Test
+  public void isAllowed() {
+    assertTrue(window.isAllowed(1000));
+    assertFalse(window.isAllowed(1001));
+  }
+
+  @Test
+  public void extendWhenHalfConsumed() {
+    now = SECONDS.toNanos(1);
+    assertEquals(0, window.onConsumed(400));
+
+    now = SECONDS.toNanos(2);
+    assertEquals(1600, window.onConsumed(200));
+    assertTrue(window.isAllowed(1600));
+  }
+
+  @Test
+  public void growWhenConsumedFast() {
+    window.onConsumed(100);
+
+    // more than half a window consumed within a round trip
+    now = MILLISECONDS.toNanos(50);
+    assertEquals(600 + 2000, window.onConsumed(500));
+    assertEquals(2000, window.getWindow());
+  }
+
+  @Test
+  public void keepWindowWhenConsumedSlowly() {
+    window.onConsumed(100);
+
+    now = SECONDS.toNanos(1);
+    assertEquals(600 + 1000, window.onConsumed(500));
+    assertEquals(1000, window.getWindow());
+  }
+
+  @Test
+  public void growUpToMax() {
+    for (int i = 0; i < 100; i++) {
+      now += MILLISECONDS.toNanos(1);
+      window.onConsumed(500);
+    }
+
+    assertEquals(4000, window.getWindow());
+  }
+}
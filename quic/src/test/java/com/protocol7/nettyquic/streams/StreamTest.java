@@ -5,14 +5,21 @@ import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import com.google.common.base.Ticker;
 import com.protocol7.nettyquic.connection.Connection;
 import com.protocol7.nettyquic.protocol.ConnectionId;
 import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.protocol.StreamId;
+import com.protocol7.nettyquic.protocol.TransportError;
+import com.protocol7.nettyquic.protocol.frames.ConnectionCloseFrame;
+import com.protocol7.nettyquic.protocol.frames.DataBlockedFrame;
 import com.protocol7.nettyquic.protocol.frames.Frame;
+import com.protocol7.nettyquic.protocol.frames.MaxStreamDataFrame;
 import com.protocol7.nettyquic.protocol.frames.ResetStreamFrame;
+import com.protocol7.nettyquic.protocol.frames.StreamDataBlockedFrame;
 import com.protocol7.nettyquic.protocol.frames.StreamFrame;
 import com.protocol7.nettyquic.protocol.packets.FullPacket;
+import java.util.List;
 import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +34,7 @@ public class StreamTest {
   @Mock private StreamListener listener;
   @Mock private FullPacket packet;
   private final StreamId streamId = StreamId.random(true, true);
+  private final Ticker ticker = Ticker.systemTicker();
 
   @Before
   public void setUp() {
@@ -99,12 +107,118 @@ public class StreamTest {
     stream.write(DATA, true);
   }
 
+  @Test
+  public void writeBlockedByStreamLimit() {
+    Stream stream = flowControlledStream(1000, 3, 1000);
+
+    stream.write(DATA, true);
+
+    List<Frame> frames = captureFrames();
+    assertEquals(2, frames.size());
+    StreamFrame frame = (StreamFrame) frames.get(0);
+    assertArrayEquals("Hel".getBytes(), frame.getData());
+    assertFalse(frame.isFin());
+    StreamDataBlockedFrame blocked = (StreamDataBlockedFrame) frames.get(1);
+    assertEquals(streamId, blocked.getStreamId());
+    assertEquals(3, blocked.getStreamDataLimit());
+
+    stream.onMaxStreamData(10);
+
+    StreamFrame frame2 = (StreamFrame) captureFrame();
+    assertArrayEquals("lo".getBytes(), frame2.getData());
+    assertEquals(3, frame2.getOffset());
+    assertTrue(frame2.isFin());
+  }
+
+  @Test
+  public void blockedOnlySentOncePerLimit() {
+    Stream stream = flowControlledStream(1000, 3, 1000);
+
+    stream.write(DATA, false);
+    stream.write(DATA, false);
+
+    verify(connection, times(1)).sendPacket(any(StreamDataBlockedFrame.class));
+  }
+
+  @Test
+  public void writeBlockedByConnectionLimit() {
+    Stream stream = flowControlledStream(3, 1000, 1000);
+
+    stream.write(DATA, false);
+
+    List<Frame> frames = captureFrames();
+    assertEquals(2, frames.size());
+    assertArrayEquals("Hel".getBytes(), ((StreamFrame) frames.get(0)).getData());
+    assertEquals(3, ((DataBlockedFrame) frames.get(1)).getDataLimit());
+  }
+
+  @Test
+  public void finWithoutCredit() {
+    Stream stream = flowControlledStream(1000, 0, 1000);
+
+    stream.write(new byte[0], true);
+
+    StreamFrame frame = (StreamFrame) captureFrame();
+    assertEquals(0, frame.getData().length);
+    assertTrue(frame.isFin());
+  }
+
+  @Test
+  public void windowUpdate() {
+    Stream stream = flowControlledStream(1000, 1000, 8);
+
+    stream.onData(0, false, DATA);
+
+    MaxStreamDataFrame frame = (MaxStreamDataFrame) captureFrame();
+    assertEquals(streamId, frame.getStreamId());
+    assertEquals(DATA.length + 8, frame.getMaxStreamData());
+  }
+
+  @Test
+  public void noWindowUpdateAfterFin() {
+    Stream stream = flowControlledStream(1000, 1000, 8);
+
+    stream.onData(0, true, DATA);
+
+    verify(connection, never()).sendPacket(any(MaxStreamDataFrame.class));
+  }
+
+  @Test
+  public void flowControlViolation() {
+    Stream stream = flowControlledStream(1000, 1000, 3);
+
+    stream.onData(0, false, DATA);
+
+    ConnectionCloseFrame frame = (ConnectionCloseFrame) captureFrame();
+    assertEquals(TransportError.FLOW_CONTROL_ERROR.getValue(), frame.getErrorCode());
+    verify(listener, never()).onData(any(), any());
+  }
+
+  private Stream flowControlledStream(
+      final long maxData, final long maxStreamData, final long receiveWindow) {
+    return new Stream(
+        streamId,
+        connection,
+        listener,
+        Bidirectional,
+        new ConnectionFlowControl(
+            connection, maxData, new ReceiveWindow(connection, ticker, 1000, 1000)),
+        maxStreamData,
+        new ReceiveWindow(connection, ticker, receiveWindow, receiveWindow));
+  }
+
   private Frame captureFrame() {
     ArgumentCaptor<Frame> packetCaptor = ArgumentCaptor.forClass(Frame.class);
     verify(connection, atLeastOnce()).sendPacket(packetCaptor.capture());
     return packetCaptor.getValue();
   }
 
+  private List<Frame> captureFrames() {
+    ArgumentCaptor<Frame> packetCaptor = ArgumentCaptor.forClass(Frame.class);
+    verify(connection, atLeastOnce()).sendPacket(packetCaptor.capture());
+    return packetCaptor.getAllValues();
+  }
+
   @Test
   public void onData() {
     Stream stream = new Stream(streamId, connection, listener, Bidirectional);
@@ -1,11 +1,21 @@
 package com.protocol7.nettyquic.streams;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 
+import com.google.common.base.Ticker;
 import com.protocol7.nettyquic.connection.Connection;
+import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.protocol.StreamId;
+import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.protocol.frames.Frame;
+import com.protocol7.nettyquic.protocol.frames.StreamFrame;
+import com.protocol7.nettyquic.protocol.packets.FullPacket;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -13,6 +23,7 @@ public class StreamsTest {
 
   @Mock Connection connection;
   @Mock StreamListener listener;
+  @Mock FullPacket packet;
 
   private Streams streams;
 
@@ -20,6 +31,9 @@ public class StreamsTest {
   public void setUp() {
     MockitoAnnotations.initMocks(this);
 
+    when(packet.getPacketNumber()).thenReturn(new PacketNumber(123));
+    when(connection.sendPacket(any(Frame.class))).thenReturn(packet);
+
     this.streams = new Streams(connection);
   }
 
@@ -40,4 +54,125 @@ public class StreamsTest {
     Stream stream3 = streams.getOrCreate(StreamId.random(true, true), listener);
     assertNotSame(stream1, stream3);
   }
+
+  @Test
+  public void peerStreamLimit() {
+    streams.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT)
+            .withInitialMaxData(1000)
+            .withInitialMaxStreamDataBidiRemote(2)
+            .build());
+
+    Stream stream = streams.openStream(true, true, listener);
+    stream.write("Hello".getBytes(), false);
+
+    assertEquals(2, captureStreamFrame().getData().length);
+  }
+
+  // no credit until the peer's transport parameters are set
+  private Streams streamsWithoutCredit() {
+    return new Streams(
+        connection,
+        TransportParameters.newBuilder(Version.CURRENT).build(),
+        ReceiveWindow.DEFAULT_MAX_WINDOW,
+        Ticker.systemTicker());
+  }
+
+  @Test
+  public void maxDataFlushesBlockedStreams() {
+    streams = streamsWithoutCredit();
+    streams.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT)
+            .withInitialMaxData(0)
+            .withInitialMaxStreamDataBidiRemote(1000)
+            .build());
+
+    Stream stream = streams.openStream(true, true, listener);
+    stream.write("Hello".getBytes(), false);
+    verify(connection, never()).sendPacket(any(StreamFrame.class));
+
+    streams.onMaxData(1000);
+
+    assertEquals(5, captureStreamFrame().getData().length);
+  }
+
+  @Test
+  public void maxDataNotLoweredByTransportParameters() {
+    streams = streamsWithoutCredit();
+    streams.onMaxData(1000);
+
+    streams.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT)
+            .withInitialMaxData(2)
+            .withInitialMaxStreamDataBidiRemote(1000)
+            .build());
+
+    Stream stream = streams.openStream(true, true, listener);
+    stream.write("Hello".getBytes(), false);
+
+    assertEquals(5, captureStreamFrame().getData().length);
+  }
+
+  @Test
+  public void peerStreamLimitAppliedToOpenStreams() {
+    streams = streamsWithoutCredit();
+
+    // opened before the handshake, e.g. for early data
+    Stream local = streams.openStream(true, true, listener);
+    Stream remote = streams.getOrCreate(new StreamId(1), listener);
+    local.write("Hello".getBytes(), false);
+    verify(connection, never()).sendPacket(any(StreamFrame.class));
+
+    streams.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT)
+            .withInitialMaxData(1000)
+            .withInitialMaxStreamDataBidiRemote(1000)
+            .withInitialMaxStreamDataBidiLocal(3)
+            .build());
+
+    assertEquals(5, captureStreamFrame().getData().length);
+
+    // streams opened by the peer get the peer's local limit
+    remote.write("Hello".getBytes(), false);
+    ArgumentCaptor<Frame> captor = ArgumentCaptor.forClass(Frame.class);
+    verify(connection, atLeastOnce()).sendPacket(captor.capture());
+    StreamFrame frame =
+        (StreamFrame)
+            captor
+                .getAllValues()
+                .stream()
+                .filter(f -> f instanceof StreamFrame)
+                .reduce((first, second) -> second)
+                .get();
+    assertEquals(remote.getId(), frame.getStreamId());
+    assertEquals(3, frame.getData().length);
+  }
+
+  @Test
+  public void maxStreamData() {
+    streams.setPeerTransportParameters(
+        TransportParameters.newBuilder(Version.CURRENT)
+            .withInitialMaxData(1000)
+            .withInitialMaxStreamDataBidiRemote(0)
+            .build());
+
+    Stream stream = streams.openStream(true, true, listener);
+    stream.write("Hello".getBytes(), false);
+
+    streams.onMaxStreamData(stream.getId(), 1000);
+
+    assertEquals(5, captureStreamFrame().getData().length);
+  }
+
+  private StreamFrame captureStreamFrame() {
+    ArgumentCaptor<Frame> captor = ArgumentCaptor.forClass(Frame.class);
+    verify(connection, atLeastOnce()).sendPacket(captor.capture());
+    return (StreamFrame)
+        captor
+            .getAllValues()
+            .stream()
+            .filter(frame -> frame instanceof StreamFrame)
+            .findFirst()
+            .get();
+  }
 }
@@ -1,9 +1,15 @@
 package com.protocol7.nettyquic.tls;
 
+import static com.protocol7.nettyquic.tls.SignatureScheme.ECDSA_SECP256R1_SHA256;
+import static com.protocol7.nettyquic.tls.SignatureScheme.ED25519;
+
 import com.protocol7.nettyquic.utils.Hex;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 public class CertificateVerifyTest {
@@ -32,4 +38,31 @@ public class CertificateVerifyTest {
 
     Assert.assertTrue(CertificateVerify.verify(sign, hash, publicKey, false));
   }
+
+  @Test
+  public void roundtripEcdsa() {
+    byte[] hash = Hex.dehex("3e66361ada42c7cb97f9a62b00cae1d8b584174c745f9a338cf9f7cdd51d15f8");
+
+    PrivateKey privateKey = KeyUtil.getPrivateKey("src/test/resources/server-ec.der", "EC");
+    byte[] actual = CertificateVerify.sign(hash, privateKey, ECDSA_SECP256R1_SHA256, false);
+
+    PublicKey publicKey = KeyUtil.getCertFromCrt("src/test/resources/server-ec.crt").getPublicKey();
+
+    Assert.assertTrue(
+        CertificateVerify.verify(actual, hash, publicKey, ECDSA_SECP256R1_SHA256, false));
+    Assert.assertFalse(
+        CertificateVerify.verify(actual, hash, publicKey, ECDSA_SECP256R1_SHA256, true));
+  }
+
+  @Test
+  public void roundtripEd25519() throws Exception {
+    Assume.assumeTrue(SignatureScheme.SUPPORTED.contains(ED25519));
+
+    byte[] hash = Hex.dehex("3e66361ada42c7cb97f9a62b00cae1d8b584174c745f9a338cf9f7cdd51d15f8");
+
+    KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+    byte[] actual = CertificateVerify.sign(hash, keyPair.getPrivate(), ED25519, false);
+
+    Assert.assertTrue(CertificateVerify.verify(actual, hash, keyPair.getPublic(), ED25519, false));
+  }
 }
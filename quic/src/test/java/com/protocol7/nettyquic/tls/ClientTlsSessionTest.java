@@ -1,11 +1,14 @@
 package com.protocol7.nettyquic.tls;
 
 import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_128_GCM_SHA256;
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_256_GCM_SHA384;
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_CHACHA20_POLY1305_SHA256;
 import static com.protocol7.nettyquic.utils.Hex.dehex;
 import static com.protocol7.nettyquic.utils.Hex.hex;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import com.protocol7.nettyquic.QuicConfig;
 import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.tls.aead.AEAD;
 import com.protocol7.nettyquic.tls.extensions.*;
@@ -38,7 +41,9 @@ public class ClientTlsSessionTest {
 
     assertEquals(32, hello.getClientRandom().length);
     assertEquals(0, hello.getSessionId().length);
-    assertEquals(List.of(TLS_AES_128_GCM_SHA256), hello.getCipherSuites());
+    assertEquals(
+        List.of(TLS_AES_128_GCM_SHA256, TLS_AES_256_GCM_SHA384, TLS_CHACHA20_POLY1305_SHA256),
+        hello.getCipherSuites());
 
     assertEquals(
         32,
@@ -76,6 +81,44 @@ public class ClientTlsSessionTest {
     // TODO mock random and test AEAD keys
   }
 
+  @Test
+  public void handshakeCipherSuites() {
+    ClientTlsSession engine =
+        new ClientTlsSession(
+            QuicConfig.newBuilder().withCipherSuites(List.of(TLS_CHACHA20_POLY1305_SHA256)).build(),
+            "");
+    ClientHello hello = ClientHello.parse(engine.startHandshake(), false);
+
+    assertEquals(List.of(TLS_CHACHA20_POLY1305_SHA256), hello.getCipherSuites());
+  }
+
+  @Test
+  public void serverHelloChaCha20() {
+    List<Extension> ext =
+        List.of(keyshare(), SupportedVersions.TLS13, TransportParameters.defaults(Version.CURRENT));
+
+    byte[] b = sh(new byte[32], TLS_CHACHA20_POLY1305_SHA256, ext);
+
+    AEAD aead = started.handleServerHello(b);
+
+    assertEquals(TLS_CHACHA20_POLY1305_SHA256, aead.getCipherSuite());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void serverHelloCipherSuiteNotOffered() {
+    ClientTlsSession engine =
+        new ClientTlsSession(
+            QuicConfig.newBuilder().withCipherSuites(List.of(TLS_AES_128_GCM_SHA256)).build(), "");
+    engine.startHandshake();
+
+    List<Extension> ext =
+        List.of(keyshare(), SupportedVersions.TLS13, TransportParameters.defaults(Version.CURRENT));
+
+    byte[] b = sh(new byte[32], TLS_AES_256_GCM_SHA384, ext);
+
+    engine.handleServerHello(b);
+  }
+
   private byte[] sh(byte[] serverRandom, CipherSuite cipherSuite, List<Extension> ext) {
     ServerHello sh = new ServerHello(serverRandom, new byte[0], cipherSuite, ext);
     ByteBuf bb = Unpooled.buffer();
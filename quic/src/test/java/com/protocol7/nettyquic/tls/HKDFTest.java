@@ -0,0 +1,35 @@
+package com.protocol7.nettyquic.tls;
+
+import static com.protocol7.nettyquic.utils.Hex.dehex;
+
+import com.protocol7.nettyquic.TestUtil;
+import org.junit.Test;
+
+public class HKDFTest {
+
+  // test vectors from RFC 5869 appendix A
+  private final byte[] ikm = dehex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+
+  @Test
+  public void extract() {
+    TestUtil.assertHex(
+        "077709362c2e32df0ddc3f0dc47bba6390b6c73bb50f9c3122ec844ad7c2b3e5",
+        HKDF.extract(dehex("000102030405060708090a0b0c"), ikm));
+  }
+
+  @Test
+  public void extractEmptySalt() {
+    TestUtil.assertHex(
+        "19ef24a32c717b167f33a91d6f648bdf96596776afdb6377ac434c1c293ccb04",
+        HKDF.extract(new byte[0], ikm));
+  }
+
+  @Test
+  public void expandLabelLongerThanHash() {
+    byte[] key = HKDF.extract(new byte[0], ikm);
+
+    TestUtil.assertHex(
+        "60ae6ac9dbab0607e141df63d8152efbb030c68c5b9b277fdf5eb31546d5042252b39b2bd9d1f8447baac54caaf1f212ee4ec6e85bae4552fc3e5202c78a6922145d3e5aca030361940814836bdd8a56",
+        HKDF.expandLabel(key, "test", new byte[0], 80));
+  }
+}
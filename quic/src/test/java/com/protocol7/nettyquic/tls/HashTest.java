@@ -25,6 +25,20 @@ public class HashTest {
         "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Hash.sha256());
   }
 
+  @Test
+  public void single384() {
+    TestUtil.assertHex(
+        "59e1748777448c69de6b800d7a33bbfb9ff1b463e44354c3553bcdb9c666fa90125a3c79f90397bdf5f6a13de828684f",
+        Hash.hash(CipherSuite.TLS_AES_256_GCM_SHA384, "hello".getBytes()));
+  }
+
+  @Test
+  public void empty384() {
+    TestUtil.assertHex(
+        "38b060a751ac96384cd9327eb1b1e36a21fdb71114be07434c0cc7bf63f6e1da274edebfe76f65fbd51ad2f14898b95b",
+        Hash.hash(CipherSuite.TLS_AES_256_GCM_SHA384));
+  }
+
   @Test(expected = NullPointerException.class)
   public void null256() {
     Hash.sha256(null);
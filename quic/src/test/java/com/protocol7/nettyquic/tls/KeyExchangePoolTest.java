@@ -0,0 +1,93 @@
+package com.protocol7.nettyquic.tls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.nettyquic.utils.Hex;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+public class KeyExchangePoolTest {
+
+  private final List<Runnable> tasks = new ArrayList<>();
+
+  @Test
+  public void filledOnCreation() {
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 3, tasks::add);
+    assertEquals(0, pool.size());
+    assertEquals(1, tasks.size());
+
+    tasks.remove(0).run();
+
+    assertEquals(3, pool.size());
+    assertTrue(tasks.isEmpty());
+  }
+
+  @Test
+  public void refilledWhenTaken() {
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 3, tasks::add);
+    tasks.remove(0).run();
+
+    pool.take();
+    pool.take();
+    assertEquals(1, pool.size());
+    // a single refill is scheduled
+    assertEquals(1, tasks.size());
+
+    tasks.remove(0).run();
+    assertEquals(3, pool.size());
+  }
+
+  @Test
+  public void singleUse() {
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 4, Runnable::run);
+
+    Set<String> publicKeys = new HashSet<>();
+    for (int i = 0; i < 12; i++) {
+      KeyExchange kek = pool.take();
+      assertEquals(Group.X25519, kek.getGroup());
+      assertTrue(publicKeys.add(Hex.hex(kek.getPublicKey())));
+    }
+  }
+
+  @Test
+  public void generatedWhenEmpty() {
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 3, tasks::add);
+
+    assertNotNull(pool.take());
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void refillRejected() {
+    KeyExchangePool pool =
+        new KeyExchangePool(
+            Group.X25519,
+            3,
+            task -> {
+              throw new RejectedExecutionException();
+            });
+
+    assertNotNull(pool.take());
+  }
+
+  @Test
+  public void backgroundRefill() throws InterruptedException {
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 2);
+
+    for (int i = 0; i < 100 && pool.size() < 2; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, pool.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidDepth() {
+    new KeyExchangePool(Group.X25519, 0, Runnable::run);
+  }
+}
@@ -49,11 +49,15 @@ public class KeyUtil {
   }
 
   public static PrivateKey getPrivateKey(String path) {
+    return getPrivateKey(path, "RSA");
+  }
+
+  public static PrivateKey getPrivateKey(String path, String algorithm) {
     try {
       byte[] b = Files.readAllBytes(Path.of(path));
       PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(b);
 
-      KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+      KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
 
       return keyFactory.generatePrivate(keySpec);
     } catch (GeneralSecurityException | IOException e) {
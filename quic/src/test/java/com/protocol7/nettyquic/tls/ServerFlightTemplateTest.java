@@ -0,0 +1,109 @@
+package com.protocol7.nettyquic.tls;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.protocol7.nettyquic.protocol.ConnectionId;
+import com.protocol7.nettyquic.protocol.Version;
+import com.protocol7.nettyquic.tls.extensions.EarlyData;
+import com.protocol7.nettyquic.tls.extensions.Extension;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.EncryptedExtensions;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificate;
+import com.protocol7.nettyquic.utils.Bytes;
+import com.protocol7.nettyquic.utils.Rnd;
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServerFlightTemplateTest {
+
+  private List<byte[]> certificates;
+  private ServerFlightTemplate template;
+
+  @Before
+  public void setUp() throws Exception {
+    certificates = List.of(KeyUtil.getCertFromCrt("src/test/resources/server.crt").getEncoded());
+    template = new ServerFlightTemplate(certificates);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void noCertificates() {
+    new ServerFlightTemplate(List.of());
+  }
+
+  @Test
+  public void encryptedExtensions() {
+    assertArrayEquals(
+        Bytes.write(EncryptedExtensions.defaults(Version.CURRENT)),
+        template.getEncryptedExtensions(false));
+  }
+
+  @Test
+  public void encryptedExtensionsEarlyData() {
+    EncryptedExtensions ee =
+        EncryptedExtensions.parse(
+            Unpooled.wrappedBuffer(template.getEncryptedExtensions(true)), true);
+
+    List<Extension> extensions = ee.getExtensions();
+    assertEquals(TransportParameters.defaults(Version.CURRENT), extensions.get(0));
+    assertEquals(EarlyData.INDICATION.getType(), extensions.get(1).getType());
+  }
+
+  @Test
+  public void certificate() {
+    assertArrayEquals(
+        Bytes.write(new ServerCertificate(new byte[0], certificates)),
+        template.getCertificate(false));
+  }
+
+  @Test
+  public void compressedCertificate() {
+    byte[] compressed = template.getCertificate(true);
+
+    ServerCertificate sc = ServerHandshake.parseCertificate(Unpooled.wrappedBuffer(compressed));
+
+    assertEquals(0x19, compressed[0]);
+    assertArrayEquals(certificates.get(0), sc.getServerCertificates().get(0));
+  }
+
+  @Test
+  public void incompressibleCertificate() {
+    List<byte[]> random = List.of(Rnd.rndBytes(1000));
+    ServerFlightTemplate template = new ServerFlightTemplate(random);
+
+    // sent uncompressed, as compression would make it larger
+    assertArrayEquals(template.getCertificate(false), template.getCertificate(true));
+  }
+
+  @Test
+  public void transportParameters() {
+    TransportParameters tps = TransportParameters.defaults(Version.CURRENT);
+
+    assertEquals(tps.getType(), template.getTransportParameters().getType());
+    assertArrayEquals(
+        Bytes.write(bb -> tps.write(bb, false)),
+        Bytes.write(bb -> template.getTransportParameters().write(bb, false)));
+  }
+
+  @Test
+  public void forRetry() {
+    ConnectionId originalConnId = ConnectionId.random();
+    ConnectionId retryConnId = ConnectionId.random();
+
+    ServerFlightTemplate retried = template.forRetry(originalConnId, retryConnId);
+
+    EncryptedExtensions ee =
+        EncryptedExtensions.parse(
+            Unpooled.wrappedBuffer(retried.getEncryptedExtensions(false)), true);
+    TransportParameters tps = (TransportParameters) ee.getExtensions().get(0);
+    assertArrayEquals(originalConnId.asBytes(), tps.getOriginalConnectionId());
+    assertArrayEquals(retryConnId.asBytes(), tps.getRetrySourceConnectionId());
+
+    // the certificate is shared with the template
+    assertSame(template.getCertificate(false), retried.getCertificate(false));
+  }
+}
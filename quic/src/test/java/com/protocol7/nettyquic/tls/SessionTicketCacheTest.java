@@ -0,0 +1,103 @@
+package com.protocol7.nettyquic.tls;
+
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_128_GCM_SHA256;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+public class SessionTicketCacheTest {
+
+  private static final String SERVER = "localhost:4444";
+
+  private long now = 0;
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now;
+        }
+      };
+
+  private final SessionTicketCache cache = new SessionTicketCache(ticker);
+
+  private void put(int ticket, long ageAdd) {
+    cache.put(SERVER, TLS_AES_128_GCM_SHA256, new byte[] {(byte) ticket}, new byte[32], ageAdd, 10);
+  }
+
+  @Test
+  public void takeOnce() {
+    put(1, 0);
+
+    assertArrayEquals(new byte[] {1}, cache.take(SERVER).get().getTicket());
+    assertFalse(cache.take(SERVER).isPresent());
+  }
+
+  @Test
+  public void earlyData() {
+    put(1, 0);
+    cache.put(SERVER, TLS_AES_128_GCM_SHA256, new byte[] {2}, new byte[32], 0, 10, true);
+
+    assertTrue(cache.take(SERVER).get().isEarlyDataAllowed());
+    assertFalse(cache.take(SERVER).get().isEarlyDataAllowed());
+  }
+
+  @Test
+  public void newestFirst() {
+    put(1, 0);
+    put(2, 0);
+
+    assertArrayEquals(new byte[] {2}, cache.take(SERVER).get().getTicket());
+    assertArrayEquals(new byte[] {1}, cache.take(SERVER).get().getTicket());
+  }
+
+  @Test
+  public void perServer() {
+    put(1, 0);
+
+    assertFalse(cache.take("localhost:5555").isPresent());
+    assertEquals(TLS_AES_128_GCM_SHA256, cache.take(SERVER).get().getCipherSuite());
+  }
+
+  @Test
+  public void obfuscatedAge() {
+    put(1, 0xFFFFFFFFL);
+
+    now = MILLISECONDS.toNanos(2);
+
+    // wraps around at 2^32
+    assertEquals(1, cache.take(SERVER).get().getObfuscatedAge());
+  }
+
+  @Test
+  public void expired() {
+    put(1, 0);
+    now = SECONDS.toNanos(5);
+    put(2, 0);
+
+    // the newest has not expired
+    now = SECONDS.toNanos(10);
+    assertArrayEquals(new byte[] {2}, cache.take(SERVER).get().getTicket());
+
+    put(3, 0);
+    now = SECONDS.toNanos(20);
+    assertFalse(cache.take(SERVER).isPresent());
+  }
+
+  @Test
+  public void maxTickets() {
+    for (int i = 0; i < SessionTicketCache.MAX_TICKETS_PER_SERVER + 1; i++) {
+      put(i, 0);
+    }
+
+    for (int i = 0; i < SessionTicketCache.MAX_TICKETS_PER_SERVER; i++) {
+      cache.take(SERVER).get();
+    }
+    assertFalse(cache.take(SERVER).isPresent());
+  }
+}
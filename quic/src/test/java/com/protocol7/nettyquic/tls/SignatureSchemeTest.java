@@ -0,0 +1,57 @@
+package com.protocol7.nettyquic.tls;
+
+import static com.protocol7.nettyquic.tls.SignatureScheme.ECDSA_SECP256R1_SHA256;
+import static com.protocol7.nettyquic.tls.SignatureScheme.RSA_PSS_RSAE_SHA256;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import org.junit.Test;
+
+public class SignatureSchemeTest {
+
+  private final PrivateKey rsaKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
+  private final PrivateKey ecKey = KeyUtil.getPrivateKey("src/test/resources/server-ec.der", "EC");
+
+  @Test
+  public void fromValue() {
+    assertEquals(ECDSA_SECP256R1_SHA256, SignatureScheme.fromValue(0x0403).get());
+    assertEquals(SignatureScheme.ED25519, SignatureScheme.fromValue(0x0807).get());
+    assertEquals(RSA_PSS_RSAE_SHA256, SignatureScheme.fromValue(0x0804).get());
+    assertFalse(SignatureScheme.fromValue(0x0401).isPresent());
+  }
+
+  @Test
+  public void supported() {
+    assertTrue(SignatureScheme.SUPPORTED.contains(ECDSA_SECP256R1_SHA256));
+    assertTrue(SignatureScheme.SUPPORTED.contains(RSA_PSS_RSAE_SHA256));
+  }
+
+  @Test
+  public void forKey() {
+    assertEquals(RSA_PSS_RSAE_SHA256, SignatureScheme.forKey(rsaKey));
+    assertEquals(ECDSA_SECP256R1_SHA256, SignatureScheme.forKey(ecKey));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void forKeyOtherCurve() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp384r1"));
+
+    SignatureScheme.forKey(generator.generateKeyPair().getPrivate());
+  }
+
+  @Test
+  public void matches() {
+    PublicKey ecPublicKey =
+        KeyUtil.getCertFromCrt("src/test/resources/server-ec.crt").getPublicKey();
+
+    assertTrue(ECDSA_SECP256R1_SHA256.matches(ecPublicKey));
+    assertFalse(RSA_PSS_RSAE_SHA256.matches(ecPublicKey));
+    assertFalse(ECDSA_SECP256R1_SHA256.matches(rsaKey));
+  }
+}
@@ -1,11 +1,31 @@
 package com.protocol7.nettyquic.tls;
 
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_128_GCM_SHA256;
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_256_GCM_SHA384;
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_CHACHA20_POLY1305_SHA256;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.QuicConfig;
+import com.protocol7.nettyquic.protocol.Version;
 import com.protocol7.nettyquic.tls.ServerTlsSession.ServerHelloAndHandshake;
+import com.protocol7.nettyquic.tls.aead.AEAD;
+import com.protocol7.nettyquic.tls.extensions.Extension;
+import com.protocol7.nettyquic.tls.extensions.ExtensionType;
+import com.protocol7.nettyquic.tls.extensions.SignatureAlgorithms;
+import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import com.protocol7.nettyquic.tls.messages.ClientHello;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.EncryptedExtensions;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerHandshakeFinished;
 import com.protocol7.nettyquic.utils.Bytes;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,13 +33,14 @@ import org.junit.Test;
 public class TlsSessions {
 
   private PrivateKey privateKey;
+  private byte[] serverCert;
   private final ClientTlsSession client = new ClientTlsSession();
   private ServerTlsSession server;
 
   @Before
   public void setUp() throws Exception {
     privateKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
-    byte[] serverCert = KeyUtil.getCertFromCrt("src/test/resources/server.crt").getEncoded();
+    serverCert = KeyUtil.getCertFromCrt("src/test/resources/server.crt").getEncoded();
 
     server = new ServerTlsSession(List.of(serverCert), privateKey);
   }
@@ -34,6 +55,340 @@ public class TlsSessions {
     byte[] clientFin = client.handleHandshake(shah.getServerHandshake()).get().getFin();
 
     server.handleClientFinished(clientFin);
+
+    assertEquals(TLS_AES_128_GCM_SHA256, shah.getOneRttAEAD().getCipherSuite());
+  }
+
+  @Test
+  public void handshakeCompressedCertificate() {
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+
+    ByteBuf bb = Unpooled.wrappedBuffer(shah.getServerHandshake());
+    EncryptedExtensions.parse(bb, true);
+    assertEquals(0x19, bb.getByte(bb.readerIndex()));
+
+    client.handleServerHello(shah.getServerHello());
+    byte[] clientFin = client.handleHandshake(shah.getServerHandshake()).get().getFin();
+
+    server.handleClientFinished(clientFin);
+  }
+
+  @Test
+  public void handshakeCertificateCompressionNotOffered() {
+    ClientHello ch =
+        ClientHello.defaults(
+            KeyExchange.generate(Group.X25519), TransportParameters.defaults(Version.CURRENT));
+
+    ServerHelloAndHandshake shah = server.handleClientHello(Bytes.write(bb -> ch.write(bb, true)));
+
+    ByteBuf bb = Unpooled.wrappedBuffer(shah.getServerHandshake());
+    EncryptedExtensions.parse(bb, true);
+    assertEquals(0x0b, bb.getByte(bb.readerIndex()));
+  }
+
+  @Test
+  public void handshakeChaCha20() {
+    ClientTlsSession client =
+        new ClientTlsSession(
+            QuicConfig.newBuilder().withCipherSuites(List.of(TLS_CHACHA20_POLY1305_SHA256)).build(),
+            "");
+    byte[] clientHello = client.startHandshake();
+
+    ServerHelloAndHandshake shah = server.handleClientHello(clientHello);
+    assertEquals(TLS_CHACHA20_POLY1305_SHA256, shah.getHandshakeAEAD().getCipherSuite());
+
+    client.handleServerHello(shah.getServerHello());
+    ClientTlsSession.HandshakeResult result =
+        client.handleHandshake(shah.getServerHandshake()).get();
+    assertEquals(TLS_CHACHA20_POLY1305_SHA256, result.getOneRttAead().getCipherSuite());
+
+    server.handleClientFinished(result.getFin());
+  }
+
+  @Test
+  public void handshakeAes256() {
+    ClientTlsSession client =
+        new ClientTlsSession(
+            QuicConfig.newBuilder().withCipherSuites(List.of(TLS_AES_256_GCM_SHA384)).build(), "");
+    byte[] clientHello = client.startHandshake();
+
+    ServerHelloAndHandshake shah = server.handleClientHello(clientHello);
+    assertEquals(TLS_AES_256_GCM_SHA384, shah.getHandshakeAEAD().getCipherSuite());
+
+    client.handleServerHello(shah.getServerHello());
+    ClientTlsSession.HandshakeResult result =
+        client.handleHandshake(shah.getServerHandshake()).get();
+    assertEquals(TLS_AES_256_GCM_SHA384, result.getOneRttAead().getCipherSuite());
+    assertEquals(32, result.getOneRttAead().getMyKey().length);
+
+    server.handleClientFinished(result.getFin());
+  }
+
+  @Test
+  public void handshakeServerPreference() {
+    server =
+        new ServerTlsSession(
+            List.of(serverCert),
+            privateKey,
+            QuicConfig.newBuilder()
+                .withCipherSuites(List.of(TLS_CHACHA20_POLY1305_SHA256, TLS_AES_128_GCM_SHA256))
+                .build());
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+
+    assertEquals(TLS_CHACHA20_POLY1305_SHA256, shah.getOneRttAEAD().getCipherSuite());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void handshakeNoCommonCipherSuite() {
+    server =
+        new ServerTlsSession(
+            List.of(serverCert),
+            privateKey,
+            QuicConfig.newBuilder().withCipherSuites(List.of(TLS_AES_128_GCM_SHA256)).build());
+
+    ClientTlsSession client =
+        new ClientTlsSession(
+            QuicConfig.newBuilder().withCipherSuites(List.of(TLS_CHACHA20_POLY1305_SHA256)).build(),
+            "");
+    server.handleClientHello(client.startHandshake());
+  }
+
+  @Test
+  public void keyExchangePool() {
+    List<Runnable> refills = new ArrayList<>();
+    KeyExchangePool pool = new KeyExchangePool(Group.X25519, 2, refills::add);
+    refills.remove(0).run();
+
+    QuicConfig config = QuicConfig.newBuilder().withKeyExchangePool(pool).build();
+    ClientTlsSession client = new ClientTlsSession(config, "server");
+    ServerTlsSession server = new ServerTlsSession(List.of(serverCert), privateKey, config);
+    assertEquals(2, pool.size());
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+    assertEquals(0, pool.size());
+
+    client.handleServerHello(shah.getServerHello());
+    server.handleClientFinished(client.handleHandshake(shah.getServerHandshake()).get().getFin());
+  }
+
+  @Test
+  public void handshakeEcdsa() {
+    server =
+        new ServerTlsSession(
+            List.of(KeyUtil.getCertsFromCrt("src/test/resources/server-ec.crt").get(0)),
+            KeyUtil.getPrivateKey("src/test/resources/server-ec.der", "EC"));
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+
+    client.handleServerHello(shah.getServerHello());
+    byte[] clientFin = client.handleHandshake(shah.getServerHandshake()).get().getFin();
+
+    server.handleClientFinished(clientFin);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void handshakeNoCommonSignatureScheme() {
+    ClientHello ch =
+        ClientHello.defaults(
+            KeyExchange.generate(Group.X25519), TransportParameters.defaults(Version.CURRENT));
+    List<Extension> extensions = new ArrayList<>(ch.getExtensions());
+    extensions.replaceAll(
+        e ->
+            e.getType() == ExtensionType.signature_algorithms
+                ? new SignatureAlgorithms(SignatureScheme.ECDSA_SECP256R1_SHA256.getValue())
+                : e);
+    ClientHello ecdsaOnly =
+        new ClientHello(ch.getClientRandom(), ch.getSessionId(), ch.getCipherSuites(), extensions);
+
+    server.handleClientHello(Bytes.write(bb -> ecdsaOnly.write(bb, true)));
+  }
+
+  private final SessionTickets sessionTickets = new SessionTickets();
+  private final SessionTickets earlyDataTickets =
+      new SessionTickets(SessionTickets.DEFAULT_LIFETIME, true, Ticker.systemTicker());
+  private final SessionTicketCache ticketCache = new SessionTicketCache();
+
+  private ServerTlsSession ticketServer(SessionTickets sessionTickets) {
+    return new ServerTlsSession(
+        List.of(serverCert),
+        privateKey,
+        QuicConfig.newBuilder().withSessionTickets(sessionTickets).build());
+  }
+
+  private ClientTlsSession ticketClient() {
+    return new ClientTlsSession(
+        QuicConfig.newBuilder().withTicketCache(ticketCache).build(), "server");
+  }
+
+  /** Does a full handshake, storing the ticket issued in the cache */
+  private void handshakeForTicket() {
+    handshakeForTicket(sessionTickets);
+  }
+
+  private void handshakeForTicket(SessionTickets sessionTickets) {
+    ClientTlsSession client = ticketClient();
+    ServerTlsSession server = ticketServer(sessionTickets);
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+    client.handleServerHello(shah.getServerHello());
+    server.handleClientFinished(client.handleHandshake(shah.getServerHandshake()).get().getFin());
+
+    client.handleNewSessionTicket(server.newSessionTicket().get());
+
+    assertFalse(client.isResumed());
+    assertFalse(server.isResumed());
+  }
+
+  @Test
+  public void resumption() {
+    handshakeForTicket();
+
+    ClientTlsSession client = ticketClient();
+    ServerTlsSession server = ticketServer(sessionTickets);
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+    assertTrue(server.isResumed());
+
+    // no certificate or certificate verify, only encrypted extensions and finished
+    ByteBuf bb = Unpooled.wrappedBuffer(shah.getServerHandshake());
+    EncryptedExtensions.parse(bb, true);
+    ServerHandshakeFinished.parse(bb);
+    assertFalse(bb.isReadable());
+
+    client.handleServerHello(shah.getServerHello());
+    ClientTlsSession.HandshakeResult result =
+        client.handleHandshake(shah.getServerHandshake()).get();
+    assertTrue(client.isResumed());
+
+    server.handleClientFinished(result.getFin());
+
+    assertArrayEquals(shah.getOneRttAEAD().getMyKey(), result.getOneRttAead().getOtherKey());
+
+    // resumed sessions issue tickets for the next resumption
+    client.handleNewSessionTicket(server.newSessionTicket().get());
+    assertTrue(ticketCache.take("server").isPresent());
+  }
+
+  @Test
+  public void resumptionUnknownTicket() {
+    handshakeForTicket();
+
+    ClientTlsSession client = ticketClient();
+    ServerTlsSession server = ticketServer(new SessionTickets());
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+    assertFalse(server.isResumed());
+
+    client.handleServerHello(shah.getServerHello());
+    server.handleClientFinished(client.handleHandshake(shah.getServerHandshake()).get().getFin());
+    assertFalse(client.isResumed());
+  }
+
+  @Test
+  public void resumptionAfterReset() {
+    handshakeForTicket();
+
+    ClientTlsSession client = ticketClient();
+    client.startHandshake();
+    client.reset();
+
+    ServerTlsSession server = ticketServer(sessionTickets);
+    server.handleClientHello(client.startHandshake());
+
+    assertTrue(server.isResumed());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void resumptionInvalidBinder() {
+    handshakeForTicket();
+
+    byte[] clientHello = ticketClient().startHandshake();
+    clientHello[clientHello.length - 1]++;
+
+    ticketServer(sessionTickets).handleClientHello(clientHello);
+  }
+
+  @Test
+  public void earlyData() {
+    handshakeForTicket(earlyDataTickets);
+
+    ClientTlsSession client = ticketClient();
+    ServerTlsSession server = ticketServer(earlyDataTickets);
+
+    byte[] clientHello = client.startHandshake();
+    AEAD clientEarlyData = client.getEarlyDataAead().get();
+
+    ServerHelloAndHandshake shah = server.handleClientHello(clientHello);
+    assertTrue(server.isEarlyDataAccepted());
+    assertArrayEquals(clientEarlyData.getMyKey(), shah.getEarlyDataAEAD().get().getOtherKey());
+
+    client.handleServerHello(shah.getServerHello());
+    ClientTlsSession.HandshakeResult result =
+        client.handleHandshake(shah.getServerHandshake()).get();
+    assertTrue(result.isEarlyDataAccepted());
+    assertTrue(client.isEarlyDataAccepted());
+
+    server.handleClientFinished(result.getFin());
+  }
+
+  @Test
+  public void earlyDataNotAllowedByTicket() {
+    handshakeForTicket();
+
+    ClientTlsSession client = ticketClient();
+    ServerTlsSession server = ticketServer(sessionTickets);
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+    assertFalse(client.getEarlyDataAead().isPresent());
+    assertTrue(server.isResumed());
+    assertFalse(server.isEarlyDataAccepted());
+    assertFalse(shah.getEarlyDataAEAD().isPresent());
+  }
+
+  @Test
+  public void earlyDataReplayed() {
+    handshakeForTicket(earlyDataTickets);
+
+    ClientTlsSession client = ticketClient();
+    byte[] clientHello = client.startHandshake();
+
+    ServerTlsSession server = ticketServer(earlyDataTickets);
+    server.handleClientHello(clientHello);
+    assertTrue(server.isEarlyDataAccepted());
+
+    // the replayed hello still resumes the session, but without early data
+    ServerTlsSession replayServer = ticketServer(earlyDataTickets);
+    ServerHelloAndHandshake shah = replayServer.handleClientHello(clientHello);
+    assertTrue(replayServer.isResumed());
+    assertFalse(replayServer.isEarlyDataAccepted());
+
+    client.handleServerHello(shah.getServerHello());
+    assertFalse(client.handleHandshake(shah.getServerHandshake()).get().isEarlyDataAccepted());
+    assertFalse(client.isEarlyDataAccepted());
+  }
+
+  @Test
+  public void noTicketsWithoutSessionTickets() {
+    ServerTlsSession server =
+        new ServerTlsSession(
+            List.of(serverCert),
+            privateKey,
+            QuicConfig.newBuilder().withoutSessionTickets().build());
+
+    ServerHelloAndHandshake shah = server.handleClientHello(client.startHandshake());
+    client.handleServerHello(shah.getServerHello());
+    server.handleClientFinished(client.handleHandshake(shah.getServerHandshake()).get().getFin());
+
+    assertFalse(server.newSessionTicket().isPresent());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void newSessionTicketBeforeFinished() {
+    ServerTlsSession server = ticketServer(sessionTickets);
+    server.handleClientHello(client.startHandshake());
+
+    server.newSessionTicket();
   }
 
   @Test(expected = RuntimeException.class)
@@ -0,0 +1,54 @@
+package com.protocol7.nettyquic.tls;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class TranscriptHashTest {
+
+  private final byte[] hello = "hello".getBytes();
+  private final byte[] world = "world".getBytes();
+
+  @Test
+  public void empty() {
+    TranscriptHash transcript = new TranscriptHash(CipherSuite.TLS_AES_128_GCM_SHA256);
+
+    assertArrayEquals(HKDF.EMPTY_HASH, transcript.snapshot());
+  }
+
+  @Test
+  public void snapshots() {
+    TranscriptHash transcript = new TranscriptHash(CipherSuite.TLS_AES_128_GCM_SHA256);
+
+    transcript.update(hello);
+    assertArrayEquals(Hash.sha256(hello), transcript.snapshot());
+
+    transcript.update(world);
+    assertArrayEquals(Hash.sha256(hello, world), transcript.snapshot());
+  }
+
+  @Test
+  public void cipherSuiteHash() {
+    TranscriptHash transcript = new TranscriptHash(CipherSuite.TLS_AES_256_GCM_SHA384);
+    transcript.update(hello);
+
+    assertArrayEquals(Hash.hash(CipherSuite.TLS_AES_256_GCM_SHA384, hello), transcript.snapshot());
+  }
+
+  @Test
+  public void updateFromBuffer() {
+    ByteBuf bb = Unpooled.buffer();
+    bb.writeBytes(hello);
+    bb.writeBytes(world);
+
+    TranscriptHash transcript = new TranscriptHash(CipherSuite.TLS_AES_128_GCM_SHA256);
+    transcript.update(bb, hello.length, world.length);
+
+    assertArrayEquals(Hash.sha256(world), transcript.snapshot());
+    assertEquals(0, bb.readerIndex());
+    assertEquals(hello.length + world.length, bb.writerIndex());
+  }
+}
@@ -2,6 +2,7 @@ package com.protocol7.nettyquic.tls;
 
 import static com.protocol7.nettyquic.TestUtil.assertHex;
 import static com.protocol7.nettyquic.tls.VerifyData.create;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -30,4 +31,22 @@ public class VerifyDataTest {
 
     assertFalse(VerifyData.verify(Rnd.rndBytes(32), handshakeTrafficSecret, finishedHash, false));
   }
+
+  @Test
+  public void sha384() {
+    CipherSuite cipherSuite = CipherSuite.TLS_AES_256_GCM_SHA384;
+    byte[] secret = Rnd.rndBytes(48);
+    byte[] hash = Rnd.rndBytes(48);
+
+    byte[] vd = create(cipherSuite, secret, hash);
+
+    assertEquals(48, vd.length);
+    assertTrue(VerifyData.verify(cipherSuite, vd, secret, hash, false));
+    assertFalse(VerifyData.verify(cipherSuite, Rnd.rndBytes(48), secret, hash, false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void sha384InvalidSecretLength() {
+    create(CipherSuite.TLS_AES_256_GCM_SHA384, handshakeTrafficSecret, Rnd.rndBytes(48));
+  }
 }
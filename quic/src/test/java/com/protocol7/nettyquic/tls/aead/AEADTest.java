@@ -4,8 +4,18 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.protocol7.nettyquic.TestUtil;
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.utils.Hex;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.crypto.AEADBadTagException;
 import org.junit.Test;
 
@@ -88,6 +98,25 @@ public class AEADTest {
     assertArrayEquals(myCipherText, actual);
   }
 
+  @Test
+  public void sealFromManyThreads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        long pn = i;
+        results.add(executor.submit(() -> aead.seal(plainText, pn, aad)));
+      }
+
+      AEAD expected = new AEAD(myKey, otherKey, myIV, otherIV, myPnKey, otherPnKey);
+      for (int i = 0; i < 100; i++) {
+        assertArrayEquals(expected.seal(plainText, i, aad), results.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void sealNullAad() throws GeneralSecurityException {
     aead.seal(plainText, packetNumber, null);
@@ -110,6 +139,66 @@ public class AEADTest {
     assertArrayEquals(plainText, actual);
   }
 
+  @Test
+  public void sealInPlaceHeap() throws GeneralSecurityException {
+    assertSealInPlace(Unpooled.buffer(plainText.length + AEAD.OVERHEAD));
+  }
+
+  @Test
+  public void sealInPlaceDirect() throws GeneralSecurityException {
+    assertSealInPlace(Unpooled.directBuffer(plainText.length + AEAD.OVERHEAD));
+  }
+
+  @Test
+  public void sealInPlaceComposite() throws GeneralSecurityException {
+    CompositeByteBuf bb = Unpooled.compositeBuffer();
+    bb.addComponent(Unpooled.buffer(100));
+    bb.addComponent(Unpooled.buffer(plainText.length + AEAD.OVERHEAD - 100));
+    assertSealInPlace(bb);
+  }
+
+  private void assertSealInPlace(ByteBuf bb) throws GeneralSecurityException {
+    bb.writeBytes(plainText);
+
+    int length = aead.seal(bb, 0, plainText.length, packetNumber, ByteBuffer.wrap(aad));
+
+    assertEquals(myCipherText.length, length);
+    byte[] actual = new byte[length];
+    bb.getBytes(0, actual);
+    assertArrayEquals(myCipherText, actual);
+  }
+
+  @Test
+  public void openInPlaceHeap() throws GeneralSecurityException {
+    assertOpenInPlace(Unpooled.copiedBuffer(otherCipherText));
+  }
+
+  @Test
+  public void openInPlaceDirect() throws GeneralSecurityException {
+    ByteBuf bb = Unpooled.directBuffer(otherCipherText.length);
+    bb.writeBytes(otherCipherText);
+    assertOpenInPlace(bb);
+  }
+
+  private void assertOpenInPlace(ByteBuf bb) throws GeneralSecurityException {
+    ByteBuffer aadBuffer = ByteBuffer.wrap(aad);
+
+    int length = aead.open(bb, 0, otherCipherText.length, packetNumber, aadBuffer);
+
+    assertEquals(plainText.length, length);
+    byte[] actual = new byte[length];
+    bb.getBytes(0, actual);
+    assertArrayEquals(plainText, actual);
+    // the AAD must not be consumed
+    assertEquals(aad.length, aadBuffer.remaining());
+  }
+
+  @Test(expected = AEADBadTagException.class)
+  public void openInPlaceBadAad() throws GeneralSecurityException {
+    ByteBuf bb = Unpooled.copiedBuffer(otherCipherText);
+    aead.open(bb, 0, otherCipherText.length, packetNumber, ByteBuffer.allocate(aad.length));
+  }
+
   @Test
   public void testAEAD() throws GeneralSecurityException {
     AEAD testAEAD = TestAEAD.create();
@@ -141,4 +230,85 @@ public class AEADTest {
 
     TestUtil.assertHex(header, decrypted);
   }
+
+  // from RFC 9001, appendix A.5
+  private final byte[] chachaKey =
+      Hex.dehex("c6d98ff3441c3fe1b2182094f69caa2ed4b716b65488960a7a984979fb23e1c8");
+  private final byte[] chachaIV = Hex.dehex("e0459b3474bdd0e44a41c144");
+  private final byte[] chachaPnKey =
+      Hex.dehex("25a282b9e82f06f21f488917a4fc8f1b73573685608597d0efcb076b0ab7a7a4");
+  private final long chachaPacketNumber = 654360564;
+  private final byte[] chachaHeader = Hex.dehex("4200bff4");
+  private final byte[] chachaCipherText = Hex.dehex("655e5cd55c41f69080575d7999c25a5bfb");
+
+  private final AEAD chacha =
+      new AEAD(
+          CipherSuite.TLS_CHACHA20_POLY1305_SHA256,
+          chachaKey,
+          chachaKey,
+          chachaIV,
+          chachaIV,
+          chachaPnKey,
+          chachaPnKey);
+
+  @Test(expected = IllegalArgumentException.class)
+  public void chacha20KeyInvalidLength() {
+    new AEAD(
+        CipherSuite.TLS_CHACHA20_POLY1305_SHA256,
+        myKey,
+        myKey,
+        chachaIV,
+        chachaIV,
+        chachaPnKey,
+        chachaPnKey);
+  }
+
+  @Test
+  public void chacha20Seal() throws GeneralSecurityException {
+    byte[] actual = chacha.seal(Hex.dehex("01"), chachaPacketNumber, chachaHeader);
+    TestUtil.assertHex(chachaCipherText, actual);
+  }
+
+  @Test
+  public void chacha20Open() throws GeneralSecurityException {
+    byte[] actual = chacha.open(chachaCipherText, chachaPacketNumber, chachaHeader);
+    TestUtil.assertHex("01", actual);
+  }
+
+  @Test
+  public void chacha20OpenDuplicate() throws GeneralSecurityException {
+    // the same nonce twice in a row must be allowed when opening
+    chacha.open(chachaCipherText, chachaPacketNumber, chachaHeader);
+    byte[] actual = chacha.open(chachaCipherText, chachaPacketNumber, chachaHeader);
+    TestUtil.assertHex("01", actual);
+  }
+
+  @Test
+  public void chacha20OpenInPlace() throws GeneralSecurityException {
+    ByteBuf bb = Unpooled.directBuffer(chachaCipherText.length);
+    bb.writeBytes(chachaCipherText);
+
+    int length =
+        chacha.open(
+            bb, 0, chachaCipherText.length, chachaPacketNumber, ByteBuffer.wrap(chachaHeader));
+
+    assertEquals(1, length);
+    assertEquals(1, bb.getByte(0));
+  }
+
+  @Test(expected = AEADBadTagException.class)
+  public void chacha20OpenBadAad() throws GeneralSecurityException {
+    chacha.open(chachaCipherText, chachaPacketNumber, new byte[chachaHeader.length]);
+  }
+
+  @Test
+  public void chacha20EncryptHeader() throws GeneralSecurityException {
+    byte[] sample = Hex.dehex("5e5cd55c41f69080575d7999c25a5bfb");
+
+    byte[] encrypted = chacha.encryptHeader(sample, chachaHeader, true);
+    TestUtil.assertHex("4cfe4189", encrypted);
+
+    byte[] decrypted = chacha.decryptHeader(sample, encrypted, true);
+    TestUtil.assertHex(chachaHeader, decrypted);
+  }
 }
@@ -2,6 +2,8 @@ package com.protocol7.nettyquic.tls.aead;
 
 import static org.junit.Assert.*;
 
+import com.google.common.base.Ticker;
+import com.protocol7.nettyquic.protocol.PacketNumber;
 import com.protocol7.nettyquic.tls.EncryptionLevel;
 import org.junit.Test;
 
@@ -13,6 +15,18 @@ public class AEADsTest {
 
   private final AEADs aeads = new AEADs(initial);
 
+  private long now = 0;
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now;
+        }
+      };
+
+  private final AEAD updatable = OneRttAEAD.create(new byte[32], new byte[32], true);
+  private final AEADs updating = new AEADs(initial, 3, ticker);
+
   @Test
   public void getInitial() {
     assertAEAD(initial, aeads.get(EncryptionLevel.Initial));
@@ -60,6 +74,87 @@ public class AEADsTest {
     aeads.setOneRttAead(null);
   }
 
+  @Test
+  public void getForSendingNotOneRtt() {
+    assertAEAD(initial, aeads.getForSending(EncryptionLevel.Initial));
+  }
+
+  @Test
+  public void getOneRttSameKeyPhase() {
+    updating.setOneRttAead(updatable);
+    assertAEAD(updatable, updating.getOneRtt(false, new PacketNumber(1)));
+  }
+
+  @Test
+  public void notUpdatable() {
+    updating.setOneRttAead(oneRtt);
+    updating.onOneRttOpened(oneRtt, new PacketNumber(1));
+
+    for (int i = 0; i < 10; i++) {
+      assertAEAD(oneRtt, updating.getForSending(EncryptionLevel.OneRtt));
+    }
+    assertAEAD(oneRtt, updating.getOneRtt(true, new PacketNumber(2)));
+  }
+
+  @Test
+  public void peerInitiatedUpdate() {
+    updating.setOneRttAead(updatable);
+
+    AEAD next = updating.getOneRtt(true, new PacketNumber(5));
+    assertTrue(next.getKeyPhase());
+    // not switched until the packet was opened
+    assertAEAD(updatable, updating.get(EncryptionLevel.OneRtt));
+
+    updating.onOneRttOpened(next, new PacketNumber(5));
+    assertAEAD(next, updating.get(EncryptionLevel.OneRtt));
+    assertAEAD(next, updating.getForSending(EncryptionLevel.OneRtt));
+
+    // reordered packet from before the update
+    assertAEAD(updatable, updating.getOneRtt(false, new PacketNumber(4)));
+    // next update by the peer
+    AEAD nextNext = updating.getOneRtt(false, new PacketNumber(6));
+    assertFalse(nextNext.getKeyPhase());
+    assertNotSame(updatable, nextNext);
+  }
+
+  @Test
+  public void initiateUpdate() {
+    updating.setOneRttAead(updatable);
+
+    // can not update until a packet has been received with the current keys
+    for (int i = 0; i < 5; i++) {
+      assertAEAD(updatable, updating.getForSending(EncryptionLevel.OneRtt));
+    }
+
+    updating.onOneRttOpened(updatable, new PacketNumber(1));
+
+    AEAD next = updating.getForSending(EncryptionLevel.OneRtt);
+    assertTrue(next.getKeyPhase());
+    assertAEAD(next, updating.get(EncryptionLevel.OneRtt));
+
+    // the peer has not responded yet, packets with the old key phase use the previous keys
+    assertAEAD(updatable, updating.getOneRtt(false, new PacketNumber(2)));
+
+    // no further updates until the peer responds
+    for (int i = 0; i < 5; i++) {
+      assertAEAD(next, updating.getForSending(EncryptionLevel.OneRtt));
+    }
+    updating.onOneRttOpened(next, new PacketNumber(3));
+    assertFalse(updating.getForSending(EncryptionLevel.OneRtt).getKeyPhase());
+  }
+
+  @Test
+  public void previousKeysDiscarded() {
+    updating.setOneRttAead(updatable);
+
+    AEAD next = updating.getOneRtt(true, new PacketNumber(5));
+    updating.onOneRttOpened(next, new PacketNumber(5));
+
+    now += AEADs.PREVIOUS_KEYS_TIMEOUT + 1;
+
+    assertNotSame(updatable, updating.getOneRtt(false, new PacketNumber(4)));
+  }
+
   private void assertAEAD(AEAD expected, AEAD actual) {
     assertSame(expected, actual);
   }
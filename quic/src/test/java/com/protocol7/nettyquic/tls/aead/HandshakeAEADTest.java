@@ -4,7 +4,9 @@ import static com.protocol7.nettyquic.utils.Hex.dehex;
 import static com.protocol7.nettyquic.utils.Hex.hex;
 import static org.junit.Assert.assertEquals;
 
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.tls.HKDF;
+import com.protocol7.nettyquic.tls.Hash;
 import org.junit.Test;
 
 public class HandshakeAEADTest {
@@ -23,4 +25,41 @@ public class HandshakeAEADTest {
     assertEquals("034c31fe01a40f3734ae1420", hex(aead.getMyIV()));
     assertEquals("c6a739c3e2d30f92e89a9289", hex(aead.getOtherIV()));
   }
+
+  @Test
+  public void aes256() {
+    CipherSuite cipherSuite = CipherSuite.TLS_AES_256_GCM_SHA384;
+    byte[] sharedSecret = dehex("df4a291baa1eb7cfa6934b29b474baad2697e29f1f920dcc77c8a0a088447624");
+    byte[] helloHash = Hash.hash(cipherSuite, "hello".getBytes());
+
+    byte[] handshakeSecret = HKDF.calculateHandshakeSecret(cipherSuite, sharedSecret);
+    assertEquals(48, handshakeSecret.length);
+
+    AEAD aead = HandshakeAEAD.create(handshakeSecret, helloHash, true, cipherSuite);
+
+    assertEquals(cipherSuite, aead.getCipherSuite());
+    assertEquals(32, aead.getMyKey().length);
+    assertEquals(32, aead.getOtherKey().length);
+    assertEquals(12, aead.getMyIV().length);
+    assertEquals(12, aead.getOtherIV().length);
+  }
+
+  @Test
+  public void chacha20() {
+    byte[] sharedSecret = dehex("df4a291baa1eb7cfa6934b29b474baad2697e29f1f920dcc77c8a0a088447624");
+    byte[] helloHash = dehex("da75ce1139ac80dae4044da932350cf65c97ccc9e33f1e6f7d2d4b18b736ffd5");
+
+    byte[] handshakeSecret = HKDF.calculateHandshakeSecret(sharedSecret);
+
+    AEAD aead =
+        HandshakeAEAD.create(
+            handshakeSecret, helloHash, true, CipherSuite.TLS_CHACHA20_POLY1305_SHA256);
+
+    assertEquals(CipherSuite.TLS_CHACHA20_POLY1305_SHA256, aead.getCipherSuite());
+    assertEquals(32, aead.getMyKey().length);
+    assertEquals(32, aead.getOtherKey().length);
+    // the IVs do not depend on the key length
+    assertEquals("034c31fe01a40f3734ae1420", hex(aead.getMyIV()));
+    assertEquals("c6a739c3e2d30f92e89a9289", hex(aead.getOtherIV()));
+  }
 }
@@ -1,9 +1,14 @@
 package com.protocol7.nettyquic.tls.aead;
 
 import static com.protocol7.nettyquic.utils.Hex.hex;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import com.protocol7.nettyquic.tls.CipherSuite;
 import com.protocol7.nettyquic.utils.Hex;
+import java.security.GeneralSecurityException;
 import org.junit.Test;
 
 public class OneRttAEADTest {
@@ -22,4 +27,65 @@ public class OneRttAEADTest {
     assertEquals("fb51b454f6e2d176ae835d77", hex(aead.getMyIV()));
     assertEquals("1f3f0add9b67d2c388143e44", hex(aead.getOtherIV()));
   }
+
+  @Test
+  public void nextGenerationKnownSecret() {
+    // from RFC 9001, appendix A.5
+    byte[] secret = Hex.dehex("9ac312a7f877468ebe69422748ad00a15443f18203a07d6060f688f30f21632b");
+    byte[] key = Hex.dehex("c6d98ff3441c3fe1b2182094f69caa2ed4b716b65488960a7a984979fb23e1c8");
+    byte[] iv = Hex.dehex("e0459b3474bdd0e44a41c144");
+    byte[] hp = Hex.dehex("25a282b9e82f06f21f488917a4fc8f1b73573685608597d0efcb076b0ab7a7a4");
+
+    AEAD aead =
+        new AEAD(
+            CipherSuite.TLS_CHACHA20_POLY1305_SHA256,
+            false,
+            secret,
+            secret,
+            key,
+            key,
+            iv,
+            iv,
+            hp,
+            hp);
+
+    AEAD next = aead.nextGeneration();
+
+    assertEquals(
+        "1223504755036d556342ee9361d253421a826c9ecdf3c7148684b36b714881f9",
+        hex(next.getMySecret()));
+  }
+
+  @Test
+  public void nextGeneration() throws GeneralSecurityException {
+    byte[] handshakeSecret =
+        Hex.dehex("fb9fc80689b3a5d02c33243bf69a1b1b20705588a794304a6e7120155edf149a");
+    byte[] handshakeHash =
+        Hex.dehex("22844b930e5e0a59a09d5ac35fc032fc91163b193874a265236e568077378d8b");
+
+    AEAD client = OneRttAEAD.create(handshakeSecret, handshakeHash, true);
+    AEAD server = OneRttAEAD.create(handshakeSecret, handshakeHash, false);
+    assertFalse(client.getKeyPhase());
+    assertTrue(client.isUpdatable());
+
+    AEAD nextClient = client.nextGeneration();
+    AEAD nextServer = server.nextGeneration();
+
+    assertTrue(nextClient.getKeyPhase());
+    assertFalse(nextClient.nextGeneration().getKeyPhase());
+    assertFalse(hex(client.getMyKey()).equals(hex(nextClient.getMyKey())));
+    assertFalse(hex(client.getMyIV()).equals(hex(nextClient.getMyIV())));
+    // header protection keys are not updated
+    assertArrayEquals(client.getMyPnKey(), nextClient.getMyPnKey());
+    assertArrayEquals(client.getOtherPnKey(), nextClient.getOtherPnKey());
+
+    byte[] aad = new byte[12];
+    byte[] sealed = nextClient.seal("hello".getBytes(), 1, aad);
+    assertArrayEquals("hello".getBytes(), nextServer.open(sealed, 1, aad));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void nextGenerationNotUpdatable() {
+    TestAEAD.create().nextGeneration();
+  }
 }
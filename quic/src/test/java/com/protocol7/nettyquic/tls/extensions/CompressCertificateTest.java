@@ -0,0 +1,33 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import org.junit.Test;
+
+public class CompressCertificateTest {
+
+  @Test
+  public void roundtrip() {
+    CompressCertificate ext = new CompressCertificate(CompressCertificate.ZLIB, 2);
+
+    ByteBuf bb = Unpooled.buffer();
+    ext.write(bb, true);
+
+    CompressCertificate parsed = CompressCertificate.parse(bb);
+
+    assertEquals(ExtensionType.compress_certificate, parsed.getType());
+    assertEquals(List.of(CompressCertificate.ZLIB, 2), parsed.getAlgorithms());
+    assertEquals(ext, parsed);
+  }
+
+  @Test
+  public void parseRegistered() {
+    ByteBuf bb = Unpooled.buffer();
+    Extension.writeAll(List.of(CompressCertificate.DEFAULT), bb, true);
+
+    assertEquals(CompressCertificate.DEFAULT, Extension.parse(bb, false));
+  }
+}
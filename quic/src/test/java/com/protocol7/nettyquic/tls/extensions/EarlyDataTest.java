@@ -0,0 +1,34 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class EarlyDataTest {
+
+  @Test
+  public void roundtripIndication() {
+    ByteBuf bb = Unpooled.buffer();
+    EarlyData.INDICATION.write(bb, true);
+
+    assertFalse(bb.isReadable());
+
+    EarlyData parsed = EarlyData.parse(bb);
+
+    assertEquals(ExtensionType.early_data, parsed.getType());
+    assertEquals(-1, parsed.getMaxEarlyDataSize());
+  }
+
+  @Test
+  public void roundtripMaxEarlyDataSize() {
+    ByteBuf bb = Unpooled.buffer();
+    new EarlyData(EarlyData.QUIC_MAX_EARLY_DATA_SIZE).write(bb, false);
+
+    EarlyData parsed = EarlyData.parse(bb);
+
+    assertEquals(EarlyData.QUIC_MAX_EARLY_DATA_SIZE, parsed.getMaxEarlyDataSize());
+  }
+}
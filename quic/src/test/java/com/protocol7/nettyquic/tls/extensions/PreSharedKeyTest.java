@@ -0,0 +1,62 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.protocol7.nettyquic.utils.Rnd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class PreSharedKeyTest {
+
+  private final byte[] identity = Rnd.rndBytes(64);
+
+  @Test
+  public void getType() {
+    assertEquals(ExtensionType.pre_shared_key, PreSharedKey.selected(0).getType());
+  }
+
+  @Test
+  public void roundtripClientToServer() {
+    PreSharedKey ext = PreSharedKey.offer(identity, 0xFFFFFFFEL, 32);
+
+    ByteBuf bb = Unpooled.buffer();
+    ext.write(bb, true);
+
+    // binders are last, so their length is what is left after the identities
+    assertEquals(2 + 1 + 32, bb.readableBytes() - 2 - 2 - identity.length - 4);
+
+    PreSharedKey parsed = PreSharedKey.parse(bb, false);
+
+    assertEquals(1, parsed.getIdentities().size());
+    assertArrayEquals(identity, parsed.getIdentities().get(0).getIdentity());
+    assertEquals(0xFFFFFFFEL, parsed.getIdentities().get(0).getObfuscatedTicketAge());
+    assertArrayEquals(new byte[32], parsed.getBinders().get(0));
+    assertEquals(ext.getBindersLength(), parsed.getBindersLength());
+    assertEquals(-1, parsed.getSelectedIdentity());
+  }
+
+  @Test
+  public void roundtripServerToClient() {
+    ByteBuf bb = Unpooled.buffer();
+    PreSharedKey.selected(0).write(bb, false);
+
+    PreSharedKey parsed = PreSharedKey.parse(bb, true);
+
+    assertEquals(0, parsed.getSelectedIdentity());
+    assertEquals(0, parsed.getIdentities().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parseMissingBinder() {
+    ByteBuf bb = Unpooled.buffer();
+    bb.writeShort(2 + identity.length + 4);
+    bb.writeShort(identity.length);
+    bb.writeBytes(identity);
+    bb.writeInt(0);
+    bb.writeShort(0);
+
+    PreSharedKey.parse(bb, false);
+  }
+}
@@ -0,0 +1,33 @@
+package com.protocol7.nettyquic.tls.extensions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class PskKeyExchangeModesTest {
+
+  @Test
+  public void roundtrip() {
+    PskKeyExchangeModes ext =
+        new PskKeyExchangeModes(PskKeyExchangeModes.PSK_KE, PskKeyExchangeModes.PSK_DHE_KE);
+
+    ByteBuf bb = Unpooled.buffer();
+    ext.write(bb, true);
+
+    PskKeyExchangeModes parsed = PskKeyExchangeModes.parse(bb);
+
+    assertEquals(ExtensionType.psk_key_exchange_modes, parsed.getType());
+    assertArrayEquals(ext.getModes(), parsed.getModes());
+  }
+
+  @Test
+  public void supports() {
+    assertTrue(PskKeyExchangeModes.PSK_DHE.supports(PskKeyExchangeModes.PSK_DHE_KE));
+    assertFalse(PskKeyExchangeModes.PSK_DHE.supports(PskKeyExchangeModes.PSK_KE));
+  }
+}
@@ -29,6 +29,7 @@ public class TransportParametersTest {
             .withMaxPacketSize(432)
             .withStatelessResetToken("srt".getBytes())
             .withOriginalConnectionId("oci".getBytes())
+            .withRetrySourceConnectionId("rsci".getBytes())
             .build();
 
     ByteBuf bb = Unpooled.buffer();
@@ -53,6 +54,7 @@ public class TransportParametersTest {
     assertEquals(tps.getMaxPacketSize(), parsed.getMaxPacketSize());
     assertArrayEquals(tps.getStatelessResetToken(), parsed.getStatelessResetToken());
     assertArrayEquals(tps.getOriginalConnectionId(), parsed.getOriginalConnectionId());
+    assertArrayEquals(tps.getRetrySourceConnectionId(), parsed.getRetrySourceConnectionId());
   }
 
   @Test
@@ -2,6 +2,8 @@ package com.protocol7.nettyquic.tls.messages;
 
 import static com.protocol7.nettyquic.TestUtil.assertHex;
 import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_128_GCM_SHA256;
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_AES_256_GCM_SHA384;
+import static com.protocol7.nettyquic.tls.CipherSuite.TLS_CHACHA20_POLY1305_SHA256;
 import static org.junit.Assert.assertEquals;
 
 import com.protocol7.nettyquic.protocol.Version;
@@ -57,7 +59,9 @@ public class ClientHelloTest {
 
     assertEquals(32, ch.getClientRandom().length);
     assertEquals(0, ch.getSessionId().length);
-    assertEquals(List.of(TLS_AES_128_GCM_SHA256), ch.getCipherSuites());
+    assertEquals(
+        List.of(TLS_AES_128_GCM_SHA256, TLS_AES_256_GCM_SHA384, TLS_CHACHA20_POLY1305_SHA256),
+        ch.getCipherSuites());
 
     KeyShare keyShare = (KeyShare) ch.geExtension(ExtensionType.key_share).get();
     assertEquals(1, keyShare.getKeys().size());
@@ -0,0 +1,40 @@
+package com.protocol7.nettyquic.tls.messages;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.protocol7.nettyquic.utils.Rnd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import org.junit.Test;
+
+public class NewSessionTicketTest {
+
+  @Test
+  public void roundtrip() {
+    byte[] nonce = new byte[] {1};
+    byte[] ticket = Rnd.rndBytes(100);
+    NewSessionTicket nst = new NewSessionTicket(43200, 0xFFFFFFFFL, nonce, ticket, List.of());
+
+    ByteBuf bb = Unpooled.buffer();
+    nst.write(bb);
+
+    NewSessionTicket parsed = NewSessionTicket.parse(bb);
+
+    assertEquals(43200, parsed.getLifetime());
+    assertEquals(0xFFFFFFFFL, parsed.getAgeAdd());
+    assertArrayEquals(nonce, parsed.getNonce());
+    assertArrayEquals(ticket, parsed.getTicket());
+    assertEquals(0, parsed.getExtensions().size());
+    assertEquals(0, bb.readableBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parseInvalidType() {
+    ByteBuf bb = Unpooled.buffer();
+    bb.writeByte(0x14);
+
+    NewSessionTicket.parse(bb);
+  }
+}
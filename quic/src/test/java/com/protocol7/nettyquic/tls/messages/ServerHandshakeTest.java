@@ -3,13 +3,17 @@ package com.protocol7.nettyquic.tls.messages;
 import static com.protocol7.nettyquic.TestUtil.assertHex;
 import static org.junit.Assert.assertEquals;
 
+import com.protocol7.nettyquic.tls.extensions.CompressCertificate;
 import com.protocol7.nettyquic.tls.extensions.SupportedVersions;
 import com.protocol7.nettyquic.tls.extensions.TransportParameters;
+import com.protocol7.nettyquic.tls.messages.ServerHandshake.CompressedCertificate;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.EncryptedExtensions;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificate;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerCertificateVerify;
 import com.protocol7.nettyquic.tls.messages.ServerHandshake.ServerHandshakeFinished;
+import com.protocol7.nettyquic.utils.Bytes;
 import com.protocol7.nettyquic.utils.Hex;
+import com.protocol7.nettyquic.utils.Rnd;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.junit.Test;
@@ -123,4 +127,69 @@ public class ServerHandshakeTest {
     assertHex(scv.getSignature(), parsed.getServerCertificateVerify().getSignature());
     assertHex(fin.getVerificationData(), parsed.getServerHandshakeFinished().getVerificationData());
   }
+
+  @Test
+  public void compressedCertificateRoundtrip() {
+    ServerCertificate sc = new ServerCertificate(Rnd.rndBytes(100), new byte[200]);
+
+    CompressedCertificate cc = CompressedCertificate.compress(sc);
+    assertEquals(CompressCertificate.ZLIB, cc.getAlgorithm());
+    assertEquals(Bytes.write(sc).length - 4, cc.getUncompressedLength());
+
+    ByteBuf bb = Unpooled.buffer();
+    cc.write(bb);
+
+    ServerCertificate parsed = ServerHandshake.parseCertificate(bb);
+
+    assertEquals(2, parsed.getServerCertificates().size());
+    assertHex(sc.getServerCertificates().get(0), parsed.getServerCertificates().get(0));
+    assertHex(sc.getServerCertificates().get(1), parsed.getServerCertificates().get(1));
+  }
+
+  @Test
+  public void parseUncompressedCertificate() {
+    ServerCertificate sc = new ServerCertificate(Rnd.rndBytes(100));
+
+    ServerCertificate parsed =
+        ServerHandshake.parseCertificate(Unpooled.wrappedBuffer(Bytes.write(sc)));
+
+    assertHex(sc.getServerCertificates().get(0), parsed.getServerCertificates().get(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compressedCertificateLongerThanGiven() {
+    CompressedCertificate cc = CompressedCertificate.compress(new ServerCertificate(new byte[200]));
+
+    new CompressedCertificate(cc.getAlgorithm(), cc.getUncompressedLength() - 1, cc.getCompressed())
+        .decompress();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compressedCertificateShorterThanGiven() {
+    CompressedCertificate cc = CompressedCertificate.compress(new ServerCertificate(new byte[200]));
+
+    new CompressedCertificate(cc.getAlgorithm(), cc.getUncompressedLength() + 1, cc.getCompressed())
+        .decompress();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compressedCertificateTooLarge() {
+    new CompressedCertificate(
+            CompressCertificate.ZLIB,
+            CompressedCertificate.MAX_UNCOMPRESSED_LENGTH + 1,
+            new byte[10])
+        .decompress();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compressedCertificateUnsupportedAlgorithm() {
+    CompressedCertificate cc = CompressedCertificate.compress(new ServerCertificate(new byte[200]));
+
+    new CompressedCertificate(2, cc.getUncompressedLength(), cc.getCompressed()).decompress();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compressedCertificateInvalidData() {
+    new CompressedCertificate(CompressCertificate.ZLIB, 100, Rnd.rndBytes(50)).decompress();
+  }
 }